@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * CameraEventValueListener accepts a {@link NestListener.CameraEventListener} that will receive
+ * an event each time a {@link Camera} reports a new {@link Camera.LastEvent}, and again when that
+ * event ends.
+ * <p>
+ * The first time a camera is seen, including every camera in the first snapshot, its last event
+ * is recorded without notifying the listener, so that events that happened before the listener
+ * was added aren't reported as new.
+ * <p>
+ * Only the start and end times of each camera's last event are read from a snapshot. The rest of
+ * the last event is decoded only when one of them changed, and the rest of the camera never is.
+ */
+class CameraEventValueListener implements ValueEventListener {
+    private final NestListener.CameraEventListener mListener;
+    // Camera id to the last seen {start time, end time} of its last event, or null for a known
+    // camera without one.
+    private final HashMap<String, String[]> mLastTimes = new HashMap<>();
+    private final ListenerContext mContext;
+
+    CameraEventValueListener(@NonNull NestListener.CameraEventListener listener,
+            @NonNull ListenerContext context) {
+        mListener = listener;
+        mContext = context;
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+        mContext.heartbeat();
+        HashSet<String> seen = new HashSet<>();
+
+        for (DataSnapshot cameraSnap : dataSnapshot.getChildren()) {
+            String cameraId = cameraSnap.getName();
+            seen.add(cameraId);
+            boolean known = mLastTimes.containsKey(cameraId);
+            DataSnapshot eventSnap = cameraSnap.child(Camera.KEY_LAST_EVENT);
+            String startTime = null;
+            String endTime = null;
+            if (cameraSnap.hasChild(Camera.KEY_LAST_EVENT)) {
+                startTime = asString(eventSnap.child(Camera.LastEvent.KEY_START_TIME));
+                endTime = asString(eventSnap.child(Camera.LastEvent.KEY_END_TIME));
+            }
+            if (startTime == null) {
+                if (!known) {
+                    mLastTimes.put(cameraId, null);
+                }
+                continue;
+            }
+            if (!known) {
+                mLastTimes.put(cameraId, new String[] {startTime, endTime});
+                continue;
+            }
+
+            String[] previous = mLastTimes.get(cameraId);
+            boolean isNew = previous == null || !startTime.equals(previous[0]);
+            boolean wasEnded = !isNew && hasEnded(previous[0], previous[1]);
+            boolean isEnded = hasEnded(startTime, endTime);
+            if (!isNew && wasEnded == isEnded) {
+                continue;
+            }
+
+            mLastTimes.put(cameraId, new String[] {startTime, endTime});
+            Camera.LastEvent event = eventSnap.getValue(Camera.LastEvent.class);
+            long start = mContext.begin();
+            try {
+                if (isNew) {
+                    mListener.onEventStarted(cameraId, event);
+                }
+                if (isEnded && !wasEnded) {
+                    mListener.onEventEnded(cameraId, event);
+                }
+            } finally {
+                mContext.end(mListener, start);
+            }
+        }
+
+        mLastTimes.keySet().retainAll(seen);
+    }
+
+    @Override
+    public void onCancelled(FirebaseError firebaseError) {
+        mContext.reportError(firebaseError);
+    }
+
+    private static String asString(DataSnapshot snapshot) {
+        Object value = snapshot.getValue();
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Returns whether an event has ended. Ongoing events have no end time, or an end time before
+     * their start time. Both are ISO 8601 UTC timestamps, which sort lexicographically.
+     */
+    private static boolean hasEnded(String startTime, String endTime) {
+        return endTime != null && endTime.compareTo(startTime) >= 0;
+    }
+}
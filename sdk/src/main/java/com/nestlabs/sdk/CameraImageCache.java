@@ -0,0 +1,505 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * CameraImageCache prefetches and caches the images of {@link Camera.LastEvent} events, so they are
+ * on disk by the time a user opens the event.
+ * <p>
+ * Register a CameraImageCache with {@link NestAPI#addCameraEventListener(
+ * NestListener.CameraEventListener)}. Each new event's image and animated image are fetched on a
+ * pool of a few threads. They are stored in a size-bounded LRU directory and evicted once the
+ * event's {@code urls_expire_time} passes, or {@link #FALLBACK_TTL_MS} after they are fetched if it
+ * is missing. Concurrent requests for the same URL share one fetch. Call {@link #close()} to stop
+ * the fetch threads.
+ */
+public final class CameraImageCache implements NestListener.CameraEventListener {
+    /**
+     * How long an image is kept when its expiry time is unknown, in milliseconds.
+     */
+    public static final long FALLBACK_TTL_MS = 10 * 60 * 1000;
+
+    private static final String TAG = "CameraImageCache";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String[] EXPIRE_TIME_FORMATS =
+            {"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", "yyyy-MM-dd'T'HH:mm:ss'Z'"};
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final OkHttpClient mHttpClient;
+    private final ExecutorService mFetchPool;
+    private final ConcurrentHashMap<String, FutureTask<File>> mInFlight =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger mFetchCount = new AtomicInteger();
+
+    // Cache key to entry, in least recently used order. Guarded by this.
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize;
+
+    private CameraImageCache(Builder builder) {
+        mDirectory = builder.mDirectory;
+        mMaxBytes = builder.mMaxBytes;
+        mHttpClient = builder.mHttpClient != null ? builder.mHttpClient : new OkHttpClient();
+        mFetchPool = Executors.newFixedThreadPool(builder.mConcurrency);
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create cache directory " + mDirectory);
+        }
+        loadEntries();
+    }
+
+    @Override
+    public void onEventStarted(@NonNull String cameraId, @NonNull Camera.LastEvent event) {
+        prefetch(event);
+    }
+
+    @Override
+    public void onEventEnded(@NonNull String cameraId, @NonNull Camera.LastEvent event) {
+        // The URLs of an event don't change when it ends.
+        prefetch(event);
+    }
+
+    /**
+     * Starts fetching the image and animated image of an event in the background, unless they are
+     * already cached or being fetched.
+     *
+     * @param event the {@link Camera.LastEvent} to prefetch images for.
+     */
+    public void prefetch(@NonNull Camera.LastEvent event) {
+        long expiresAtMs = orFallback(parseExpireTime(event.getUrlsExpireTime()));
+        prefetch(event.getImageUrl(), expiresAtMs);
+        prefetch(event.getAnimatedImageUrl(), expiresAtMs);
+    }
+
+    private void prefetch(String url, long expiresAtMs) {
+        if (url == null || mFetchPool.isShutdown() || getCachedFile(url) != null) {
+            return;
+        }
+        FutureTask<File> task = fetchTask(url, expiresAtMs);
+        if (task == null) {
+            return;
+        }
+        try {
+            mFetchPool.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed in the meantime. Release anyone waiting on the fetch.
+            mInFlight.remove(url);
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the cached file for an image, or null if it isn't cached or has expired. Doesn't
+     * block on network access.
+     *
+     * @param url the image URL.
+     * @return the cached file, or null.
+     */
+    @Nullable
+    public synchronized File getCachedFile(@NonNull String url) {
+        String key = keyOf(url);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.mExpiresAtMs <= System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return entry.mFile;
+    }
+
+    /**
+     * Returns the cached file for an image, fetching it if needed. If the image is already being
+     * fetched, waits for that fetch instead of starting another.
+     *
+     * @param url         the image URL.
+     * @param expiresAtMs when the URL expires, in milliseconds since the epoch, or 0 if unknown,
+     *                    in which case the image is kept for {@link #FALLBACK_TTL_MS}.
+     * @return the cached file.
+     * @throws IOException if the image can't be fetched or stored, or wasn't kept because it had
+     *                     expired or is larger than the cache.
+     */
+    @WorkerThread
+    @NonNull
+    public File get(@NonNull String url, long expiresAtMs) throws IOException {
+        expiresAtMs = orFallback(expiresAtMs);
+        File cached = getCachedFile(url);
+        if (cached != null) {
+            return cached;
+        }
+
+        FutureTask<File> task = mInFlight.get(url);
+        if (task == null) {
+            task = fetchTask(url, expiresAtMs);
+            if (task != null) {
+                // No other fetch was started; run it on this thread.
+                task.run();
+            } else {
+                task = mInFlight.get(url);
+            }
+        }
+        if (task == null) {
+            // The other fetch finished in the meantime.
+            return get(url, expiresAtMs);
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (CancellationException e) {
+            throw new IOException("The cache was closed while fetching " + url);
+        }
+    }
+
+    /**
+     * Returns the total size of the cached images.
+     *
+     * @return the total size of the cached images, in bytes.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of network fetches started.
+     *
+     * @return the number of network fetches started.
+     */
+    public int getFetchCount() {
+        return mFetchCount.get();
+    }
+
+    /**
+     * Stops the fetch threads once the fetches already queued finish. Later prefetches are
+     * ignored; {@link #get(String, long)} still fetches on the calling thread.
+     */
+    public void close() {
+        mFetchPool.shutdown();
+    }
+
+    /**
+     * Removes every cached image.
+     */
+    public synchronized void clear() {
+        for (String key : new ArrayList<>(mEntries.keySet())) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Returns a new task that fetches an image, registered as the in-flight fetch for the URL, or
+     * null if another fetch for it is already in flight.
+     */
+    private FutureTask<File> fetchTask(final String url, final long expiresAtMs) {
+        FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                try {
+                    return fetch(url, expiresAtMs);
+                } finally {
+                    mInFlight.remove(url);
+                }
+            }
+        });
+        return mInFlight.putIfAbsent(url, task) == null ? task : null;
+    }
+
+    private File fetch(String url, long expiresAtMs) throws IOException {
+        File cached = getCachedFile(url);
+        if (cached != null) {
+            return cached;
+        }
+
+        mFetchCount.incrementAndGet();
+        String key = keyOf(url);
+        File temp = new File(mDirectory, key + TEMP_SUFFIX);
+        Response response = mHttpClient.newCall(new Request.Builder().url(url).build()).execute();
+        try {
+            if (!response.isSuccessful()) {
+                throw new IOException("Fetching " + url + " failed: " + response.code());
+            }
+            InputStream in = response.body().byteStream();
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            response.body().close();
+        }
+
+        File file = new File(mDirectory, key + "-" + expiresAtMs);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to store " + file);
+        }
+        synchronized (this) {
+            Entry entry = new Entry(file, expiresAtMs);
+            put(key, entry);
+            if (mEntries.get(key) != entry) {
+                // trim() evicted it and deleted the file.
+                throw new IOException("Not caching " + url + ": it has expired or is larger than"
+                        + " the cache.");
+            }
+        }
+        return file;
+    }
+
+    private void put(String key, Entry entry) {
+        remove(key);
+        mEntries.put(key, entry);
+        mSize += entry.mSize;
+        trim();
+    }
+
+    private void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSize -= entry.mSize;
+            if (!entry.mFile.delete()) {
+                Log.w(TAG, "Failed to delete " + entry.mFile);
+            }
+        }
+    }
+
+    /**
+     * Evicts expired entries, then least recently used entries until the cache fits.
+     */
+    private void trim() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        ArrayList<String> evicted = new ArrayList<>();
+        long size = mSize;
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getValue().mExpiresAtMs <= now || size > mMaxBytes) {
+                evicted.add(e.getKey());
+                size -= e.getValue().mSize;
+            }
+        }
+        for (String key : evicted) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Loads the entries left by a previous instance. File names carry the expiry time, and the last
+     * modified time approximates the access order.
+     */
+    private synchronized void loadEntries() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            int dash = name.lastIndexOf('-');
+            if (name.endsWith(TEMP_SUFFIX) || dash < 0) {
+                file.delete();
+                continue;
+            }
+            try {
+                long expiresAtMs = Long.parseLong(name.substring(dash + 1));
+                Entry entry = new Entry(file, expiresAtMs);
+                mEntries.put(name.substring(0, dash), entry);
+                mSize += entry.mSize;
+            } catch (NumberFormatException e) {
+                file.delete();
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Parses an event's {@code urls_expire_time}. Returns 0, which means unknown, if it is missing
+     * or can't be parsed.
+     */
+    static long parseExpireTime(String expireTime) {
+        if (expireTime == null) {
+            return 0;
+        }
+        for (String pattern : EXPIRE_TIME_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            try {
+                return format.parse(expireTime).getTime();
+            } catch (ParseException e) {
+                // Try the next format.
+            }
+        }
+        Log.w(TAG, "Unable to parse urls_expire_time " + expireTime);
+        return 0;
+    }
+
+    private static long orFallback(long expiresAtMs) {
+        return expiresAtMs > 0 ? expiresAtMs : System.currentTimeMillis() + FALLBACK_TTL_MS;
+    }
+
+    private static String keyOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        final File mFile;
+        final long mExpiresAtMs;
+        final long mSize;
+
+        Entry(File file, long expiresAtMs) {
+            mFile = file;
+            mExpiresAtMs = expiresAtMs;
+            mSize = file.length();
+        }
+    }
+
+    /**
+     * Builder for creating a {@link CameraImageCache}.
+     */
+    public static final class Builder {
+        private File mDirectory;
+        private long mMaxBytes = 20 * 1024 * 1024;
+        private int mConcurrency = 3;
+        private OkHttpClient mHttpClient;
+
+        /**
+         * Sets the directory images are stored in. Required. The directory should only be used by
+         * this cache.
+         *
+         * @param directory the cache directory.
+         * @return the {@link Builder} instance.
+         */
+        public Builder directory(@NonNull File directory) {
+            mDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size of the cached images. Defaults to 20 MB.
+         *
+         * @param maxBytes the maximum size, in bytes.
+         * @return the {@link Builder} instance.
+         */
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes must be positive.");
+            }
+            mMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the number of images prefetched at once. Defaults to 3.
+         *
+         * @param concurrency the number of concurrent prefetches.
+         * @return the {@link Builder} instance.
+         */
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be at least 1.");
+            }
+            mConcurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Sets the {@link OkHttpClient} used to fetch images. Defaults to a new client.
+         *
+         * @param httpClient the client to fetch images with.
+         * @return the {@link Builder} instance.
+         */
+        public Builder httpClient(@NonNull OkHttpClient httpClient) {
+            mHttpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * Creates the {@link CameraImageCache}, reusing unexpired images already in the directory.
+         *
+         * @return a new {@link CameraImageCache}.
+         */
+        public CameraImageCache build() {
+            if (mDirectory == null) {
+                throw new IllegalArgumentException("A directory is required.");
+            }
+            return new CameraImageCache(this);
+        }
+    }
+}
@@ -24,7 +24,7 @@ import com.firebase.client.Firebase;
  * CameraSetter provides methods for setting values on {@link Camera}s.
  */
 public class CameraSetter {
-    private final Firebase mFirebaseRef;
+    private final NestWriter mWriter;
 
     private static String getPath(@NonNull String cameraId, @NonNull String attribute) {
         return new Utils.PathBuilder().append(NestAPI.KEY_DEVICES)
@@ -35,7 +35,11 @@ public class CameraSetter {
     }
 
     CameraSetter(@NonNull final Firebase firebaseRef) {
-        mFirebaseRef = firebaseRef;
+        this(new NestWriter(firebaseRef));
+    }
+
+    CameraSetter(@NonNull NestWriter writer) {
+        mWriter = writer;
     }
 
     /**
@@ -48,7 +52,7 @@ public class CameraSetter {
     public void setIsStreaming(@NonNull String cameraId, boolean isStreaming,
             @NonNull Callback callback) {
         String path = getPath(cameraId, Camera.KEY_IS_STREAMING);
-        mFirebaseRef.child(path).setValue(isStreaming, new NestCompletionListener(callback));
+        mWriter.setValue(path, isStreaming, new NestCompletionListener(callback));
     }
 
     /**
@@ -59,6 +63,18 @@ public class CameraSetter {
      */
     public void setIsStreaming(@NonNull String cameraId, boolean isStreaming) {
         String path = getPath(cameraId, Camera.KEY_IS_STREAMING);
-        mFirebaseRef.child(path).setValue(isStreaming);
+        mWriter.setValue(path, isStreaming);
+    }
+
+    /**
+     * Sets the {@link Camera} streaming status on or off.
+     *
+     * @param cameraId    The unique identifier of the camera.
+     * @param isStreaming true to turn streaming on, false to turn streaming off.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setIsStreamingAsync(@NonNull String cameraId, boolean isStreaming) {
+        String path = getPath(cameraId, Camera.KEY_IS_STREAMING);
+        return mWriter.setValueAsync(path, isStreaming);
     }
 }
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionMonitor tracks the health of the connection to the Nest API and reports it to {@link
+ * NestListener.ConnectionListener}s. Get it from {@link
+ * NestAPI#addConnectionListener(NestListener.ConnectionListener)}.
+ * <p>
+ * Every event from the Nest API, and every change of the connection itself, counts as a heartbeat.
+ * A connection with no heartbeat for longer than {@link #setStaleAfter(long, TimeUnit)} is {@link
+ * State#STALE}. The Nest API only sends events when something changes, so the threshold should be
+ * longer than the account is expected to stay quiet.
+ * <p>
+ * Firebase reconnects on its own after a plain disconnect, so the monitor only reports it. A stale
+ * connection is reset after a jittered exponential backoff, which grows until events arrive again.
+ * The reset goes through {@link Firebase#goOffline()} and {@link Firebase#goOnline()}, which affect
+ * every Firebase reference in the process. The monitor also records how long the connection has
+ * been down and how long it took to recover.
+ */
+public final class ConnectionMonitor {
+    static final String INFO_CONNECTED = ".info/connected";
+
+    private static final long DEFAULT_STALE_AFTER_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long DEFAULT_INITIAL_BACKOFF_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long DEFAULT_MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Runnable RECONNECT = new Runnable() {
+        @Override
+        public void run() {
+            Firebase.goOffline();
+            Firebase.goOnline();
+        }
+    };
+
+    private static ScheduledExecutorService sTimer;
+
+    /**
+     * The states of the connection.
+     */
+    public enum State {
+        /** Connecting for the first time, or reconnecting after a reset. */
+        CONNECTING,
+        /** Connected, and receiving heartbeats. */
+        CONNECTED,
+        /** Connected, but no heartbeat has arrived for longer than the stale threshold. */
+        STALE,
+        /** Not connected. */
+        DISCONNECTED
+    }
+
+    private final Firebase mRef;
+    private final ScheduledExecutorService mTimer;
+    private final Random mRandom;
+    private final Runnable mReconnect;
+    private final List<NestListener.ConnectionListener> mListeners =
+            new CopyOnWriteArrayList<>();
+
+    private final ValueEventListener mConnectedListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            onConnectedChange(Boolean.TRUE.equals(dataSnapshot.getValue()), System.nanoTime());
+        }
+
+        @Override
+        public void onCancelled(FirebaseError firebaseError) {
+            onError(firebaseError);
+        }
+    };
+
+    private final Runnable mCheckStale = new Runnable() {
+        @Override
+        public void run() {
+            checkStale(System.nanoTime());
+        }
+    };
+
+    private final Runnable mAttemptReconnect = new Runnable() {
+        @Override
+        public void run() {
+            attemptReconnect(System.nanoTime());
+        }
+    };
+
+    private long mStaleAfterNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STALE_AFTER_MS);
+    private long mInitialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF_MS);
+    private long mMaxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF_MS);
+
+    private State mState = State.CONNECTING;
+    private long mLastHeartbeatNanos;
+    private boolean mStarted;
+    private ScheduledFuture<?> mStaleCheck;
+    private ScheduledFuture<?> mPendingReconnect;
+    private int mAttempt;
+
+    // When the connection last stopped being connected, or 0 if it's connected.
+    private long mDownSinceNanos;
+    private boolean mEverConnected;
+    private long mDisconnectedNanos;
+    private long mLastRecoveryNanos = -1;
+    private long mMaxRecoveryNanos = -1;
+    private long mReconnectCount;
+
+    ConnectionMonitor(@NonNull Firebase ref) {
+        this(ref, getTimer(), new Random(), RECONNECT);
+    }
+
+    /**
+     * Creates a monitor with its own timer, source of jitter and way of resetting the connection.
+     */
+    ConnectionMonitor(@NonNull Firebase ref, @NonNull ScheduledExecutorService timer,
+            @NonNull Random random, @NonNull Runnable reconnect) {
+        mRef = ref;
+        mTimer = timer;
+        mRandom = random;
+        mReconnect = reconnect;
+    }
+
+    /**
+     * Starts watching the connection.
+     */
+    synchronized void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        mLastHeartbeatNanos = System.nanoTime();
+        mRef.child(INFO_CONNECTED).addValueEventListener(mConnectedListener);
+        scheduleStaleCheck();
+    }
+
+    /**
+     * Stops watching the connection and cancels any pending reconnect.
+     */
+    synchronized void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mRef.child(INFO_CONNECTED).removeEventListener(mConnectedListener);
+        cancel(mStaleCheck);
+        mStaleCheck = null;
+        cancel(mPendingReconnect);
+        mPendingReconnect = null;
+    }
+
+    void addListener(@NonNull NestListener.ConnectionListener listener) {
+        mListeners.add(listener);
+    }
+
+    boolean removeListener(@NonNull NestListener.ConnectionListener listener) {
+        return mListeners.remove(listener);
+    }
+
+    boolean hasListeners() {
+        return !mListeners.isEmpty();
+    }
+
+    /**
+     * Sets how long the connection can go without a heartbeat before it's considered stale.
+     *
+     * @param staleAfter the time without a heartbeat, or 0 to never consider it stale.
+     * @param unit       the {@link TimeUnit} of {@code staleAfter}.
+     */
+    public synchronized void setStaleAfter(long staleAfter, @NonNull TimeUnit unit) {
+        if (staleAfter < 0) {
+            throw new IllegalArgumentException("staleAfter must not be negative.");
+        }
+        mStaleAfterNanos = unit.toNanos(staleAfter);
+        if (mStarted) {
+            cancel(mStaleCheck);
+            scheduleStaleCheck();
+        }
+    }
+
+    /**
+     * Sets the delays before resetting a stale connection. The delay starts at {@code initial}
+     * and doubles each time the connection goes stale again without an event in between, up to
+     * {@code max}. Each delay is jittered down by up to half, so clients that lost the connection
+     * together don't all reconnect at once.
+     *
+     * @param initial the delay before the first attempt.
+     * @param max     the longest delay between attempts.
+     * @param unit    the {@link TimeUnit} of the delays.
+     */
+    public synchronized void setBackoff(long initial, long max, @NonNull TimeUnit unit) {
+        if (initial <= 0 || max < initial) {
+            throw new IllegalArgumentException("Backoff must satisfy 0 < initial <= max.");
+        }
+        mInitialBackoffNanos = unit.toNanos(initial);
+        mMaxBackoffNanos = unit.toNanos(max);
+    }
+
+    /**
+     * Returns the current state of the connection.
+     *
+     * @return the current {@link State}.
+     */
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * Returns the total time the connection has not been connected since it first connected,
+     * including the current outage if there is one.
+     *
+     * @param unit the {@link TimeUnit} of the result.
+     * @return the total time disconnected or stale.
+     */
+    public synchronized long getDisconnectedTime(@NonNull TimeUnit unit) {
+        long total = mDisconnectedNanos;
+        if (mDownSinceNanos != 0) {
+            total += System.nanoTime() - mDownSinceNanos;
+        }
+        return unit.convert(total, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time the most recent outage took to recover, from the connection dropping or
+     * going stale to it being connected again.
+     *
+     * @param unit the {@link TimeUnit} of the result.
+     * @return the time to recover, or -1 if the connection has never recovered from an outage.
+     */
+    public synchronized long getLastRecoveryTime(@NonNull TimeUnit unit) {
+        return mLastRecoveryNanos < 0 ? -1 : unit.convert(mLastRecoveryNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time any outage took to recover.
+     *
+     * @param unit the {@link TimeUnit} of the result.
+     * @return the longest time to recover, or -1 if the connection has never recovered from an
+     * outage.
+     */
+    public synchronized long getMaxRecoveryTime(@NonNull TimeUnit unit) {
+        return mMaxRecoveryNanos < 0 ? -1 : unit.convert(mMaxRecoveryNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of times the connection has been reset.
+     *
+     * @return the number of reconnect attempts.
+     */
+    public synchronized long getReconnectCount() {
+        return mReconnectCount;
+    }
+
+    void onConnectedChange(boolean connected, long nowNanos) {
+        State state;
+        synchronized (this) {
+            mLastHeartbeatNanos = nowNanos;
+            if (connected) {
+                state = connected(nowNanos);
+            } else if (mEverConnected) {
+                // Firebase reconnects by itself; a reset now would only interrupt it.
+                cancel(mPendingReconnect);
+                mPendingReconnect = null;
+                state = moveTo(State.DISCONNECTED, nowNanos);
+            } else {
+                // Firebase reports false before the first connection is set up.
+                state = null;
+            }
+        }
+        dispatch(state);
+    }
+
+    void onHeartbeat(long nowNanos) {
+        State state = null;
+        synchronized (this) {
+            mLastHeartbeatNanos = nowNanos;
+            mAttempt = 0;
+            if (mState == State.STALE) {
+                state = connected(nowNanos);
+            }
+        }
+        dispatch(state);
+    }
+
+    void checkStale(long nowNanos) {
+        State state = null;
+        synchronized (this) {
+            if (mState == State.CONNECTED && mStaleAfterNanos > 0
+                    && nowNanos - mLastHeartbeatNanos > mStaleAfterNanos) {
+                state = moveTo(State.STALE, nowNanos);
+                scheduleReconnect();
+            }
+        }
+        dispatch(state);
+    }
+
+    void attemptReconnect(long nowNanos) {
+        State state;
+        synchronized (this) {
+            mPendingReconnect = null;
+            if (!mStarted || mState != State.STALE) {
+                return;
+            }
+            mReconnectCount++;
+            state = moveTo(State.CONNECTING, nowNanos);
+        }
+        dispatch(state);
+        mReconnect.run();
+    }
+
+    /**
+     * Returns the delay before the next reconnect attempt, and counts the attempt.
+     */
+    synchronized long nextBackoffNanos() {
+        long delay = mInitialBackoffNanos;
+        for (int i = 0; i < mAttempt && delay < mMaxBackoffNanos; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, mMaxBackoffNanos);
+        mAttempt++;
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half));
+    }
+
+    private State connected(long nowNanos) {
+        cancel(mPendingReconnect);
+        mPendingReconnect = null;
+        return moveTo(State.CONNECTED, nowNanos);
+    }
+
+    /**
+     * Moves to a new state, recording outages. Returns the new state, or null if it didn't change.
+     */
+    private State moveTo(State state, long nowNanos) {
+        if (state == mState) {
+            return null;
+        }
+        if (state == State.CONNECTED) {
+            if (mDownSinceNanos != 0) {
+                long outage = nowNanos - mDownSinceNanos;
+                mDisconnectedNanos += outage;
+                mLastRecoveryNanos = outage;
+                mMaxRecoveryNanos = Math.max(mMaxRecoveryNanos, outage);
+                mDownSinceNanos = 0;
+            }
+            mEverConnected = true;
+        } else if (mEverConnected && mDownSinceNanos == 0) {
+            mDownSinceNanos = nowNanos;
+        }
+        mState = state;
+        return state;
+    }
+
+    private void scheduleReconnect() {
+        if (!mStarted || mPendingReconnect != null) {
+            return;
+        }
+        mPendingReconnect = mTimer.schedule(mAttemptReconnect, nextBackoffNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    private void scheduleStaleCheck() {
+        mStaleCheck = null;
+        if (mStaleAfterNanos > 0) {
+            long period = Math.max(mStaleAfterNanos / 2, 1);
+            mStaleCheck = mTimer.scheduleAtFixedRate(mCheckStale, period, period,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void dispatch(State state) {
+        if (state == null) {
+            return;
+        }
+        for (NestListener.ConnectionListener listener : mListeners) {
+            listener.onConnectionStateChanged(state);
+        }
+    }
+
+    /**
+     * Reports a listener cancelled by the Nest API to this monitor's listeners.
+     */
+    void onError(FirebaseError firebaseError) {
+        NestException exception = new NestException(firebaseError.getMessage(),
+                firebaseError.toException());
+        for (NestListener.ConnectionListener listener : mListeners) {
+            listener.onError(exception);
+        }
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (sTimer == null) {
+            sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "NestConnectionMonitor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sTimer;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "ConnectionMonitor{state=%s, disconnected=%dms, "
+                        + "last_recovery=%dms, max_recovery=%dms, reconnects=%d}", mState,
+                getDisconnectedTime(TimeUnit.MILLISECONDS),
+                getLastRecoveryTime(TimeUnit.MILLISECONDS),
+                getMaxRecoveryTime(TimeUnit.MILLISECONDS), mReconnectCount);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+/**
+ * DecodeMetrics counts how much work the listeners skip because a snapshot's contents didn't
+ * change. Get it with {@link NestAPI#getDecodeMetrics()}.
+ * <p>
+ * Each device, structure and the metadata is compared with the last snapshot of it received. An
+ * unchanged object isn't decoded again; its listeners get the object decoded before. When nothing
+ * a listener receives has changed, the update isn't delivered to it at all.
+ * <p>
+ * Global and device updates decode their collections lazily, so a changed object is counted as
+ * decoded even if its collection is never requested. Comparing isn't free either: each object's
+ * values are still read from the snapshot and hashed, which costs a good part of a full decode.
+ * What's saved is building the model object and delivering updates that carry nothing new.
+ */
+public final class DecodeMetrics {
+
+    private long mDecodedCount;
+    private long mReusedCount;
+    private long mDeliveredCount;
+    private long mSuppressedCount;
+
+    /**
+     * Counts objects decoded and objects reused unchanged.
+     */
+    synchronized void objects(int decoded, int reused) {
+        mDecodedCount += decoded;
+        mReusedCount += reused;
+    }
+
+    /**
+     * Counts an update delivered to a listener, or suppressed because nothing in it changed.
+     */
+    synchronized void update(boolean suppressed) {
+        if (suppressed) {
+            mSuppressedCount++;
+        } else {
+            mDeliveredCount++;
+        }
+    }
+
+    /**
+     * Returns the number of objects decoded from snapshots.
+     */
+    public synchronized long getDecodedCount() {
+        return mDecodedCount;
+    }
+
+    /**
+     * Returns the number of objects that were unchanged since the last snapshot, and were reused
+     * rather than decoded again.
+     */
+    public synchronized long getReusedCount() {
+        return mReusedCount;
+    }
+
+    /**
+     * Returns the fraction of objects received that were reused rather than decoded, from 0 to 1,
+     * or 0 if none were received.
+     */
+    public synchronized double getReuseRatio() {
+        long total = mDecodedCount + mReusedCount;
+        return total == 0 ? 0 : (double) mReusedCount / total;
+    }
+
+    /**
+     * Returns the number of updates delivered to listeners.
+     */
+    public synchronized long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * Returns the number of updates not delivered to a listener because nothing in them changed.
+     */
+    public synchronized long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    /**
+     * Returns the fraction of updates that were suppressed rather than delivered, from 0 to 1, or
+     * 0 if there were none.
+     */
+    public synchronized double getSuppressedRatio() {
+        long total = mDeliveredCount + mSuppressedCount;
+        return total == 0 ? 0 : (double) mSuppressedCount / total;
+    }
+
+    /**
+     * Resets every count to zero.
+     */
+    public synchronized void reset() {
+        mDecodedCount = 0;
+        mReusedCount = 0;
+        mDeliveredCount = 0;
+        mSuppressedCount = 0;
+    }
+}
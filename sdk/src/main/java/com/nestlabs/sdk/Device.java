@@ -20,9 +20,12 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import java.util.Set;
+
 /**
  * Device represents any Nest device. All devices (e.g. {@link Thermostat}, {@link Camera}, {@link
  * SmokeCOAlarm}) should extend Device and thus will contain all properties that Device contains.
@@ -66,6 +69,10 @@ public class Device implements Parcelable {
     @JsonProperty(KEY_WHERE_ID)
     String mWhereId;
 
+    // The projected keys this object was decoded with, or null if every field was decoded.
+    @JsonIgnore
+    Set<String> mProjection;
+
     public Device() {}
 
     protected Device(Parcel in) {
@@ -78,6 +85,7 @@ public class Device implements Parcelable {
         mLastConnection = in.readString();
         mIsOnline = Utils.readBoolean(in);
         mWhereId = in.readString();
+        mProjection = Utils.readProjection(in);
     }
 
     public static final Creator<Device> CREATOR = new Creator<Device>() {
@@ -106,6 +114,18 @@ public class Device implements Parcelable {
         return false;
     }
 
+    /**
+     * Returns whether the value of a field was decoded. Objects delivered to a listener added with
+     * a projection only carry the projected fields; the getters of all other fields return null, 0
+     * or false regardless of the actual value.
+     *
+     * @param key the key of the field, such as {@link #KEY_NAME}.
+     * @return true if the getter of the field returns its actual value, false otherwise.
+     */
+    public boolean isAvailable(String key) {
+        return mProjection == null || mProjection.contains(key);
+    }
+
     /**
      * Returns the unique identifier of this device.
      *
@@ -212,5 +232,6 @@ public class Device implements Parcelable {
         dest.writeString(mLastConnection);
         Utils.writeBoolean(dest, mIsOnline);
         dest.writeString(mWhereId);
+        Utils.writeProjection(dest, mProjection);
     }
 }
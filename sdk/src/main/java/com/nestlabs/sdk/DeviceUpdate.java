@@ -16,17 +16,54 @@
 
 package com.nestlabs.sdk;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+
 import java.util.ArrayList;
 
 /**
  * DeviceUpdate contains the state of all devices in the Nest account when a change is detected in
  * any device. A DeviceUpdate object is returned by {@link com.nestlabs.sdk.NestListener
  * .DeviceListener#onUpdate(DeviceUpdate)} when an update occurs.
+ * <p>
+ * Each device type is decoded from the snapshot the first time it's requested, so types a listener
+ * never looks at are never decoded. In updates delivered by a listener, devices that didn't change
+ * since its last update are the same instances it received before.
+ * <p>
+ * The {@link NestList} getters return immutable lists that can be shared between threads without
+ * copying; the {@link ArrayList} getters are kept for compatibility.
+ * <p>
+ * Updates delivered by a listener carry a sequence number and the times the snapshot was received
+ * and the update was ready, so consumers on other threads can drop stale work and measure latency.
+ * <p>
+ * DeviceUpdate is {@link Parcelable}. To send only the devices that changed since an update the
+ * receiver already holds, use {@link #deltaFrom(DeviceUpdate)} and {@link
+ * #applyDelta(UpdateDelta)}.
  */
-public final class DeviceUpdate {
-    private final ArrayList<Thermostat> mThermostats;
-    private final ArrayList<SmokeCOAlarm> mSmokeCOAlarms;
-    private final ArrayList<Camera> mCameras;
+public final class DeviceUpdate implements Parcelable {
+    private DataSnapshot mSnapshot;
+    private DataSnapshot mThermostatsSnapshot;
+    private DataSnapshot mSmokeCOAlarmsSnapshot;
+    private DataSnapshot mCamerasSnapshot;
+
+    private SnapshotCache.Pending<Thermostat> mPendingThermostats;
+    private SnapshotCache.Pending<SmokeCOAlarm> mPendingSmokeCOAlarms;
+    private SnapshotCache.Pending<Camera> mPendingCameras;
+
+    private ArrayList<Thermostat> mThermostats;
+    private ArrayList<SmokeCOAlarm> mSmokeCOAlarms;
+    private ArrayList<Camera> mCameras;
+
+    private NestList<Thermostat> mThermostatList;
+    private NestList<SmokeCOAlarm> mSmokeCOAlarmList;
+    private NestList<Camera> mCameraList;
+
+    private long mSequence;
+    private long mReceivedNanos;
+    private long mDecodedNanos;
 
     DeviceUpdate(ArrayList<Thermostat> thermostats, ArrayList<SmokeCOAlarm> smokeCOAlarms,
             ArrayList<Camera> cameras) {
@@ -35,12 +72,130 @@ public final class DeviceUpdate {
         mCameras = cameras;
     }
 
+    /**
+     * Creates a DeviceUpdate that decodes each device type from the snapshot on first access.
+     *
+     * @param snapshot the snapshot of the devices object.
+     */
+    DeviceUpdate(@NonNull DataSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    private DeviceUpdate(SnapshotCache.Pending<Thermostat> thermostats,
+            SnapshotCache.Pending<SmokeCOAlarm> smokeCOAlarms,
+            SnapshotCache.Pending<Camera> cameras) {
+        mPendingThermostats = thermostats;
+        mPendingSmokeCOAlarms = smokeCOAlarms;
+        mPendingCameras = cameras;
+    }
+
+    /**
+     * Reads a snapshot of the devices object through a listener's cache. Every device is compared
+     * with the last snapshot right away, so the cache knows whether anything changed, but only the
+     * devices that changed are decoded, the first time their type is requested; the others are
+     * the objects decoded before.
+     *
+     * @param snapshot the snapshot of the devices object, or null if there are no devices.
+     * @param cache    the cache of the listener receiving the update.
+     */
+    static DeviceUpdate read(DataSnapshot snapshot, @NonNull SnapshotCache cache) {
+        DataSnapshot thermostats = null;
+        DataSnapshot smokeCOAlarms = null;
+        DataSnapshot cameras = null;
+        if (snapshot != null) {
+            for (DataSnapshot deviceSnapshot : snapshot.getChildren()) {
+                String deviceName = deviceSnapshot.getName();
+
+                if (NestAPI.KEY_THERMOSTATS.equals(deviceName)) {
+                    thermostats = deviceSnapshot;
+                } else if (NestAPI.KEY_CAMERAS.equals(deviceName)) {
+                    cameras = deviceSnapshot;
+                } else if (NestAPI.KEY_SMOKE_CO_ALARMS.equals(deviceName)) {
+                    smokeCOAlarms = deviceSnapshot;
+                }
+            }
+        }
+        return new DeviceUpdate(
+                cache.readChildren(NestAPI.KEY_THERMOSTATS, thermostats, Thermostat.class),
+                cache.readChildren(NestAPI.KEY_SMOKE_CO_ALARMS, smokeCOAlarms,
+                        SmokeCOAlarm.class),
+                cache.readChildren(NestAPI.KEY_CAMERAS, cameras, Camera.class));
+    }
+
+    public static final Creator<DeviceUpdate> CREATOR = new Creator<DeviceUpdate>() {
+        @Override
+        public DeviceUpdate createFromParcel(Parcel in) {
+            long sequence = in.readLong();
+            long receivedNanos = in.readLong();
+            long decodedNanos = in.readLong();
+            DeviceUpdate update = new DeviceUpdate(in.createTypedArrayList(Thermostat.CREATOR),
+                    in.createTypedArrayList(SmokeCOAlarm.CREATOR),
+                    in.createTypedArrayList(Camera.CREATOR));
+            update.stamp(sequence, receivedNanos, decodedNanos);
+            return update;
+        }
+
+        @Override
+        public DeviceUpdate[] newArray(int size) {
+            return new DeviceUpdate[size];
+        }
+    };
+
+    /**
+     * Stamps this update with its sequence number and timing, once it's ready to be dispatched.
+     * The ready time is taken after the snapshot has been read and compared, while the changed
+     * devices are still decoded lazily.
+     *
+     * @param sequence      the sequence number of the update.
+     * @param receivedNanos the time the snapshot was received, from {@link System#nanoTime()}.
+     */
+    synchronized void stamp(long sequence, long receivedNanos) {
+        locate();
+        stamp(sequence, receivedNanos, System.nanoTime());
+    }
+
+    synchronized void stamp(long sequence, long receivedNanos, long decodedNanos) {
+        mSequence = sequence;
+        mReceivedNanos = receivedNanos;
+        mDecodedNanos = decodedNanos;
+    }
+
+    /**
+     * Finds the snapshot of each device type, without decoding any of them.
+     */
+    private void locate() {
+        if (mSnapshot == null) {
+            return;
+        }
+        for (DataSnapshot deviceSnapshot : mSnapshot.getChildren()) {
+            String deviceName = deviceSnapshot.getName();
+
+            if (NestAPI.KEY_THERMOSTATS.equals(deviceName)) {
+                mThermostatsSnapshot = deviceSnapshot;
+            } else if (NestAPI.KEY_CAMERAS.equals(deviceName)) {
+                mCamerasSnapshot = deviceSnapshot;
+            } else if (NestAPI.KEY_SMOKE_CO_ALARMS.equals(deviceName)) {
+                mSmokeCOAlarmsSnapshot = deviceSnapshot;
+            }
+        }
+        mSnapshot = null;
+    }
+
     /**
      * Returns all the {@link Thermostat} objects in the Nest account at the time of the update.
      *
      * @return all the {@link Thermostat} objects in the Nest account at the time of the update.
      */
-    public final ArrayList<Thermostat> getThermostats() {
+    public final synchronized ArrayList<Thermostat> getThermostats() {
+        if (mThermostats == null && mPendingThermostats != null) {
+            mThermostats = mPendingThermostats.get();
+            mPendingThermostats = null;
+        }
+        if (mThermostats == null) {
+            locate();
+            mThermostats = Utils.decodeChildren(mThermostatsSnapshot, Thermostat.class);
+            mThermostatsSnapshot = null;
+        }
         return mThermostats;
     }
 
@@ -49,7 +204,16 @@ public final class DeviceUpdate {
      *
      * @return all the {@link SmokeCOAlarm} objects in the Nest account at the time of the update.
      */
-    public final ArrayList<SmokeCOAlarm> getSmokeCOAlarms() {
+    public final synchronized ArrayList<SmokeCOAlarm> getSmokeCOAlarms() {
+        if (mSmokeCOAlarms == null && mPendingSmokeCOAlarms != null) {
+            mSmokeCOAlarms = mPendingSmokeCOAlarms.get();
+            mPendingSmokeCOAlarms = null;
+        }
+        if (mSmokeCOAlarms == null) {
+            locate();
+            mSmokeCOAlarms = Utils.decodeChildren(mSmokeCOAlarmsSnapshot, SmokeCOAlarm.class);
+            mSmokeCOAlarmsSnapshot = null;
+        }
         return mSmokeCOAlarms;
     }
 
@@ -58,7 +222,137 @@ public final class DeviceUpdate {
      *
      * @return all the {@link Camera} objects in the Nest account at the time of the update.
      */
-    public final ArrayList<Camera> getCameras() {
+    public final synchronized ArrayList<Camera> getCameras() {
+        if (mCameras == null && mPendingCameras != null) {
+            mCameras = mPendingCameras.get();
+            mPendingCameras = null;
+        }
+        if (mCameras == null) {
+            locate();
+            mCameras = Utils.decodeChildren(mCamerasSnapshot, Camera.class);
+            mCamerasSnapshot = null;
+        }
         return mCameras;
     }
+
+    /**
+     * Returns all the {@link Thermostat} objects in the Nest account at the time of the update,
+     * as an immutable list.
+     *
+     * @return all the {@link Thermostat} objects in the Nest account at the time of the update.
+     */
+    public final synchronized NestList<Thermostat> getThermostatList() {
+        if (mThermostatList == null) {
+            mThermostatList = NestList.copyOf(getThermostats(), mSequence, mReceivedNanos,
+                    mDecodedNanos);
+        }
+        return mThermostatList;
+    }
+
+    /**
+     * Returns all the {@link SmokeCOAlarm} objects in the Nest account at the time of the update,
+     * as an immutable list.
+     *
+     * @return all the {@link SmokeCOAlarm} objects in the Nest account at the time of the update.
+     */
+    public final synchronized NestList<SmokeCOAlarm> getSmokeCOAlarmList() {
+        if (mSmokeCOAlarmList == null) {
+            mSmokeCOAlarmList = NestList.copyOf(getSmokeCOAlarms(), mSequence, mReceivedNanos,
+                    mDecodedNanos);
+        }
+        return mSmokeCOAlarmList;
+    }
+
+    /**
+     * Returns all the {@link Camera} objects in the Nest account at the time of the update,
+     * as an immutable list.
+     *
+     * @return all the {@link Camera} objects in the Nest account at the time of the update.
+     */
+    public final synchronized NestList<Camera> getCameraList() {
+        if (mCameraList == null) {
+            mCameraList = NestList.copyOf(getCameras(), mSequence, mReceivedNanos,
+                    mDecodedNanos);
+        }
+        return mCameraList;
+    }
+
+    /**
+     * Returns the sequence number of this update. Sequence numbers start at 1 and increase by one
+     * for every update delivered to the same listener, so a gap means an update was skipped and a
+     * lower number means this update is older than one already seen. Returns 0 for an update
+     * that wasn't delivered by a listener.
+     *
+     * @return the sequence number of this update.
+     */
+    public final long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns the time the snapshot for this update was received, as reported by {@link
+     * System#nanoTime()}.
+     *
+     * @return the time the snapshot was received, in nanoseconds.
+     */
+    public final long getReceivedNanos() {
+        return mReceivedNanos;
+    }
+
+    /**
+     * Returns the time this update was built and ready to be dispatched, as reported by {@link
+     * System#nanoTime()}. Since the device types are decoded the first time they're requested, this
+     * is when every device had been compared with the last update, before the changed ones were
+     * decoded; the time spent decoding in the getters isn't included.
+     *
+     * @return the time this update was ready, in nanoseconds.
+     */
+    public final long getDecodedNanos() {
+        return mDecodedNanos;
+    }
+
+    /**
+     * Returns the changes from a base update to this one, to be applied with {@link
+     * #applyDelta(UpdateDelta)} by a receiver that already holds the base.
+     *
+     * @param base an earlier update the receiver already holds.
+     * @return the {@link UpdateDelta} from {@code base} to this update.
+     */
+    public UpdateDelta deltaFrom(@NonNull DeviceUpdate base) {
+        return new UpdateDelta(base, this);
+    }
+
+    /**
+     * Returns the update that results from applying a delta to this one. This update is not
+     * modified.
+     *
+     * @param delta an {@link UpdateDelta} made with this update as its base.
+     * @return the resulting {@link DeviceUpdate}.
+     * @throws IllegalArgumentException if the delta was made against a different base.
+     */
+    public DeviceUpdate applyDelta(@NonNull UpdateDelta delta) {
+        delta.checkBase(getSequence());
+        DeviceUpdate update = new DeviceUpdate(
+                UpdateDelta.apply(getThermostats(), delta.mThermostats, delta.mRemovedThermostats),
+                UpdateDelta.apply(getSmokeCOAlarms(), delta.mSmokeCOAlarms,
+                        delta.mRemovedSmokeCOAlarms),
+                UpdateDelta.apply(getCameras(), delta.mCameras, delta.mRemovedCameras));
+        delta.stamp(update);
+        return update;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(mSequence);
+        dest.writeLong(mReceivedNanos);
+        dest.writeLong(mDecodedNanos);
+        dest.writeTypedList(getThermostats());
+        dest.writeTypedList(getSmokeCOAlarms());
+        dest.writeTypedList(getCameras());
+    }
 }
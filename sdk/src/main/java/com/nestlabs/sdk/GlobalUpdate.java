@@ -16,27 +16,170 @@
 
 package com.nestlabs.sdk;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+
 import java.util.ArrayList;
 
 /**
  * GlobalUpdate contains the state of all devices, structures and metadata in the Nest account when
  * a change is detected in anything. A GlobalUpdate object is returned by {@link
  * com.nestlabs.sdk.NestListener.GlobalListener#onUpdate(GlobalUpdate)} when an update occurs.
+ * <p>
+ * Each collection is decoded from the snapshot the first time it's requested, so collections a
+ * listener never looks at are never decoded. In updates delivered by a listener, objects that
+ * didn't change since its last update are the same instances it received before.
+ * <p>
+ * The {@link NestList} getters return immutable lists that can be shared between threads without
+ * copying; the {@link ArrayList} getters are kept for compatibility.
+ * <p>
+ * Updates delivered by a listener carry a sequence number and the times the snapshot was received
+ * and the update was ready, so consumers on other threads can drop stale work and measure latency.
+ * <p>
+ * GlobalUpdate is {@link Parcelable}. To send only what changed since an update the receiver
+ * already holds, use {@link #deltaFrom(GlobalUpdate)} and {@link #applyDelta(UpdateDelta)}.
  */
-public class GlobalUpdate {
-    private final ArrayList<Thermostat> mThermostats;
-    private final ArrayList<SmokeCOAlarm> mSmokeCOAlarms;
-    private final ArrayList<Camera> mCameras;
-    private final ArrayList<Structure> mStructures;
-    private final Metadata mMetadata;
+public class GlobalUpdate implements Parcelable {
+    private DataSnapshot mSnapshot;
+    private DataSnapshot mStructuresSnapshot;
+    private DataSnapshot mMetadataSnapshot;
+    private DeviceUpdate mDevices;
+    private SnapshotCache.Pending<Structure> mPendingStructures;
+    private SnapshotCache.Pending<Metadata> mPendingMetadata;
+
+    private ArrayList<Structure> mStructures;
+    private NestList<Structure> mStructureList;
+    private Metadata mMetadata;
+    private boolean mMetadataDecoded;
+
+    private long mSequence;
+    private long mReceivedNanos;
+    private long mDecodedNanos;
 
     GlobalUpdate(ArrayList<Thermostat> thermostats, ArrayList<SmokeCOAlarm> smokeCOAlarms,
             ArrayList<Camera> cameras, ArrayList<Structure> structures, Metadata metadata) {
-        mThermostats = thermostats;
-        mSmokeCOAlarms = smokeCOAlarms;
-        mCameras = cameras;
+        mDevices = new DeviceUpdate(thermostats, smokeCOAlarms, cameras);
         mStructures = structures;
         mMetadata = metadata;
+        mMetadataDecoded = true;
+    }
+
+    /**
+     * Creates a GlobalUpdate that decodes each collection from the snapshot on first access.
+     *
+     * @param snapshot the snapshot of the root object.
+     */
+    GlobalUpdate(@NonNull DataSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    private GlobalUpdate(DeviceUpdate devices, SnapshotCache.Pending<Structure> structures,
+            SnapshotCache.Pending<Metadata> metadata) {
+        mDevices = devices;
+        mPendingStructures = structures;
+        mPendingMetadata = metadata;
+    }
+
+    /**
+     * Reads a snapshot of the root object through a listener's cache. Every object is compared
+     * with the last snapshot right away, so the cache knows whether anything changed, but only the
+     * objects that changed are decoded, the first time their collection is requested; the others
+     * are the objects decoded before.
+     *
+     * @param snapshot the snapshot of the root object.
+     * @param cache    the cache of the listener receiving the update.
+     */
+    static GlobalUpdate read(@NonNull DataSnapshot snapshot, @NonNull SnapshotCache cache) {
+        DataSnapshot devices = null;
+        DataSnapshot structures = null;
+        DataSnapshot metadata = null;
+        for (DataSnapshot postSnapshot : snapshot.getChildren()) {
+            String name = postSnapshot.getName();
+
+            if (NestAPI.KEY_DEVICES.equals(name)) {
+                devices = postSnapshot;
+            } else if (NestAPI.KEY_STRUCTURES.equals(name)) {
+                structures = postSnapshot;
+            } else if (NestAPI.KEY_METADATA.equals(name)) {
+                metadata = postSnapshot;
+            }
+        }
+        return new GlobalUpdate(DeviceUpdate.read(devices, cache),
+                cache.readChildren(NestAPI.KEY_STRUCTURES, structures, Structure.class),
+                cache.read(NestAPI.KEY_METADATA, metadata, Metadata.class));
+    }
+
+    public static final Creator<GlobalUpdate> CREATOR = new Creator<GlobalUpdate>() {
+        @Override
+        public GlobalUpdate createFromParcel(Parcel in) {
+            long sequence = in.readLong();
+            long receivedNanos = in.readLong();
+            long decodedNanos = in.readLong();
+            GlobalUpdate update = new GlobalUpdate(in.createTypedArrayList(Thermostat.CREATOR),
+                    in.createTypedArrayList(SmokeCOAlarm.CREATOR),
+                    in.createTypedArrayList(Camera.CREATOR),
+                    in.createTypedArrayList(Structure.CREATOR),
+                    (Metadata) in.readParcelable(Metadata.class.getClassLoader()));
+            update.stamp(sequence, receivedNanos, decodedNanos);
+            return update;
+        }
+
+        @Override
+        public GlobalUpdate[] newArray(int size) {
+            return new GlobalUpdate[size];
+        }
+    };
+
+    /**
+     * Stamps this update with its sequence number and timing, once it's ready to be dispatched.
+     * The ready time is taken after the snapshot has been read and compared, while the changed
+     * objects are still decoded lazily.
+     *
+     * @param sequence      the sequence number of the update.
+     * @param receivedNanos the time the snapshot was received, from {@link System#nanoTime()}.
+     */
+    synchronized void stamp(long sequence, long receivedNanos) {
+        locate();
+        stamp(sequence, receivedNanos, System.nanoTime());
+    }
+
+    synchronized void stamp(long sequence, long receivedNanos, long decodedNanos) {
+        mSequence = sequence;
+        mReceivedNanos = receivedNanos;
+        mDecodedNanos = decodedNanos;
+        getDevices().stamp(sequence, receivedNanos, decodedNanos);
+    }
+
+    /**
+     * Finds the snapshot of each collection, without decoding any of them.
+     */
+    private synchronized void locate() {
+        if (mSnapshot == null) {
+            return;
+        }
+        for (DataSnapshot postSnapshot : mSnapshot.getChildren()) {
+            String name = postSnapshot.getName();
+
+            if (NestAPI.KEY_DEVICES.equals(name)) {
+                mDevices = new DeviceUpdate(postSnapshot);
+            } else if (NestAPI.KEY_STRUCTURES.equals(name)) {
+                mStructuresSnapshot = postSnapshot;
+            } else if (NestAPI.KEY_METADATA.equals(name)) {
+                mMetadataSnapshot = postSnapshot;
+            }
+        }
+        if (mDevices == null) {
+            mDevices = new DeviceUpdate(null, null, null);
+        }
+        mSnapshot = null;
+    }
+
+    DeviceUpdate getDevices() {
+        locate();
+        return mDevices;
     }
 
     /**
@@ -45,7 +188,7 @@ public class GlobalUpdate {
      * @return all the {@link Thermostat} objects in the Nest account at the time of the update.
      */
     public final ArrayList<Thermostat> getThermostats() {
-        return mThermostats;
+        return getDevices().getThermostats();
     }
 
     /**
@@ -54,7 +197,7 @@ public class GlobalUpdate {
      * @return all the {@link SmokeCOAlarm} objects in the Nest account at the time of the update.
      */
     public final ArrayList<SmokeCOAlarm> getSmokeCOAlarms() {
-        return mSmokeCOAlarms;
+        return getDevices().getSmokeCOAlarms();
     }
 
     /**
@@ -63,7 +206,7 @@ public class GlobalUpdate {
      * @return all the {@link Camera} objects in the Nest account at the time of the update.
      */
     public final ArrayList<Camera> getCameras() {
-        return mCameras;
+        return getDevices().getCameras();
     }
 
     /**
@@ -71,16 +214,166 @@ public class GlobalUpdate {
      *
      * @return all the {@link Structure} objects in the Nest account at the time of the update.
      */
-    public final ArrayList<Structure> getStructures() {
+    public final synchronized ArrayList<Structure> getStructures() {
+        if (mStructures == null && mPendingStructures != null) {
+            mStructures = mPendingStructures.get();
+            mPendingStructures = null;
+        }
+        if (mStructures == null) {
+            locate();
+            mStructures = Utils.decodeChildren(mStructuresSnapshot, Structure.class);
+            mStructuresSnapshot = null;
+        }
         return mStructures;
     }
 
+    /**
+     * Returns all the {@link Thermostat} objects in the Nest account at the time of the update,
+     * as an immutable list.
+     *
+     * @return all the {@link Thermostat} objects in the Nest account at the time of the update.
+     */
+    public final NestList<Thermostat> getThermostatList() {
+        return getDevices().getThermostatList();
+    }
+
+    /**
+     * Returns all the {@link SmokeCOAlarm} objects in the Nest account at the time of the update,
+     * as an immutable list.
+     *
+     * @return all the {@link SmokeCOAlarm} objects in the Nest account at the time of the update.
+     */
+    public final NestList<SmokeCOAlarm> getSmokeCOAlarmList() {
+        return getDevices().getSmokeCOAlarmList();
+    }
+
+    /**
+     * Returns all the {@link Camera} objects in the Nest account at the time of the update,
+     * as an immutable list.
+     *
+     * @return all the {@link Camera} objects in the Nest account at the time of the update.
+     */
+    public final NestList<Camera> getCameraList() {
+        return getDevices().getCameraList();
+    }
+
+    /**
+     * Returns all the {@link Structure} objects in the Nest account at the time of the update,
+     * as an immutable list.
+     *
+     * @return all the {@link Structure} objects in the Nest account at the time of the update.
+     */
+    public final synchronized NestList<Structure> getStructureList() {
+        if (mStructureList == null) {
+            mStructureList = NestList.copyOf(getStructures(), mSequence, mReceivedNanos,
+                    mDecodedNanos);
+        }
+        return mStructureList;
+    }
+
     /**
      * Returns the {@link Metadata} object in the Nest account at the time of the update.
      *
      * @return the {@link Metadata} object in the Nest account at the time of the update.
      */
-    public final Metadata getMetadata() {
+    public final synchronized Metadata getMetadata() {
+        if (!mMetadataDecoded && mPendingMetadata != null) {
+            ArrayList<Metadata> metadata = mPendingMetadata.get();
+            mMetadata = metadata.isEmpty() ? null : metadata.get(0);
+            mPendingMetadata = null;
+            mMetadataDecoded = true;
+        }
+        if (!mMetadataDecoded) {
+            locate();
+            if (mMetadataSnapshot != null) {
+                mMetadata = Utils.decode(mMetadataSnapshot, Metadata.class, null);
+                mMetadataSnapshot = null;
+            }
+            mMetadataDecoded = true;
+        }
         return mMetadata;
     }
+
+    /**
+     * Returns the sequence number of this update. Sequence numbers start at 1 and increase by one
+     * for every update delivered to the same listener, so a gap means an update was skipped and a
+     * lower number means this update is older than one already seen. Returns 0 for an update
+     * that wasn't delivered by a listener.
+     *
+     * @return the sequence number of this update.
+     */
+    public final long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns the time the snapshot for this update was received, as reported by {@link
+     * System#nanoTime()}.
+     *
+     * @return the time the snapshot was received, in nanoseconds.
+     */
+    public final long getReceivedNanos() {
+        return mReceivedNanos;
+    }
+
+    /**
+     * Returns the time this update was built and ready to be dispatched, as reported by {@link
+     * System#nanoTime()}. Since the collections are decoded the first time they're requested, this
+     * is when every object had been compared with the last update, before the changed ones were
+     * decoded; the time spent decoding in the getters isn't included.
+     *
+     * @return the time this update was ready, in nanoseconds.
+     */
+    public final long getDecodedNanos() {
+        return mDecodedNanos;
+    }
+
+    /**
+     * Returns the changes from a base update to this one, to be applied with {@link
+     * #applyDelta(UpdateDelta)} by a receiver that already holds the base.
+     *
+     * @param base an earlier update the receiver already holds.
+     * @return the {@link UpdateDelta} from {@code base} to this update.
+     */
+    public UpdateDelta deltaFrom(@NonNull GlobalUpdate base) {
+        return new UpdateDelta(base, this);
+    }
+
+    /**
+     * Returns the update that results from applying a delta to this one. This update is not
+     * modified.
+     *
+     * @param delta an {@link UpdateDelta} made with this update as its base.
+     * @return the resulting {@link GlobalUpdate}.
+     * @throws IllegalArgumentException if the delta was made against a different base.
+     */
+    public GlobalUpdate applyDelta(@NonNull UpdateDelta delta) {
+        delta.checkBase(getSequence());
+        GlobalUpdate update = new GlobalUpdate(
+                UpdateDelta.apply(getThermostats(), delta.mThermostats, delta.mRemovedThermostats),
+                UpdateDelta.apply(getSmokeCOAlarms(), delta.mSmokeCOAlarms,
+                        delta.mRemovedSmokeCOAlarms),
+                UpdateDelta.apply(getCameras(), delta.mCameras, delta.mRemovedCameras),
+                UpdateDelta.apply(getStructures(), delta.mStructures, delta.mRemovedStructures),
+                delta.mHasMetadata ? delta.mMetadata : getMetadata());
+        delta.stamp(update);
+        return update;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(mSequence);
+        dest.writeLong(mReceivedNanos);
+        dest.writeLong(mDecodedNanos);
+        dest.writeTypedList(getThermostats());
+        dest.writeTypedList(getSmokeCOAlarms());
+        dest.writeTypedList(getCameras());
+        dest.writeTypedList(getStructures());
+        dest.writeParcelable(getMetadata(), flags);
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+
+/**
+ * ListenerContext holds what the Firebase listeners of one {@link NestAPI} report to. NestAPI
+ * passes its context to every listener it creates, so the listeners of two instances never
+ * report to each other's {@link StartupTrace}, {@link ConnectionMonitor}, {@link
+ * ListenerWatchdog}, {@link DecodeMetrics} or {@link NestWriter}.
+ * <p>
+ * The connection monitor only exists while a connection listener is added, so it's set and
+ * cleared as NestAPI starts and stops it. A context created without collaborators, as used for
+ * playback, ignores every report.
+ */
+final class ListenerContext {
+    private final StartupTrace mStartupTrace;
+    private final ListenerWatchdog mWatchdog;
+    private final DecodeMetrics mDecodeMetrics;
+    private final NestWriter mWriter;
+    private volatile ConnectionMonitor mConnectionMonitor;
+
+    /**
+     * Creates a context that ignores every report.
+     */
+    ListenerContext() {
+        this(null, null, null);
+    }
+
+    ListenerContext(StartupTrace startupTrace, ListenerWatchdog watchdog,
+            DecodeMetrics decodeMetrics) {
+        this(startupTrace, watchdog, decodeMetrics, null);
+    }
+
+    ListenerContext(StartupTrace startupTrace, ListenerWatchdog watchdog,
+            DecodeMetrics decodeMetrics, NestWriter writer) {
+        mStartupTrace = startupTrace;
+        mWatchdog = watchdog;
+        mDecodeMetrics = decodeMetrics;
+        mWriter = writer;
+    }
+
+    /**
+     * Sets the monitor given heartbeats and errors, or null while the connection isn't watched.
+     */
+    void setConnectionMonitor(ConnectionMonitor connectionMonitor) {
+        mConnectionMonitor = connectionMonitor;
+    }
+
+    /**
+     * Records a heartbeat on the connection monitor. Called by the listeners for every event.
+     */
+    void heartbeat() {
+        ConnectionMonitor monitor = mConnectionMonitor;
+        if (monitor != null) {
+            monitor.onHeartbeat(System.nanoTime());
+        }
+    }
+
+    /**
+     * Reports a listener cancelled by the Nest API to the connection monitor's listeners.
+     */
+    void reportError(FirebaseError firebaseError) {
+        ConnectionMonitor monitor = mConnectionMonitor;
+        if (monitor != null) {
+            monitor.onError(firebaseError);
+        }
+    }
+
+    /**
+     * Gives the writer the latest snapshot received by a listener, so that it knows the current
+     * value of every path under the listener's path.
+     */
+    void observe(Object listener, String path, DataSnapshot snapshot) {
+        if (mWriter != null) {
+            mWriter.observe(listener, path, snapshot);
+        }
+    }
+
+    /**
+     * Starts timing a callback on the current thread.
+     *
+     * @return the start time, to pass to {@link #end(Object, long)}.
+     */
+    long begin() {
+        return mWatchdog != null ? mWatchdog.begin() : System.nanoTime();
+    }
+
+    /**
+     * Checks the time taken to decode a snapshot for a listener against the watchdog's main
+     * thread limit.
+     */
+    void decoded(Object listener, long startNanos) {
+        if (mWatchdog != null) {
+            mWatchdog.decoded(listener, startNanos);
+        }
+    }
+
+    /**
+     * Records the end of a callback to a listener on the watchdog.
+     */
+    void end(Object listener, long startNanos) {
+        if (mWatchdog != null) {
+            mWatchdog.end(listener, startNanos);
+        }
+    }
+
+    /**
+     * Counts objects decoded and objects reused unchanged on the decode metrics.
+     */
+    void countObjects(int decoded, int reused) {
+        if (mDecodeMetrics != null) {
+            mDecodeMetrics.objects(decoded, reused);
+        }
+    }
+
+    /**
+     * Counts an update delivered or suppressed on the decode metrics.
+     */
+    void countUpdate(boolean suppressed) {
+        if (mDecodeMetrics != null) {
+            mDecodeMetrics.update(suppressed);
+        }
+    }
+
+    /**
+     * Marks the arrival of a snapshot on the startup trace.
+     */
+    void markFirstByte() {
+        if (mStartupTrace != null) {
+            mStartupTrace.markFirstByte();
+        }
+    }
+
+    /**
+     * Marks the end of decoding a snapshot on the startup trace.
+     */
+    void markDecoded() {
+        if (mStartupTrace != null) {
+            mStartupTrace.markDecoded();
+        }
+    }
+
+    /**
+     * Marks the end of dispatching an update on the startup trace.
+     */
+    void markDispatched() {
+        if (mStartupTrace != null) {
+            mStartupTrace.markDispatched();
+        }
+    }
+}
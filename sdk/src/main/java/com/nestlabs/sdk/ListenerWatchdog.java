@@ -0,0 +1,380 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ListenerWatchdog times every callback to every {@link NestListener} added to the {@link
+ * NestAPI}, so a slow listener can be found by name. Get it with {@link
+ * NestAPI#getListenerWatchdog()}.
+ * <p>
+ * Each listener keeps {@link Stats} over its most recent callbacks. A callback that takes longer
+ * than {@link #setBudget(long, TimeUnit)} is reported to the {@link
+ * NestListener.WatchdogListener}, with the listener's class and path and, if {@link
+ * #setStackSampling(boolean)} is enabled, the stack of the callback taken while it was running.
+ * <p>
+ * For debug builds, {@link #setFailFastOnMainThread(long, TimeUnit)} throws when decoding a
+ * snapshot or a callback blocks the main thread for too long.
+ */
+public final class ListenerWatchdog {
+    static final int WINDOW = 256;
+
+    private static final long DEFAULT_BUDGET_MS = 16;
+
+    private static ScheduledExecutorService sSampler;
+
+    private final Map<Object, Stats> mStats = new HashMap<>();
+    // Callbacks running now, by thread, for the stack sampler.
+    private final Map<Thread, InFlight> mInFlight = new ConcurrentHashMap<>();
+
+    private volatile long mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET_MS);
+    private volatile long mFailFastNanos;
+    private volatile Thread mMainThread;
+    private volatile boolean mSampling;
+    private volatile NestListener.WatchdogListener mListener;
+    private ScheduledFuture<?> mSamplerTask;
+
+    private final Runnable mSample = new Runnable() {
+        @Override
+        public void run() {
+            sample(System.nanoTime());
+        }
+    };
+
+    /**
+     * Starts timing a callback on the current thread.
+     *
+     * @return the start time, to pass to {@link #end(Object, long)}.
+     */
+    long begin() {
+        long start = System.nanoTime();
+        if (mSampling) {
+            mInFlight.put(Thread.currentThread(), new InFlight(start));
+        }
+        return start;
+    }
+
+    /**
+     * Checks the time taken to decode a snapshot for a listener against the main thread limit.
+     */
+    void decoded(Object listener, long startNanos) {
+        checkMainThread(listener, "decoding for", System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the end of a callback to a listener that started at {@code startNanos}.
+     */
+    void end(Object listener, long startNanos) {
+        record(listener, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Starts keeping stats for a listener.
+     */
+    synchronized void register(@NonNull Object listener, @NonNull String path) {
+        mStats.put(listener, new Stats(listener.getClass().getName(), path));
+    }
+
+    synchronized void unregister(@NonNull Object listener) {
+        mStats.remove(listener);
+    }
+
+    synchronized void unregisterAll() {
+        mStats.clear();
+    }
+
+    /**
+     * Sets the time a callback may take before it's reported as slow. The default is 16ms, one
+     * frame.
+     *
+     * @param budget the time a callback may take.
+     * @param unit   the {@link TimeUnit} of {@code budget}.
+     */
+    public void setBudget(long budget, @NonNull TimeUnit unit) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("budget must be positive.");
+        }
+        mBudgetNanos = unit.toNanos(budget);
+        synchronized (this) {
+            if (mSamplerTask != null) {
+                mSamplerTask.cancel(false);
+                scheduleSampler();
+            }
+        }
+    }
+
+    /**
+     * Sets the listener that slow callbacks are reported to.
+     *
+     * @param listener the {@link NestListener.WatchdogListener}, or null to stop reporting.
+     */
+    public void setWatchdogListener(NestListener.WatchdogListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Enables or disables sampling the stack of callbacks that run over budget. The stack is
+     * taken by a background thread while the callback is still running, so it shows where the
+     * callback was spending its time.
+     *
+     * @param enabled true to sample stacks.
+     */
+    public synchronized void setStackSampling(boolean enabled) {
+        mSampling = enabled;
+        if (enabled && mSamplerTask == null) {
+            scheduleSampler();
+        } else if (!enabled && mSamplerTask != null) {
+            mSamplerTask.cancel(false);
+            mSamplerTask = null;
+            mInFlight.clear();
+        }
+    }
+
+    /**
+     * Makes decoding a snapshot or a callback that runs on the main thread for longer than the
+     * threshold throw an {@link IllegalStateException}. Meant for debug builds, to catch work that
+     * should have been moved off the main thread.
+     *
+     * @param threshold the time allowed on the main thread, or 0 to disable.
+     * @param unit      the {@link TimeUnit} of {@code threshold}.
+     */
+    public void setFailFastOnMainThread(long threshold, @NonNull TimeUnit unit) {
+        Looper mainLooper = Looper.getMainLooper();
+        setFailFastOnMainThread(threshold, unit, mainLooper == null ? null
+                : mainLooper.getThread());
+    }
+
+    void setFailFastOnMainThread(long threshold, @NonNull TimeUnit unit, Thread mainThread) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative.");
+        }
+        mMainThread = mainThread;
+        mFailFastNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Returns the stats of every listener currently added.
+     *
+     * @return the {@link Stats} of each listener.
+     */
+    public synchronized List<Stats> getStats() {
+        return new ArrayList<>(mStats.values());
+    }
+
+    /**
+     * Returns the stats of a listener.
+     *
+     * @param listener a listener added to the {@link NestAPI}.
+     * @return the listener's {@link Stats}, or null if it isn't added.
+     */
+    public synchronized Stats getStats(@NonNull NestListener listener) {
+        return mStats.get(listener);
+    }
+
+    private void record(Object listener, long durationNanos) {
+        InFlight inFlight = mSampling ? mInFlight.remove(Thread.currentThread()) : null;
+        Stats stats;
+        synchronized (this) {
+            stats = mStats.get(listener);
+        }
+        checkMainThread(listener, "callback to", durationNanos);
+        if (stats == null) {
+            return;
+        }
+
+        boolean overBudget = durationNanos > mBudgetNanos;
+        stats.record(durationNanos, overBudget);
+        NestListener.WatchdogListener watchdogListener = mListener;
+        if (overBudget && watchdogListener != null) {
+            watchdogListener.onSlowCallback(stats, durationNanos,
+                    inFlight == null ? null : inFlight.mStack);
+        }
+    }
+
+    private void checkMainThread(Object listener, String what, long durationNanos) {
+        long failFast = mFailFastNanos;
+        if (failFast > 0 && durationNanos > failFast && Thread.currentThread() == mMainThread) {
+            throw new IllegalStateException(String.format(Locale.US,
+                    "%s %s took %dms on the main thread.", what, listener.getClass().getName(),
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos)));
+        }
+    }
+
+    /**
+     * Takes the stack of every callback that has been running for longer than the budget and
+     * hasn't been sampled yet.
+     */
+    void sample(long nowNanos) {
+        long budget = mBudgetNanos;
+        for (Map.Entry<Thread, InFlight> entry : mInFlight.entrySet()) {
+            InFlight inFlight = entry.getValue();
+            if (inFlight.mStack == null && nowNanos - inFlight.mStartNanos > budget) {
+                inFlight.mStack = entry.getKey().getStackTrace();
+            }
+        }
+    }
+
+    private void scheduleSampler() {
+        long period = Math.max(mBudgetNanos / 2, TimeUnit.MILLISECONDS.toNanos(1));
+        mSamplerTask = getSampler().scheduleAtFixedRate(mSample, period, period,
+                TimeUnit.NANOSECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService getSampler() {
+        if (sSampler == null) {
+            sSampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "NestListenerWatchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sSampler;
+    }
+
+    private static final class InFlight {
+        final long mStartNanos;
+        volatile StackTraceElement[] mStack;
+
+        InFlight(long startNanos) {
+            mStartNanos = startNanos;
+        }
+    }
+
+    /**
+     * Stats on the callbacks to one listener. Percentiles are taken over the most recent 256
+     * callbacks.
+     */
+    public static final class Stats {
+        private final String mListenerClass;
+        private final String mPath;
+        private final long[] mWindow = new long[WINDOW];
+        private long mCount;
+        private long mOverBudgetCount;
+        private long mMaxNanos;
+
+        Stats(@NonNull String listenerClass, @NonNull String path) {
+            mListenerClass = listenerClass;
+            mPath = path;
+        }
+
+        synchronized void record(long durationNanos, boolean overBudget) {
+            mWindow[(int) (mCount % WINDOW)] = durationNanos;
+            mCount++;
+            if (overBudget) {
+                mOverBudgetCount++;
+            }
+            mMaxNanos = Math.max(mMaxNanos, durationNanos);
+        }
+
+        /**
+         * Returns the name of the listener's class.
+         *
+         * @return the class name of the listener.
+         */
+        public String getListenerClass() {
+            return mListenerClass;
+        }
+
+        /**
+         * Returns the path the listener listens to, such as "/devices/thermostats", or "/" for
+         * the whole account.
+         *
+         * @return the path of the listener.
+         */
+        public String getPath() {
+            return mPath;
+        }
+
+        /**
+         * Returns the number of callbacks made to the listener.
+         *
+         * @return the number of callbacks.
+         */
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Returns the number of callbacks that took longer than the budget.
+         *
+         * @return the number of slow callbacks.
+         */
+        public synchronized long getOverBudgetCount() {
+            return mOverBudgetCount;
+        }
+
+        /**
+         * Returns the longest time any callback took.
+         *
+         * @param unit the {@link TimeUnit} of the result.
+         * @return the longest callback time.
+         */
+        public synchronized long getMax(@NonNull TimeUnit unit) {
+            return unit.convert(mMaxNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns a percentile of the time taken by recent callbacks.
+         *
+         * @param percentile the percentile, between 0 and 100, such as 50 or 99.
+         * @param unit       the {@link TimeUnit} of the result.
+         * @return the time at the percentile, or -1 if no callback has been made.
+         */
+        public long getPercentile(double percentile, @NonNull TimeUnit unit) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100.");
+            }
+            long[] window;
+            synchronized (this) {
+                if (mCount == 0) {
+                    return -1;
+                }
+                window = Arrays.copyOf(mWindow, (int) Math.min(mCount, WINDOW));
+            }
+            Arrays.sort(window);
+            int index = (int) Math.ceil(percentile / 100 * window.length) - 1;
+            return unit.convert(window[Math.max(index, 0)], TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Stats{listener=%s, path=%s, count=%d, "
+                            + "over_budget=%d, p50=%dms, p99=%dms, max=%dms}", mListenerClass,
+                    mPath, getCount(), getOverBudgetCount(),
+                    getPercentile(50, TimeUnit.MILLISECONDS),
+                    getPercentile(99, TimeUnit.MILLISECONDS), getMax(TimeUnit.MILLISECONDS));
+        }
+    }
+}
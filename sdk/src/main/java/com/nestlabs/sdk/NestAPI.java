@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.support.annotation.NonNull;
 
+import com.firebase.client.ChildEventListener;
 import com.firebase.client.Config;
 import com.firebase.client.Firebase;
 import com.firebase.client.ValueEventListener;
@@ -30,9 +31,13 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * NestAPI creates an easy-to-use interface for both reading to and writing from the Nest API.
@@ -49,6 +54,9 @@ public final class NestAPI {
     private static final String NEST_FIREBASE_URL = "https://developer-api.nest.com";
     private static final String KEY_CLIENT_METADATA = "client_metadata_key";
     private static final String KEY_ACCESS_TOKEN = "access_token_key";
+    private static final String KEY_AUTH_FLOW_MS = "auth_flow_ms_key";
+    private static final String KEY_TOKEN_EXCHANGE_MS = "token_exchange_ms_key";
+    private static final String KEY_PREWARM_MS = "prewarm_ms_key";
 
     private static String sBaseAccessTokenUrl = "https://api.home.nest.com/";
     static final String ACCESS_URL = sBaseAccessTokenUrl
@@ -60,16 +68,26 @@ public final class NestAPI {
 
     static final String KEY_DEVICES = "devices";
     static final String KEY_METADATA = "metadata";
-    static final String KEY_THERMOSTATS = "thermostats";
-    static final String KEY_SMOKE_CO_ALARMS = "smoke_co_alarms";
-    static final String KEY_CAMERAS = "cameras";
-    static final String KEY_STRUCTURES = "structures";
+    public static final String KEY_THERMOSTATS = "thermostats";
+    public static final String KEY_SMOKE_CO_ALARMS = "smoke_co_alarms";
+    public static final String KEY_CAMERAS = "cameras";
+    public static final String KEY_STRUCTURES = "structures";
 
     private static NestAPI sInstance;
 
     private final Map<NestListener, ValueEventListener> mListenerMap;
-    private final OkHttpClient mHttpClient;
-    private final Firebase mFirebaseRef;
+    private final NestWriter mWriter;
+    private final StartupTrace mStartupTrace;
+    private final ListenerContext mListenerContext;
+    private final ListenerWatchdog mWatchdog;
+    private final DecodeMetrics mDecodeMetrics;
+    private final SafetyAlarmValueListener mSafetyLane;
+    private boolean mSafetyLaneRegistered;
+    private ConnectionMonitor mConnectionMonitor;
+    private boolean mIncrementalUpdates;
+
+    private Firebase mFirebaseRef;
+    private OkHttpClient mHttpClient;
 
     private NestConfig mNestConfig;
     private Firebase.AuthStateListener mAuthStateListener;
@@ -82,19 +100,163 @@ public final class NestAPI {
     /**
      * Creates a new instance of the {@link NestAPI}. Don't call this method directly in practice.
      * Use {@link #getInstance()} instead.
+     * <p>
+     * The connection to the Nest API is set up on first use, or ahead of time by {@link
+     * #prepareConnection(Executor)}, so this is cheap enough to call on the main thread.
      */
     private NestAPI() {
-        Config config = new Config();
-        config.setAuthenticationServer(sBaseAccessTokenUrl);
-        Firebase.setDefaultConfig(config);
-        mFirebaseRef = new Firebase(NEST_FIREBASE_URL);
+        mStartupTrace = new StartupTrace();
+        mWatchdog = new ListenerWatchdog();
+        mDecodeMetrics = new DecodeMetrics();
+        mWriter = new NestWriter(new NestWriter.RefProvider() {
+            @Override
+            public Firebase get() {
+                return getFirebaseRef();
+            }
+        });
+        mListenerContext = new ListenerContext(mStartupTrace, mWatchdog, mDecodeMetrics,
+                mWriter);
+        mSafetyLane = new SafetyAlarmValueListener(mListenerContext);
 
         mListenerMap = new HashMap<>();
-        mHttpClient = new OkHttpClient();
 
-        thermostats = new ThermostatSetter(mFirebaseRef);
-        structures = new StructureSetter(mFirebaseRef);
-        cameras = new CameraSetter(mFirebaseRef);
+        thermostats = new ThermostatSetter(mWriter);
+        structures = new StructureSetter(mWriter);
+        cameras = new CameraSetter(mWriter);
+    }
+
+    /**
+     * Returns the root {@link Firebase} reference, setting up the connection to the Nest API if it
+     * hasn't been set up yet.
+     *
+     * @return the root {@link Firebase} reference.
+     */
+    synchronized Firebase getFirebaseRef() {
+        if (mFirebaseRef == null) {
+            mStartupTrace.markInitStart();
+            Config config = new Config();
+            config.setAuthenticationServer(sBaseAccessTokenUrl);
+            Firebase.setDefaultConfig(config);
+            mFirebaseRef = new Firebase(NEST_FIREBASE_URL);
+            mStartupTrace.markInitEnd();
+        }
+        return mFirebaseRef;
+    }
+
+    /**
+     * Returns the HTTP client, creating it if it hasn't been created yet.
+     *
+     * @return the {@link OkHttpClient}.
+     */
+    synchronized OkHttpClient getHttpClient() {
+        if (mHttpClient == null) {
+            mHttpClient = new OkHttpClient();
+        }
+        return mHttpClient;
+    }
+
+    /**
+     * Sets up the connection to the Nest API on the given {@link Executor}, so the first call that
+     * needs it doesn't pay for it. Calling this is optional; without it the connection is set up
+     * on first use.
+     *
+     * @param executor the {@link Executor} to set up the connection on, typically a background
+     *                 thread.
+     */
+    public void prepareConnection(@NonNull Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getFirebaseRef();
+                getHttpClient();
+            }
+        });
+    }
+
+    /**
+     * Does the one-time work of the first read and write ahead of time on the given {@link
+     * Executor}: sets up the connection like {@link #prepareConnection(Executor)}, builds the JSON
+     * serializers and deserializers of every model class, and opens a pooled connection to the
+     * access token host. How long this took is reported by {@link
+     * StartupTrace#getWarmUp(java.util.concurrent.TimeUnit)}.
+     * <p>
+     * A failure to reach the access token host isn't an error; the connection is then opened by
+     * the first request that needs it.
+     *
+     * @param executor the {@link Executor} to warm up on, typically a background thread.
+     * @return a {@link NestFuture} that completes when the warm-up is done.
+     */
+    public NestFuture warmUp(@NonNull Executor executor) {
+        final NestFuture future = new NestFuture();
+        final Callback callback = future.asCallback();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    getFirebaseRef();
+                    Utils.warmUpMappers();
+                } catch (IOException | RuntimeException e) {
+                    callback.onFailure(new NestException("Failed to warm up mappers.", e));
+                    return;
+                }
+                warmUpTokenConnection();
+                mStartupTrace.setWarmUpNanos(System.nanoTime() - start);
+                callback.onSuccess();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Issues a HEAD request to the access token host, leaving its connection in the pool.
+     */
+    private void warmUpTokenConnection() {
+        try {
+            Request request = new Request.Builder().url(sBaseAccessTokenUrl).head().build();
+            getHttpClient().newCall(request).execute().body().close();
+        } catch (IOException | RuntimeException e) {
+            // Not fatal, the first request will open its own connection.
+        }
+    }
+
+    /**
+     * Returns the {@link StartupTrace} breaking down the time from the creation of this instance
+     * to the first authenticated update.
+     *
+     * @return the {@link StartupTrace}.
+     */
+    public StartupTrace getStartupTrace() {
+        return mStartupTrace;
+    }
+
+    /**
+     * Returns the {@link ListenerWatchdog} timing the callbacks to every listener added to this
+     * instance.
+     *
+     * @return the {@link ListenerWatchdog}.
+     */
+    public ListenerWatchdog getListenerWatchdog() {
+        return mWatchdog;
+    }
+
+    /**
+     * Returns the {@link DecodeMetrics} counting the objects and updates that listeners added to
+     * this instance skipped because they hadn't changed.
+     *
+     * @return the {@link DecodeMetrics}.
+     */
+    public DecodeMetrics getDecodeMetrics() {
+        return mDecodeMetrics;
+    }
+
+    /**
+     * Returns the base URL of the host that issues and revokes access tokens.
+     *
+     * @return the base URL of the access token host.
+     */
+    static String getAccessTokenBaseUrl() {
+        return sBaseAccessTokenUrl;
     }
 
     /**
@@ -169,18 +331,21 @@ public final class NestAPI {
      * @param authListener a listener notified when authentication succeeds, fails, or is revoked.
      */
     public void authWithToken(@NonNull String token, final NestListener.AuthListener authListener) {
+        Firebase firebaseRef = getFirebaseRef();
         mAuthListener = authListener;
 
         // If we have previously called this method and an auth state listener was set, remove it.
         if (mAuthStateListener != null) {
-            mFirebaseRef.removeAuthStateListener(mAuthStateListener);
+            firebaseRef.removeAuthStateListener(mAuthStateListener);
         }
 
         // Create a new AuthStateListener for when an auth state changes to null (revoking of auth).
         mAuthStateListener = new AuthStateListener(mAuthListener);
 
-        mFirebaseRef.authWithCustomToken(token,
-                new NestFirebaseAuthListener(mFirebaseRef, mAuthListener, mAuthStateListener));
+        mStartupTrace.markAuthStart();
+        firebaseRef.authWithCustomToken(token,
+                new NestFirebaseAuthListener(firebaseRef, mAuthListener, mAuthStateListener,
+                        mStartupTrace));
     }
 
     /**
@@ -194,6 +359,44 @@ public final class NestAPI {
         return intent.getParcelableExtra(KEY_ACCESS_TOKEN);
     }
 
+    /**
+     * Returns how long the auth flow took, from opening the Nest auth page to receiving the access
+     * token, as recorded in the {@link Intent} returned from {@link #launchAuthFlow(Activity,
+     * int)}.
+     *
+     * @param intent the intent to retrieve the duration from.
+     * @return the duration in milliseconds, or -1 if the auth flow didn't succeed.
+     */
+    public static long getAuthFlowMillisFromIntent(Intent intent) {
+        return intent.getLongExtra(KEY_AUTH_FLOW_MS, -1);
+    }
+
+    /**
+     * Returns how long the auth flow took to trade the authorization code for an access token,
+     * measured from the redirect back to the app, as recorded in the {@link Intent} returned from
+     * {@link #launchAuthFlow(Activity, int)}.
+     *
+     * @param intent the intent to retrieve the duration from.
+     * @return the duration in milliseconds, or -1 if the auth flow didn't succeed.
+     */
+    public static long getTokenExchangeMillisFromIntent(Intent intent) {
+        return intent.getLongExtra(KEY_TOKEN_EXCHANGE_MS, -1);
+    }
+
+    /**
+     * Returns how long after opening the Nest auth page the connection to the access token host
+     * was ready, as recorded in the {@link Intent} returned from {@link #launchAuthFlow(Activity,
+     * int)}. If this is greater than {@link #getAuthFlowMillisFromIntent(Intent)} minus {@link
+     * #getTokenExchangeMillisFromIntent(Intent)}, the token exchange didn't benefit from it.
+     *
+     * @param intent the intent to retrieve the duration from.
+     * @return the duration in milliseconds, or -1 if the auth flow didn't succeed or the
+     * connection couldn't be opened ahead of time.
+     */
+    public static long getPrewarmMillisFromIntent(Intent intent) {
+        return intent.getLongExtra(KEY_PREWARM_MS, -1);
+    }
+
     /**
      * Revokes a {@link NestToken} from the Nest API.
      *
@@ -201,11 +404,34 @@ public final class NestAPI {
      * @param callback A callback for the result of the revocation.
      */
     public void revokeToken(NestToken token, @NonNull final Callback callback) {
+        newRevokeCall(token, callback);
+    }
+
+    /**
+     * Revokes a {@link NestToken} from the Nest API. Cancelling the returned future cancels the
+     * HTTP request if it is still in flight.
+     *
+     * @param token The token to revoke.
+     * @return a {@link NestFuture} for the result of the revocation.
+     */
+    public NestFuture revokeToken(NestToken token) {
+        NestFuture future = new NestFuture();
+        final Call call = newRevokeCall(token, future.asCallback());
+        future.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                call.cancel();
+            }
+        });
+        return future;
+    }
 
+    private Call newRevokeCall(NestToken token, @NonNull final Callback callback) {
         Request request = new Request.Builder().url(
                 sBaseAccessTokenUrl + REVOKE_TOKEN_PATH + token.getToken()).delete().build();
 
-        mHttpClient.newCall(request).enqueue(new okhttp3.Callback() {
+        Call call = getHttpClient().newCall(request);
+        call.enqueue(new okhttp3.Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 callback.onFailure(new NestException("Request to revoke token failed.", e));
@@ -221,6 +447,7 @@ public final class NestAPI {
                 callback.onSuccess();
             }
         });
+        return call;
     }
 
     /**
@@ -229,9 +456,7 @@ public final class NestAPI {
      * @param listener the {@link NestListener.GlobalListener} to receive changes.
      */
     public void addGlobalListener(final NestListener.GlobalListener listener) {
-        ValueEventListener fireListener = new GlobalValueListener(listener);
-        mFirebaseRef.addValueEventListener(fireListener);
-        mListenerMap.put(listener, fireListener);
+        listen(listener, SnapshotDecoder.GLOBAL, null);
     }
 
     /**
@@ -240,9 +465,23 @@ public final class NestAPI {
      * @param listener the {@link NestListener.DeviceListener} to receive changes.
      */
     public void addDeviceListener(final NestListener.DeviceListener listener) {
-        ValueEventListener fireListener = new DeviceValueListener(listener);
-        mFirebaseRef.child(KEY_DEVICES).addValueEventListener(fireListener);
-        mListenerMap.put(listener, fireListener);
+        listen(listener, SnapshotDecoder.DEVICES, null);
+    }
+
+    /**
+     * Adds a listener to receive updates when any {@link Device} changes, split by structure.
+     * Each structure's devices are decoded and delivered on the shard of {@code executor} for its
+     * structure id, so updates for one structure arrive in order while a slow consumer of one
+     * structure doesn't delay the others. Structures whose devices didn't change are skipped.
+     *
+     * @param listener the {@link NestListener.StructureDeviceListener} to receive changes.
+     * @param executor the {@link ShardedExecutor} updates are delivered on.
+     */
+    public void addDeviceListener(final NestListener.StructureDeviceListener listener,
+            @NonNull ShardedExecutor executor) {
+        ValueEventListener fireListener = new ShardedDeviceValueListener(listener, executor,
+                mListenerContext);
+        listen(listener, KEY_DEVICES, fireListener);
     }
 
     /**
@@ -251,11 +490,21 @@ public final class NestAPI {
      * @param listener the {@link NestListener.ThermostatListener} to receive  dchanges.
      */
     public void addThermostatListener(final NestListener.ThermostatListener listener) {
-        ValueEventListener fireListener = new ThermostatValueListener(listener);
-        String path = new Utils.PathBuilder().append(KEY_DEVICES).append(KEY_THERMOSTATS).build();
+        listen(listener, SnapshotDecoder.THERMOSTATS, null);
+    }
 
-        mFirebaseRef.child(path).addValueEventListener(fireListener);
-        mListenerMap.put(listener, fireListener);
+    /**
+     * Adds a listener to receive updates when any {@link Thermostat} changes, decoding only the
+     * given fields. Other fields are skipped while decoding; {@link Thermostat#isAvailable(String)}
+     * reports which fields were decoded. The device id is always decoded.
+     *
+     * @param listener   the {@link NestListener.ThermostatListener} to receive changes.
+     * @param projection the keys of the fields to decode, such as {@link Thermostat#KEY_HVAC_MODE}.
+     */
+    public void addThermostatListener(final NestListener.ThermostatListener listener,
+            @NonNull String... projection) {
+        listen(listener, SnapshotDecoder.THERMOSTATS,
+                Utils.projection(Device.KEY_DEVICE_ID, projection));
     }
 
     /**
@@ -264,11 +513,36 @@ public final class NestAPI {
      * @param listener the {@link NestListener.CameraListener} to receive changes.
      */
     public void addCameraListener(final NestListener.CameraListener listener) {
-        ValueEventListener fireListener = new CameraValueListener(listener);
+        listen(listener, SnapshotDecoder.CAMERAS, null);
+    }
+
+    /**
+     * Adds a listener to receive updates when any {@link Camera} changes, decoding only the given
+     * fields. Other fields are skipped while decoding; {@link Camera#isAvailable(String)} reports
+     * which fields were decoded. The device id is always decoded.
+     *
+     * @param listener   the {@link NestListener.CameraListener} to receive changes.
+     * @param projection the keys of the fields to decode, such as {@link Camera#KEY_IS_STREAMING}.
+     */
+    public void addCameraListener(final NestListener.CameraListener listener,
+            @NonNull String... projection) {
+        listen(listener, SnapshotDecoder.CAMERAS,
+                Utils.projection(Device.KEY_DEVICE_ID, projection));
+    }
+
+    /**
+     * Adds a listener to receive an event each time any {@link Camera} reports a new {@link
+     * Camera.LastEvent}, and when that event ends. Events are deduplicated by their start time,
+     * so unrelated camera changes don't produce events. Events that were already reported when
+     * the listener is added are not delivered.
+     *
+     * @param listener the {@link NestListener.CameraEventListener} to receive events.
+     */
+    public void addCameraEventListener(final NestListener.CameraEventListener listener) {
+        ValueEventListener fireListener = new CameraEventValueListener(listener, mListenerContext);
         String path = new Utils.PathBuilder().append(KEY_DEVICES).append(KEY_CAMERAS).build();
 
-        mFirebaseRef.child(path).addValueEventListener(fireListener);
-        mListenerMap.put(listener, fireListener);
+        listen(listener, path, fireListener);
     }
 
     /**
@@ -277,9 +551,21 @@ public final class NestAPI {
      * @param listener the {@link NestListener.StructureListener} to receive changes.
      */
     public void addStructureListener(final NestListener.StructureListener listener) {
-        ValueEventListener fireListener = new StructureValueListener(listener);
-        mFirebaseRef.child(KEY_STRUCTURES).addValueEventListener(fireListener);
-        mListenerMap.put(listener, fireListener);
+        listen(listener, SnapshotDecoder.STRUCTURES, null);
+    }
+
+    /**
+     * Adds a listener to receive updates when any {@link Structure} changes, decoding only the
+     * given fields. Other fields are skipped while decoding; {@link Structure#isAvailable(String)}
+     * reports which fields were decoded. The structure id is always decoded.
+     *
+     * @param listener   the {@link NestListener.StructureListener} to receive changes.
+     * @param projection the keys of the fields to decode, such as {@link Structure#KEY_AWAY}.
+     */
+    public void addStructureListener(final NestListener.StructureListener listener,
+            @NonNull String... projection) {
+        listen(listener, SnapshotDecoder.STRUCTURES,
+                Utils.projection(Structure.KEY_STRUCTURE_ID, projection));
     }
 
     /**
@@ -288,12 +574,93 @@ public final class NestAPI {
      * @param listener the {@link NestListener.SmokeCOAlarmListener} to receive changes.
      */
     public void addSmokeCOAlarmListener(final NestListener.SmokeCOAlarmListener listener) {
-        ValueEventListener fireListener = new SmokeCOAlarmValueListener(listener);
+        listen(listener, SnapshotDecoder.SMOKE_CO_ALARMS, null);
+    }
 
-        String path =
-                new Utils.PathBuilder().append(KEY_DEVICES).append(KEY_SMOKE_CO_ALARMS).build();
-        mFirebaseRef.child(path).addValueEventListener(fireListener);
-        mListenerMap.put(listener, fireListener);
+    /**
+     * Adds a listener to receive updates when any {@link SmokeCOAlarm} changes, decoding only the
+     * given fields. Other fields are skipped while decoding; {@link
+     * SmokeCOAlarm#isAvailable(String)} reports which fields were decoded. The device id is always
+     * decoded.
+     *
+     * @param listener   the {@link NestListener.SmokeCOAlarmListener} to receive changes.
+     * @param projection the keys of the fields to decode, such as {@link
+     *                   SmokeCOAlarm#KEY_BATTERY_HEALTH}.
+     */
+    public void addSmokeCOAlarmListener(final NestListener.SmokeCOAlarmListener listener,
+            @NonNull String... projection) {
+        listen(listener, SnapshotDecoder.SMOKE_CO_ALARMS,
+                Utils.projection(Device.KEY_DEVICE_ID, projection));
+    }
+
+    /**
+     * Adds a listener to receive updates when any {@link Thermostat}, {@link SmokeCOAlarm}, {@link
+     * Camera} or {@link Structure} changes, as a {@link NestList} stamped with the sequence number
+     * and timing of each update. Given keys, only those fields are decoded, as with {@link
+     * #addThermostatListener(NestListener.ThermostatListener, String...)}.
+     *
+     * @param type       the type of object to listen to, such as {@code Thermostat.class}.
+     * @param listener   the {@link NestListener.ListListener} to receive changes.
+     * @param projection the keys of the fields to decode, or none to decode every field.
+     * @param <T>        the type of object to listen to.
+     * @throws IllegalArgumentException if objects of the type can't be listened to.
+     */
+    public <T> void addListListener(@NonNull Class<T> type,
+            final NestListener.ListListener<T> listener, @NonNull String... projection) {
+        String idKey = Structure.class.equals(type)
+                ? Structure.KEY_STRUCTURE_ID : Device.KEY_DEVICE_ID;
+        listen(listener, SnapshotDecoder.stampedListRoute(type),
+                Utils.projection(idKey, projection));
+    }
+
+    /**
+     * Adds a listener to receive every change to the safety-critical fields of any {@link
+     * SmokeCOAlarm}. Changes are delivered on a dedicated high-priority thread, separately from
+     * other listeners, and are never coalesced. The alarms are read by a single Firebase listener
+     * shared by all safety listeners, which is registered while at least one is added.
+     *
+     * @param listener the {@link NestListener.SafetyAlarmListener} to receive changes.
+     * @return the {@link SafetyLaneMetrics} recording the delivery latency to this listener.
+     */
+    public SafetyLaneMetrics addSafetyAlarmListener(
+            final NestListener.SafetyAlarmListener listener) {
+        SafetyLaneMetrics metrics = new SafetyLaneMetrics();
+        synchronized (this) {
+            mSafetyLane.add(listener, metrics);
+            if (!mSafetyLaneRegistered) {
+                getFirebaseRef().child(getSafetyLanePath()).addValueEventListener(mSafetyLane);
+                mSafetyLaneRegistered = true;
+            }
+        }
+        mWatchdog.register(listener, "/" + getSafetyLanePath());
+        return metrics;
+    }
+
+    /**
+     * Removes a safety alarm listener, and unregisters the safety alarm lane from Firebase if it
+     * was the last one.
+     */
+    private synchronized boolean removeSafetyAlarmListener(
+            NestListener.SafetyAlarmListener listener) {
+        if (!mSafetyLane.remove(listener)) {
+            return false;
+        }
+        if (mSafetyLane.isEmpty()) {
+            unregisterSafetyLane();
+        }
+        return true;
+    }
+
+    private synchronized void unregisterSafetyLane() {
+        mSafetyLane.clear();
+        if (mSafetyLaneRegistered) {
+            getFirebaseRef().child(getSafetyLanePath()).removeEventListener(mSafetyLane);
+            mSafetyLaneRegistered = false;
+        }
+    }
+
+    private static String getSafetyLanePath() {
+        return new Utils.PathBuilder().append(KEY_DEVICES).append(KEY_SMOKE_CO_ALARMS).build();
     }
 
     /**
@@ -302,9 +669,317 @@ public final class NestAPI {
      * @param listener the {@link NestListener.MetadataListener} to receive changes.
      */
     public void addMetadataListener(final NestListener.MetadataListener listener) {
-        MetadataValueListener fireListener = new MetadataValueListener(listener);
-        mFirebaseRef.child(KEY_METADATA).addValueEventListener(fireListener);
+        listen(listener, SnapshotDecoder.METADATA, null);
+    }
+
+    /**
+     * Adds a listener to receive changes to the state of the connection to the Nest API, and
+     * errors from the Nest API that would otherwise cancel other listeners silently. The
+     * connection is watched, and reset when stale, while at least one connection listener is
+     * added.
+     *
+     * @param listener the {@link NestListener.ConnectionListener} to receive changes.
+     * @return the {@link ConnectionMonitor} watching the connection, which also records how long
+     * the connection has been down.
+     */
+    public synchronized ConnectionMonitor addConnectionListener(
+            final NestListener.ConnectionListener listener) {
+        if (mConnectionMonitor == null) {
+            mConnectionMonitor = new ConnectionMonitor(getFirebaseRef());
+        }
+        mConnectionMonitor.addListener(listener);
+        mConnectionMonitor.start();
+        mListenerContext.setConnectionMonitor(mConnectionMonitor);
+        return mConnectionMonitor;
+    }
+
+    /**
+     * Adds a value listener at a path, or at the root if the path is empty, and starts timing its
+     * callbacks.
+     */
+    private <L extends NestListener, T> void listen(L listener, SnapshotDecoder.Route<L, T> route,
+            Set<String> projection) {
+        listen(listener, route.getPath(),
+                new SnapshotValueListener<>(listener, route, projection, mListenerContext));
+    }
+
+    private <L extends NestListener, T> void listen(L listener,
+            SnapshotDecoder.ListRoute<L, T> route, Set<String> projection) {
+        if (!mIncrementalUpdates) {
+            listen(listener, (SnapshotDecoder.Route<L, ArrayList<T>>) route, projection);
+            return;
+        }
+        SnapshotChildListener<L, T> fireListener =
+                new SnapshotChildListener<>(listener, route, projection, mListenerContext);
+        getFirebaseRef().child(route.getPath()).addChildEventListener(fireListener);
+        listen(listener, route.getPath(), fireListener);
+    }
+
+    private void listen(NestListener listener, String path, ValueEventListener fireListener) {
+        Firebase ref = "/".equals(path) ? getFirebaseRef() : getFirebaseRef().child(path);
+        ref.addValueEventListener(fireListener);
         mListenerMap.put(listener, fireListener);
+        mWatchdog.register(listener, path.startsWith("/") ? path : "/" + path);
+    }
+
+    /**
+     * Starts recording every snapshot received from Nest to a compressed file, which can be played
+     * back with {@link #newReplay(File)}.
+     *
+     * @param file the file to record to. Existing contents are overwritten.
+     * @return the {@link NestRecorder}. Call {@link NestRecorder#close()} to stop recording.
+     * @throws IOException if the file can't be opened.
+     */
+    public NestRecorder startRecording(@NonNull File file) throws IOException {
+        NestRecorder recorder = new NestRecorder(getFirebaseRef(), file, mListenerContext);
+        recorder.start();
+        return recorder;
+    }
+
+    /**
+     * Returns a {@link NestReplay} that plays a recording made with {@link #startRecording(File)}
+     * through the normal listener pipeline.
+     *
+     * @param file the recording to play.
+     * @return a new {@link NestReplay}.
+     */
+    public NestReplay newReplay(@NonNull File file) {
+        return new NestReplay(getFirebaseRef(), file);
+    }
+
+    /**
+     * Returns a new {@link NestPublisher} of the updates delivered to a {@link
+     * NestListener.GlobalListener}.
+     *
+     * @param overflow what to do with updates a subscriber hasn't requested yet.
+     * @param capacity the maximum number of undelivered updates buffered per subscriber.
+     * @param executor the {@link Executor} updates are delivered on.
+     * @return a {@link NestPublisher} of {@link GlobalUpdate}s.
+     */
+    public NestPublisher<GlobalUpdate> newGlobalPublisher(@NonNull NestPublisher.Overflow overflow,
+            int capacity, @NonNull Executor executor) {
+        return new NestPublisher<>(new ListenerSource<GlobalUpdate>() {
+            @Override
+            NestListener register(final NestPublisher<GlobalUpdate> publisher) {
+                class Listener extends PublishingListener implements NestListener.GlobalListener {
+                    @Override
+                    public void onUpdate(@NonNull GlobalUpdate update) {
+                        publisher.publish(update);
+                    }
+                }
+                Listener listener = new Listener();
+                addGlobalListener(listener);
+                return listener;
+            }
+        }, overflow, capacity, executor);
+    }
+
+    /**
+     * Returns a new {@link NestPublisher} of the updates delivered to a {@link
+     * NestListener.DeviceListener}.
+     *
+     * @param overflow what to do with updates a subscriber hasn't requested yet.
+     * @param capacity the maximum number of undelivered updates buffered per subscriber.
+     * @param executor the {@link Executor} updates are delivered on.
+     * @return a {@link NestPublisher} of {@link DeviceUpdate}s.
+     */
+    public NestPublisher<DeviceUpdate> newDevicePublisher(@NonNull NestPublisher.Overflow overflow,
+            int capacity, @NonNull Executor executor) {
+        return new NestPublisher<>(new ListenerSource<DeviceUpdate>() {
+            @Override
+            NestListener register(final NestPublisher<DeviceUpdate> publisher) {
+                class Listener extends PublishingListener implements NestListener.DeviceListener {
+                    @Override
+                    public void onUpdate(@NonNull DeviceUpdate update) {
+                        publisher.publish(update);
+                    }
+                }
+                Listener listener = new Listener();
+                addDeviceListener(listener);
+                return listener;
+            }
+        }, overflow, capacity, executor);
+    }
+
+    /**
+     * Returns a new {@link NestPublisher} of the updates delivered to a {@link
+     * NestListener.ThermostatListener}.
+     *
+     * @param overflow what to do with updates a subscriber hasn't requested yet.
+     * @param capacity the maximum number of undelivered updates buffered per subscriber.
+     * @param executor the {@link Executor} updates are delivered on.
+     * @return a {@link NestPublisher} of {@link Thermostat} lists.
+     */
+    public NestPublisher<ArrayList<Thermostat>> newThermostatPublisher(
+            @NonNull NestPublisher.Overflow overflow, int capacity, @NonNull Executor executor) {
+        return new NestPublisher<>(new ListenerSource<ArrayList<Thermostat>>() {
+            @Override
+            NestListener register(final NestPublisher<ArrayList<Thermostat>> publisher) {
+                class Listener extends PublishingListener
+                        implements NestListener.ThermostatListener {
+                    @Override
+                    public void onUpdate(@NonNull ArrayList<Thermostat> thermostats) {
+                        publisher.publish(thermostats);
+                    }
+                }
+                Listener listener = new Listener();
+                addThermostatListener(listener);
+                return listener;
+            }
+        }, overflow, capacity, executor);
+    }
+
+    /**
+     * Returns a new {@link NestPublisher} of the updates delivered to a {@link
+     * NestListener.CameraListener}.
+     *
+     * @param overflow what to do with updates a subscriber hasn't requested yet.
+     * @param capacity the maximum number of undelivered updates buffered per subscriber.
+     * @param executor the {@link Executor} updates are delivered on.
+     * @return a {@link NestPublisher} of {@link Camera} lists.
+     */
+    public NestPublisher<ArrayList<Camera>> newCameraPublisher(
+            @NonNull NestPublisher.Overflow overflow, int capacity, @NonNull Executor executor) {
+        return new NestPublisher<>(new ListenerSource<ArrayList<Camera>>() {
+            @Override
+            NestListener register(final NestPublisher<ArrayList<Camera>> publisher) {
+                class Listener extends PublishingListener implements NestListener.CameraListener {
+                    @Override
+                    public void onUpdate(@NonNull ArrayList<Camera> cameras) {
+                        publisher.publish(cameras);
+                    }
+                }
+                Listener listener = new Listener();
+                addCameraListener(listener);
+                return listener;
+            }
+        }, overflow, capacity, executor);
+    }
+
+    /**
+     * Returns a new {@link NestPublisher} of the updates delivered to a {@link
+     * NestListener.StructureListener}.
+     *
+     * @param overflow what to do with updates a subscriber hasn't requested yet.
+     * @param capacity the maximum number of undelivered updates buffered per subscriber.
+     * @param executor the {@link Executor} updates are delivered on.
+     * @return a {@link NestPublisher} of {@link Structure} lists.
+     */
+    public NestPublisher<ArrayList<Structure>> newStructurePublisher(
+            @NonNull NestPublisher.Overflow overflow, int capacity, @NonNull Executor executor) {
+        return new NestPublisher<>(new ListenerSource<ArrayList<Structure>>() {
+            @Override
+            NestListener register(final NestPublisher<ArrayList<Structure>> publisher) {
+                class Listener extends PublishingListener
+                        implements NestListener.StructureListener {
+                    @Override
+                    public void onUpdate(@NonNull ArrayList<Structure> structures) {
+                        publisher.publish(structures);
+                    }
+                }
+                Listener listener = new Listener();
+                addStructureListener(listener);
+                return listener;
+            }
+        }, overflow, capacity, executor);
+    }
+
+    /**
+     * Returns a new {@link NestPublisher} of the updates delivered to a {@link
+     * NestListener.SmokeCOAlarmListener}.
+     *
+     * @param overflow what to do with updates a subscriber hasn't requested yet.
+     * @param capacity the maximum number of undelivered updates buffered per subscriber.
+     * @param executor the {@link Executor} updates are delivered on.
+     * @return a {@link NestPublisher} of {@link SmokeCOAlarm} lists.
+     */
+    public NestPublisher<ArrayList<SmokeCOAlarm>> newSmokeCOAlarmPublisher(
+            @NonNull NestPublisher.Overflow overflow, int capacity, @NonNull Executor executor) {
+        return new NestPublisher<>(new ListenerSource<ArrayList<SmokeCOAlarm>>() {
+            @Override
+            NestListener register(final NestPublisher<ArrayList<SmokeCOAlarm>> publisher) {
+                class Listener extends PublishingListener
+                        implements NestListener.SmokeCOAlarmListener {
+                    @Override
+                    public void onUpdate(@NonNull ArrayList<SmokeCOAlarm> smokeCOAlarms) {
+                        publisher.publish(smokeCOAlarms);
+                    }
+                }
+                Listener listener = new Listener();
+                addSmokeCOAlarmListener(listener);
+                return listener;
+            }
+        }, overflow, capacity, executor);
+    }
+
+    /**
+     * Returns a new {@link NestPublisher} of the updates delivered to a {@link
+     * NestListener.MetadataListener}.
+     *
+     * @param overflow what to do with updates a subscriber hasn't requested yet.
+     * @param capacity the maximum number of undelivered updates buffered per subscriber.
+     * @param executor the {@link Executor} updates are delivered on.
+     * @return a {@link NestPublisher} of {@link Metadata}.
+     */
+    public NestPublisher<Metadata> newMetadataPublisher(@NonNull NestPublisher.Overflow overflow,
+            int capacity, @NonNull Executor executor) {
+        return new NestPublisher<>(new ListenerSource<Metadata>() {
+            @Override
+            NestListener register(final NestPublisher<Metadata> publisher) {
+                class Listener extends PublishingListener implements NestListener.MetadataListener {
+                    @Override
+                    public void onUpdate(@NonNull Metadata metadata) {
+                        publisher.publish(metadata);
+                    }
+                }
+                Listener listener = new Listener();
+                addMetadataListener(listener);
+                return listener;
+            }
+        }, overflow, capacity, executor);
+    }
+
+    /**
+     * Enables or disables incremental updates for listeners added afterwards. When enabled, {@link
+     * Thermostat}, {@link SmokeCOAlarm}, {@link Camera} and {@link Structure} listeners listen to
+     * each object rather than to the whole collection: a change decodes only the objects that were
+     * added or changed, and merges them into the collection delivered before. A change to one
+     * device then costs the same however many devices the account has. Disabled by default.
+     * <p>
+     * Global and device listeners always decode the whole snapshot.
+     *
+     * @param enabled true to update collections incrementally.
+     */
+    public void setIncrementalUpdates(boolean enabled) {
+        mIncrementalUpdates = enabled;
+    }
+
+    /**
+     * Enables or disables no-op write suppression. When enabled, a write made through {@link
+     * #thermostats}, {@link #structures} or {@link #cameras} is compared with the last confirmed
+     * value of its path. If they're the same and no other write to the path is pending, the write
+     * succeeds right away without contacting the Nest API; async writes return a {@link
+     * NestFuture} for which {@link NestFuture#isNoOp()} is true. Disabled by default.
+     * <p>
+     * The value of a path is read from the latest update received by any listener whose data
+     * contains it, so with a global or device listener added even the first write to a path can
+     * be suppressed. A path no listener covers is watched from its first write on, which is always
+     * sent.
+     *
+     * @param enabled true to suppress no-op writes.
+     */
+    public void setSuppressNoOpWrites(boolean enabled) {
+        mWriter.setSuppressNoOps(enabled);
+    }
+
+    /**
+     * Returns the number of writes suppressed as no-ops since this {@link NestAPI} was created.
+     *
+     * @return the number of suppressed writes.
+     * @see #setSuppressNoOpWrites(boolean)
+     */
+    public long getSuppressedWriteCount() {
+        return mWriter.getSuppressedCount();
     }
 
     /**
@@ -317,15 +992,28 @@ public final class NestAPI {
     public boolean removeListener(NestListener listener) {
         // If the listener passed into authWithToken is removed, remove authStateChanged listener.
         if (listener == mAuthListener) {
-            mFirebaseRef.removeAuthStateListener(mAuthStateListener);
+            getFirebaseRef().removeAuthStateListener(mAuthStateListener);
             mAuthStateListener = null;
             return true;
         }
 
+        if (listener instanceof NestListener.ConnectionListener && mConnectionMonitor != null
+                && removeConnectionListener((NestListener.ConnectionListener) listener)) {
+            return true;
+        }
+
+        if (listener instanceof NestListener.SafetyAlarmListener
+                && removeSafetyAlarmListener((NestListener.SafetyAlarmListener) listener)) {
+            mWatchdog.unregister(listener);
+            return true;
+        }
+
         if (mListenerMap.containsKey(listener)) {
             ValueEventListener fireListener = mListenerMap.get(listener);
-            mFirebaseRef.removeEventListener(fireListener);
+            removeEventListener(fireListener);
+            mWriter.forget(fireListener);
             mListenerMap.remove(listener);
+            mWatchdog.unregister(listener);
             return true;
         }
         return false;
@@ -336,13 +1024,44 @@ public final class NestAPI {
      */
     public void removeAllListeners() {
         if (mAuthStateListener != null) {
-            mFirebaseRef.removeAuthStateListener(mAuthStateListener); // Remove auth state listener.
+            // Remove auth state listener.
+            getFirebaseRef().removeAuthStateListener(mAuthStateListener);
             mAuthStateListener = null;
         }
         for (ValueEventListener fireListener : mListenerMap.values()) {
-            mFirebaseRef.removeEventListener(fireListener);
+            removeEventListener(fireListener);
         }
         mListenerMap.clear();
+        mWriter.reset();
+        unregisterSafetyLane();
+        mWatchdog.unregisterAll();
+        synchronized (this) {
+            if (mConnectionMonitor != null) {
+                mListenerContext.setConnectionMonitor(null);
+                mConnectionMonitor.stop();
+                mConnectionMonitor = null;
+            }
+        }
+    }
+
+    private void removeEventListener(ValueEventListener fireListener) {
+        getFirebaseRef().removeEventListener(fireListener);
+        if (fireListener instanceof ChildEventListener) {
+            getFirebaseRef().removeEventListener((ChildEventListener) fireListener);
+        }
+    }
+
+    private synchronized boolean removeConnectionListener(
+            NestListener.ConnectionListener listener) {
+        if (!mConnectionMonitor.removeListener(listener)) {
+            return false;
+        }
+        if (!mConnectionMonitor.hasListeners()) {
+            mListenerContext.setConnectionMonitor(null);
+            mConnectionMonitor.stop();
+            mConnectionMonitor = null;
+        }
+        return true;
     }
 
     /**
@@ -357,4 +1076,48 @@ public final class NestAPI {
         authFlowIntent.putExtra(KEY_CLIENT_METADATA, mNestConfig);
         activity.startActivityForResult(authFlowIntent, requestCode);
     }
+
+    /**
+     * A {@link NestPublisher.Source} backed by a {@link NestListener} registered with this {@link
+     * NestAPI} while the publisher has subscribers.
+     */
+    private abstract class ListenerSource<T> implements NestPublisher.Source<T> {
+        private NestPublisher<T> mPublisher;
+        private NestListener mListener;
+
+        /**
+         * A base for the registered listener that fails the publisher when the Nest API cancels
+         * the listener.
+         */
+        abstract class PublishingListener implements NestPublisher.ErrorListener {
+            @Override
+            public void onError(@NonNull NestException exception) {
+                mPublisher.error(exception);
+            }
+        }
+
+        /**
+         * Registers a listener that publishes its updates to the publisher.
+         *
+         * @param publisher the publisher to deliver updates to.
+         * @return the registered listener.
+         */
+        abstract NestListener register(NestPublisher<T> publisher);
+
+        @Override
+        public synchronized void start(@NonNull NestPublisher<T> publisher) {
+            // Never leave a listener registered that the publisher no longer knows about.
+            stop();
+            mPublisher = publisher;
+            mListener = register(publisher);
+        }
+
+        @Override
+        public synchronized void stop() {
+            if (mListener != null) {
+                removeListener(mListener);
+                mListener = null;
+            }
+        }
+    }
 }
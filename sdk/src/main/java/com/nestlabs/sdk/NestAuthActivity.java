@@ -22,6 +22,7 @@ import android.app.Activity;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.webkit.WebChromeClient;
@@ -30,8 +31,6 @@ import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.ProgressBar;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -50,15 +49,22 @@ public class NestAuthActivity extends Activity {
     private static final String TAG = "NestAuthActivity";
     private static final String KEY_CLIENT_METADATA = "client_metadata_key";
     private static final String KEY_ACCESS_TOKEN = "access_token_key";
+    private static final String KEY_AUTH_FLOW_MS = "auth_flow_ms_key";
+    private static final String KEY_TOKEN_EXCHANGE_MS = "token_exchange_ms_key";
+    private static final String KEY_PREWARM_MS = "prewarm_ms_key";
     private static final String QUERY_PARAM_CODE = "code";
     private static final MediaType TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     private static final int MAX_PROGRESS = 100;
 
     private ProgressBar mProgressBar;
     private NestConfig mNestConfig;
     private OkHttpClient mHttpClient;
 
+    // Auth latency trace, in elapsed realtime millis. Zero means the mark hasn't been reached.
+    private long mLoadStartMs;
+    private long mRedirectMs;
+    private volatile long mPrewarmMs;
+
     @Override
     @SuppressLint("SetJavaScriptEnabled")
     protected void onCreate(Bundle savedInstanceState) {
@@ -78,6 +84,11 @@ public class NestAuthActivity extends Activity {
         }
 
         mHttpClient = new OkHttpClient();
+        mLoadStartMs = SystemClock.elapsedRealtime();
+
+        // Open the connection to the token host while the user is still signing in, so the token
+        // exchange after the redirect doesn't pay for DNS, TCP and TLS.
+        prewarmTokenConnection();
 
         clientWebView.setWebChromeClient(new ProgressChromeClient());
         clientWebView.setWebViewClient(new RedirectClient());
@@ -89,9 +100,35 @@ public class NestAuthActivity extends Activity {
         clientWebView.loadUrl(url);
     }
 
+    /**
+     * Issues a throwaway HEAD request to the access token host. The resulting connection is kept in
+     * the client's connection pool and reused by the token exchange request.
+     */
+    private void prewarmTokenConnection() {
+        final Request request = new Request.Builder()
+                .url(NestAPI.getAccessTokenBaseUrl())
+                .head()
+                .build();
+
+        mHttpClient.newCall(request).enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                // Not fatal, the token exchange will open its own connection.
+                Log.w(TAG, "Failed to pre-warm token connection.", e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                mPrewarmMs = SystemClock.elapsedRealtime();
+                response.body().close();
+            }
+        });
+    }
+
     /**
      * Finishes this activity, returning the resulting token and result code back to the parent
-     * Activity.
+     * Activity. On success the auth latency trace is added to the result, see {@link
+     * NestAPI#getAuthFlowMillisFromIntent(Intent)}.
      *
      * @param result A code representing the result state of the authorization flow.
      * @param token  The NestToken returned. This token will be used to authorize API requests.
@@ -99,6 +136,15 @@ public class NestAuthActivity extends Activity {
     private void finishWithResult(int result, NestToken token) {
         final Intent intent = new Intent();
         intent.putExtra(KEY_ACCESS_TOKEN, token);
+        if (result == RESULT_OK && mLoadStartMs != 0) {
+            long now = SystemClock.elapsedRealtime();
+            intent.putExtra(KEY_AUTH_FLOW_MS, now - mLoadStartMs);
+            intent.putExtra(KEY_TOKEN_EXCHANGE_MS, now - mRedirectMs);
+            long prewarmMs = mPrewarmMs;
+            if (prewarmMs != 0) {
+                intent.putExtra(KEY_PREWARM_MS, prewarmMs - mLoadStartMs);
+            }
+        }
         setResult(result, intent);
         finish();
     }
@@ -130,6 +176,8 @@ public class NestAuthActivity extends Activity {
                 return false;
             }
 
+            mRedirectMs = SystemClock.elapsedRealtime();
+
             // Get the code from the resulting URL.
             String mCode = Uri.parse(url).getQueryParameter(QUERY_PARAM_CODE);
             if (mCode == null) {
@@ -161,12 +209,13 @@ public class NestAuthActivity extends Activity {
                         return;
                     }
                     try {
-                        String body = response.body().string();
-                        NestToken token = OBJECT_MAPPER.readValue(body, NestToken.class);
+                        NestToken token = NestToken.fromJson(response.body().charStream());
                         finishWithResult(RESULT_OK, token);
                     } catch (IOException e) {
                         Log.e(TAG, "Failed to parse response for token.", e);
                         finishWithResult(RESULT_CANCELED, null);
+                    } finally {
+                        response.body().close();
                     }
                 }
             });
@@ -33,18 +33,22 @@ class NestFirebaseAuthListener implements Firebase.AuthResultHandler {
     private final Firebase.AuthStateListener mAuthStateListener;
     private final Firebase mFirebaseRef;
     private final AtomicBoolean mAddedAuthStateListener;
+    private final StartupTrace mStartupTrace;
 
     public NestFirebaseAuthListener(@NonNull Firebase firebaseRef,
             NestListener.AuthListener listener,
-            @NonNull Firebase.AuthStateListener authStateListener) {
+            @NonNull Firebase.AuthStateListener authStateListener,
+            @NonNull StartupTrace startupTrace) {
         mListener = listener;
         mAuthStateListener = authStateListener;
         mFirebaseRef = firebaseRef;
         mAddedAuthStateListener = new AtomicBoolean(false);
+        mStartupTrace = startupTrace;
     }
 
     @Override
     public void onAuthenticated(AuthData authData) {
+        mStartupTrace.markAuthenticated();
         if (mListener != null) {
             mListener.onAuthSuccess();
         }
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.Firebase;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NestFuture represents the pending result of a write to the Nest API. It is returned by the
+ * {@code *Async} methods of {@link ThermostatSetter}, {@link StructureSetter} and {@link
+ * CameraSetter}, and by {@link NestAPI#revokeToken(NestToken)}.
+ * <p>
+ * Futures can be chained with {@link #then(Continuation)}, combined with {@link
+ * #allOf(NestFuture...)} and {@link #anyOf(NestFuture...)}, bounded with {@link
+ * #withDeadline(long, TimeUnit)} and cancelled with {@link #cancel()}. A write that has already
+ * been handed to the Nest API can't be taken back, so cancelling only stops writes that are still
+ * queued behind another future.
+ */
+public final class NestFuture {
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCEEDED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private static ScheduledExecutorService sDeadlineExecutor;
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private final ArrayList<Callback> mCallbacks = new ArrayList<>();
+
+    private int mState = STATE_PENDING;
+    private boolean mNoOp;
+    private NestException mException;
+    private Runnable mCancelAction;
+    private ScheduledFuture<?> mDeadline;
+
+    NestFuture() {}
+
+    /**
+     * Supplies the next write in a chain, once the previous one has succeeded.
+     */
+    public interface Continuation {
+        /**
+         * Called when the previous {@link NestFuture} in the chain succeeds.
+         *
+         * @return the {@link NestFuture} of the next write in the chain.
+         */
+        NestFuture then();
+    }
+
+    /**
+     * Returns a {@link NestFuture} that has already succeeded.
+     *
+     * @return a succeeded {@link NestFuture}.
+     */
+    public static NestFuture succeeded() {
+        NestFuture future = new NestFuture();
+        future.complete(STATE_SUCCEEDED, null);
+        return future;
+    }
+
+    /**
+     * Returns a {@link NestFuture} that has already succeeded because its write was suppressed as
+     * a no-op.
+     *
+     * @return a succeeded {@link NestFuture} for which {@link #isNoOp()} is true.
+     */
+    static NestFuture noOp() {
+        NestFuture future = succeeded();
+        future.mNoOp = true;
+        return future;
+    }
+
+    /**
+     * Returns a {@link NestFuture} that has already failed with the given exception.
+     *
+     * @param exception the reason for the failure.
+     * @return a failed {@link NestFuture}.
+     */
+    public static NestFuture failed(@NonNull NestException exception) {
+        NestFuture future = new NestFuture();
+        future.complete(STATE_FAILED, exception);
+        return future;
+    }
+
+    /**
+     * Returns a {@link NestFuture} that succeeds when all the given futures succeed, or fails as
+     * soon as any of them fails.
+     *
+     * @param futures the futures to wait for.
+     * @return a {@link NestFuture} for the combined result.
+     */
+    public static NestFuture allOf(@NonNull NestFuture... futures) {
+        final NestFuture combined = new NestFuture();
+        if (futures.length == 0) {
+            combined.complete(STATE_SUCCEEDED, null);
+            return combined;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(futures.length);
+        for (NestFuture future : futures) {
+            future.addCallback(new Callback() {
+                @Override
+                public void onSuccess() {
+                    if (remaining.decrementAndGet() == 0) {
+                        combined.complete(STATE_SUCCEEDED, null);
+                    }
+                }
+
+                @Override
+                public void onFailure(NestException exception) {
+                    combined.complete(STATE_FAILED, exception);
+                }
+            });
+        }
+        return combined;
+    }
+
+    /**
+     * Returns a {@link NestFuture} that succeeds as soon as any of the given futures succeeds, or
+     * fails with the last failure once all of them have failed.
+     *
+     * @param futures the futures to wait for.
+     * @return a {@link NestFuture} for the combined result.
+     */
+    public static NestFuture anyOf(@NonNull NestFuture... futures) {
+        final NestFuture combined = new NestFuture();
+        if (futures.length == 0) {
+            combined.complete(STATE_FAILED, new NestException("No futures to wait for."));
+            return combined;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(futures.length);
+        for (NestFuture future : futures) {
+            future.addCallback(new Callback() {
+                @Override
+                public void onSuccess() {
+                    combined.complete(STATE_SUCCEEDED, null);
+                }
+
+                @Override
+                public void onFailure(NestException exception) {
+                    if (remaining.decrementAndGet() == 0) {
+                        combined.complete(STATE_FAILED, exception);
+                    }
+                }
+            });
+        }
+        return combined;
+    }
+
+    /**
+     * Writes a value to the given location and returns a {@link NestFuture} for the result.
+     *
+     * @param ref   the location to write to.
+     * @param value the value to write.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    static NestFuture setValue(@NonNull Firebase ref, Object value) {
+        NestFuture future = new NestFuture();
+        ref.setValue(value, new NestCompletionListener(future.asCallback()));
+        return future;
+    }
+
+    /**
+     * Registers a {@link Callback} to be notified when this future completes. If the future has
+     * already completed, the callback is called immediately on the calling thread. A cancelled
+     * future reports {@link Callback#onFailure(NestException)}.
+     *
+     * @param callback the {@link Callback} to notify.
+     * @return this {@link NestFuture}, for chaining.
+     */
+    public NestFuture addCallback(@NonNull Callback callback) {
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                mCallbacks.add(callback);
+                return this;
+            }
+        }
+        notifyCallback(callback);
+        return this;
+    }
+
+    /**
+     * Queues the next write in a chain. The continuation runs only if this future succeeds and the
+     * returned future hasn't been cancelled in the meantime. If the continuation throws, the
+     * returned future fails with the exception. Cancelling the returned future also cancels the
+     * future the continuation returned.
+     *
+     * @param continuation supplies the next write.
+     * @return a {@link NestFuture} for the result of the next write.
+     */
+    public NestFuture then(@NonNull final Continuation continuation) {
+        final NestFuture next = new NestFuture();
+        addCallback(new Callback() {
+            @Override
+            public void onSuccess() {
+                if (next.isDone()) {
+                    return;
+                }
+                NestFuture inner;
+                try {
+                    inner = continuation.then();
+                } catch (RuntimeException e) {
+                    next.complete(STATE_FAILED, new NestException("Continuation failed.", e));
+                    return;
+                }
+                if (inner == null) {
+                    next.complete(STATE_FAILED,
+                            new NestException("Continuation returned no future."));
+                    return;
+                }
+                next.follow(inner);
+            }
+
+            @Override
+            public void onFailure(NestException exception) {
+                next.complete(STATE_FAILED, exception);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Fails this future if it hasn't completed within the given time, and cancels what it is
+     * waiting on as {@link #cancel()} would, so writes queued behind another future are never sent
+     * and HTTP calls are cancelled. A write already handed to the Nest API may still be applied
+     * after the deadline passes.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the unit of {@code timeout}.
+     * @return this {@link NestFuture}, for chaining.
+     */
+    public NestFuture withDeadline(long timeout, @NonNull TimeUnit unit) {
+        ScheduledFuture<?> deadline = getDeadlineExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                abort(STATE_FAILED, new NestException("Deadline exceeded."));
+            }
+        }, timeout, unit);
+
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                if (mDeadline != null) {
+                    mDeadline.cancel(false);
+                }
+                mDeadline = deadline;
+                return this;
+            }
+        }
+        deadline.cancel(false);
+        return this;
+    }
+
+    /**
+     * Cancels this future if it hasn't completed yet. Writes queued behind it with {@link
+     * #then(Continuation)} are never sent.
+     *
+     * @return true if the future was cancelled, false if it had already completed.
+     */
+    public boolean cancel() {
+        return abort(STATE_CANCELLED, new NestException("Cancelled."));
+    }
+
+    /**
+     * Blocks until this future completes.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     * @throws NestException        if the write failed, was cancelled or missed its deadline.
+     */
+    public void await() throws InterruptedException, NestException {
+        mDone.await();
+        throwIfFailed();
+    }
+
+    /**
+     * Blocks until this future completes or the timeout passes.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the unit of {@code timeout}.
+     * @return true if the future completed, false if the timeout passed first.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     * @throws NestException        if the write failed, was cancelled or missed its deadline.
+     */
+    public boolean await(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException, NestException {
+        if (!mDone.await(timeout, unit)) {
+            return false;
+        }
+        throwIfFailed();
+        return true;
+    }
+
+    /**
+     * Returns whether this future has completed, successfully or not.
+     *
+     * @return true if this future has completed.
+     */
+    public synchronized boolean isDone() {
+        return mState != STATE_PENDING;
+    }
+
+    /**
+     * Returns whether this future completed successfully.
+     *
+     * @return true if this future completed successfully.
+     */
+    public synchronized boolean isSuccessful() {
+        return mState == STATE_SUCCEEDED;
+    }
+
+    /**
+     * Returns whether this future was cancelled.
+     *
+     * @return true if this future was cancelled.
+     */
+    public synchronized boolean isCancelled() {
+        return mState == STATE_CANCELLED;
+    }
+
+    /**
+     * Returns whether this future succeeded without sending its write, because the value written
+     * was already the last confirmed value.
+     *
+     * @return true if the write was suppressed as a no-op.
+     * @see NestAPI#setSuppressNoOpWrites(boolean)
+     */
+    public synchronized boolean isNoOp() {
+        return mNoOp;
+    }
+
+    /**
+     * Returns the exception this future failed with, or null if it hasn't failed.
+     *
+     * @return the exception this future failed with, or null if it hasn't failed.
+     */
+    public synchronized NestException getException() {
+        return mException;
+    }
+
+    /**
+     * Sets an action to run if this future is cancelled while still pending, such as cancelling an
+     * HTTP call.
+     *
+     * @param cancelAction the action to run on cancellation.
+     */
+    synchronized void setCancelAction(Runnable cancelAction) {
+        mCancelAction = cancelAction;
+    }
+
+    /**
+     * Returns a {@link Callback} that completes this future.
+     *
+     * @return a {@link Callback} that completes this future.
+     */
+    Callback asCallback() {
+        return new Callback() {
+            @Override
+            public void onSuccess() {
+                complete(STATE_SUCCEEDED, null);
+            }
+
+            @Override
+            public void onFailure(NestException exception) {
+                complete(STATE_FAILED, exception);
+            }
+        };
+    }
+
+    /**
+     * Completes this future with the result of another one, and cancels the other one if this one
+     * is cancelled.
+     *
+     * @param other the future to copy the result from.
+     */
+    private void follow(final NestFuture other) {
+        setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                other.cancel();
+            }
+        });
+        if (isCancelled()) {
+            other.cancel();
+            return;
+        }
+        other.addCallback(asCallback());
+    }
+
+    /**
+     * Completes this future without waiting for its result, then runs its cancel action.
+     */
+    private boolean abort(int state, NestException exception) {
+        Runnable cancelAction;
+        synchronized (this) {
+            cancelAction = mCancelAction;
+        }
+        if (!complete(state, exception)) {
+            return false;
+        }
+        if (cancelAction != null) {
+            cancelAction.run();
+        }
+        return true;
+    }
+
+    private boolean complete(int state, NestException exception) {
+        ArrayList<Callback> callbacks;
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return false;
+            }
+            mState = state;
+            mException = exception;
+            mCancelAction = null;
+            if (mDeadline != null) {
+                mDeadline.cancel(false);
+                mDeadline = null;
+            }
+            callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+        }
+        mDone.countDown();
+
+        for (Callback callback : callbacks) {
+            notifyCallback(callback);
+        }
+        return true;
+    }
+
+    private void notifyCallback(Callback callback) {
+        NestException exception = getException();
+        if (exception == null) {
+            callback.onSuccess();
+        } else {
+            callback.onFailure(exception);
+        }
+    }
+
+    private void throwIfFailed() throws NestException {
+        NestException exception = getException();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getDeadlineExecutor() {
+        if (sDeadlineExecutor == null) {
+            sDeadlineExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "NestFuture-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sDeadlineExecutor;
+    }
+}
@@ -0,0 +1,685 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * NestHistory is an opt-in, append-only log of every field-level change the SDK receives. Each
+ * change is stored as (object id, field key, timestamp, value) in fixed-size, memory-mapped
+ * segment files. Every segment carries a sparse time index in its header, so a time-range query
+ * only scans the records around the requested range.
+ * <p>
+ * Register a NestHistory with {@link NestAPI#addGlobalListener(NestListener.GlobalListener)}.
+ * Updates are diffed and written on a background thread, so listener dispatch isn't blocked. The
+ * global listener delivers the same instance of every object whose values didn't change, and only
+ * objects that aren't the same instance as in the previous update are diffed. A field that is
+ * removed, or that belonged to a device or structure that left the account, is recorded with the
+ * value {@code null}. Values are stored as JSON text; query them with {@link #query(String,
+ * String, long, long, Visitor)}.
+ */
+public final class NestHistory implements NestListener.GlobalListener {
+    private static final String TAG = "NestHistory";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x4e455354; // "NEST"
+    private static final int INDEX_SLOTS = 256;
+    private static final int INDEX_ENTRY_SIZE = 12; // long timestamp + int offset.
+    // magic, write position, index entry count, last timestamp, then the index slots.
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + INDEX_SLOTS * INDEX_ENTRY_SIZE;
+    private static final int OFFSET_WRITE_POSITION = 4;
+    private static final int OFFSET_INDEX_COUNT = 8;
+    private static final int OFFSET_LAST_TIMESTAMP = 12;
+    private static final int OFFSET_INDEX = 20;
+
+    // Record layout: int length, long timestamp, byte id length, id, byte key length, key, short
+    // value length, value. Length covers the whole record.
+    private static final int RECORD_OVERHEAD = 4 + 8 + 1 + 1 + 2;
+    private static final int MAX_ID_LENGTH = 255;
+    private static final int MAX_VALUE_LENGTH = 65535;
+    // Ids and keys that are too long keep a prefix and a hash of the whole string, so that long
+    // strings sharing a prefix don't collide.
+    private static final int HASH_SUFFIX_LENGTH = 9;
+    private static final String REMOVED_VALUE = "null";
+
+    /**
+     * Receives the records matched by a query.
+     */
+    public interface Visitor {
+        /**
+         * Called for each matching record, oldest first.
+         *
+         * @param timeMs the time the change was received, in milliseconds since the epoch.
+         * @param value  a read-only view of the UTF-8 JSON value, directly over the mapped file. It
+         *               is only valid for the duration of the call; use {@link #decode(ByteBuffer)}
+         *               to copy it to a String.
+         * @return true to continue scanning, false to stop.
+         */
+        boolean onRecord(long timeMs, @NonNull ByteBuffer value);
+    }
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final int mMaxSegments;
+    private final int mIndexInterval;
+    private final ExecutorService mWriter;
+    private final ArrayList<Segment> mSegments = new ArrayList<>();
+    private final HashMap<String, LastValue> mLastValues = new HashMap<>();
+    private final ReentrantReadWriteLock mMappingLock = new ReentrantReadWriteLock();
+    private boolean mClosed;
+    // Set by close() before the writer is shut down, so updates still arriving are dropped.
+    private final AtomicBoolean mClosing = new AtomicBoolean();
+    private long mGeneration;
+    private final Runnable mForce = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (NestHistory.this) {
+                for (Segment segment : mSegments) {
+                    segment.mBuffer.force();
+                }
+            }
+        }
+    };
+
+    private NestHistory(Builder builder) throws IOException {
+        mDirectory = builder.mDirectory;
+        mSegmentSize = builder.mSegmentSize;
+        mMaxSegments = builder.mMaxSegments;
+        mIndexInterval = Math.max(1, (mSegmentSize - HEADER_SIZE) / INDEX_SLOTS);
+        mWriter = Executors.newSingleThreadExecutor();
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create history directory " + mDirectory);
+        }
+        openExistingSegments();
+    }
+
+    @Override
+    public void onUpdate(@NonNull final GlobalUpdate update) {
+        if (mClosing.get()) {
+            return;
+        }
+        final long timeMs = System.currentTimeMillis();
+        try {
+            mWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        record(update, timeMs);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed to record update.", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed in the meantime.
+        }
+    }
+
+    /**
+     * Appends a record for every field that changed since the previous update.
+     *
+     * @param update the update to record.
+     * @param timeMs the time the update was received.
+     * @throws IOException if a segment can't be written.
+     */
+    void record(@NonNull GlobalUpdate update, long timeMs) throws IOException {
+        long generation = ++mGeneration;
+        for (Thermostat thermostat : update.getThermostats()) {
+            recordObject(thermostat.getDeviceId(), thermostat, generation, timeMs);
+        }
+        for (SmokeCOAlarm alarm : update.getSmokeCOAlarms()) {
+            recordObject(alarm.getDeviceId(), alarm, generation, timeMs);
+        }
+        for (Camera camera : update.getCameras()) {
+            recordObject(camera.getDeviceId(), camera, generation, timeMs);
+        }
+        for (Structure structure : update.getStructures()) {
+            recordObject(structure.getStructureId(), structure, generation, timeMs);
+        }
+
+        Iterator<Map.Entry<String, LastValue>> it = mLastValues.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, LastValue> entry = it.next();
+            if (entry.getValue().mGeneration == generation) {
+                continue;
+            }
+            it.remove();
+            Iterator<String> keys = entry.getValue().mTree.fieldNames();
+            while (keys.hasNext()) {
+                append(entry.getKey(), keys.next(), timeMs, REMOVED_VALUE);
+            }
+        }
+    }
+
+    private void recordObject(String id, Object object, long generation, long timeMs)
+            throws IOException {
+        if (id == null) {
+            return;
+        }
+        LastValue last = mLastValues.get(id);
+        if (last != null && last.mObject == object) {
+            last.mGeneration = generation;
+            return;
+        }
+        ObjectNode current = OBJECT_MAPPER.valueToTree(object);
+        ObjectNode previous = last == null ? null : last.mTree;
+        mLastValues.put(id, new LastValue(object, current, generation));
+
+        Iterator<Map.Entry<String, JsonNode>> fields = current.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode previousValue = previous == null ? null : previous.get(field.getKey());
+            if (!field.getValue().equals(previousValue)) {
+                append(id, field.getKey(), timeMs, field.getValue().toString());
+            }
+        }
+        if (previous == null) {
+            return;
+        }
+        Iterator<String> previousKeys = previous.fieldNames();
+        while (previousKeys.hasNext()) {
+            String key = previousKeys.next();
+            if (!current.has(key)) {
+                append(id, key, timeMs, REMOVED_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Appends a single change record.
+     *
+     * @param id     the id of the device or structure.
+     * @param key    the field key.
+     * @param timeMs the time of the change.
+     * @param value  the new value, as JSON text.
+     * @throws IOException if a segment can't be written.
+     */
+    synchronized void append(@NonNull String id, @NonNull String key, long timeMs,
+            @NonNull String value) throws IOException {
+        byte[] idBytes = encodeName(id);
+        byte[] keyBytes = encodeName(key);
+        byte[] valueBytes = truncate(value.getBytes(UTF_8), MAX_VALUE_LENGTH);
+        int length = RECORD_OVERHEAD + idBytes.length + keyBytes.length + valueBytes.length;
+        if (length > mSegmentSize - HEADER_SIZE) {
+            throw new IOException("Record doesn't fit in a segment: " + length + " bytes.");
+        }
+
+        Segment segment = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+        if (segment == null || segment.remaining() < length) {
+            segment = createSegment(timeMs);
+        }
+        // Keep timestamps non-decreasing within the log so the index stays searchable.
+        timeMs = Math.max(timeMs, segment.lastTimestamp());
+        segment.append(timeMs, idBytes, keyBytes, valueBytes, length);
+    }
+
+    /**
+     * Visits every recorded change of a field between two times, inclusive, oldest first. Records
+     * are read in place from the mapped segments; nothing is copied unless the visitor copies it.
+     *
+     * @param id      the id of the device or structure.
+     * @param key     the field key, such as {@link Structure#KEY_AWAY}.
+     * @param fromMs  the start of the range, in milliseconds since the epoch.
+     * @param toMs    the end of the range, in milliseconds since the epoch.
+     * @param visitor the {@link Visitor} to receive matching records.
+     */
+    public void query(@NonNull String id, @NonNull String key, long fromMs, long toMs,
+            @NonNull Visitor visitor) {
+        byte[] idBytes = encodeName(id);
+        byte[] keyBytes = encodeName(key);
+
+        // Held while scanning so close() can't release the mapped segments under the scan.
+        mMappingLock.readLock().lock();
+        try {
+            ArrayList<ByteBuffer> buffers = new ArrayList<>();
+            ArrayList<Integer> limits = new ArrayList<>();
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                for (Segment segment : mSegments) {
+                    if (segment.lastTimestamp() < fromMs || segment.firstTimestamp() > toMs) {
+                        continue;
+                    }
+                    buffers.add(segment.mBuffer.duplicate());
+                    limits.add(segment.writePosition());
+                }
+            }
+
+            for (int i = 0; i < buffers.size(); i++) {
+                if (!scan(buffers.get(i), limits.get(i), idBytes, keyBytes, fromMs, toMs,
+                        visitor)) {
+                    return;
+                }
+            }
+        } finally {
+            mMappingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the most recent value of a field at or before the given time, or null if none was
+     * recorded.
+     *
+     * @param id     the id of the device or structure.
+     * @param key    the field key.
+     * @param timeMs the time, in milliseconds since the epoch.
+     * @return the JSON value of the field at that time, or null if unknown.
+     */
+    public String valueAt(@NonNull String id, @NonNull String key, long timeMs) {
+        final String[] value = new String[1];
+        query(id, key, Long.MIN_VALUE, timeMs, new Visitor() {
+            @Override
+            public boolean onRecord(long recordTimeMs, @NonNull ByteBuffer recordValue) {
+                value[0] = decode(recordValue);
+                return true;
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * Copies a value passed to {@link Visitor#onRecord(long, ByteBuffer)} to a String.
+     *
+     * @param value the value buffer.
+     * @return the value as a String.
+     */
+    public static String decode(@NonNull ByteBuffer value) {
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Stops the background writer. Pending updates are written, the segments are forced to disk
+     * and their mappings released before the writer thread exits. Queries return nothing once the
+     * history is closed, and updates received after closing are ignored, so it can stay registered
+     * as a listener. Closing again does nothing.
+     */
+    public void close() {
+        if (!mClosing.compareAndSet(false, true)) {
+            return;
+        }
+        mWriter.execute(mForce);
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                mMappingLock.writeLock().lock();
+                try {
+                    synchronized (NestHistory.this) {
+                        mClosed = true;
+                        for (Segment segment : mSegments) {
+                            unmap(segment.mBuffer);
+                        }
+                        mSegments.clear();
+                    }
+                } finally {
+                    mMappingLock.writeLock().unlock();
+                }
+            }
+        });
+        mWriter.shutdown();
+    }
+
+    /**
+     * Waits for pending updates to be written and forces the segments to disk.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void flush() throws InterruptedException {
+        try {
+            mWriter.submit(mForce).get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to flush history.", e);
+        }
+    }
+
+    private static boolean scan(ByteBuffer buffer, int limit, byte[] id, byte[] key, long fromMs,
+            long toMs, Visitor visitor) {
+        int position = HEADER_SIZE;
+        int indexCount = buffer.getInt(OFFSET_INDEX_COUNT);
+
+        // Binary search the sparse index for the last entry before the start of the range.
+        int low = 0;
+        int high = indexCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long entryTime = buffer.getLong(OFFSET_INDEX + mid * INDEX_ENTRY_SIZE);
+            if (entryTime < fromMs) {
+                position = buffer.getInt(OFFSET_INDEX + mid * INDEX_ENTRY_SIZE + 8);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        while (position < limit) {
+            int length = buffer.getInt(position);
+            long timeMs = buffer.getLong(position + 4);
+            if (timeMs > toMs) {
+                return false;
+            }
+
+            int idOffset = position + 13;
+            int idLength = buffer.get(position + 12) & 0xff;
+            int keyOffset = idOffset + idLength + 1;
+            int keyLength = buffer.get(idOffset + idLength) & 0xff;
+            int valueOffset = keyOffset + keyLength + 2;
+
+            if (timeMs >= fromMs && matches(buffer, idOffset, idLength, id)
+                    && matches(buffer, keyOffset, keyLength, key)) {
+                int valueLength = buffer.getShort(keyOffset + keyLength) & 0xffff;
+                ByteBuffer value = buffer.duplicate();
+                value.limit(valueOffset + valueLength).position(valueOffset);
+                if (!visitor.onRecord(timeMs, value.slice().asReadOnlyBuffer())) {
+                    return false;
+                }
+            }
+            position += length;
+        }
+        return true;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes an id or key, replacing the end of one that is too long with a hash of the whole
+     * string.
+     */
+    private static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(UTF_8);
+        if (bytes.length <= MAX_ID_LENGTH) {
+            return bytes;
+        }
+        byte[] prefix = truncate(bytes, MAX_ID_LENGTH - HASH_SUFFIX_LENGTH);
+        byte[] suffix = String.format(Locale.US, "#%08x", name.hashCode()).getBytes(UTF_8);
+        byte[] encoded = Arrays.copyOf(prefix, prefix.length + suffix.length);
+        System.arraycopy(suffix, 0, encoded, prefix.length, suffix.length);
+        return encoded;
+    }
+
+    /**
+     * Truncates UTF-8 text to at most {@code maxLength} bytes without splitting a character.
+     */
+    private static byte[] truncate(byte[] bytes, int maxLength) {
+        if (bytes.length <= maxLength) {
+            return bytes;
+        }
+        int end = maxLength;
+        // Back up over the continuation bytes of a character that doesn't fit.
+        while (end > 0 && (bytes[end] & 0xc0) == 0x80) {
+            end--;
+        }
+        return Arrays.copyOf(bytes, end);
+    }
+
+    /**
+     * Releases a mapping now rather than when the buffer is garbage collected. There is no public
+     * API for this, so it's best effort: Android frees direct buffers through NioUtils, other VMs
+     * through the buffer's cleaner. If neither is available the mapping is released by the GC.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class.forName("java.nio.NioUtils").getMethod("freeDirectBuffer", ByteBuffer.class)
+                    .invoke(null, buffer);
+            return;
+        } catch (Exception e) {
+            // Not Android.
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // Left to the GC.
+        }
+    }
+
+    private void openExistingSegments() throws IOException {
+        File[] files = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        for (File file : files) {
+            if (file.length() != mSegmentSize) {
+                Log.w(TAG, "Ignoring segment of unexpected size: " + file);
+                continue;
+            }
+            Segment segment = new Segment(file);
+            if (segment.mBuffer.getInt(0) != MAGIC) {
+                Log.w(TAG, "Ignoring corrupt segment: " + file);
+                continue;
+            }
+            mSegments.add(segment);
+        }
+    }
+
+    private Segment createSegment(long timeMs) throws IOException {
+        // Zero-padded so segments sort by name in creation order.
+        String name = String.format(Locale.US, "%020d-%04d%s", timeMs, mSegments.size() % 10000,
+                SEGMENT_SUFFIX);
+        Segment segment = new Segment(new File(mDirectory, name));
+        segment.mBuffer.putInt(0, MAGIC);
+        segment.mBuffer.putInt(OFFSET_WRITE_POSITION, HEADER_SIZE);
+        segment.mBuffer.putInt(OFFSET_INDEX_COUNT, 0);
+        segment.mBuffer.putLong(OFFSET_LAST_TIMESTAMP, Long.MIN_VALUE);
+        mSegments.add(segment);
+
+        while (mSegments.size() > mMaxSegments) {
+            Segment oldest = mSegments.remove(0);
+            if (!oldest.mFile.delete()) {
+                Log.w(TAG, "Failed to delete segment " + oldest.mFile);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * The last recorded state of a device or structure.
+     */
+    private static final class LastValue {
+        final Object mObject;
+        final ObjectNode mTree;
+        long mGeneration;
+
+        LastValue(Object object, ObjectNode tree, long generation) {
+            mObject = object;
+            mTree = tree;
+            mGeneration = generation;
+        }
+    }
+
+    /**
+     * One memory-mapped segment file.
+     */
+    private final class Segment {
+        final File mFile;
+        final MappedByteBuffer mBuffer;
+
+        Segment(File file) throws IOException {
+            mFile = file;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(mSegmentSize);
+                mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+            } finally {
+                raf.close();
+            }
+        }
+
+        int writePosition() {
+            return mBuffer.getInt(OFFSET_WRITE_POSITION);
+        }
+
+        int remaining() {
+            return mSegmentSize - writePosition();
+        }
+
+        long firstTimestamp() {
+            int count = mBuffer.getInt(OFFSET_INDEX_COUNT);
+            return count == 0 ? Long.MAX_VALUE : mBuffer.getLong(OFFSET_INDEX);
+        }
+
+        long lastTimestamp() {
+            return mBuffer.getLong(OFFSET_LAST_TIMESTAMP);
+        }
+
+        void append(long timeMs, byte[] id, byte[] key, byte[] value, int length) {
+            int position = writePosition();
+            int indexCount = mBuffer.getInt(OFFSET_INDEX_COUNT);
+            if (indexCount < INDEX_SLOTS
+                    && (indexCount == 0 || position - HEADER_SIZE >= indexCount * mIndexInterval)) {
+                int slot = OFFSET_INDEX + indexCount * INDEX_ENTRY_SIZE;
+                mBuffer.putLong(slot, timeMs);
+                mBuffer.putInt(slot + 8, position);
+                mBuffer.putInt(OFFSET_INDEX_COUNT, indexCount + 1);
+            }
+
+            ByteBuffer out = mBuffer.duplicate();
+            out.position(position);
+            out.putInt(length);
+            out.putLong(timeMs);
+            out.put((byte) id.length);
+            out.put(id);
+            out.put((byte) key.length);
+            out.put(key);
+            out.putShort((short) value.length);
+            out.put(value);
+
+            mBuffer.putLong(OFFSET_LAST_TIMESTAMP, timeMs);
+            // Publish the record last so readers never see a partial one.
+            mBuffer.putInt(OFFSET_WRITE_POSITION, position + length);
+        }
+    }
+
+    /**
+     * Builder for creating a {@link NestHistory}.
+     */
+    public static final class Builder {
+        private File mDirectory;
+        private int mSegmentSize = 4 * 1024 * 1024;
+        private int mMaxSegments = 16;
+
+        /**
+         * Sets the directory segment files are stored in. Required.
+         *
+         * @param directory the directory to store segments in.
+         * @return the {@link Builder} instance.
+         */
+        public Builder directory(@NonNull File directory) {
+            mDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Sets the size of each segment file. Defaults to 4 MB.
+         *
+         * @param segmentSize the size of each segment file, in bytes.
+         * @return the {@link Builder} instance.
+         */
+        public Builder segmentSize(int segmentSize) {
+            if (segmentSize <= HEADER_SIZE + RECORD_OVERHEAD) {
+                throw new IllegalArgumentException("segmentSize is too small.");
+            }
+            mSegmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of segments kept. When exceeded, the oldest segment is deleted. Defaults
+         * to 16.
+         *
+         * @param maxSegments the number of segments kept.
+         * @return the {@link Builder} instance.
+         */
+        public Builder maxSegments(int maxSegments) {
+            if (maxSegments < 1) {
+                throw new IllegalArgumentException("maxSegments must be at least 1.");
+            }
+            mMaxSegments = maxSegments;
+            return this;
+        }
+
+        /**
+         * Opens the {@link NestHistory}, reusing any segments already in the directory.
+         *
+         * @return a new {@link NestHistory}.
+         * @throws IOException if the directory or segments can't be opened.
+         */
+        public NestHistory build() throws IOException {
+            if (mDirectory == null) {
+                throw new IllegalArgumentException("A directory is required.");
+            }
+            return new NestHistory(this);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * NestIndex keeps secondary indexes over the current state of a Nest account so that lookups like
+ * "all offline thermostats in a given structure and room" don't require scanning every device.
+ * <p>
+ * Register a NestIndex with {@link NestAPI#addGlobalListener(NestListener.GlobalListener)} or
+ * {@link NestAPI#addDeviceListener(NestListener.DeviceListener)}. Both listeners deliver the same
+ * instance for every object whose JSON did not change since the previous update, so those objects
+ * are skipped without reading any values. Any other object is compared by its indexed values, and
+ * is only moved between index buckets when one of them changed. Lookups by id are O(1) and
+ * {@link Index#find(String, Object)} is O(k) in the number of matches.
+ * <p>
+ * The following keys are indexed:
+ * <ul>
+ * <li>Devices: {@link Device#KEY_STRUCTURE_ID}, {@link Device#KEY_WHERE_ID} and {@link
+ * Device#KEY_IS_ONLINE}.</li>
+ * <li>Thermostats: also {@link Thermostat#KEY_HVAC_MODE} and {@link
+ * Thermostat#KEY_HVAC_STATE}.</li>
+ * <li>Smoke + CO alarms: also {@link SmokeCOAlarm#KEY_CO_ALARM_STATE}, {@link
+ * SmokeCOAlarm#KEY_SMOKE_ALARM_STATE} and {@link SmokeCOAlarm#KEY_UI_COLOR_STATE}.</li>
+ * <li>Structures: {@link Structure#KEY_AWAY}.</li>
+ * </ul>
+ */
+public final class NestIndex
+        implements NestListener.GlobalListener, NestListener.DeviceListener {
+
+    private static final String[] DEVICE_KEYS = {
+            Device.KEY_STRUCTURE_ID, Device.KEY_WHERE_ID, Device.KEY_IS_ONLINE};
+
+    private final Index<Thermostat> mThermostats = new Index<Thermostat>(
+            Device.KEY_STRUCTURE_ID, Device.KEY_WHERE_ID, Device.KEY_IS_ONLINE,
+            Thermostat.KEY_HVAC_MODE, Thermostat.KEY_HVAC_STATE) {
+        @Override
+        String valueOf(Thermostat thermostat, String key) {
+            switch (key) {
+                case Thermostat.KEY_HVAC_MODE:
+                    return thermostat.getHvacMode();
+                case Thermostat.KEY_HVAC_STATE:
+                    return thermostat.getHvacState();
+                default:
+                    return deviceValueOf(thermostat, key);
+            }
+        }
+    };
+
+    private final Index<SmokeCOAlarm> mSmokeCOAlarms = new Index<SmokeCOAlarm>(
+            Device.KEY_STRUCTURE_ID, Device.KEY_WHERE_ID, Device.KEY_IS_ONLINE,
+            SmokeCOAlarm.KEY_CO_ALARM_STATE, SmokeCOAlarm.KEY_SMOKE_ALARM_STATE,
+            SmokeCOAlarm.KEY_UI_COLOR_STATE) {
+        @Override
+        String valueOf(SmokeCOAlarm alarm, String key) {
+            switch (key) {
+                case SmokeCOAlarm.KEY_CO_ALARM_STATE:
+                    return alarm.getCOAlarmState();
+                case SmokeCOAlarm.KEY_SMOKE_ALARM_STATE:
+                    return alarm.getSmokeAlarmState();
+                case SmokeCOAlarm.KEY_UI_COLOR_STATE:
+                    return alarm.getUIColorState();
+                default:
+                    return deviceValueOf(alarm, key);
+            }
+        }
+    };
+
+    private final Index<Camera> mCameras = new Index<Camera>(DEVICE_KEYS) {
+        @Override
+        String valueOf(Camera camera, String key) {
+            return deviceValueOf(camera, key);
+        }
+    };
+
+    private final Index<Structure> mStructures = new Index<Structure>(Structure.KEY_AWAY) {
+        @Override
+        String idOf(Structure structure) {
+            return structure.getStructureId();
+        }
+
+        @Override
+        String valueOf(Structure structure, String key) {
+            return Structure.KEY_AWAY.equals(key) ? structure.getAway() : null;
+        }
+    };
+
+    @Override
+    public void onUpdate(@NonNull GlobalUpdate update) {
+        synchronized (this) {
+            mThermostats.update(update.getThermostats());
+            mSmokeCOAlarms.update(update.getSmokeCOAlarms());
+            mCameras.update(update.getCameras());
+            mStructures.update(update.getStructures());
+        }
+    }
+
+    @Override
+    public void onUpdate(@NonNull DeviceUpdate update) {
+        synchronized (this) {
+            mThermostats.update(update.getThermostats());
+            mSmokeCOAlarms.update(update.getSmokeCOAlarms());
+            mCameras.update(update.getCameras());
+        }
+    }
+
+    /**
+     * Returns the index of {@link Thermostat}s.
+     *
+     * @return the index of {@link Thermostat}s.
+     */
+    public Index<Thermostat> thermostats() {
+        return mThermostats;
+    }
+
+    /**
+     * Returns the index of {@link SmokeCOAlarm}s.
+     *
+     * @return the index of {@link SmokeCOAlarm}s.
+     */
+    public Index<SmokeCOAlarm> smokeCOAlarms() {
+        return mSmokeCOAlarms;
+    }
+
+    /**
+     * Returns the index of {@link Camera}s.
+     *
+     * @return the index of {@link Camera}s.
+     */
+    public Index<Camera> cameras() {
+        return mCameras;
+    }
+
+    /**
+     * Returns the index of {@link Structure}s.
+     *
+     * @return the index of {@link Structure}s.
+     */
+    public Index<Structure> structures() {
+        return mStructures;
+    }
+
+    private static String deviceValueOf(Device device, String key) {
+        switch (key) {
+            case Device.KEY_STRUCTURE_ID:
+                return device.getStructureId();
+            case Device.KEY_WHERE_ID:
+                return device.getWhereId();
+            case Device.KEY_IS_ONLINE:
+                return String.valueOf(device.isOnline());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * An index over one type of object in the Nest account. Lookups are safe to call from any
+     * thread.
+     *
+     * @param <T> the type of object indexed.
+     */
+    public abstract static class Index<T> {
+        private final String[] mKeys;
+        private final HashMap<String, T> mById = new HashMap<>();
+        // key -> value -> ids of objects having that value.
+        private final HashMap<String, HashMap<String, LinkedHashSet<String>>> mPostings =
+                new HashMap<>();
+
+        Index(String... keys) {
+            mKeys = keys;
+            for (String key : keys) {
+                mPostings.put(key, new HashMap<String, LinkedHashSet<String>>());
+            }
+        }
+
+        /**
+         * Returns the id used to look up an object.
+         *
+         * @param object the object.
+         * @return the object's id.
+         */
+        String idOf(T object) {
+            return ((Device) object).getDeviceId();
+        }
+
+        /**
+         * Returns the indexed value of {@code key} for an object.
+         *
+         * @param object the object.
+         * @param key    one of the indexed keys.
+         * @return the value as a String, or null if unset.
+         */
+        abstract String valueOf(T object, String key);
+
+        /**
+         * Returns the object with the given id, or null if there is none.
+         *
+         * @param id the id of the object.
+         * @return the object with the given id, or null if there is none.
+         */
+        public synchronized T get(@NonNull String id) {
+            return mById.get(id);
+        }
+
+        /**
+         * Returns the number of objects in the index.
+         *
+         * @return the number of objects in the index.
+         */
+        public synchronized int size() {
+            return mById.size();
+        }
+
+        /**
+         * Returns all objects whose value for {@code key} equals {@code value}.
+         *
+         * @param key   an indexed key, such as {@link Device#KEY_STRUCTURE_ID}.
+         * @param value the value to match. Booleans match their String form.
+         * @return the matching objects, in no particular order.
+         * @throws IllegalArgumentException if {@code key} isn't indexed.
+         */
+        public List<T> find(@NonNull String key, Object value) {
+            return where(key, value).list();
+        }
+
+        /**
+         * Starts a query matching objects whose value for {@code key} equals {@code value}. More
+         * conditions can be added with {@link Query#where(String, Object)}.
+         *
+         * @param key   an indexed key, such as {@link Device#KEY_STRUCTURE_ID}.
+         * @param value the value to match. Booleans match their String form.
+         * @return a {@link Query} for the matching objects.
+         * @throws IllegalArgumentException if {@code key} isn't indexed.
+         */
+        public Query<T> where(@NonNull String key, Object value) {
+            return new Query<>(this).where(key, value);
+        }
+
+        private Set<String> postings(String key, Object value) {
+            HashMap<String, LinkedHashSet<String>> byValue = mPostings.get(key);
+            if (byValue == null) {
+                throw new IllegalArgumentException("Key is not indexed: " + key);
+            }
+            Set<String> ids = byValue.get(value == null ? null : String.valueOf(value));
+            return ids == null ? Collections.<String>emptySet() : ids;
+        }
+
+        synchronized void update(List<T> objects) {
+            for (T object : objects) {
+                String id = idOf(object);
+                T previous = mById.put(id, object);
+                if (previous == object) {
+                    continue;
+                }
+                for (String key : mKeys) {
+                    String value = valueOf(object, key);
+                    if (previous != null) {
+                        String previousValue = valueOf(previous, key);
+                        if (value == null ? previousValue == null : value.equals(previousValue)) {
+                            continue;
+                        }
+                        removePosting(key, previousValue, id);
+                    }
+                    addPosting(key, value, id);
+                }
+            }
+
+            // Ids are unique, so the index only holds stale objects if it's larger than the update.
+            if (objects.size() == mById.size()) {
+                return;
+            }
+            HashSet<String> seen = new HashSet<>();
+            for (T object : objects) {
+                seen.add(idOf(object));
+            }
+            ArrayList<String> removed = new ArrayList<>();
+            for (String id : mById.keySet()) {
+                if (!seen.contains(id)) {
+                    removed.add(id);
+                }
+            }
+            for (String id : removed) {
+                T previous = mById.remove(id);
+                for (String key : mKeys) {
+                    removePosting(key, valueOf(previous, key), id);
+                }
+            }
+        }
+
+        private void addPosting(String key, String value, String id) {
+            HashMap<String, LinkedHashSet<String>> byValue = mPostings.get(key);
+            LinkedHashSet<String> ids = byValue.get(value);
+            if (ids == null) {
+                ids = new LinkedHashSet<>();
+                byValue.put(value, ids);
+            }
+            ids.add(id);
+        }
+
+        private void removePosting(String key, String value, String id) {
+            HashMap<String, LinkedHashSet<String>> byValue = mPostings.get(key);
+            Set<String> ids = byValue.get(value);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    byValue.remove(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * A conjunction of conditions over an {@link Index}. The smallest matching bucket is scanned
+     * and the other conditions are checked by hash lookup.
+     *
+     * @param <T> the type of object queried.
+     */
+    public static final class Query<T> {
+        private final Index<T> mIndex;
+        private final ArrayList<Map.Entry<String, Object>> mConditions = new ArrayList<>(3);
+
+        private Query(Index<T> index) {
+            mIndex = index;
+        }
+
+        /**
+         * Adds a condition that the value for {@code key} equals {@code value}.
+         *
+         * @param key   an indexed key.
+         * @param value the value to match. Booleans match their String form.
+         * @return this {@link Query}, for chaining.
+         * @throws IllegalArgumentException if {@code key} isn't indexed.
+         */
+        public Query<T> where(@NonNull String key, Object value) {
+            if (!mIndex.mPostings.containsKey(key)) {
+                throw new IllegalArgumentException("Key is not indexed: " + key);
+            }
+            mConditions.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+            return this;
+        }
+
+        /**
+         * Returns the objects matching every condition.
+         *
+         * @return the matching objects, in no particular order.
+         */
+        public List<T> list() {
+            synchronized (mIndex) {
+                ArrayList<Set<String>> sets = new ArrayList<>(mConditions.size());
+                Set<String> smallest = null;
+                for (Map.Entry<String, Object> condition : mConditions) {
+                    Set<String> ids = mIndex.postings(condition.getKey(), condition.getValue());
+                    if (smallest == null || ids.size() < smallest.size()) {
+                        smallest = ids;
+                    }
+                    sets.add(ids);
+                }
+                if (smallest == null || smallest.isEmpty()) {
+                    return new ArrayList<>(0);
+                }
+
+                ArrayList<T> results = new ArrayList<>(smallest.size());
+                outer:
+                for (String id : smallest) {
+                    for (Set<String> ids : sets) {
+                        if (ids != smallest && !ids.contains(id)) {
+                            continue outer;
+                        }
+                    }
+                    results.add(mIndex.mById.get(id));
+                }
+                return results;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * NestList is an immutable, indexable list of Nest objects. Once built it can be handed between
+ * threads freely, without copying or locking.
+ * <p>
+ * Every method that would modify the list throws {@link UnsupportedOperationException}.
+ *
+ * @param <T> the type of object in the list.
+ */
+public final class NestList<T> extends AbstractList<T> implements RandomAccess {
+    private static final NestList<Object> EMPTY = new NestList<>(new Object[0]);
+
+    private final Object[] mElements;
+    private final long mSequence;
+    private final long mReceivedNanos;
+    private final long mDecodedNanos;
+
+    private NestList(Object[] elements) {
+        this(elements, 0, 0, 0);
+    }
+
+    private NestList(Object[] elements, long sequence, long receivedNanos, long decodedNanos) {
+        mElements = elements;
+        mSequence = sequence;
+        mReceivedNanos = receivedNanos;
+        mDecodedNanos = decodedNanos;
+    }
+
+    /**
+     * Returns an empty NestList.
+     *
+     * @param <T> the type of object in the list.
+     * @return an empty NestList.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> NestList<T> empty() {
+        return (NestList<T>) EMPTY;
+    }
+
+    /**
+     * Returns a NestList holding the objects of a collection, in iteration order. If the
+     * collection is already a NestList, it's returned as is.
+     *
+     * @param objects the objects to hold.
+     * @param <T>     the type of object in the list.
+     * @return a NestList holding the objects.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> NestList<T> copyOf(@NonNull Collection<? extends T> objects) {
+        if (objects instanceof NestList) {
+            return (NestList<T>) objects;
+        }
+        if (objects.isEmpty()) {
+            return empty();
+        }
+        return new NestList<>(objects.toArray());
+    }
+
+    /**
+     * Returns a NestList holding the objects of an update, stamped with the update's sequence
+     * number and timing.
+     */
+    static <T> NestList<T> copyOf(@NonNull Collection<? extends T> objects, long sequence,
+            long receivedNanos, long decodedNanos) {
+        return new NestList<>(objects.toArray(), sequence, receivedNanos, decodedNanos);
+    }
+
+    /**
+     * Returns the sequence number of the update this list came from, or 0 if it didn't come from
+     * an update delivered by a listener.
+     *
+     * @return the sequence number of the update.
+     * @see GlobalUpdate#getSequence()
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns the time the snapshot for the update this list came from was received, as reported
+     * by {@link System#nanoTime()}.
+     *
+     * @return the time the snapshot was received, in nanoseconds.
+     */
+    public long getReceivedNanos() {
+        return mReceivedNanos;
+    }
+
+    /**
+     * Returns the time the update this list came from was ready to be dispatched, as reported by
+     * {@link System#nanoTime()}. For a list delivered to a {@link NestListener.ListListener} this
+     * is when every object in it had been decoded. For a list from a {@link GlobalUpdate} or
+     * {@link DeviceUpdate} it's {@link GlobalUpdate#getDecodedNanos()}, taken before the objects
+     * were decoded.
+     *
+     * @return the time the update was ready, in nanoseconds.
+     */
+    public long getDecodedNanos() {
+        return mDecodedNanos;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int location) {
+        return (T) mElements[location];
+    }
+
+    @Override
+    public int size() {
+        return mElements.length;
+    }
+}
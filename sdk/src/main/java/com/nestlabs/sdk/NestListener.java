@@ -54,6 +54,23 @@ public interface NestListener {
         void onUpdate(@NonNull DeviceUpdate update);
     }
 
+    /**
+     * Listens for updates on all devices in a user's Nest account, one structure at a time.
+     */
+    interface StructureDeviceListener extends NestListener {
+        /**
+         * Called when an update occurs on any device object, once for each structure whose
+         * devices changed, with only that structure's devices. A structure whose last device was
+         * removed gets one update with no devices. Updates for the same structure are delivered
+         * in order.
+         *
+         * @param structureId the structure id of the devices in the update.
+         * @param update      a {@link DeviceUpdate} object containing the structure's devices at
+         *                    the time of the update.
+         */
+        void onUpdate(@NonNull String structureId, @NonNull DeviceUpdate update);
+    }
+
     /**
      * Listens for updates to any {@link Camera} in a user's Nest account.
      */
@@ -67,6 +84,32 @@ public interface NestListener {
         void onUpdate(@NonNull ArrayList<Camera> cameras);
     }
 
+    /**
+     * Listens for new {@link Camera.LastEvent} events on any {@link Camera} in a user's Nest
+     * account.
+     */
+    interface CameraEventListener extends NestListener {
+        /**
+         * Called once for each new event, identified by its start time. The event a camera
+         * already had when it was first seen, such as when the listener is added, is not
+         * reported.
+         *
+         * @param cameraId the device id of the {@link Camera} that reported the event.
+         * @param event    the new {@link Camera.LastEvent}.
+         */
+        void onEventStarted(@NonNull String cameraId, @NonNull Camera.LastEvent event);
+
+        /**
+         * Called once when the end time of an event arrives. If a new event has already ended
+         * by the time it is seen, this is called right after {@link #onEventStarted(String,
+         * Camera.LastEvent)}.
+         *
+         * @param cameraId the device id of the {@link Camera} that reported the event.
+         * @param event    the ended {@link Camera.LastEvent}.
+         */
+        void onEventEnded(@NonNull String cameraId, @NonNull Camera.LastEvent event);
+    }
+
     /**
      * Listens for updates to any {@link Thermostat} in a user's Nest account.
      */
@@ -106,6 +149,42 @@ public interface NestListener {
         void onUpdate(@NonNull ArrayList<SmokeCOAlarm> smokeCOAlarms);
     }
 
+    /**
+     * Listens for updates to every object of one type in a user's Nest account, such as every
+     * {@link Thermostat}, delivered as a {@link NestList} stamped with the update's sequence
+     * number and timing.
+     *
+     * @param <T> the type of object listened to.
+     */
+    interface ListListener<T> extends NestListener {
+        /**
+         * Called when an update occurs on any object of the type listened to.
+         *
+         * @param objects a {@link NestList} of all objects of the type in the user's account at
+         *                the time of the update. {@link NestList#getSequence()} increases by one
+         *                for every update delivered to this listener.
+         */
+        void onUpdate(@NonNull NestList<T> objects);
+    }
+
+    /**
+     * Listens for changes to the safety-critical fields of any {@link SmokeCOAlarm} in a user's
+     * Nest account: {@link SmokeCOAlarm#KEY_SMOKE_ALARM_STATE}, {@link
+     * SmokeCOAlarm#KEY_CO_ALARM_STATE} and {@link SmokeCOAlarm#KEY_UI_COLOR_STATE}.
+     */
+    interface SafetyAlarmListener extends NestListener {
+        /**
+         * Called on the safety lane thread for every change of a safety-critical field, in order.
+         * The first snapshot reports the current value of every field.
+         *
+         * @param deviceId the device id of the {@link SmokeCOAlarm}.
+         * @param key      the key of the changed field.
+         * @param state    the new value of the field, such as "ok", "warning" or "emergency".
+         */
+        void onSafetyAlarmChange(@NonNull String deviceId, @NonNull String key,
+                @NonNull String state);
+    }
+
     /**
      * Listens for updates to the {@link Metadata} object in a user's Nest account.
      */
@@ -118,6 +197,46 @@ public interface NestListener {
         void onUpdate(@NonNull Metadata metadata);
     }
 
+    /**
+     * Listens for changes to the health of the connection to the Nest API, and for errors that
+     * stop updates from being delivered.
+     */
+    interface ConnectionListener extends NestListener {
+        /**
+         * Called when the state of the connection changes. Called on the thread that noticed the
+         * change, which may be the monitor's timer thread.
+         *
+         * @param state the new {@link ConnectionMonitor.State} of the connection.
+         */
+        void onConnectionStateChanged(@NonNull ConnectionMonitor.State state);
+
+        /**
+         * Called when the Nest API cancels a listener, usually because the access token no longer
+         * has permission to read its data. The cancelled listener receives no further updates.
+         *
+         * @param exception a {@link NestException} object containing the error that occurred.
+         */
+        void onError(@NonNull NestException exception);
+    }
+
+    /**
+     * Listens for callbacks to other listeners that take longer than the {@link ListenerWatchdog}
+     * budget.
+     */
+    interface WatchdogListener extends NestListener {
+        /**
+         * Called on the slow callback's thread, right after it returns.
+         *
+         * @param stats         the {@link ListenerWatchdog.Stats} of the slow listener, naming its
+         *                      class and path.
+         * @param durationNanos how long the callback took, in nanoseconds.
+         * @param stack         the stack of the callback sampled while it was over budget, or null
+         *                      if stack sampling is disabled or no sample was taken in time.
+         */
+        void onSlowCallback(@NonNull ListenerWatchdog.Stats stats, long durationNanos,
+                StackTraceElement[] stack);
+    }
+
     /**
      * Listens for updates to the status of authentication of {@link NestAPI} to the Nest service.
      */
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NestPublisher delivers updates from one of the {@link NestListener} types to any number of {@link
+ * NestSubscriber}s, with backpressure. Updates are handed off from the Firebase event thread
+ * without blocking, buffered per subscriber according to an {@link Overflow} strategy and delivered
+ * on an {@link Executor} only as fast as each subscriber requests them.
+ * <p>
+ * Get a NestPublisher from one of the {@code new*Publisher} methods on {@link NestAPI}. The
+ * underlying listener is registered when the first subscriber subscribes and removed when the last
+ * one cancels.
+ *
+ * @param <T> the type of update published.
+ */
+public final class NestPublisher<T> {
+
+    /**
+     * Decides what happens to updates that arrive faster than a subscriber requests them.
+     */
+    public enum Overflow {
+        /**
+         * Keep only the newest undelivered update, replacing any older one.
+         */
+        LATEST,
+
+        /**
+         * Keep up to the publisher's capacity of undelivered updates, dropping the oldest when
+         * full.
+         */
+        BUFFER,
+
+        /**
+         * Keep no undelivered updates; an update that hasn't been requested yet is dropped.
+         */
+        DROP
+    }
+
+    /**
+     * Connects a {@link NestPublisher} to its source of updates.
+     *
+     * @param <T> the type of update published.
+     */
+    interface Source<T> {
+        /**
+         * Starts delivering updates to {@link NestPublisher#publish(Object)}.
+         *
+         * @param publisher the publisher to deliver updates to.
+         */
+        void start(@NonNull NestPublisher<T> publisher);
+
+        /**
+         * Stops delivering updates.
+         */
+        void stop();
+    }
+
+    /**
+     * Implemented by the {@link NestListener} a {@link Source} registers, so that the listener
+     * cancelled by the Nest API can fail the publisher's subscribers.
+     */
+    interface ErrorListener {
+        /**
+         * Called when the listener was cancelled by the Nest API.
+         *
+         * @param exception the reason for the cancellation.
+         */
+        void onError(@NonNull NestException exception);
+    }
+
+    private final Source<T> mSource;
+    private final Overflow mOverflow;
+    private final int mCapacity;
+    private final Executor mExecutor;
+    private final CopyOnWriteArrayList<SubscriptionImpl> mSubscriptions =
+            new CopyOnWriteArrayList<>();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    // Guarded by mSubscriptions.
+    private boolean mStarted;
+
+    NestPublisher(@NonNull Source<T> source, @NonNull Overflow overflow, int capacity,
+            @NonNull Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+        mSource = source;
+        mOverflow = overflow;
+        mCapacity = overflow == Overflow.LATEST ? 1 : capacity;
+        mExecutor = executor;
+    }
+
+    /**
+     * Subscribes a {@link NestSubscriber} to updates. The subscriber's {@code onSubscribe} is
+     * called before this method returns. If the subscriber cancels from {@code onSubscribe} and
+     * no other subscriber is active, the underlying listener is never registered.
+     *
+     * @param subscriber the {@link NestSubscriber} to receive updates.
+     */
+    public void subscribe(@NonNull NestSubscriber<T> subscriber) {
+        SubscriptionImpl subscription = new SubscriptionImpl(subscriber);
+        synchronized (mSubscriptions) {
+            mSubscriptions.add(subscription);
+        }
+
+        subscriber.onSubscribe(subscription);
+        synchronized (mSubscriptions) {
+            if (!mStarted && !mSubscriptions.isEmpty()) {
+                mStarted = true;
+                mSource.start(this);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of updates dropped across all subscribers.
+     *
+     * @return the number of updates dropped across all subscribers.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Returns the number of active subscribers.
+     *
+     * @return the number of active subscribers.
+     */
+    public int getSubscriberCount() {
+        return mSubscriptions.size();
+    }
+
+    /**
+     * Offers an update to every subscriber. Never blocks on a subscriber.
+     *
+     * @param update the update to publish.
+     */
+    void publish(@NonNull T update) {
+        for (SubscriptionImpl subscription : mSubscriptions) {
+            subscription.offer(update);
+        }
+    }
+
+    /**
+     * Fails every subscriber and stops the source.
+     *
+     * @param exception the reason for the failure.
+     */
+    void error(@NonNull NestException exception) {
+        for (SubscriptionImpl subscription : mSubscriptions) {
+            subscription.fail(exception);
+        }
+    }
+
+    private void remove(SubscriptionImpl subscription) {
+        synchronized (mSubscriptions) {
+            if (mSubscriptions.remove(subscription) && mSubscriptions.isEmpty() && mStarted) {
+                mStarted = false;
+                mSource.stop();
+            }
+        }
+    }
+
+    /**
+     * Buffers updates for one subscriber and drains them serially on the executor.
+     */
+    private final class SubscriptionImpl implements NestSubscriber.Subscription, Runnable {
+        private final NestSubscriber<T> mSubscriber;
+        private final ArrayDeque<T> mQueue = new ArrayDeque<>();
+        private final AtomicInteger mWorkInProgress = new AtomicInteger();
+        private final AtomicLong mDropped = new AtomicLong();
+
+        private long mRequested;
+        private boolean mCancelled;
+        private NestException mError;
+
+        SubscriptionImpl(NestSubscriber<T> subscriber) {
+            mSubscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new NestException("Requested a non-positive number of updates: " + n));
+                return;
+            }
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+                mRequested += n;
+                if (mRequested < 0) {
+                    mRequested = Long.MAX_VALUE;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+                mCancelled = true;
+                mQueue.clear();
+            }
+            remove(this);
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return mDropped.get();
+        }
+
+        void offer(T update) {
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+                switch (mOverflow) {
+                    case LATEST:
+                    case BUFFER:
+                        if (mQueue.size() >= mCapacity) {
+                            mQueue.poll();
+                            drop();
+                        }
+                        mQueue.add(update);
+                        break;
+                    case DROP:
+                        if (mRequested <= mQueue.size()) {
+                            drop();
+                            return;
+                        }
+                        mQueue.add(update);
+                        break;
+                }
+            }
+            schedule();
+        }
+
+        void fail(NestException exception) {
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+                mCancelled = true;
+                mQueue.clear();
+                mError = exception;
+            }
+            schedule();
+            remove(this);
+        }
+
+        private void drop() {
+            mDropped.incrementAndGet();
+            mDroppedCount.incrementAndGet();
+        }
+
+        private void schedule() {
+            if (mWorkInProgress.getAndIncrement() == 0) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                while (true) {
+                    T update;
+                    NestException error;
+                    synchronized (this) {
+                        error = mError;
+                        mError = null;
+                        if (error == null) {
+                            if (mCancelled || mRequested == 0 || mQueue.isEmpty()) {
+                                break;
+                            }
+                            mRequested--;
+                        }
+                        update = mQueue.poll();
+                    }
+
+                    if (error != null) {
+                        // The subscription is cancelled now, so the next pass breaks out and
+                        // releases the drain loop.
+                        mSubscriber.onError(error);
+                        continue;
+                    }
+                    mSubscriber.onNext(update);
+                }
+                missed = mWorkInProgress.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * NestRecorder captures every snapshot of the account received from Nest, with the time it was
+ * received, into a gzip-compressed file. Recordings can be played back through the normal listener
+ * pipeline with a {@link NestReplay}, to profile decoding and dispatch offline.
+ * <p>
+ * Create a NestRecorder with {@link NestAPI#startRecording(File)}, and call {@link #close()} to
+ * stop recording. Snapshots are handed to a background thread as they arrive, and streamed to JSON
+ * there straight from the snapshot, without building the account as a map first.
+ */
+public final class NestRecorder {
+    private static final String TAG = "NestRecorder";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /** Identifies a recording file. */
+    static final int MAGIC = 0x4e524543; // "NREC"
+    /** Format version of the recording file. */
+    static final int VERSION = 1;
+
+    private final Firebase mFirebaseRef;
+    private final ListenerContext mContext;
+    private final DataOutputStream mOut;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    private final AtomicInteger mFrameCount = new AtomicInteger();
+    // Only used on the writer thread.
+    private final ByteArrayOutputStream mFrame = new ByteArrayOutputStream();
+    private final ValueEventListener mListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            record(dataSnapshot, System.currentTimeMillis());
+        }
+
+        @Override
+        public void onCancelled(FirebaseError firebaseError) {
+            mContext.reportError(firebaseError);
+        }
+    };
+
+    NestRecorder(@NonNull Firebase firebaseRef, @NonNull File file,
+            @NonNull ListenerContext context) throws IOException {
+        mFirebaseRef = firebaseRef;
+        mContext = context;
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            stream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(stream)));
+            mOut = (DataOutputStream) stream;
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+        } catch (IOException | RuntimeException e) {
+            try {
+                stream.close();
+            } catch (IOException closeException) {
+                // Report the original failure.
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts receiving snapshots of the account.
+     */
+    void start() {
+        mFirebaseRef.addValueEventListener(mListener);
+    }
+
+    /**
+     * Queues a snapshot to be written. Snapshots are immutable, so it is read on the writer thread.
+     *
+     * @param snapshot the snapshot of the account.
+     * @param timeMs   the time the snapshot was received.
+     */
+    void record(final DataSnapshot snapshot, final long timeMs) {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mFrame.reset();
+                    JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(mFrame);
+                    write(generator, snapshot);
+                    generator.close();
+                    mOut.writeLong(timeMs);
+                    mOut.writeInt(mFrame.size());
+                    mFrame.writeTo(mOut);
+                    mFrameCount.incrementAndGet();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to record snapshot.", e);
+                }
+            }
+        });
+    }
+
+    private static void write(JsonGenerator generator, DataSnapshot snapshot) throws IOException {
+        if (!snapshot.hasChildren()) {
+            generator.writeObject(snapshot.getValue());
+            return;
+        }
+        generator.writeStartObject();
+        for (DataSnapshot child : snapshot.getChildren()) {
+            generator.writeFieldName(child.getName());
+            write(generator, child);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Returns the number of snapshots written so far.
+     *
+     * @return the number of snapshots written so far.
+     */
+    public int getFrameCount() {
+        return mFrameCount.get();
+    }
+
+    /**
+     * Stops recording. Snapshots already received are written before the file is closed.
+     */
+    public void close() {
+        mFirebaseRef.removeEventListener(mListener);
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mOut.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close recording.", e);
+                }
+            }
+        });
+        mWriter.shutdown();
+    }
+
+    /**
+     * Waits for all queued snapshots to be written and closed.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void awaitClosed() throws InterruptedException {
+        mWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+}
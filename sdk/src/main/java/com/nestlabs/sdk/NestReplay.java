@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.ValueEventListener;
+import com.firebase.client.snapshot.NodeUtilities;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * NestReplay plays a recording made by a {@link NestRecorder} back through the same listener
+ * pipeline used for live updates. Snapshots are rebuilt from the recording and delivered to each
+ * listener's subtree, so decoding and dispatch run exactly as they do for live data.
+ * <p>
+ * Create a NestReplay with {@link NestAPI#newReplay(File)}, add listeners, and call {@link
+ * #play(float)}. Playback runs on the calling thread, so it's deterministic and easy to profile.
+ */
+public final class NestReplay {
+    /** Plays snapshots back as fast as the listeners consume them. */
+    public static final float SPEED_MAX = Float.POSITIVE_INFINITY;
+    /** Plays snapshots back with their original timing. */
+    public static final float SPEED_REALTIME = 1f;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Firebase mFirebaseRef;
+    private final File mFile;
+    private final ArrayList<String[]> mPaths = new ArrayList<>();
+    private final ArrayList<ValueEventListener> mListeners = new ArrayList<>();
+    // Replayed snapshots aren't live, so they aren't reported to the NestAPI instance.
+    private final ListenerContext mContext = new ListenerContext();
+    private long mDispatchNanos;
+
+    NestReplay(@NonNull Firebase firebaseRef, @NonNull File file) {
+        mFirebaseRef = firebaseRef;
+        mFile = file;
+    }
+
+    /**
+     * Adds a listener to receive replayed updates for all data.
+     *
+     * @param listener the {@link NestListener.GlobalListener} to receive changes.
+     */
+    public void addGlobalListener(@NonNull NestListener.GlobalListener listener) {
+        add(new SnapshotValueListener<>(listener, SnapshotDecoder.GLOBAL, mContext));
+    }
+
+    /**
+     * Adds a listener to receive replayed updates for all {@link Device} objects.
+     *
+     * @param listener the {@link NestListener.DeviceListener} to receive changes.
+     */
+    public void addDeviceListener(@NonNull NestListener.DeviceListener listener) {
+        add(new SnapshotValueListener<>(listener, SnapshotDecoder.DEVICES, mContext));
+    }
+
+    /**
+     * Adds a listener to receive replayed updates for all {@link Thermostat} objects.
+     *
+     * @param listener the {@link NestListener.ThermostatListener} to receive changes.
+     */
+    public void addThermostatListener(@NonNull NestListener.ThermostatListener listener) {
+        add(new SnapshotValueListener<>(listener, SnapshotDecoder.THERMOSTATS, mContext));
+    }
+
+    /**
+     * Adds a listener to receive replayed updates for all {@link Camera} objects.
+     *
+     * @param listener the {@link NestListener.CameraListener} to receive changes.
+     */
+    public void addCameraListener(@NonNull NestListener.CameraListener listener) {
+        add(new SnapshotValueListener<>(listener, SnapshotDecoder.CAMERAS, mContext));
+    }
+
+    /**
+     * Adds a listener to receive replayed {@link Camera.LastEvent} events.
+     *
+     * @param listener the {@link NestListener.CameraEventListener} to receive events.
+     */
+    public void addCameraEventListener(@NonNull NestListener.CameraEventListener listener) {
+        add(new CameraEventValueListener(listener, mContext), NestAPI.KEY_DEVICES,
+                NestAPI.KEY_CAMERAS);
+    }
+
+    /**
+     * Adds a listener to receive replayed updates for all {@link Structure} objects.
+     *
+     * @param listener the {@link NestListener.StructureListener} to receive changes.
+     */
+    public void addStructureListener(@NonNull NestListener.StructureListener listener) {
+        add(new SnapshotValueListener<>(listener, SnapshotDecoder.STRUCTURES, mContext));
+    }
+
+    /**
+     * Adds a listener to receive replayed updates for all {@link SmokeCOAlarm} objects.
+     *
+     * @param listener the {@link NestListener.SmokeCOAlarmListener} to receive changes.
+     */
+    public void addSmokeCOAlarmListener(@NonNull NestListener.SmokeCOAlarmListener listener) {
+        add(new SnapshotValueListener<>(listener, SnapshotDecoder.SMOKE_CO_ALARMS, mContext));
+    }
+
+    /**
+     * Adds a listener to receive replayed updates for the {@link Metadata}.
+     *
+     * @param listener the {@link NestListener.MetadataListener} to receive changes.
+     */
+    public void addMetadataListener(@NonNull NestListener.MetadataListener listener) {
+        add(new SnapshotValueListener<>(listener, SnapshotDecoder.METADATA, mContext));
+    }
+
+    private void add(SnapshotValueListener<?, ?> listener) {
+        add(listener, listener.getRoute().getSegments());
+    }
+
+    private void add(ValueEventListener listener, String... path) {
+        mPaths.add(path);
+        mListeners.add(listener);
+    }
+
+    /**
+     * Plays the recording through the added listeners on the calling thread.
+     *
+     * @param speed the playback speed relative to the recording: {@link #SPEED_REALTIME}, a
+     *              multiple such as 10, or {@link #SPEED_MAX} to play without waiting.
+     * @return the number of snapshots played.
+     * @throws IOException          if the recording can't be read.
+     * @throws InterruptedException if interrupted while waiting between snapshots.
+     */
+    @WorkerThread
+    public int play(float speed) throws IOException, InterruptedException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive.");
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(mFile))));
+        try {
+            if (in.readInt() != NestRecorder.MAGIC) {
+                throw new IOException("Not a recording: " + mFile);
+            }
+            int version = in.readInt();
+            if (version != NestRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+
+            mDispatchNanos = 0;
+            int frames = 0;
+            long firstFrameMs = 0;
+            long startMs = System.currentTimeMillis();
+            while (true) {
+                long timeMs;
+                try {
+                    timeMs = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+
+                if (frames == 0) {
+                    firstFrameMs = timeMs;
+                } else if (speed != SPEED_MAX) {
+                    long dueMs = startMs + (long) ((timeMs - firstFrameMs) / speed);
+                    long waitMs = dueMs - System.currentTimeMillis();
+                    if (waitMs > 0) {
+                        Thread.sleep(waitMs);
+                    }
+                }
+
+                Object value = OBJECT_MAPPER.readValue(json, Object.class);
+                DataSnapshot root =
+                        new DataSnapshot(mFirebaseRef, NodeUtilities.NodeFromJSON(value));
+                long dispatchStart = System.nanoTime();
+                dispatch(root);
+                mDispatchNanos += System.nanoTime() - dispatchStart;
+                frames++;
+            }
+            return frames;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the time spent decoding and dispatching snapshots in the last call to {@link
+     * #play(float)}, excluding reading the recording and waiting between snapshots.
+     *
+     * @return the decode and dispatch time of the last playback, in nanoseconds.
+     */
+    public long getDispatchNanos() {
+        return mDispatchNanos;
+    }
+
+    private void dispatch(DataSnapshot root) {
+        for (int i = 0; i < mListeners.size(); i++) {
+            DataSnapshot snapshot = root;
+            for (String name : mPaths.get(i)) {
+                snapshot = snapshot.child(name);
+            }
+            mListeners.get(i).onDataChange(snapshot);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NestRules is an incremental rules engine for automations. Each {@link Rule} declares the fields
+ * it depends on, and is only evaluated when one of those fields changes. Rules receive the list of
+ * changes that triggered them and a {@link Context} that exposes the current account state and the
+ * setters to issue writes through.
+ * <p>
+ * Register a NestRules with {@link NestAPI#addGlobalListener(NestListener.GlobalListener)}. Only
+ * the fields some rule depends on are compared between updates, and a rule's evaluation only sees
+ * the changes it asked for. The global listener delivers the same instance of every object whose
+ * values didn't change, so those objects aren't compared at all, and the cost of an update grows
+ * with the objects that changed rather than with the size of the account.
+ */
+public final class NestRules implements NestListener.GlobalListener {
+    private static final String TAG = "NestRules";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final HashMap<Class<?>, Map<String, AnnotatedMember>> sAccessors =
+            new HashMap<>();
+
+    private final Context mContext;
+    private final ArrayList<Rule> mRules = new ArrayList<>();
+    // Object type, such as NestAPI.KEY_THERMOSTATS, to the tracked state for that type.
+    private final HashMap<String, TypeState> mTypes = new HashMap<>();
+
+    /**
+     * Creates a rules engine whose actions write through the setters of the given {@link NestAPI}.
+     *
+     * @param nest the {@link NestAPI} to write through.
+     */
+    public NestRules(@NonNull NestAPI nest) {
+        this(nest.thermostats, nest.structures, nest.cameras);
+    }
+
+    NestRules(ThermostatSetter thermostats, StructureSetter structures, CameraSetter cameras) {
+        mContext = new Context(thermostats, structures, cameras);
+    }
+
+    /**
+     * Adds a rule. The rule is evaluated on each update in which one of its fields changes. Objects
+     * seen for the first time report all their watched fields as changed.
+     *
+     * @param rule the {@link Rule} to add.
+     */
+    public synchronized void addRule(@NonNull Rule rule) {
+        if (rule.mInputs.isEmpty()) {
+            throw new IllegalArgumentException("A rule must depend on at least one field.");
+        }
+        mRules.add(rule);
+        for (Map.Entry<String, HashSet<String>> input : rule.mInputs.entrySet()) {
+            TypeState state = mTypes.get(input.getKey());
+            if (state == null) {
+                state = new TypeState();
+                mTypes.put(input.getKey(), state);
+            }
+            for (String key : input.getValue()) {
+                state.watch(key, rule);
+            }
+        }
+    }
+
+    /**
+     * Removes a rule.
+     *
+     * @param rule the {@link Rule} to remove.
+     * @return true if the rule was removed.
+     */
+    public synchronized boolean removeRule(@NonNull Rule rule) {
+        if (!mRules.remove(rule)) {
+            return false;
+        }
+        Iterator<TypeState> it = mTypes.values().iterator();
+        while (it.hasNext()) {
+            TypeState state = it.next();
+            state.unwatch(rule);
+            if (state.mKeys.isEmpty()) {
+                it.remove();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void onUpdate(@NonNull GlobalUpdate update) {
+        mContext.mIndex.onUpdate(update);
+
+        LinkedHashMap<Rule, List<Change>> triggered = new LinkedHashMap<>();
+        diff(NestAPI.KEY_THERMOSTATS, update.getThermostats(), triggered);
+        diff(NestAPI.KEY_SMOKE_CO_ALARMS, update.getSmokeCOAlarms(), triggered);
+        diff(NestAPI.KEY_CAMERAS, update.getCameras(), triggered);
+        diff(NestAPI.KEY_STRUCTURES, update.getStructures(), triggered);
+
+        for (Map.Entry<Rule, List<Change>> entry : triggered.entrySet()) {
+            try {
+                entry.getKey().evaluate(mContext, Collections.unmodifiableList(entry.getValue()));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Rule " + entry.getKey() + " failed.", e);
+            }
+        }
+    }
+
+    private void diff(String type, List<?> objects, Map<Rule, List<Change>> triggered) {
+        TypeState state = mTypes.get(type);
+        if (state == null) {
+            return;
+        }
+
+        HashSet<String> seen = new HashSet<>();
+        for (Object object : objects) {
+            String id = idOf(object);
+            if (id == null) {
+                continue;
+            }
+            seen.add(id);
+
+            Object[] previous = state.mValues.get(id);
+            // Keys watched after the object was last seen have no previous value yet.
+            if (state.mObjects.get(id) == object && previous != null
+                    && previous.length == state.mKeys.size()) {
+                continue;
+            }
+            state.mObjects.put(id, object);
+            Object[] current = new Object[state.mKeys.size()];
+            for (int i = 0; i < current.length; i++) {
+                current[i] = valueOf(object, state.mKeys.get(i));
+                boolean known = previous != null && i < previous.length;
+                Object old = known ? previous[i] : null;
+                if (!known || !equal(old, current[i])) {
+                    addChange(triggered, state.mRules.get(i),
+                            new Change(type, id, state.mKeys.get(i), old, current[i]));
+                }
+            }
+            state.mValues.put(id, current);
+        }
+
+        // Objects that disappeared report their watched fields as changed to null.
+        if (state.mValues.size() > seen.size()) {
+            ArrayList<String> removed = new ArrayList<>(state.mValues.keySet());
+            removed.removeAll(seen);
+            for (String id : removed) {
+                state.mObjects.remove(id);
+                Object[] previous = state.mValues.remove(id);
+                for (int i = 0; i < previous.length; i++) {
+                    if (previous[i] != null) {
+                        addChange(triggered, state.mRules.get(i),
+                                new Change(type, id, state.mKeys.get(i), previous[i], null));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addChange(Map<Rule, List<Change>> triggered, List<Rule> rules,
+            Change change) {
+        for (Rule rule : rules) {
+            List<Change> changes = triggered.get(rule);
+            if (changes == null) {
+                changes = new ArrayList<>();
+                triggered.put(rule, changes);
+            }
+            changes.add(change);
+        }
+    }
+
+    private static String idOf(Object object) {
+        if (object instanceof Device) {
+            return ((Device) object).getDeviceId();
+        } else if (object instanceof Structure) {
+            return ((Structure) object).getStructureId();
+        }
+        return null;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Returns the value of a JSON field of a model object, using the same accessors Jackson uses to
+     * serialize it.
+     */
+    static Object valueOf(Object object, String key) {
+        Map<String, AnnotatedMember> accessors;
+        synchronized (sAccessors) {
+            accessors = sAccessors.get(object.getClass());
+            if (accessors == null) {
+                accessors = new HashMap<>();
+                SerializationConfig config = OBJECT_MAPPER.getSerializationConfig();
+                BeanDescription description =
+                        config.introspect(OBJECT_MAPPER.constructType(object.getClass()));
+                for (BeanPropertyDefinition property : description.findProperties()) {
+                    AnnotatedMember accessor = property.getAccessor();
+                    if (accessor != null) {
+                        accessor.fixAccess();
+                        accessors.put(property.getName(), accessor);
+                    }
+                }
+                sAccessors.put(object.getClass(), accessors);
+            }
+        }
+        AnnotatedMember accessor = accessors.get(key);
+        if (accessor == null) {
+            throw new IllegalArgumentException("Unknown field " + key + " on "
+                    + object.getClass().getSimpleName());
+        }
+        return accessor.getValue(object);
+    }
+
+    /**
+     * Tracked field values for one object type.
+     */
+    private static final class TypeState {
+        // Parallel lists: a watched key and the rules that depend on it.
+        final ArrayList<String> mKeys = new ArrayList<>();
+        final ArrayList<List<Rule>> mRules = new ArrayList<>();
+        // Object id to the last seen value of each watched key, in mKeys order.
+        final HashMap<String, Object[]> mValues = new HashMap<>();
+        // Object id to the object last seen, to skip objects reused unchanged.
+        final HashMap<String, Object> mObjects = new HashMap<>();
+
+        void watch(String key, Rule rule) {
+            int i = mKeys.indexOf(key);
+            if (i < 0) {
+                mKeys.add(key);
+                mRules.add(new ArrayList<Rule>());
+                i = mKeys.size() - 1;
+            }
+            mRules.get(i).add(rule);
+        }
+
+        /**
+         * Removes a rule, and stops tracking the keys no other rule depends on.
+         */
+        void unwatch(Rule rule) {
+            for (int i = mKeys.size() - 1; i >= 0; i--) {
+                List<Rule> rules = mRules.get(i);
+                if (!rules.remove(rule) || !rules.isEmpty()) {
+                    continue;
+                }
+                mKeys.remove(i);
+                mRules.remove(i);
+                for (Map.Entry<String, Object[]> entry : mValues.entrySet()) {
+                    Object[] values = entry.getValue();
+                    if (i >= values.length) {
+                        continue;
+                    }
+                    Object[] remaining = new Object[values.length - 1];
+                    System.arraycopy(values, 0, remaining, 0, i);
+                    System.arraycopy(values, i + 1, remaining, i, remaining.length - i);
+                    entry.setValue(remaining);
+                }
+            }
+        }
+    }
+
+    /**
+     * A rule evaluated by {@link NestRules}. Declare the fields the rule depends on with {@link
+     * #on(String, String...)}, typically in the constructor.
+     */
+    public abstract static class Rule {
+        private final HashMap<String, HashSet<String>> mInputs = new HashMap<>();
+
+        /**
+         * Declares fields the rule depends on.
+         *
+         * @param type the object type, one of {@link NestAPI#KEY_THERMOSTATS}, {@link
+         *             NestAPI#KEY_SMOKE_CO_ALARMS}, {@link NestAPI#KEY_CAMERAS} or {@link
+         *             NestAPI#KEY_STRUCTURES}.
+         * @param keys the field keys, such as {@link SmokeCOAlarm#KEY_CO_ALARM_STATE}.
+         * @return the {@link Rule} instance.
+         */
+        protected final Rule on(@NonNull String type, @NonNull String... keys) {
+            switch (type) {
+                case NestAPI.KEY_THERMOSTATS:
+                case NestAPI.KEY_SMOKE_CO_ALARMS:
+                case NestAPI.KEY_CAMERAS:
+                case NestAPI.KEY_STRUCTURES:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported type " + type);
+            }
+            HashSet<String> inputs = mInputs.get(type);
+            if (inputs == null) {
+                inputs = new LinkedHashSet<>();
+                mInputs.put(type, inputs);
+            }
+            Collections.addAll(inputs, keys);
+            return this;
+        }
+
+        /**
+         * Evaluates the rule. Called on the update thread, only when at least one of the fields
+         * the rule depends on has changed.
+         *
+         * @param context the {@link Context} to read state from and write through.
+         * @param changes the changed fields the rule depends on, in update order.
+         */
+        public abstract void evaluate(@NonNull Context context, @NonNull List<Change> changes);
+    }
+
+    /**
+     * A single field change.
+     */
+    public static final class Change {
+        private final String mType;
+        private final String mId;
+        private final String mKey;
+        private final Object mOldValue;
+        private final Object mNewValue;
+
+        Change(String type, String id, String key, Object oldValue, Object newValue) {
+            mType = type;
+            mId = id;
+            mKey = key;
+            mOldValue = oldValue;
+            mNewValue = newValue;
+        }
+
+        /**
+         * Returns the object type, such as {@link NestAPI#KEY_THERMOSTATS}.
+         *
+         * @return the object type.
+         */
+        public String getType() {
+            return mType;
+        }
+
+        /**
+         * Returns the device or structure id of the changed object.
+         *
+         * @return the device or structure id of the changed object.
+         */
+        public String getId() {
+            return mId;
+        }
+
+        /**
+         * Returns the key of the changed field.
+         *
+         * @return the key of the changed field.
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Returns the previous value, or null if the object or field wasn't seen before.
+         *
+         * @return the previous value.
+         */
+        public Object getOldValue() {
+            return mOldValue;
+        }
+
+        /**
+         * Returns the new value, or null if the object was removed.
+         *
+         * @return the new value.
+         */
+        public Object getNewValue() {
+            return mNewValue;
+        }
+
+        @Override
+        public String toString() {
+            return mType + "/" + mId + "/" + mKey + ": " + mOldValue + " -> " + mNewValue;
+        }
+    }
+
+    /**
+     * The state and actions available to a rule.
+     */
+    public static final class Context {
+        private final NestIndex mIndex = new NestIndex();
+        private final ThermostatSetter mThermostats;
+        private final StructureSetter mStructures;
+        private final CameraSetter mCameras;
+
+        Context(ThermostatSetter thermostats, StructureSetter structures, CameraSetter cameras) {
+            mThermostats = thermostats;
+            mStructures = structures;
+            mCameras = cameras;
+        }
+
+        /**
+         * Returns an index over the account state as of the update being evaluated.
+         *
+         * @return the {@link NestIndex} over the current account state.
+         */
+        public NestIndex getIndex() {
+            return mIndex;
+        }
+
+        /**
+         * Returns the setter to write thermostat fields through.
+         *
+         * @return the {@link ThermostatSetter}.
+         */
+        public ThermostatSetter thermostats() {
+            return mThermostats;
+        }
+
+        /**
+         * Returns the setter to write structure fields through.
+         *
+         * @return the {@link StructureSetter}.
+         */
+        public StructureSetter structures() {
+            return mStructures;
+        }
+
+        /**
+         * Returns the setter to write camera fields through.
+         *
+         * @return the {@link CameraSetter}.
+         */
+        public CameraSetter cameras() {
+            return mCameras;
+        }
+    }
+}
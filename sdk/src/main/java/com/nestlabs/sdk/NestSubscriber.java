@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+/**
+ * NestSubscriber receives updates from a {@link NestPublisher}. Updates are only delivered after
+ * they have been requested with {@link Subscription#request(long)}, so a slow subscriber is never
+ * handed more than it asked for.
+ *
+ * @param <T> the type of update received.
+ */
+public interface NestSubscriber<T> {
+
+    /**
+     * Called once when the subscription starts. No updates are delivered until {@link
+     * Subscription#request(long)} is called.
+     *
+     * @param subscription the {@link Subscription} used to request updates or cancel.
+     */
+    void onSubscribe(@NonNull Subscription subscription);
+
+    /**
+     * Called for each requested update.
+     *
+     * @param update the update.
+     */
+    void onNext(@NonNull T update);
+
+    /**
+     * Called when the subscription fails. No further updates are delivered.
+     *
+     * @param exception the reason for the failure.
+     */
+    void onError(@NonNull NestException exception);
+
+    /**
+     * Links a {@link NestSubscriber} to a {@link NestPublisher}.
+     */
+    interface Subscription {
+        /**
+         * Requests up to {@code n} more updates.
+         *
+         * @param n the number of additional updates to deliver. Must be positive.
+         */
+        void request(long n);
+
+        /**
+         * Stops the delivery of updates and discards any buffered ones.
+         */
+        void cancel();
+
+        /**
+         * Returns the number of updates dropped by the overflow strategy of the {@link
+         * NestPublisher} because this subscriber hadn't requested them in time.
+         *
+         * @return the number of updates dropped for this subscriber.
+         */
+        long getDroppedCount();
+    }
+}
@@ -21,6 +21,12 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
 
 /**
  * NestToken contains the access token and expiry duration associated with an authenticated user.
@@ -30,6 +36,8 @@ public final class NestToken implements Parcelable {
     static final String KEY_TOKEN = "access_token";
     static final String KEY_EXPIRES_IN_SECS = "expires_in";
 
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     @JsonProperty(KEY_TOKEN)
     private String mToken;
 
@@ -54,6 +62,40 @@ public final class NestToken implements Parcelable {
         mExpiresInSecs = in.readLong();
     }
 
+    /**
+     * Reads a NestToken from a JSON token response, walking the stream once without building an
+     * intermediate String or tree. Unknown fields are skipped.
+     *
+     * @param reader the reader positioned at the start of the JSON object.
+     * @return the NestToken read from the stream.
+     * @throws IOException if the stream can't be read or isn't a JSON object.
+     */
+    static NestToken fromJson(Reader reader) throws IOException {
+        JsonParser parser = JSON_FACTORY.createParser(reader);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object for the access token response.");
+            }
+
+            NestToken token = new NestToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                if (KEY_TOKEN.equals(field)) {
+                    token.mToken = parser.getValueAsString();
+                } else if (KEY_EXPIRES_IN_SECS.equals(field)) {
+                    token.mExpiresInSecs = parser.getValueAsLong();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return token;
+        } finally {
+            parser.close();
+        }
+    }
+
     /**
      * Returns the access token. Use the access token to authenticate with the Nest API via {@link
      * NestAPI#authWithToken(String, NestListener.AuthListener)}.
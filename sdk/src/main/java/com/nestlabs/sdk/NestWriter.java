@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * NestWriter sends the writes made by {@link ThermostatSetter}, {@link StructureSetter} and {@link
+ * CameraSetter}.
+ * <p>
+ * When no-op suppression is enabled, a write of the value a path already has, with no other write
+ * to it still pending, completes successfully right away without any network traffic. The current
+ * value of a path is read from the latest snapshot received by any listener whose path contains
+ * it, as reported to {@link #observe(Object, String, DataSnapshot)}. Only paths no listener
+ * covers are watched with a listener of their own, which learns their value from the Nest API's
+ * updates and from successful writes, and is removed when suppression is disabled or {@link
+ * #reset()} is called.
+ */
+final class NestWriter {
+    private static final Object UNKNOWN = new Object();
+
+    private final RefProvider mRefProvider;
+    private final HashMap<String, PathState> mPaths = new HashMap<>();
+    // Listener to the latest snapshot it received.
+    private final IdentityHashMap<Object, Observed> mObserved = new IdentityHashMap<>();
+    // Returned by begin() for a write that would change nothing.
+    private final PathState mSuppressed = new PathState(null, null);
+    private boolean mSuppressNoOps;
+    private long mSuppressedCount;
+
+    /**
+     * Supplies the root {@link Firebase} reference, which may be created on first use.
+     */
+    interface RefProvider {
+        Firebase get();
+    }
+
+    NestWriter(@NonNull final Firebase firebaseRef) {
+        this(new RefProvider() {
+            @Override
+            public Firebase get() {
+                return firebaseRef;
+            }
+        });
+    }
+
+    NestWriter(@NonNull RefProvider refProvider) {
+        mRefProvider = refProvider;
+    }
+
+    /**
+     * Enables or disables no-op write suppression. Disabling it stops tracking the confirmed values
+     * of all paths.
+     *
+     * @param enabled true to suppress no-op writes.
+     */
+    synchronized void setSuppressNoOps(boolean enabled) {
+        mSuppressNoOps = enabled;
+        if (!enabled) {
+            removePaths();
+        }
+    }
+
+    /**
+     * Records the latest snapshot received by a listener, so that writes to any path it contains
+     * can be compared with its value without watching the path separately.
+     *
+     * @param listener the Firebase listener that received the snapshot.
+     * @param path     the path the listener listens to, such as "/devices", or "/" for the root.
+     * @param snapshot the snapshot received.
+     */
+    synchronized void observe(@NonNull Object listener, @NonNull String path,
+            @NonNull DataSnapshot snapshot) {
+        Observed observed = mObserved.get(listener);
+        if (observed == null) {
+            mObserved.put(listener, new Observed(path, snapshot));
+        } else {
+            observed.mSnapshot = snapshot;
+        }
+    }
+
+    /**
+     * Forgets the snapshot of a listener that was removed, since it no longer receives updates.
+     *
+     * @param listener the removed Firebase listener.
+     */
+    synchronized void forget(@NonNull Object listener) {
+        mObserved.remove(listener);
+    }
+
+    /**
+     * Forgets every observed snapshot and removes the listeners of all watched paths. Suppression
+     * stays enabled or disabled.
+     */
+    synchronized void reset() {
+        mObserved.clear();
+        removePaths();
+    }
+
+    private void removePaths() {
+        for (PathState state : mPaths.values()) {
+            if (state.mRef != null) {
+                state.mRef.removeEventListener(state);
+            }
+        }
+        mPaths.clear();
+    }
+
+    /**
+     * Returns the number of writes that were suppressed because they would change nothing.
+     *
+     * @return the number of suppressed writes.
+     */
+    synchronized long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    void setValue(@NonNull String path, Object value) {
+        Firebase ref = mRefProvider.get().child(path);
+        PathState state = begin(ref, path, value);
+        if (state == null) {
+            ref.setValue(value);
+        } else if (state != mSuppressed) {
+            ref.setValue(value, new PendingWrite(state, value, null));
+        }
+    }
+
+    void setValue(@NonNull String path, Object value,
+            @NonNull Firebase.CompletionListener listener) {
+        Firebase ref = mRefProvider.get().child(path);
+        PathState state = begin(ref, path, value);
+        if (state == null) {
+            ref.setValue(value, listener);
+        } else if (state == mSuppressed) {
+            listener.onComplete(null, ref);
+        } else {
+            ref.setValue(value, new PendingWrite(state, value, listener));
+        }
+    }
+
+    NestFuture setValueAsync(@NonNull String path, Object value) {
+        Firebase ref = mRefProvider.get().child(path);
+        PathState state = begin(ref, path, value);
+        if (state == null) {
+            return NestFuture.setValue(ref, value);
+        } else if (state == mSuppressed) {
+            return NestFuture.noOp();
+        }
+        NestFuture future = new NestFuture();
+        ref.setValue(value, new PendingWrite(state, value,
+                new NestCompletionListener(future.asCallback())));
+        return future;
+    }
+
+    /**
+     * Starts a write. Returns null if suppression is disabled, mSuppressed if the write would
+     * change nothing, or the state of the path with the write counted as pending.
+     */
+    private synchronized PathState begin(Firebase ref, String path, Object value) {
+        if (!mSuppressNoOps) {
+            return null;
+        }
+
+        PathState state = mPaths.get(path);
+        Object confirmed;
+        if (state == null) {
+            confirmed = observedValue(path);
+            if (confirmed == UNKNOWN) {
+                // No listener covers the path, so watch it to learn its value for later writes.
+                state = new PathState(path, ref);
+                ref.addValueEventListener(state);
+            } else {
+                state = new PathState(path, null);
+            }
+        } else if (state.mPending > 0) {
+            confirmed = UNKNOWN;
+        } else {
+            confirmed = state.mRef != null ? state.mConfirmed : observedValue(path);
+        }
+
+        if (confirmed != UNKNOWN && isSame(confirmed, value)) {
+            mSuppressedCount++;
+            return mSuppressed;
+        }
+        mPaths.put(path, state);
+        state.mPending++;
+        return state;
+    }
+
+    private synchronized void end(PathState state, Object value, boolean succeeded) {
+        state.mPending--;
+        state.mConfirmed = succeeded ? value : UNKNOWN;
+        // A path covered by a listener is only tracked while a write to it is pending.
+        if (state.mRef == null && state.mPending == 0 && mPaths.get(state.mPath) == state) {
+            mPaths.remove(state.mPath);
+        }
+    }
+
+    /**
+     * Returns the value of a path in the latest snapshot of the listener closest to it, or UNKNOWN
+     * if no listener's path contains it.
+     */
+    private Object observedValue(String path) {
+        Observed closest = null;
+        for (Observed observed : mObserved.values()) {
+            if (observed.contains(path)
+                    && (closest == null || observed.mPath.length() > closest.mPath.length())) {
+                closest = observed;
+            }
+        }
+        if (closest == null) {
+            return UNKNOWN;
+        }
+        String relative = path.substring(closest.mPath.length());
+        if (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+        return relative.isEmpty()
+                ? closest.mSnapshot.getValue() : closest.mSnapshot.child(relative).getValue();
+    }
+
+    static boolean isSame(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Tracks the last confirmed value of a path. Updates from the Nest API are ignored while a
+     * write to the path is pending, since they may only reflect the local, unconfirmed write.
+     */
+    private final class PathState implements ValueEventListener {
+        final String mPath;
+        // The watched path, or null if a listener covers the path.
+        final Firebase mRef;
+        Object mConfirmed = UNKNOWN;
+        int mPending;
+
+        PathState(String path, Firebase ref) {
+            mPath = path;
+            mRef = ref;
+        }
+
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            synchronized (NestWriter.this) {
+                if (mPending == 0) {
+                    mConfirmed = dataSnapshot.getValue();
+                }
+            }
+        }
+
+        @Override
+        public void onCancelled(FirebaseError firebaseError) {
+            synchronized (NestWriter.this) {
+                mConfirmed = UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * The latest snapshot received by a listener and the path it listens to.
+     */
+    private static final class Observed {
+        final String mPath;
+        DataSnapshot mSnapshot;
+
+        Observed(String path, DataSnapshot snapshot) {
+            mPath = path;
+            mSnapshot = snapshot;
+        }
+
+        boolean contains(String path) {
+            return "/".equals(mPath) || path.equals(mPath) || path.startsWith(mPath + "/");
+        }
+    }
+
+    private final class PendingWrite implements Firebase.CompletionListener {
+        private final PathState mState;
+        private final Object mValue;
+        private final Firebase.CompletionListener mListener;
+
+        PendingWrite(PathState state, Object value, Firebase.CompletionListener listener) {
+            mState = state;
+            mValue = value;
+            mListener = listener;
+        }
+
+        @Override
+        public void onComplete(FirebaseError firebaseError, Firebase firebase) {
+            end(mState, mValue, firebaseError == null);
+            if (mListener != null) {
+                mListener.onComplete(firebaseError, firebase);
+            }
+        }
+    }
+}
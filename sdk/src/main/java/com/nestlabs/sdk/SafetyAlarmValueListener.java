@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * SafetyAlarmValueListener delivers every change to the safety-critical fields of any {@link
+ * SmokeCOAlarm} to the {@link NestListener.SafetyAlarmListener}s added to it.
+ * <p>
+ * {@link NestAPI} creates one per instance and registers it with Firebase while at least one
+ * safety listener is added. Each delivery is timed from this listener's own call for the snapshot,
+ * rather than from when any other listener was called. Only the safety-critical fields are read
+ * from a snapshot. Each change is queued, never coalesced, on a dedicated
+ * high-priority lane thread shared by all safety listeners, so the callback doesn't wait behind
+ * other listeners' callbacks. The time from snapshot receipt to callback is recorded in each
+ * listener's {@link SafetyLaneMetrics}.
+ */
+class SafetyAlarmValueListener implements ValueEventListener {
+    static final String[] SAFETY_KEYS = {SmokeCOAlarm.KEY_SMOKE_ALARM_STATE,
+            SmokeCOAlarm.KEY_CO_ALARM_STATE, SmokeCOAlarm.KEY_UI_COLOR_STATE};
+
+    private static ExecutorService sLane;
+
+    private final ExecutorService mLane;
+    private final ListenerContext mContext;
+    private final CopyOnWriteArrayList<Target> mTargets = new CopyOnWriteArrayList<>();
+    // Device id to the last seen value of each safety key, in SAFETY_KEYS order. Guarded by this.
+    private final HashMap<String, String[]> mLastStates = new HashMap<>();
+
+    SafetyAlarmValueListener(@NonNull ListenerContext context) {
+        this(getLane(), context);
+    }
+
+    SafetyAlarmValueListener(@NonNull ExecutorService lane, @NonNull ListenerContext context) {
+        mLane = lane;
+        mContext = context;
+    }
+
+    /**
+     * Adds a listener. The current state of every alarm already seen is delivered to it first,
+     * without being recorded in its metrics.
+     *
+     * @param listener the listener to deliver changes to.
+     * @param metrics  the metrics to record the listener's delivery latency in.
+     */
+    synchronized void add(@NonNull NestListener.SafetyAlarmListener listener,
+            @NonNull SafetyLaneMetrics metrics) {
+        Target target = new Target(listener, metrics);
+        mTargets.add(target);
+        for (Map.Entry<String, String[]> entry : mLastStates.entrySet()) {
+            for (int i = 0; i < SAFETY_KEYS.length; i++) {
+                if (entry.getValue()[i] != null) {
+                    deliver(target, entry.getKey(), SAFETY_KEYS[i], entry.getValue()[i], 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener to remove.
+     * @return true if the listener was removed.
+     */
+    boolean remove(@NonNull NestListener.SafetyAlarmListener listener) {
+        for (Target target : mTargets) {
+            if (target.mListener == listener) {
+                return mTargets.remove(target);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether no listener is added.
+     *
+     * @return true if no listener is added.
+     */
+    boolean isEmpty() {
+        return mTargets.isEmpty();
+    }
+
+    /**
+     * Removes every listener and forgets the alarm states seen so far, so that the lane can be
+     * registered again from scratch.
+     */
+    synchronized void clear() {
+        mTargets.clear();
+        mLastStates.clear();
+    }
+
+    @Override
+    public synchronized void onDataChange(DataSnapshot dataSnapshot) {
+        long receivedNanos = System.nanoTime();
+        mContext.heartbeat();
+        HashSet<String> seen = new HashSet<>();
+
+        for (DataSnapshot alarmSnap : dataSnapshot.getChildren()) {
+            String deviceId = alarmSnap.getName();
+            seen.add(deviceId);
+
+            String[] previous = mLastStates.get(deviceId);
+            String[] current = new String[SAFETY_KEYS.length];
+            for (int i = 0; i < SAFETY_KEYS.length; i++) {
+                Object value = alarmSnap.child(SAFETY_KEYS[i]).getValue();
+                current[i] = value == null ? null : value.toString();
+                if (current[i] == null
+                        || (previous != null && current[i].equals(previous[i]))) {
+                    continue;
+                }
+                for (Target target : mTargets) {
+                    deliver(target, deviceId, SAFETY_KEYS[i], current[i], receivedNanos);
+                }
+            }
+            mLastStates.put(deviceId, current);
+        }
+
+        mLastStates.keySet().retainAll(seen);
+    }
+
+    @Override
+    public void onCancelled(FirebaseError firebaseError) {
+        mContext.reportError(firebaseError);
+    }
+
+    /**
+     * Queues a change on the lane. A receive time of 0 isn't recorded in the metrics.
+     */
+    private void deliver(final Target target, final String deviceId, final String key,
+            final String state, final long receivedNanos) {
+        mLane.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (receivedNanos != 0) {
+                    target.mMetrics.record(System.nanoTime() - receivedNanos);
+                }
+                long start = mContext.begin();
+                target.mListener.onSafetyAlarmChange(deviceId, key, state);
+                mContext.end(target.mListener, start);
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getLane() {
+        if (sLane == null) {
+            sLane = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "NestSafetyLane");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MAX_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sLane;
+    }
+
+    /**
+     * A listener and the metrics of its deliveries.
+     */
+    private static final class Target {
+        final NestListener.SafetyAlarmListener mListener;
+        final SafetyLaneMetrics mMetrics;
+
+        Target(NestListener.SafetyAlarmListener listener, SafetyLaneMetrics metrics) {
+            mListener = listener;
+            mMetrics = metrics;
+        }
+    }
+}
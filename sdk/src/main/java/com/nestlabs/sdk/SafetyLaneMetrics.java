@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SafetyLaneMetrics tracks the end-to-end latency of safety alarm changes, from the moment the
+ * snapshot is received to the moment the {@link NestListener.SafetyAlarmListener} is called.
+ * <p>
+ * Percentiles are computed over the most recent {@value #WINDOW_SIZE} changes. Set an SLO with
+ * {@link #setSloAlarm(long, SloListener)} to be notified whenever a change is delivered later than
+ * it allows.
+ */
+public final class SafetyLaneMetrics {
+    static final int WINDOW_SIZE = 256;
+
+    /**
+     * Notified when a safety alarm change misses its latency SLO.
+     */
+    public interface SloListener {
+        /**
+         * Called on the safety lane thread, right after the late change was delivered.
+         *
+         * @param latencyMs the latency of the late change, in milliseconds.
+         * @param sloMs     the SLO that was missed, in milliseconds.
+         */
+        void onSloMissed(long latencyMs, long sloMs);
+    }
+
+    private final long[] mWindow = new long[WINDOW_SIZE];
+    private long mCount;
+    private long mMaxNanos;
+    private long mLastNanos;
+    private long mSloNanos = Long.MAX_VALUE;
+    private long mSloMissCount;
+    private SloListener mSloListener;
+
+    /**
+     * Sets the latency SLO and the listener notified when a change misses it.
+     *
+     * @param sloMs    the maximum acceptable latency, in milliseconds.
+     * @param listener the {@link SloListener} to notify, or null to only count misses.
+     */
+    public synchronized void setSloAlarm(long sloMs, SloListener listener) {
+        mSloNanos = TimeUnit.MILLISECONDS.toNanos(sloMs);
+        mSloListener = listener;
+    }
+
+    /**
+     * Records the latency of a delivered change.
+     *
+     * @param latencyNanos the latency, in nanoseconds.
+     */
+    void record(long latencyNanos) {
+        SloListener listener = null;
+        long sloNanos;
+        synchronized (this) {
+            mWindow[(int) (mCount % WINDOW_SIZE)] = latencyNanos;
+            mCount++;
+            mLastNanos = latencyNanos;
+            mMaxNanos = Math.max(mMaxNanos, latencyNanos);
+            sloNanos = mSloNanos;
+            if (latencyNanos > sloNanos) {
+                mSloMissCount++;
+                listener = mSloListener;
+            }
+        }
+        if (listener != null) {
+            listener.onSloMissed(TimeUnit.NANOSECONDS.toMillis(latencyNanos),
+                    TimeUnit.NANOSECONDS.toMillis(sloNanos));
+        }
+    }
+
+    /**
+     * Returns the number of changes delivered.
+     *
+     * @return the number of changes delivered.
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of changes delivered later than the SLO.
+     *
+     * @return the number of SLO misses.
+     */
+    public synchronized long getSloMissCount() {
+        return mSloMissCount;
+    }
+
+    /**
+     * Returns the latency of the most recent change.
+     *
+     * @param unit the {@link TimeUnit} of the result.
+     * @return the latency of the most recent change.
+     */
+    public synchronized long getLastLatency(@NonNull TimeUnit unit) {
+        return unit.convert(mLastNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the highest latency seen.
+     *
+     * @param unit the {@link TimeUnit} of the result.
+     * @return the highest latency seen.
+     */
+    public synchronized long getMaxLatency(@NonNull TimeUnit unit) {
+        return unit.convert(mMaxNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a latency percentile over the most recent changes, or 0 if none were delivered.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @param unit       the {@link TimeUnit} of the result.
+     * @return the latency at the given percentile.
+     */
+    public long getLatencyPercentile(double percentile, @NonNull TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100.");
+        }
+        long[] window;
+        synchronized (this) {
+            window = Arrays.copyOf(mWindow, (int) Math.min(mCount, WINDOW_SIZE));
+        }
+        if (window.length == 0) {
+            return 0;
+        }
+        Arrays.sort(window);
+        int index = (int) Math.ceil(percentile / 100 * window.length) - 1;
+        return unit.convert(window[Math.max(0, index)], TimeUnit.NANOSECONDS);
+    }
+}
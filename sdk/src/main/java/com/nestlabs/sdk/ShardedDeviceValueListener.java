@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ShardedDeviceValueListener accepts a {@link NestListener.StructureDeviceListener} that will
+ * receive one {@link DeviceUpdate} per structure each time the devices of that structure change.
+ * Each structure's update is decoded and delivered on its shard of a {@link ShardedExecutor}, so
+ * the updates of one structure stay in order while different structures are decoded and
+ * delivered in parallel.
+ * <p>
+ * The Firebase event thread only groups the device snapshots by structure id. Each shard reads
+ * the raw values of its structure's devices, skips the structure if they equal the values it last
+ * delivered, and only then decodes them. The sequence of an update counts the updates delivered
+ * for its structure.
+ */
+class ShardedDeviceValueListener implements ValueEventListener {
+
+    private final NestListener.StructureDeviceListener mListener;
+    private final ShardedExecutor mExecutor;
+    private final ListenerContext mContext;
+    private final Set<String> mStructureIds = new HashSet<>();
+    private final Map<String, Delivered> mDelivered = new ConcurrentHashMap<>();
+
+    ShardedDeviceValueListener(@NonNull NestListener.StructureDeviceListener listener,
+            @NonNull ShardedExecutor executor, @NonNull ListenerContext context) {
+        mListener = listener;
+        mExecutor = executor;
+        mContext = context;
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+        mContext.heartbeat();
+        final long receivedNanos = System.nanoTime();
+        mContext.observe(this, "/" + NestAPI.KEY_DEVICES, dataSnapshot);
+        Map<String, StructureDevices> structures = group(dataSnapshot);
+        mContext.decoded(mListener, receivedNanos);
+
+        // Structures whose last device was removed get one empty update.
+        Set<String> removed = new HashSet<>(mStructureIds);
+        removed.removeAll(structures.keySet());
+        mStructureIds.clear();
+        mStructureIds.addAll(structures.keySet());
+        for (String structureId : removed) {
+            structures.put(structureId, new StructureDevices());
+        }
+
+        for (Map.Entry<String, StructureDevices> entry : structures.entrySet()) {
+            final String structureId = entry.getKey();
+            final StructureDevices devices = entry.getValue();
+            mExecutor.execute(structureId, new Runnable() {
+                @Override
+                public void run() {
+                    deliver(structureId, devices, receivedNanos);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onCancelled(FirebaseError firebaseError) {
+        mContext.reportError(firebaseError);
+    }
+
+    /**
+     * Decodes and delivers the devices of one structure, unless their values equal the values
+     * last delivered for it. Runs on the structure's shard, so it's never run concurrently for
+     * the same structure.
+     */
+    private void deliver(String structureId, StructureDevices devices, long receivedNanos) {
+        List<List<Object>> values = Arrays.asList(values(devices.mThermostats),
+                values(devices.mSmokeCOAlarms), values(devices.mCameras));
+        Delivered last = mDelivered.get(structureId);
+        if (last != null && last.mValues.equals(values)) {
+            return;
+        }
+        long sequence = last == null ? 1 : last.mSequence + 1;
+        mDelivered.put(structureId, new Delivered(values, sequence));
+
+        long start = mContext.begin();
+        try {
+            DeviceUpdate update = new DeviceUpdate(convert(values.get(0), Thermostat.class),
+                    convert(values.get(1), SmokeCOAlarm.class),
+                    convert(values.get(2), Camera.class));
+            update.stamp(sequence, receivedNanos, System.nanoTime());
+            mListener.onUpdate(structureId, update);
+        } finally {
+            mContext.end(mListener, start);
+        }
+    }
+
+    /**
+     * Groups the device snapshots of a devices snapshot by structure id, in the order the
+     * structures first appear, without decoding them. Devices without a structure id can't be
+     * routed and are left out.
+     */
+    static Map<String, StructureDevices> group(@NonNull DataSnapshot snapshot) {
+        LinkedHashMap<String, StructureDevices> structures = new LinkedHashMap<>();
+        for (DataSnapshot typeSnapshot : snapshot.getChildren()) {
+            String typeName = typeSnapshot.getName();
+            for (DataSnapshot deviceSnapshot : typeSnapshot.getChildren()) {
+                String structureId = structureId(deviceSnapshot);
+                if (structureId == null) {
+                    continue;
+                }
+                StructureDevices devices = structures.get(structureId);
+                if (devices == null) {
+                    devices = new StructureDevices();
+                    structures.put(structureId, devices);
+                }
+                if (NestAPI.KEY_THERMOSTATS.equals(typeName)) {
+                    devices.mThermostats.add(deviceSnapshot);
+                } else if (NestAPI.KEY_SMOKE_CO_ALARMS.equals(typeName)) {
+                    devices.mSmokeCOAlarms.add(deviceSnapshot);
+                } else if (NestAPI.KEY_CAMERAS.equals(typeName)) {
+                    devices.mCameras.add(deviceSnapshot);
+                }
+            }
+        }
+        return structures;
+    }
+
+    private static String structureId(DataSnapshot deviceSnapshot) {
+        if (!deviceSnapshot.hasChild(Device.KEY_STRUCTURE_ID)) {
+            return null;
+        }
+        Object structureId = deviceSnapshot.child(Device.KEY_STRUCTURE_ID).getValue();
+        return structureId instanceof String ? (String) structureId : null;
+    }
+
+    private static List<Object> values(List<DataSnapshot> snapshots) {
+        List<Object> values = new ArrayList<>(snapshots.size());
+        for (DataSnapshot snapshot : snapshots) {
+            values.add(snapshot.getValue());
+        }
+        return values;
+    }
+
+    private static <T> ArrayList<T> convert(List<Object> values, Class<T> type) {
+        ArrayList<T> objects = new ArrayList<>(values.size());
+        for (Object value : values) {
+            objects.add(Utils.convert(value, type, null));
+        }
+        return objects;
+    }
+
+    /**
+     * The undecoded device snapshots of one structure.
+     */
+    static final class StructureDevices {
+        final ArrayList<DataSnapshot> mThermostats = new ArrayList<>();
+        final ArrayList<DataSnapshot> mSmokeCOAlarms = new ArrayList<>();
+        final ArrayList<DataSnapshot> mCameras = new ArrayList<>();
+    }
+
+    /**
+     * The raw device values and sequence of the update last delivered for a structure.
+     */
+    private static final class Delivered {
+        final List<List<Object>> mValues;
+        final long mSequence;
+
+        Delivered(List<List<Object>> values, long sequence) {
+            mValues = values;
+            mSequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ShardedExecutor runs tasks on a fixed pool of serial executors, choosing the executor by a key.
+ * Tasks with the same key run one at a time in the order they were submitted; tasks with
+ * different keys usually run in parallel.
+ * <p>
+ * Used with {@link NestAPI#addDeviceListener(NestListener.StructureDeviceListener,
+ * ShardedExecutor)} to deliver each structure's updates in order, without a slow structure
+ * holding up the others.
+ */
+public final class ShardedExecutor {
+    private final ExecutorService[] mShards;
+
+    /**
+     * Creates a ShardedExecutor with one shard per available processor.
+     */
+    public ShardedExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a ShardedExecutor with the given number of shards, each with its own thread.
+     *
+     * @param shards the number of shards.
+     */
+    public ShardedExecutor(int shards) {
+        this(newShards(shards));
+    }
+
+    ShardedExecutor(@NonNull ExecutorService[] shards) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("A ShardedExecutor needs at least one shard.");
+        }
+        mShards = shards;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards.
+     */
+    public int getShardCount() {
+        return mShards.length;
+    }
+
+    /**
+     * Runs a task on the shard for a key, after every task already submitted with that key.
+     *
+     * @param key  the key choosing the shard, such as a structure id.
+     * @param task the task to run.
+     */
+    public void execute(@NonNull String key, @NonNull Runnable task) {
+        mShards[shardOf(key)].execute(task);
+    }
+
+    /**
+     * Stops the shards' threads once every submitted task has run.
+     */
+    public void shutdown() {
+        for (ExecutorService shard : mShards) {
+            shard.shutdown();
+        }
+    }
+
+    int shardOf(@NonNull String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % mShards.length;
+    }
+
+    private static ExecutorService[] newShards(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("A ShardedExecutor needs at least one shard.");
+        }
+        ExecutorService[] shards = new ExecutorService[count];
+        for (int i = 0; i < count; i++) {
+            final String name = "NestShard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return shards;
+    }
+}
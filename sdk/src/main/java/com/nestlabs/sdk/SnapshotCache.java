@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * SnapshotCache remembers, for each object a listener decoded, the raw values it was decoded from
+ * and their hash. An object whose values come back unchanged, as they do on reconnects and when a
+ * sibling changes, is reused instead of being decoded again. The hash rejects changed objects
+ * cheaply; equal hashes are confirmed by comparing the values, so a collision never hides a
+ * change.
+ * <p>
+ * A cache belongs to one listener and isn't thread-safe. Between {@link #begin()} calls it records
+ * whether anything it decoded changed, so the listener can skip delivering an update that carries
+ * nothing new. Objects read with {@link #readChildren(String, DataSnapshot, Class)} are compared
+ * right away but only converted the first time they're requested, which may be on another
+ * thread; the conversion of each object is synchronized.
+ */
+final class SnapshotCache {
+
+    private final ListenerContext mContext;
+    private LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>();
+    private final HashMap<String, LinkedHashMap<String, Entry>> mCollections = new HashMap<>();
+    private boolean mUsed;
+    private boolean mChanged;
+
+    private static final class Entry {
+        final int mHash;
+        final Object mValues;
+        private final Class<?> mType;
+        private final Set<String> mProjection;
+        private Object mModel;
+
+        Entry(int hash, Object values, Class<?> type, Set<String> projection) {
+            mHash = hash;
+            mValues = values;
+            mType = type;
+            mProjection = projection;
+        }
+
+        synchronized Object model() {
+            if (mModel == null) {
+                mModel = Utils.convert(mValues, mType, mProjection);
+            }
+            return mModel;
+        }
+    }
+
+    /**
+     * Objects read and compared by a cache, converted to model objects the first time they're
+     * requested. Objects that were unchanged are the ones converted for an earlier update.
+     *
+     * @param <T> the type of object.
+     */
+    static final class Pending<T> {
+        private final Class<T> mType;
+        private final ArrayList<Entry> mEntries;
+
+        private Pending(Class<T> type, ArrayList<Entry> entries) {
+            mType = type;
+            mEntries = entries;
+        }
+
+        /**
+         * Returns the objects, converting those that changed.
+         */
+        ArrayList<T> get() {
+            ArrayList<T> objects = new ArrayList<>(mEntries.size());
+            for (Entry entry : mEntries) {
+                objects.add(mType.cast(entry.model()));
+            }
+            return objects;
+        }
+    }
+
+    /**
+     * Creates a cache that counts the objects it decodes and reuses in the {@link DecodeMetrics}
+     * of a context.
+     */
+    SnapshotCache(@NonNull ListenerContext context) {
+        mContext = context;
+    }
+
+    /**
+     * Starts a new update: forgets whether anything changed.
+     */
+    void begin() {
+        mUsed = false;
+        mChanged = false;
+    }
+
+    /**
+     * Returns true if this cache was used since {@link #begin()}. A child listener that received
+     * no child events since then hasn't used it.
+     */
+    boolean isUsed() {
+        return mUsed;
+    }
+
+    /**
+     * Returns true if this cache was used since {@link #begin()} and nothing it decoded or removed
+     * changed.
+     */
+    boolean isUnchanged() {
+        return mUsed && !mChanged;
+    }
+
+    /**
+     * Decodes a snapshot of a single object, reusing the object decoded from the last snapshot with
+     * the same name if its values are the same.
+     *
+     * @param snapshot   the snapshot of a single object.
+     * @param type       the model class to decode into.
+     * @param projection the keys to decode, or null to decode every field.
+     * @return the decoded or reused object.
+     */
+    <T> T decode(@NonNull DataSnapshot snapshot, @NonNull Class<T> type, Set<String> projection) {
+        mUsed = true;
+        String key = snapshot.getName();
+        Entry entry = lookup(mEntries.get(key), snapshot, type, projection);
+        mEntries.put(key, entry);
+        return type.cast(entry.model());
+    }
+
+    /**
+     * Decodes every child of a snapshot, reusing unchanged objects. Objects that are no longer
+     * children are forgotten.
+     *
+     * @param snapshot   the snapshot whose children to decode, or null if there are none.
+     * @param type       the model class to decode into.
+     * @param projection the keys to decode, or null to decode every field.
+     * @return the decoded or reused objects, in snapshot order.
+     */
+    <T> ArrayList<T> decodeChildren(DataSnapshot snapshot, @NonNull Class<T> type,
+            Set<String> projection) {
+        ArrayList<Entry> read = new ArrayList<>();
+        mEntries = readChildren(mEntries, snapshot, type, projection, read);
+        return new Pending<>(type, read).get();
+    }
+
+    /**
+     * Reads and compares every child of a snapshot with the children last read into the same
+     * collection, leaving the changed ones to be converted when requested. Collections are kept
+     * apart from each other and from {@link #decodeChildren(DataSnapshot, Class, Set)}, so one
+     * cache can serve a listener receiving several of them.
+     *
+     * @param collection the name of the collection, such as "thermostats".
+     * @param snapshot   the snapshot whose children to read, or null if there are none.
+     * @param type       the model class to convert into.
+     * @return the objects, in snapshot order.
+     */
+    <T> Pending<T> readChildren(@NonNull String collection, DataSnapshot snapshot,
+            @NonNull Class<T> type) {
+        ArrayList<Entry> read = new ArrayList<>();
+        mCollections.put(collection,
+                readChildren(mCollections.get(collection), snapshot, type, null, read));
+        return new Pending<>(type, read);
+    }
+
+    /**
+     * Reads and compares a snapshot of a single object with the one last read into the same
+     * collection, leaving it to be converted when requested.
+     *
+     * @param collection the name of the collection, such as "metadata".
+     * @param snapshot   the snapshot of the object, or null if there is none.
+     * @param type       the model class to convert into.
+     * @return the object, or no object if the snapshot is null.
+     */
+    <T> Pending<T> read(@NonNull String collection, DataSnapshot snapshot,
+            @NonNull Class<T> type) {
+        mUsed = true;
+        LinkedHashMap<String, Entry> previous = mCollections.get(collection);
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+        Entry entry = previous == null ? null : previous.get(collection);
+        if (snapshot != null) {
+            entries.put(collection, lookup(entry, snapshot, type, null));
+        } else if (entry != null) {
+            mChanged = true;
+        }
+        mCollections.put(collection, entries);
+        return new Pending<>(type, new ArrayList<>(entries.values()));
+    }
+
+    /**
+     * Forgets an object that was removed.
+     */
+    void remove(String key) {
+        mUsed = true;
+        if (mEntries.remove(key) != null) {
+            mChanged = true;
+        }
+    }
+
+    /**
+     * Reads every child of a snapshot, adding its entry to {@code read} in snapshot order, and
+     * returns the entries by name to compare the next snapshot with.
+     */
+    private LinkedHashMap<String, Entry> readChildren(LinkedHashMap<String, Entry> previous,
+            DataSnapshot snapshot, Class<?> type, Set<String> projection, ArrayList<Entry> read) {
+        mUsed = true;
+        if (previous == null) {
+            previous = new LinkedHashMap<>();
+        }
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+        if (snapshot != null) {
+            for (DataSnapshot child : snapshot.getChildren()) {
+                String key = child.getName();
+                Entry entry = lookup(previous.get(key), child, type, projection);
+                entries.put(key, entry);
+                read.add(entry);
+            }
+        }
+        if (!mChanged && !sameKeys(entries, previous)) {
+            mChanged = true;
+        }
+        return entries;
+    }
+
+    private Entry lookup(Entry entry, DataSnapshot snapshot, Class<?> type,
+            Set<String> projection) {
+        Object values = Utils.values(snapshot, projection);
+        int hash = values == null ? 0 : values.hashCode();
+        if (entry != null && entry.mHash == hash
+                && (values == null ? entry.mValues == null : values.equals(entry.mValues))) {
+            mContext.countObjects(0, 1);
+            return entry;
+        }
+        mChanged = true;
+        mContext.countObjects(1, 0);
+        return new Entry(hash, values, type, projection);
+    }
+
+    private static boolean sameKeys(LinkedHashMap<String, Entry> a,
+            LinkedHashMap<String, Entry> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        Iterator<String> other = b.keySet().iterator();
+        for (String key : a.keySet()) {
+            if (!key.equals(other.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
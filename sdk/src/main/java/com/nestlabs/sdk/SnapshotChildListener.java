@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.ChildEventListener;
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * SnapshotChildListener accepts a {@link NestListener} and the {@link SnapshotDecoder.ListRoute}
+ * for its path, and keeps the decoded collection at that path up to date from child events. Only
+ * the device or structure that was added, changed or removed is decoded, so a change to one
+ * object costs the same however many objects the account has. A changed child whose decoded
+ * values are the same as before, such as one whose change is outside the projection, is reused
+ * and doesn't cause a delivery.
+ * <p>
+ * It must be added to the same path as both a {@link ChildEventListener} and a {@link
+ * ValueEventListener}. Firebase raises the value event after all the child events of a change,
+ * so the collection is delivered once per change, not once per child.
+ * <p>
+ * The children are kept in a linked list indexed by key, so adding a child anywhere and removing
+ * any child, including the last, take constant time. Each delivery hands the route a read-only
+ * view of that list, which the route copies once into the type its listener receives.
+ *
+ * @param <L> the type of listener.
+ * @param <T> the type of object in the collection.
+ */
+class SnapshotChildListener<L extends NestListener, T> implements ChildEventListener,
+        ValueEventListener {
+
+    private final L mListener;
+    private final SnapshotDecoder.ListRoute<L, T> mRoute;
+    private final Set<String> mProjection;
+    private final ListenerContext mContext;
+    private final SnapshotCache mCache;
+    private final HashMap<String, Child<T>> mChildren = new HashMap<>();
+    private final Collection<T> mView = new ChildView();
+    private Child<T> mFirst;
+    private Child<T> mLast;
+    private long mReceivedNanos;
+    private long mSequence;
+    private boolean mDelivered;
+
+    /**
+     * Creates a listener that only decodes the given fields of each object.
+     *
+     * @param listener   the listener to deliver updates to.
+     * @param route      the route for the path listened to.
+     * @param projection the keys to decode, or null to decode every field.
+     * @param context    the context of the {@link NestAPI} the listener was added to.
+     */
+    SnapshotChildListener(@NonNull L listener, @NonNull SnapshotDecoder.ListRoute<L, T> route,
+            Set<String> projection, @NonNull ListenerContext context) {
+        mListener = listener;
+        mRoute = route;
+        mProjection = projection;
+        mContext = context;
+        mCache = new SnapshotCache(context);
+    }
+
+    @Override
+    public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
+        received();
+        insert(dataSnapshot.getName(), mRoute.decodeChild(dataSnapshot, mProjection, mCache),
+                previousChildName);
+    }
+
+    @Override
+    public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
+        received();
+        String key = dataSnapshot.getName();
+        T value = mRoute.decodeChild(dataSnapshot, mProjection, mCache);
+        Child<T> child = mChildren.get(key);
+        if (child != null) {
+            child.mValue = value;
+        } else {
+            insert(key, value, previousChildName);
+        }
+    }
+
+    @Override
+    public void onChildRemoved(DataSnapshot dataSnapshot) {
+        received();
+        String key = dataSnapshot.getName();
+        Child<T> child = mChildren.remove(key);
+        mCache.remove(key);
+        if (child != null) {
+            unlink(child);
+        }
+    }
+
+    @Override
+    public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
+        // Children are listened to in key order, which never changes.
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+        mContext.heartbeat();
+        mContext.markFirstByte();
+        long receivedNanos = mReceivedNanos != 0 ? mReceivedNanos : System.nanoTime();
+        mReceivedNanos = 0;
+        mContext.observe(this, mRoute.getPath(), dataSnapshot);
+        mContext.decoded(mListener, receivedNanos);
+        // No child event arrived, as when a listener is re-added, or the changed children decoded
+        // to the same values, as with a change to a field outside the projection.
+        boolean unchanged = !mCache.isUsed() || mCache.isUnchanged();
+        mCache.begin();
+        if (mDelivered && unchanged) {
+            mContext.countUpdate(true);
+            return;
+        }
+        mDelivered = true;
+        mContext.countUpdate(false);
+        mContext.markDecoded();
+        long start = mContext.begin();
+        mRoute.deliverChildren(mListener, mView, ++mSequence, receivedNanos);
+        mContext.end(mListener, start);
+        mContext.markDispatched();
+    }
+
+    @Override
+    public void onCancelled(FirebaseError firebaseError) {
+        mContext.reportError(firebaseError);
+        if (mListener instanceof NestPublisher.ErrorListener) {
+            ((NestPublisher.ErrorListener) mListener).onError(new NestException(
+                    firebaseError.getMessage(), firebaseError.toException()));
+        }
+    }
+
+    /**
+     * Returns the number of objects currently in the collection.
+     */
+    int size() {
+        return mChildren.size();
+    }
+
+    private void received() {
+        if (mReceivedNanos == 0) {
+            mContext.markFirstByte();
+            mReceivedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Adds a child after the child named {@code previousChildName}, first if that is null, or last
+     * if that child isn't known.
+     */
+    private void insert(String key, T value, String previousChildName) {
+        Child<T> existing = mChildren.get(key);
+        if (existing != null) {
+            existing.mValue = value;
+            return;
+        }
+
+        Child<T> previous = previousChildName == null ? null : mChildren.get(previousChildName);
+        if (previousChildName != null && previous == null) {
+            previous = mLast;
+        }
+
+        Child<T> child = new Child<>(value);
+        child.mPrevious = previous;
+        child.mNext = previous == null ? mFirst : previous.mNext;
+        if (child.mNext == null) {
+            mLast = child;
+        } else {
+            child.mNext.mPrevious = child;
+        }
+        if (previous == null) {
+            mFirst = child;
+        } else {
+            previous.mNext = child;
+        }
+        mChildren.put(key, child);
+    }
+
+    private void unlink(Child<T> child) {
+        if (child.mPrevious == null) {
+            mFirst = child.mNext;
+        } else {
+            child.mPrevious.mNext = child.mNext;
+        }
+        if (child.mNext == null) {
+            mLast = child.mPrevious;
+        } else {
+            child.mNext.mPrevious = child.mPrevious;
+        }
+    }
+
+    /**
+     * A child in the linked list of children.
+     */
+    private static final class Child<T> {
+        T mValue;
+        Child<T> mPrevious;
+        Child<T> mNext;
+
+        Child(T value) {
+            mValue = value;
+        }
+    }
+
+    /**
+     * A read-only view of the children, in order.
+     */
+    private final class ChildView extends AbstractCollection<T> {
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private Child<T> mCursor = mFirst;
+
+                @Override
+                public boolean hasNext() {
+                    return mCursor != null;
+                }
+
+                @Override
+                public T next() {
+                    if (mCursor == null) {
+                        throw new NoSuchElementException();
+                    }
+                    T value = mCursor.mValue;
+                    mCursor = mCursor.mNext;
+                    return value;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return mChildren.size();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SnapshotDecoder is the table that {@link SnapshotValueListener} decodes snapshots with. The last
+ * segment of a path, such as "thermostats", maps to the model type stored under it, and each kind
+ * of listener has a {@link Route} that decodes the snapshots at its path and delivers them.
+ * <p>
+ * Every route reads through the listener's {@link SnapshotCache}, so all listeners share one
+ * decoding path and one set of cached Jackson deserializers, and every listener reuses the
+ * objects that didn't change since its last update. A new device type plugs in
+ * with a {@link #registerModel(String, Class)} and a {@link ListRoute}, without another listener
+ * class.
+ */
+final class SnapshotDecoder {
+    private static final Map<String, Class<?>> MODELS = new HashMap<>();
+
+    static {
+        registerModel(NestAPI.KEY_THERMOSTATS, Thermostat.class);
+        registerModel(NestAPI.KEY_SMOKE_CO_ALARMS, SmokeCOAlarm.class);
+        registerModel(NestAPI.KEY_CAMERAS, Camera.class);
+        registerModel(NestAPI.KEY_STRUCTURES, Structure.class);
+        registerModel(NestAPI.KEY_METADATA, Metadata.class);
+    }
+
+    static final Route<NestListener.GlobalListener, GlobalUpdate> GLOBAL =
+            new Route<NestListener.GlobalListener, GlobalUpdate>() {
+                @Override
+                GlobalUpdate decode(DataSnapshot snapshot, Set<String> projection,
+                        SnapshotCache cache) {
+                    return GlobalUpdate.read(snapshot, cache);
+                }
+
+                @Override
+                void deliver(NestListener.GlobalListener listener, GlobalUpdate update) {
+                    listener.onUpdate(update);
+                }
+
+                @Override
+                void deliver(NestListener.GlobalListener listener, GlobalUpdate update,
+                        long sequence, long receivedNanos) {
+                    update.stamp(sequence, receivedNanos);
+                    listener.onUpdate(update);
+                }
+            };
+
+    static final Route<NestListener.DeviceListener, DeviceUpdate> DEVICES =
+            new Route<NestListener.DeviceListener, DeviceUpdate>(NestAPI.KEY_DEVICES) {
+                @Override
+                DeviceUpdate decode(DataSnapshot snapshot, Set<String> projection,
+                        SnapshotCache cache) {
+                    return DeviceUpdate.read(snapshot, cache);
+                }
+
+                @Override
+                void deliver(NestListener.DeviceListener listener, DeviceUpdate update) {
+                    listener.onUpdate(update);
+                }
+
+                @Override
+                void deliver(NestListener.DeviceListener listener, DeviceUpdate update,
+                        long sequence, long receivedNanos) {
+                    update.stamp(sequence, receivedNanos);
+                    listener.onUpdate(update);
+                }
+            };
+
+    static final ListRoute<NestListener.ThermostatListener, Thermostat> THERMOSTATS =
+            new ListRoute<NestListener.ThermostatListener, Thermostat>(
+                    NestAPI.KEY_DEVICES, NestAPI.KEY_THERMOSTATS) {
+                @Override
+                void deliver(NestListener.ThermostatListener listener,
+                        ArrayList<Thermostat> thermostats) {
+                    listener.onUpdate(thermostats);
+                }
+            };
+
+    static final ListRoute<NestListener.SmokeCOAlarmListener, SmokeCOAlarm> SMOKE_CO_ALARMS =
+            new ListRoute<NestListener.SmokeCOAlarmListener, SmokeCOAlarm>(
+                    NestAPI.KEY_DEVICES, NestAPI.KEY_SMOKE_CO_ALARMS) {
+                @Override
+                void deliver(NestListener.SmokeCOAlarmListener listener,
+                        ArrayList<SmokeCOAlarm> smokeCOAlarms) {
+                    listener.onUpdate(smokeCOAlarms);
+                }
+            };
+
+    static final ListRoute<NestListener.CameraListener, Camera> CAMERAS =
+            new ListRoute<NestListener.CameraListener, Camera>(
+                    NestAPI.KEY_DEVICES, NestAPI.KEY_CAMERAS) {
+                @Override
+                void deliver(NestListener.CameraListener listener, ArrayList<Camera> cameras) {
+                    listener.onUpdate(cameras);
+                }
+            };
+
+    static final ListRoute<NestListener.StructureListener, Structure> STRUCTURES =
+            new ListRoute<NestListener.StructureListener, Structure>(
+                    NestAPI.KEY_STRUCTURES) {
+                @Override
+                void deliver(NestListener.StructureListener listener,
+                        ArrayList<Structure> structures) {
+                    listener.onUpdate(structures);
+                }
+            };
+
+    static final Route<NestListener.MetadataListener, Metadata> METADATA =
+            new Route<NestListener.MetadataListener, Metadata>(NestAPI.KEY_METADATA) {
+                @Override
+                Metadata decode(DataSnapshot snapshot, Set<String> projection,
+                        SnapshotCache cache) {
+                    return cache.decode(snapshot, Metadata.class, null);
+                }
+
+                @Override
+                void deliver(NestListener.MetadataListener listener, Metadata metadata) {
+                    listener.onUpdate(metadata);
+                }
+            };
+
+    private static final ListRoute<?, ?>[] LIST_ROUTES =
+            {THERMOSTATS, SMOKE_CO_ALARMS, CAMERAS, STRUCTURES};
+
+    private SnapshotDecoder() {
+    }
+
+    /**
+     * Decodes the snapshot at a path and delivers the result to a listener.
+     *
+     * @param <L> the type of listener.
+     * @param <T> the type of value the listener receives.
+     */
+    abstract static class Route<L extends NestListener, T> {
+        private final String[] mSegments;
+        private final String mPath;
+
+        Route(String... segments) {
+            mSegments = segments;
+            Utils.PathBuilder builder = new Utils.PathBuilder();
+            for (String segment : segments) {
+                builder.append(segment);
+            }
+            mPath = segments.length == 0 ? "/" : builder.build();
+        }
+
+        /**
+         * Returns the path listened to, such as "/devices/thermostats", or "/" for the root.
+         */
+        String getPath() {
+            return mPath;
+        }
+
+        /**
+         * Returns the segments of the path listened to, empty for the root.
+         */
+        String[] getSegments() {
+            return mSegments.clone();
+        }
+
+        /**
+         * Returns the model type stored under the last segment of the path, or null if there is
+         * none.
+         */
+        Class<?> getModel() {
+            return mSegments.length == 0 ? null : modelFor(mSegments[mSegments.length - 1]);
+        }
+
+        /**
+         * Decodes a snapshot at this route's path through {@code cache}, so unchanged objects are
+         * reused.
+         */
+        abstract T decode(DataSnapshot snapshot, Set<String> projection, SnapshotCache cache);
+
+        abstract void deliver(L listener, T value);
+
+        /**
+         * Delivers a decoded value as the update with the given sequence number. Routes whose
+         * value carries a sequence number and timing, such as {@link GlobalUpdate}, stamp it here,
+         * once it's known the value will be delivered; the others ignore them.
+         *
+         * @param sequence      the sequence number of the update, counted per listener.
+         * @param receivedNanos the time the snapshot was received, from {@link System#nanoTime()}.
+         */
+        void deliver(L listener, T value, long sequence, long receivedNanos) {
+            deliver(listener, value);
+        }
+    }
+
+    /**
+     * A route that decodes every child of its snapshot into the model type registered for the
+     * last segment of its path.
+     */
+    abstract static class ListRoute<L extends NestListener, T> extends Route<L, ArrayList<T>> {
+        private final Class<T> mType;
+
+        @SuppressWarnings("unchecked")
+        ListRoute(String... segments) {
+            super(segments);
+            mType = (Class<T>) getModel();
+            if (mType == null) {
+                throw new IllegalArgumentException("No model for " + getPath());
+            }
+        }
+
+        @Override
+        ArrayList<T> decode(DataSnapshot snapshot, Set<String> projection, SnapshotCache cache) {
+            return cache.decodeChildren(snapshot, mType, projection);
+        }
+
+        /**
+         * Decodes a single child of the snapshot at this route's path.
+         */
+        T decodeChild(DataSnapshot child, Set<String> projection, SnapshotCache cache) {
+            return cache.decode(child, mType, projection);
+        }
+
+        /**
+         * Delivers a read-only view of a collection kept up to date from child events. The view
+         * changes with later events, so it's copied once, into the type the listener receives.
+         *
+         * @param sequence      the sequence number of the update, counted per listener.
+         * @param receivedNanos the time the snapshot was received, from {@link System#nanoTime()}.
+         */
+        void deliverChildren(L listener, Collection<T> children, long sequence,
+                long receivedNanos) {
+            deliver(listener, new ArrayList<>(children), sequence, receivedNanos);
+        }
+    }
+
+    /**
+     * A route that delivers the objects at the path of another list route to a {@link
+     * NestListener.ListListener}, as a {@link NestList} stamped with the update's sequence number
+     * and timing.
+     */
+    static final class StampedListRoute<T> extends ListRoute<NestListener.ListListener<T>, T> {
+
+        StampedListRoute(String... segments) {
+            super(segments);
+        }
+
+        @Override
+        void deliver(NestListener.ListListener<T> listener, ArrayList<T> objects) {
+            listener.onUpdate(NestList.copyOf(objects));
+        }
+
+        @Override
+        void deliver(NestListener.ListListener<T> listener, ArrayList<T> objects, long sequence,
+                long receivedNanos) {
+            listener.onUpdate(NestList.copyOf(objects, sequence, receivedNanos, System.nanoTime()));
+        }
+
+        @Override
+        void deliverChildren(NestListener.ListListener<T> listener, Collection<T> children,
+                long sequence, long receivedNanos) {
+            listener.onUpdate(NestList.copyOf(children, sequence, receivedNanos,
+                    System.nanoTime()));
+        }
+    }
+
+    /**
+     * Returns a route delivering every object of a type as a stamped {@link NestList}.
+     *
+     * @param type the model type, such as {@link Thermostat}.
+     * @throws IllegalArgumentException if no list route decodes the type.
+     */
+    static <T> StampedListRoute<T> stampedListRoute(@NonNull Class<T> type) {
+        for (ListRoute<?, ?> route : LIST_ROUTES) {
+            if (type.equals(route.getModel())) {
+                return new StampedListRoute<>(route.getSegments());
+            }
+        }
+        throw new IllegalArgumentException("No list of " + type.getSimpleName());
+    }
+
+    /**
+     * Maps a path segment to the model type stored under it.
+     */
+    static synchronized void registerModel(@NonNull String segment, @NonNull Class<?> type) {
+        MODELS.put(segment, type);
+    }
+
+    static synchronized Class<?> modelFor(@NonNull String segment) {
+        return MODELS.get(segment);
+    }
+}
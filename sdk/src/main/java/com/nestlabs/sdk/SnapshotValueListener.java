@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.Set;
+
+/**
+ * SnapshotValueListener accepts a {@link NestListener} and the {@link SnapshotDecoder.Route} for
+ * its path, and delivers the decoded value of every snapshot this listener receives from Nest.
+ * Unchanged objects are reused from the last snapshot through a {@link SnapshotCache}, and a
+ * snapshot in which nothing decoded changed isn't delivered again.
+ *
+ * @param <L> the type of listener.
+ * @param <T> the type of value the listener receives.
+ */
+class SnapshotValueListener<L extends NestListener, T> implements ValueEventListener {
+
+    private final L mListener;
+    private final SnapshotDecoder.Route<L, T> mRoute;
+    private final Set<String> mProjection;
+    private final ListenerContext mContext;
+    private final SnapshotCache mCache;
+    private long mSequence;
+    private boolean mDelivered;
+
+    SnapshotValueListener(@NonNull L listener, @NonNull SnapshotDecoder.Route<L, T> route,
+            @NonNull ListenerContext context) {
+        this(listener, route, null, context);
+    }
+
+    /**
+     * Creates a listener that only decodes the given fields of each object.
+     *
+     * @param listener   the listener to deliver updates to.
+     * @param route      the route for the path listened to.
+     * @param projection the keys to decode, or null to decode every field.
+     * @param context    the context of the {@link NestAPI} the listener was added to.
+     */
+    SnapshotValueListener(@NonNull L listener, @NonNull SnapshotDecoder.Route<L, T> route,
+            Set<String> projection, @NonNull ListenerContext context) {
+        mListener = listener;
+        mRoute = route;
+        mProjection = projection;
+        mContext = context;
+        mCache = new SnapshotCache(context);
+    }
+
+    /**
+     * Returns the route this listener decodes with.
+     */
+    SnapshotDecoder.Route<L, T> getRoute() {
+        return mRoute;
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+        mContext.heartbeat();
+        mContext.markFirstByte();
+        long receivedNanos = System.nanoTime();
+        mContext.observe(this, mRoute.getPath(), dataSnapshot);
+        mCache.begin();
+        T value = mRoute.decode(dataSnapshot, mProjection, mCache);
+        mContext.decoded(mListener, receivedNanos);
+        // Nothing the listener would receive has changed since the last update.
+        if (mDelivered && mCache.isUnchanged()) {
+            mContext.countUpdate(true);
+            return;
+        }
+        mDelivered = true;
+        mContext.countUpdate(false);
+        mContext.markDecoded();
+        long start = mContext.begin();
+        mRoute.deliver(mListener, value, ++mSequence, receivedNanos);
+        mContext.end(mListener, start);
+        mContext.markDispatched();
+    }
+
+    @Override
+    public void onCancelled(FirebaseError firebaseError) {
+        mContext.reportError(firebaseError);
+        if (mListener instanceof NestPublisher.ErrorListener) {
+            ((NestPublisher.ErrorListener) mListener).onError(new NestException(
+                    firebaseError.getMessage(), firebaseError.toException()));
+        }
+    }
+}
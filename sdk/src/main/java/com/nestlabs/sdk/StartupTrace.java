@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupTrace breaks down the time from the creation of the {@link NestAPI} to the first
+ * authenticated snapshot being delivered to a listener. Get it with {@link
+ * NestAPI#getStartupTrace()}.
+ * <p>
+ * Each {@link Phase} is recorded once. A phase that hasn't happened yet has a duration of -1.
+ */
+public final class StartupTrace {
+    private static final int MARK_CREATED = 0;
+    private static final int MARK_INIT_START = 1;
+    private static final int MARK_INIT_END = 2;
+    private static final int MARK_AUTH_START = 3;
+    private static final int MARK_AUTH_END = 4;
+    private static final int MARK_FIRST_BYTE = 5;
+    private static final int MARK_DECODED = 6;
+    private static final int MARK_DISPATCHED = 7;
+
+    /**
+     * The phases of startup, in order.
+     */
+    public enum Phase {
+        /** Setting up the connection: configuring Firebase and creating the root reference. */
+        INIT(MARK_INIT_START, MARK_INIT_END),
+        /** Authenticating with the access token. */
+        AUTH(MARK_AUTH_START, MARK_AUTH_END),
+        /** From authentication to the first snapshot arriving. */
+        FIRST_BYTE(MARK_AUTH_END, MARK_FIRST_BYTE),
+        /** Decoding the first snapshot. */
+        DECODE(MARK_FIRST_BYTE, MARK_DECODED),
+        /** Delivering the first update to its listener. */
+        DISPATCH(MARK_DECODED, MARK_DISPATCHED);
+
+        private final int mStart;
+        private final int mEnd;
+
+        Phase(int start, int end) {
+            mStart = start;
+            mEnd = end;
+        }
+    }
+
+    private final long[] mMarks = new long[MARK_DISPATCHED + 1];
+    private volatile boolean mComplete;
+    private long mWarmUpNanos = -1;
+
+    StartupTrace() {
+        mMarks[MARK_CREATED] = System.nanoTime();
+    }
+
+    void markInitStart() {
+        mark(MARK_INIT_START, MARK_CREATED);
+    }
+
+    void markInitEnd() {
+        mark(MARK_INIT_END, MARK_INIT_START);
+    }
+
+    void markAuthStart() {
+        mark(MARK_AUTH_START, MARK_CREATED);
+    }
+
+    /**
+     * Marks the end of authentication.
+     */
+    void markAuthenticated() {
+        mark(MARK_AUTH_END, MARK_AUTH_START);
+    }
+
+    /**
+     * Marks the arrival of a snapshot. Only the first snapshot after authentication is recorded.
+     */
+    void markFirstByte() {
+        if (!mComplete) {
+            mark(MARK_FIRST_BYTE, MARK_AUTH_END);
+        }
+    }
+
+    /**
+     * Marks the end of decoding the first snapshot.
+     */
+    void markDecoded() {
+        if (!mComplete) {
+            mark(MARK_DECODED, MARK_FIRST_BYTE);
+        }
+    }
+
+    /**
+     * Marks the end of dispatching the first update.
+     */
+    void markDispatched() {
+        if (!mComplete) {
+            mark(MARK_DISPATCHED, MARK_DECODED);
+        }
+    }
+
+    /**
+     * Records a mark, once, if the mark it follows has been recorded.
+     */
+    private synchronized void mark(int mark, int after) {
+        if (mMarks[mark] != 0 || mMarks[after] == 0) {
+            return;
+        }
+        mMarks[mark] = System.nanoTime();
+        if (mark == MARK_DISPATCHED) {
+            mComplete = true;
+        }
+    }
+
+    /**
+     * Returns whether the first authenticated update has been delivered.
+     *
+     * @return true if every phase has been recorded.
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Returns how long a phase took.
+     *
+     * @param phase the {@link Phase} to return.
+     * @param unit  the {@link TimeUnit} of the result.
+     * @return the duration of the phase, or -1 if it hasn't happened yet.
+     */
+    public synchronized long getDuration(@NonNull Phase phase, @NonNull TimeUnit unit) {
+        return between(phase.mStart, phase.mEnd, unit);
+    }
+
+    /**
+     * Returns the time from the creation of the {@link NestAPI} to the first authenticated update
+     * being delivered.
+     *
+     * @param unit the {@link TimeUnit} of the result.
+     * @return the total startup time, or -1 if startup hasn't completed.
+     */
+    public synchronized long getTotal(@NonNull TimeUnit unit) {
+        return between(MARK_CREATED, MARK_DISPATCHED, unit);
+    }
+
+    /**
+     * Returns how long {@link NestAPI#warmUp(java.util.concurrent.Executor)} took.
+     *
+     * @param unit the {@link TimeUnit} of the result.
+     * @return the duration of the warm-up, or -1 if it hasn't completed.
+     */
+    public synchronized long getWarmUp(@NonNull TimeUnit unit) {
+        return mWarmUpNanos < 0 ? -1 : unit.convert(mWarmUpNanos, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized void setWarmUpNanos(long warmUpNanos) {
+        mWarmUpNanos = warmUpNanos;
+    }
+
+    private long between(int start, int end, TimeUnit unit) {
+        if (mMarks[start] == 0 || mMarks[end] == 0) {
+            return -1;
+        }
+        return unit.convert(mMarks[end] - mMarks[start], TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("StartupTrace{");
+        for (Phase phase : Phase.values()) {
+            builder.append(phase.name().toLowerCase(Locale.US)).append('=')
+                    .append(getDuration(phase, TimeUnit.MILLISECONDS)).append("ms, ");
+        }
+        return builder.append("total=").append(getTotal(TimeUnit.MILLISECONDS))
+                .append("ms, warm_up=").append(getWarmUp(TimeUnit.MILLISECONDS)).append("ms}")
+                .toString();
+    }
+}
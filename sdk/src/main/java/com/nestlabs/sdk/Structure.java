@@ -20,11 +20,13 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.Set;
 
 /**
  * Structure represents and contains all properties of a Nest structure.
@@ -89,6 +91,10 @@ public final class Structure implements Parcelable {
     @JsonProperty(KEY_RHR_ENROLLMENT)
     private boolean mRhrEnrollment;
 
+    // The projected keys this object was decoded with, or null if every field was decoded.
+    @JsonIgnore
+    Set<String> mProjection;
+
     @JsonProperty(KEY_WHERES)
     private LinkedHashMap<String, Where> mWheres;
 
@@ -112,6 +118,19 @@ public final class Structure implements Parcelable {
         mRhrEnrollment = Utils.readBoolean(in);
         mWheres = new LinkedHashMap<>();
         in.readMap(mWheres, LinkedHashMap.class.getClassLoader());
+        mProjection = Utils.readProjection(in);
+    }
+
+    /**
+     * Returns whether the value of a field was decoded. Objects delivered to a listener added with
+     * a projection only carry the projected fields; the getters of all other fields return null, 0
+     * or false regardless of the actual value.
+     *
+     * @param key the key of the field, such as {@link #KEY_NAME}.
+     * @return true if the getter of the field returns its actual value, false otherwise.
+     */
+    public boolean isAvailable(String key) {
+        return mProjection == null || mProjection.contains(key);
     }
 
     /**
@@ -310,6 +329,7 @@ public final class Structure implements Parcelable {
         dest.writeParcelable(mEta, flags);
         Utils.writeBoolean(dest, mRhrEnrollment);
         dest.writeMap(mWheres);
+        Utils.writeProjection(dest, mProjection);
     }
 
     /**
@@ -25,7 +25,7 @@ import com.firebase.client.Firebase;
  */
 public class StructureSetter {
 
-    private final Firebase mFirebaseRef;
+    private final NestWriter mWriter;
 
     private static String getPath(@NonNull String structureId, @NonNull String attribute) {
         return new Utils.PathBuilder()
@@ -35,7 +35,11 @@ public class StructureSetter {
     }
 
     public StructureSetter(final Firebase firebaseRef) {
-        mFirebaseRef = firebaseRef;
+        this(new NestWriter(firebaseRef));
+    }
+
+    StructureSetter(@NonNull NestWriter writer) {
+        mWriter = writer;
     }
 
     /**
@@ -48,7 +52,21 @@ public class StructureSetter {
      */
     public void setAway(@NonNull String structureId, String awayState) {
         String path = getPath(structureId, Structure.KEY_AWAY);
-        mFirebaseRef.child(path).setValue(awayState);
+        mWriter.setValue(path, awayState);
+    }
+
+    /**
+     * Sets the state of the structure. In order for a structure to be in the Auto-Away state, all
+     * devices must also be in Auto-Away state. When any device leaves the Auto-Away state, then the
+     * structure also leaves the Auto-Away state.
+     *
+     * @param structureId The unique identifier for the {@link Structure}.
+     * @param awayState   The state of the structure. Values can be "home", "away", or "auto-away".
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setAwayAsync(@NonNull String structureId, String awayState) {
+        String path = getPath(structureId, Structure.KEY_AWAY);
+        return mWriter.setValueAsync(path, awayState);
     }
 
     /**
@@ -62,7 +80,7 @@ public class StructureSetter {
      */
     public void setAway(@NonNull String structureId, String awayState, @NonNull Callback callback) {
         String path = getPath(structureId, Structure.KEY_AWAY);
-        mFirebaseRef.child(path).setValue(awayState, new NestCompletionListener(callback));
+        mWriter.setValue(path, awayState, new NestCompletionListener(callback));
     }
 
     /**
@@ -74,7 +92,20 @@ public class StructureSetter {
      */
     public void setEta(@NonNull String structureId, Structure.ETA eta) {
         String path = getPath(structureId, Structure.KEY_ETA);
-        mFirebaseRef.child(path).setValue(eta.toString());
+        mWriter.setValue(path, eta.toString());
+    }
+
+    /**
+     * Sets the ETA on a structure. It is used to let Nest know that a user is expected to return
+     * home at a specific time.
+     *
+     * @param structureId The unique identifier for the {@link Structure}.
+     * @param eta         The {@link Structure.ETA} object containing the ETA values.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setEtaAsync(@NonNull String structureId, Structure.ETA eta) {
+        String path = getPath(structureId, Structure.KEY_ETA);
+        return mWriter.setValueAsync(path, eta.toString());
     }
 
     /**
@@ -87,6 +118,6 @@ public class StructureSetter {
      */
     public void setEta(@NonNull String structureId, Structure.ETA eta, @NonNull Callback callback) {
         String path = getPath(structureId, Structure.KEY_ETA);
-        mFirebaseRef.child(path).setValue(eta.toString(), new NestCompletionListener(callback));
+        mWriter.setValue(path, eta.toString(), new NestCompletionListener(callback));
     }
 }
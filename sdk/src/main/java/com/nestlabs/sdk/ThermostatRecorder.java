@@ -0,0 +1,463 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * ThermostatRecorder samples numeric {@link Thermostat} fields on every update and keeps them per
+ * device in fixed-size primitive ring buffers, so memory use stays constant however long the app
+ * runs. Alongside the raw samples it keeps any number of downsampled tiers, each storing the min,
+ * max and average of every field per time bucket.
+ * <p>
+ * Register a ThermostatRecorder with {@link
+ * NestAPI#addThermostatListener(NestListener.ThermostatListener)}. Read samples back with {@link
+ * #read(String, String, long[], float[])} and {@link #readTier(String, String, int, long[],
+ * float[], float[], float[])}, which copy into caller-owned arrays. The samples of a thermostat
+ * that leaves the account are dropped with the first update it's missing from.
+ * <p>
+ * Supported fields are {@link Thermostat#KEY_AMBIENT_TEMP_C}, {@link
+ * Thermostat#KEY_AMBIENT_TEMP_F}, {@link Thermostat#KEY_HUMIDITY}, {@link
+ * Thermostat#KEY_HVAC_STATE} (recorded as {@link #HVAC_STATE_OFF}, {@link #HVAC_STATE_HEATING} or
+ * {@link #HVAC_STATE_COOLING}) and the {@code target_temperature_*} fields.
+ */
+public final class ThermostatRecorder implements NestListener.ThermostatListener {
+    public static final float HVAC_STATE_OFF = 0;
+    public static final float HVAC_STATE_HEATING = 1;
+    public static final float HVAC_STATE_COOLING = 2;
+
+    private static final String HVAC_STATE_HEATING_VALUE = "heating";
+    private static final String HVAC_STATE_COOLING_VALUE = "cooling";
+
+    private final String[] mFields;
+    private final int mCapacity;
+    private final long[] mTierDurationsMs;
+    private final int[] mTierCapacities;
+    private final int mMaxDevices;
+    private final HashMap<String, DeviceSeries> mSeries = new HashMap<>();
+    private long mGeneration;
+
+    private ThermostatRecorder(Builder builder) {
+        mFields = builder.mFields;
+        mCapacity = builder.mCapacity;
+        mMaxDevices = builder.mMaxDevices;
+        mTierDurationsMs = new long[builder.mTierDurationsMs.size()];
+        mTierCapacities = new int[builder.mTierCapacities.size()];
+        for (int i = 0; i < mTierDurationsMs.length; i++) {
+            mTierDurationsMs[i] = builder.mTierDurationsMs.get(i);
+            mTierCapacities[i] = builder.mTierCapacities.get(i);
+        }
+    }
+
+    @Override
+    public void onUpdate(@NonNull ArrayList<Thermostat> thermostats) {
+        record(thermostats, System.currentTimeMillis());
+    }
+
+    /**
+     * Records one sample for each thermostat, and drops the samples of thermostats that are no
+     * longer in the account before recording any new ones.
+     *
+     * @param thermostats every thermostat in the account.
+     * @param timeMs      the time of the sample, in milliseconds since the epoch.
+     */
+    synchronized void record(@NonNull ArrayList<Thermostat> thermostats, long timeMs) {
+        long generation = ++mGeneration;
+        for (Thermostat thermostat : thermostats) {
+            DeviceSeries series = mSeries.get(thermostat.getDeviceId());
+            if (series != null) {
+                series.mGeneration = generation;
+            }
+        }
+        Iterator<DeviceSeries> it = mSeries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().mGeneration != generation) {
+                it.remove();
+            }
+        }
+
+        for (Thermostat thermostat : thermostats) {
+            DeviceSeries series = mSeries.get(thermostat.getDeviceId());
+            if (series == null) {
+                if (mSeries.size() >= mMaxDevices) {
+                    continue;
+                }
+                series = new DeviceSeries();
+                series.mGeneration = generation;
+                mSeries.put(thermostat.getDeviceId(), series);
+            }
+            series.add(thermostat, timeMs);
+        }
+    }
+
+    /**
+     * Returns the number of raw samples currently held for a device.
+     *
+     * @param deviceId the device id of the thermostat.
+     * @return the number of raw samples held, or 0 if the device hasn't been recorded.
+     */
+    public synchronized int size(@NonNull String deviceId) {
+        DeviceSeries series = mSeries.get(deviceId);
+        return series == null ? 0 : series.mRaw.mSize;
+    }
+
+    /**
+     * Copies the raw samples of a field, oldest first, into the given arrays.
+     *
+     * @param deviceId the device id of the thermostat.
+     * @param field    one of the recorded field keys.
+     * @param timesMs  receives the sample times, in milliseconds since the epoch.
+     * @param values   receives the sample values.
+     * @return the number of samples copied, at most the length of the shorter array. The most
+     * recent samples are kept if the arrays are too short to hold all of them.
+     * @throws IllegalArgumentException if the field isn't recorded.
+     */
+    public synchronized int read(@NonNull String deviceId, @NonNull String field,
+            @NonNull long[] timesMs, @NonNull float[] values) {
+        int fieldIndex = indexOf(field);
+        DeviceSeries series = mSeries.get(deviceId);
+        if (series == null) {
+            return 0;
+        }
+
+        Ring raw = series.mRaw;
+        int count = Math.min(raw.mSize, Math.min(timesMs.length, values.length));
+        int start = raw.mSize - count;
+        for (int i = 0; i < count; i++) {
+            int slot = raw.slot(start + i);
+            timesMs[i] = raw.mTimes[slot];
+            values[i] = raw.mValues[fieldIndex][slot];
+        }
+        return count;
+    }
+
+    /**
+     * Copies the downsampled buckets of a field in one tier, oldest first, into the given arrays.
+     * The last bucket may still be filling.
+     *
+     * @param deviceId the device id of the thermostat.
+     * @param field    one of the recorded field keys.
+     * @param tier     the index of the tier, in the order tiers were added to the {@link Builder}.
+     * @param timesMs  receives the bucket start times, in milliseconds since the epoch.
+     * @param min      receives the minimum value per bucket.
+     * @param max      receives the maximum value per bucket.
+     * @param avg      receives the average value per bucket.
+     * @return the number of buckets copied, at most the length of the shortest array.
+     * @throws IllegalArgumentException if the field isn't recorded.
+     */
+    public synchronized int readTier(@NonNull String deviceId, @NonNull String field, int tier,
+            @NonNull long[] timesMs, @NonNull float[] min, @NonNull float[] max,
+            @NonNull float[] avg) {
+        int fieldIndex = indexOf(field);
+        DeviceSeries series = mSeries.get(deviceId);
+        if (series == null) {
+            return 0;
+        }
+
+        Tier t = series.mTiers[tier];
+        int total = t.mBuckets.mSize + (t.mCount > 0 ? 1 : 0);
+        int count = Math.min(total,
+                Math.min(timesMs.length, Math.min(min.length, Math.min(max.length, avg.length))));
+        int start = total - count;
+        for (int i = 0; i < count; i++) {
+            int index = start + i;
+            if (index < t.mBuckets.mSize) {
+                int slot = t.mBuckets.slot(index);
+                timesMs[i] = t.mBuckets.mTimes[slot];
+                min[i] = t.mMin[fieldIndex][slot];
+                max[i] = t.mMax[fieldIndex][slot];
+                avg[i] = t.mBuckets.mValues[fieldIndex][slot];
+            } else {
+                timesMs[i] = t.mBucketStartMs;
+                min[i] = t.mOpenMin[fieldIndex];
+                max[i] = t.mOpenMax[fieldIndex];
+                avg[i] = (float) (t.mOpenSum[fieldIndex] / t.mCount);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Discards all recorded samples.
+     */
+    public synchronized void clear() {
+        mSeries.clear();
+    }
+
+    private int indexOf(String field) {
+        for (int i = 0; i < mFields.length; i++) {
+            if (mFields[i].equals(field)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Field is not recorded: " + field);
+    }
+
+    private static boolean isSupported(String field) {
+        switch (field) {
+            case Thermostat.KEY_AMBIENT_TEMP_C:
+            case Thermostat.KEY_AMBIENT_TEMP_F:
+            case Thermostat.KEY_HUMIDITY:
+            case Thermostat.KEY_HVAC_STATE:
+            case Thermostat.KEY_TARGET_TEMP_C:
+            case Thermostat.KEY_TARGET_TEMP_F:
+            case Thermostat.KEY_TARGET_TEMP_HIGH_C:
+            case Thermostat.KEY_TARGET_TEMP_HIGH_F:
+            case Thermostat.KEY_TARGET_TEMP_LOW_C:
+            case Thermostat.KEY_TARGET_TEMP_LOW_F:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static float valueOf(Thermostat thermostat, String field) {
+        switch (field) {
+            case Thermostat.KEY_AMBIENT_TEMP_C:
+                return (float) thermostat.getAmbientTemperatureC();
+            case Thermostat.KEY_AMBIENT_TEMP_F:
+                return thermostat.getAmbientTemperatureF();
+            case Thermostat.KEY_HUMIDITY:
+                return thermostat.getHumidity();
+            case Thermostat.KEY_HVAC_STATE:
+                String state = thermostat.getHvacState();
+                if (HVAC_STATE_HEATING_VALUE.equals(state)) {
+                    return HVAC_STATE_HEATING;
+                } else if (HVAC_STATE_COOLING_VALUE.equals(state)) {
+                    return HVAC_STATE_COOLING;
+                }
+                return HVAC_STATE_OFF;
+            case Thermostat.KEY_TARGET_TEMP_C:
+                return (float) thermostat.getTargetTemperatureC();
+            case Thermostat.KEY_TARGET_TEMP_F:
+                return thermostat.getTargetTemperatureF();
+            case Thermostat.KEY_TARGET_TEMP_HIGH_C:
+                return (float) thermostat.getTargetTemperatureHighC();
+            case Thermostat.KEY_TARGET_TEMP_HIGH_F:
+                return thermostat.getTargetTemperatureHighF();
+            case Thermostat.KEY_TARGET_TEMP_LOW_C:
+                return (float) thermostat.getTargetTemperatureLowC();
+            case Thermostat.KEY_TARGET_TEMP_LOW_F:
+                return thermostat.getTargetTemperatureLowF();
+            default:
+                return Float.NaN;
+        }
+    }
+
+    /**
+     * A ring of timestamps with one parallel value array per field.
+     */
+    private static final class Ring {
+        final long[] mTimes;
+        final float[][] mValues;
+        int mHead;
+        int mSize;
+
+        Ring(int fields, int capacity) {
+            mTimes = new long[capacity];
+            mValues = new float[fields][capacity];
+        }
+
+        /**
+         * Claims the slot for a new entry, overwriting the oldest one when full.
+         */
+        int append(long timeMs) {
+            int slot = mHead;
+            mTimes[slot] = timeMs;
+            mHead = (mHead + 1) % mTimes.length;
+            if (mSize < mTimes.length) {
+                mSize++;
+            }
+            return slot;
+        }
+
+        /**
+         * Returns the slot of the {@code index}-th oldest entry.
+         */
+        int slot(int index) {
+            return (mHead - mSize + index + mTimes.length) % mTimes.length;
+        }
+    }
+
+    /**
+     * A downsampling tier. Completed buckets hold the average in the ring values and min/max in
+     * parallel arrays; the bucket being filled is kept separately.
+     */
+    private final class Tier {
+        final long mDurationMs;
+        final Ring mBuckets;
+        final float[][] mMin;
+        final float[][] mMax;
+        final float[] mOpenMin;
+        final float[] mOpenMax;
+        final double[] mOpenSum;
+        long mBucketStartMs;
+        int mCount;
+
+        Tier(long durationMs, int capacity) {
+            mDurationMs = durationMs;
+            mBuckets = new Ring(mFields.length, capacity);
+            mMin = new float[mFields.length][capacity];
+            mMax = new float[mFields.length][capacity];
+            mOpenMin = new float[mFields.length];
+            mOpenMax = new float[mFields.length];
+            mOpenSum = new double[mFields.length];
+        }
+
+        void add(long timeMs, float[] sample) {
+            long bucketStartMs = timeMs - (timeMs % mDurationMs);
+            if (mCount > 0 && bucketStartMs != mBucketStartMs) {
+                int slot = mBuckets.append(mBucketStartMs);
+                for (int f = 0; f < mFields.length; f++) {
+                    mMin[f][slot] = mOpenMin[f];
+                    mMax[f][slot] = mOpenMax[f];
+                    mBuckets.mValues[f][slot] = (float) (mOpenSum[f] / mCount);
+                }
+                mCount = 0;
+            }
+
+            if (mCount == 0) {
+                mBucketStartMs = bucketStartMs;
+                Arrays.fill(mOpenMin, Float.POSITIVE_INFINITY);
+                Arrays.fill(mOpenMax, Float.NEGATIVE_INFINITY);
+                Arrays.fill(mOpenSum, 0);
+            }
+            for (int f = 0; f < mFields.length; f++) {
+                mOpenMin[f] = Math.min(mOpenMin[f], sample[f]);
+                mOpenMax[f] = Math.max(mOpenMax[f], sample[f]);
+                mOpenSum[f] += sample[f];
+            }
+            mCount++;
+        }
+    }
+
+    /**
+     * The raw samples and tiers of one device.
+     */
+    private final class DeviceSeries {
+        final Ring mRaw;
+        final Tier[] mTiers;
+        final float[] mSample;
+        long mGeneration;
+
+        DeviceSeries() {
+            mRaw = new Ring(mFields.length, mCapacity);
+            mTiers = new Tier[mTierDurationsMs.length];
+            for (int i = 0; i < mTiers.length; i++) {
+                mTiers[i] = new Tier(mTierDurationsMs[i], mTierCapacities[i]);
+            }
+            mSample = new float[mFields.length];
+        }
+
+        void add(Thermostat thermostat, long timeMs) {
+            int slot = mRaw.append(timeMs);
+            for (int f = 0; f < mFields.length; f++) {
+                mSample[f] = valueOf(thermostat, mFields[f]);
+                mRaw.mValues[f][slot] = mSample[f];
+            }
+            for (Tier tier : mTiers) {
+                tier.add(timeMs, mSample);
+            }
+        }
+    }
+
+    /**
+     * Builder for creating a {@link ThermostatRecorder}.
+     */
+    public static final class Builder {
+        private String[] mFields = {Thermostat.KEY_AMBIENT_TEMP_C, Thermostat.KEY_HUMIDITY,
+                Thermostat.KEY_HVAC_STATE, Thermostat.KEY_TARGET_TEMP_C};
+        private int mCapacity = 256;
+        private int mMaxDevices = 64;
+        private final ArrayList<Long> mTierDurationsMs = new ArrayList<>();
+        private final ArrayList<Integer> mTierCapacities = new ArrayList<>();
+
+        /**
+         * Sets the fields to record. Defaults to ambient temperature (C), humidity, HVAC state and
+         * target temperature (C).
+         *
+         * @param fields the field keys to record.
+         * @return the {@link Builder} instance.
+         * @throws IllegalArgumentException if any field isn't supported.
+         */
+        public Builder fields(@NonNull String... fields) {
+            for (String field : fields) {
+                if (!isSupported(field)) {
+                    throw new IllegalArgumentException("Field is not supported: " + field);
+                }
+            }
+            mFields = fields.clone();
+            return this;
+        }
+
+        /**
+         * Sets the number of raw samples kept per device. Defaults to 256.
+         *
+         * @param capacity the number of raw samples kept per device.
+         * @return the {@link Builder} instance.
+         */
+        public Builder capacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be at least 1.");
+            }
+            mCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of devices recorded. Devices seen while the limit is reached are
+         * ignored until a recorded device leaves the account. Defaults to 64.
+         *
+         * @param maxDevices the maximum number of devices recorded.
+         * @return the {@link Builder} instance.
+         */
+        public Builder maxDevices(int maxDevices) {
+            mMaxDevices = maxDevices;
+            return this;
+        }
+
+        /**
+         * Adds a downsampling tier that keeps min/max/avg per bucket of the given duration.
+         *
+         * @param bucketDurationMs the duration of each bucket, in milliseconds.
+         * @param capacity         the number of completed buckets kept per device.
+         * @return the {@link Builder} instance.
+         */
+        public Builder tier(long bucketDurationMs, int capacity) {
+            if (bucketDurationMs < 1 || capacity < 1) {
+                throw new IllegalArgumentException("Tier duration and capacity must be positive.");
+            }
+            mTierDurationsMs.add(bucketDurationMs);
+            mTierCapacities.add(capacity);
+            return this;
+        }
+
+        /**
+         * Builds a {@link ThermostatRecorder}.
+         *
+         * @return a new {@link ThermostatRecorder}.
+         */
+        public ThermostatRecorder build() {
+            return new ThermostatRecorder(this);
+        }
+    }
+}
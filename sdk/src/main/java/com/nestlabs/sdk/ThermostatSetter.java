@@ -24,7 +24,7 @@ import com.firebase.client.Firebase;
  * ThermostatSetter provides methods for setting values on {@link Thermostat}s.
  */
 public final class ThermostatSetter {
-    private final Firebase mFirebaseRef;
+    private final NestWriter mWriter;
 
     private static String getPath(@NonNull String thermostatId, @NonNull String attribute) {
         return new Utils.PathBuilder()
@@ -35,7 +35,11 @@ public final class ThermostatSetter {
     }
 
     ThermostatSetter(final Firebase firebaseRef) {
-        mFirebaseRef = firebaseRef;
+        this(new NestWriter(firebaseRef));
+    }
+
+    ThermostatSetter(@NonNull NestWriter writer) {
+        mWriter = writer;
     }
 
     /**
@@ -49,7 +53,7 @@ public final class ThermostatSetter {
     public void setTargetTemperatureF(@NonNull String thermostatId, long temperature,
             @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_F);
-        mFirebaseRef.child(path).setValue(temperature, new NestCompletionListener(callback));
+        mWriter.setValue(path, temperature, new NestCompletionListener(callback));
     }
 
     /**
@@ -61,7 +65,20 @@ public final class ThermostatSetter {
      */
     public void setTargetTemperatureF(@NonNull String thermostatId, long temperature) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_F);
-        mFirebaseRef.child(path).setValue(temperature);
+        mWriter.setValue(path, temperature);
+    }
+
+    /**
+     * Sets the desired temperature, in full degrees Fahrenheit (1&deg;F). Used when hvac_mode =
+     * "heat" or "cool".
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param temperature  The desired temperature in full degrees Fahrenheit.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setTargetTemperatureFAsync(@NonNull String thermostatId, long temperature) {
+        String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_F);
+        return mWriter.setValueAsync(path, temperature);
     }
 
     /**
@@ -75,7 +92,7 @@ public final class ThermostatSetter {
     public void setTargetTemperatureC(@NonNull String thermostatId, double temperature,
             @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_C);
-        mFirebaseRef.child(path).setValue(temperature, new NestCompletionListener(callback));
+        mWriter.setValue(path, temperature, new NestCompletionListener(callback));
     }
 
     /**
@@ -87,7 +104,20 @@ public final class ThermostatSetter {
      */
     public void setTargetTemperatureC(@NonNull String thermostatId, double temperature) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_C);
-        mFirebaseRef.child(path).setValue(temperature);
+        mWriter.setValue(path, temperature);
+    }
+
+    /**
+     * Sets the desired temperature, in half degrees Celsius (0.5&deg;C). Used when hvac_mode =
+     * "heat" or "cool".
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param temperature  The desired temperature, in half degrees Celsius (0.5&deg;C).
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setTargetTemperatureCAsync(@NonNull String thermostatId, double temperature) {
+        String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_C);
+        return mWriter.setValueAsync(path, temperature);
     }
 
     /**
@@ -101,7 +131,7 @@ public final class ThermostatSetter {
     public void setTargetTemperatureLowF(@NonNull String thermostatId, long temperature,
             @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_LOW_F);
-        mFirebaseRef.child(path).setValue(temperature, new NestCompletionListener(callback));
+        mWriter.setValue(path, temperature, new NestCompletionListener(callback));
     }
 
     /**
@@ -113,7 +143,21 @@ public final class ThermostatSetter {
      */
     public void setTargetTemperatureLowF(@NonNull String thermostatId, long temperature) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_LOW_F);
-        mFirebaseRef.child(path).setValue(temperature);
+        mWriter.setValue(path, temperature);
+    }
+
+    /**
+     * Sets the minimum target temperature, displayed in whole degrees Fahrenheit (1&deg;F). Used
+     * when hvac_mode = "heat-cool" (Heat / Cool mode).
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param temperature  The minimum desired temperature, displayed in whole degrees Fahrenheit.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setTargetTemperatureLowFAsync(@NonNull String thermostatId,
+            long temperature) {
+        String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_LOW_F);
+        return mWriter.setValueAsync(path, temperature);
     }
 
     /**
@@ -127,7 +171,7 @@ public final class ThermostatSetter {
     public void setTargetTemperatureLowC(@NonNull String thermostatId, double temperature,
             @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_LOW_C);
-        mFirebaseRef.child(path).setValue(temperature, new NestCompletionListener(callback));
+        mWriter.setValue(path, temperature, new NestCompletionListener(callback));
     }
 
     /**
@@ -139,7 +183,21 @@ public final class ThermostatSetter {
      */
     public void setTargetTemperatureLowC(@NonNull String thermostatId, double temperature) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_LOW_C);
-        mFirebaseRef.child(path).setValue(temperature);
+        mWriter.setValue(path, temperature);
+    }
+
+    /**
+     * Sets the minimum target temperature, displayed in half degrees Celsius (0.5&deg;C). Used when
+     * hvac_mode = "heat-cool" (Heat / Cool mode).
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param temperature  The minimum target temperature, displayed in half degrees Celsius.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setTargetTemperatureLowCAsync(@NonNull String thermostatId,
+            double temperature) {
+        String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_LOW_C);
+        return mWriter.setValueAsync(path, temperature);
     }
 
     /**
@@ -153,7 +211,7 @@ public final class ThermostatSetter {
     public void setTargetTemperatureHighF(@NonNull String thermostatId, long temperature,
             @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_HIGH_F);
-        mFirebaseRef.child(path).setValue(temperature, new NestCompletionListener(callback));
+        mWriter.setValue(path, temperature, new NestCompletionListener(callback));
     }
 
     /**
@@ -165,7 +223,21 @@ public final class ThermostatSetter {
      */
     public void setTargetTemperatureHighF(@NonNull String thermostatId, long temperature) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_HIGH_F);
-        mFirebaseRef.child(path).setValue(temperature);
+        mWriter.setValue(path, temperature);
+    }
+
+    /**
+     * Sets the maximum target temperature, displayed in whole degrees Fahrenheit (1&deg;F). Used
+     * when hvac_mode = "heat-cool" (Heat / Cool mode).
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param temperature  The maximum desired temperature, displayed in whole degrees Fahrenheit.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setTargetTemperatureHighFAsync(@NonNull String thermostatId,
+            long temperature) {
+        String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_HIGH_F);
+        return mWriter.setValueAsync(path, temperature);
     }
 
     /**
@@ -179,7 +251,7 @@ public final class ThermostatSetter {
     public void setTargetTemperatureHighC(@NonNull String thermostatId, double temperature,
             @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_HIGH_C);
-        mFirebaseRef.child(path).setValue(temperature, new NestCompletionListener(callback));
+        mWriter.setValue(path, temperature, new NestCompletionListener(callback));
     }
 
     /**
@@ -191,7 +263,21 @@ public final class ThermostatSetter {
      */
     public void setTargetTemperatureHighC(@NonNull String thermostatId, double temperature) {
         String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_HIGH_C);
-        mFirebaseRef.child(path).setValue(temperature);
+        mWriter.setValue(path, temperature);
+    }
+
+    /**
+     * Sets the maximum target temperature, displayed in half degrees Celsius (0.5&deg;C). Used when
+     * hvac_mode = "heat-cool" (Heat / Cool mode).
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param temperature  The maximum target temperature, displayed in half degrees Celsius.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setTargetTemperatureHighCAsync(@NonNull String thermostatId,
+            double temperature) {
+        String path = getPath(thermostatId, Thermostat.KEY_TARGET_TEMP_HIGH_C);
+        return mWriter.setValueAsync(path, temperature);
     }
 
     /**
@@ -205,7 +291,7 @@ public final class ThermostatSetter {
      */
     public void setHVACMode(@NonNull String thermostatId, String mode, @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_HVAC_MODE);
-        mFirebaseRef.child(path).setValue(mode, new NestCompletionListener(callback));
+        mWriter.setValue(path, mode, new NestCompletionListener(callback));
     }
 
     /**
@@ -218,7 +304,21 @@ public final class ThermostatSetter {
      */
     public void setHVACMode(@NonNull String thermostatId, String mode) {
         String path = getPath(thermostatId, Thermostat.KEY_HVAC_MODE);
-        mFirebaseRef.child(path).setValue(mode);
+        mWriter.setValue(path, mode);
+    }
+
+    /**
+     * Sets the HVAC system heating/cooling modes. For systems with both heating and cooling
+     * capability, set this value to "heat-cool" (Heat / Cool mode) to get the best experience.
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param mode         The heating/cooling mode. Values can be "heat", "cool", "heat-cool", or
+     *                     "off".
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setHVACModeAsync(@NonNull String thermostatId, String mode) {
+        String path = getPath(thermostatId, Thermostat.KEY_HVAC_MODE);
+        return mWriter.setValueAsync(path, mode);
     }
 
     /**
@@ -233,7 +333,7 @@ public final class ThermostatSetter {
     public void setFanTimerActive(@NonNull String thermostatId, boolean isActive,
             @NonNull Callback callback) {
         String path = getPath(thermostatId, Thermostat.KEY_FAN_TIMER_ACTIVE);
-        mFirebaseRef.child(path).setValue(isActive, new NestCompletionListener(callback));
+        mWriter.setValue(path, isActive, new NestCompletionListener(callback));
     }
 
     /**
@@ -246,6 +346,20 @@ public final class ThermostatSetter {
      */
     public void setFanTimerActive(@NonNull String thermostatId, boolean isActive) {
         String path = getPath(thermostatId, Thermostat.KEY_FAN_TIMER_ACTIVE);
-        mFirebaseRef.child(path).setValue(isActive);
+        mWriter.setValue(path, isActive);
+    }
+
+    /**
+     * Sets whether the fan timer is engaged; used with fanTimerTimeout to turn on the fan for a
+     * (user-specified) preset duration.
+     *
+     * @param thermostatId The unique identifier for the {@link Thermostat}.
+     * @param isActive     true if the fan timer is to be engaged, false if the fan timer should be
+     *                     disengaged.
+     * @return a {@link NestFuture} for the result of the write.
+     */
+    public NestFuture setFanTimerActiveAsync(@NonNull String thermostatId, boolean isActive) {
+        String path = getPath(thermostatId, Thermostat.KEY_FAN_TIMER_ACTIVE);
+        return mWriter.setValueAsync(path, isActive);
     }
 }
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * UpdateDelta holds only what changed between two {@link GlobalUpdate}s or {@link DeviceUpdate}s:
+ * the devices and structures that were added or changed, the ids of those that were removed, and
+ * the {@link Metadata} if it changed. It's {@link Parcelable}, so a process that already holds the
+ * base update can be brought up to date at a cost proportional to what changed.
+ * <p>
+ * Create one with {@link GlobalUpdate#deltaFrom(GlobalUpdate)} or {@link
+ * DeviceUpdate#deltaFrom(DeviceUpdate)}, and apply it on the receiving side with {@link
+ * GlobalUpdate#applyDelta(UpdateDelta)} or {@link DeviceUpdate#applyDelta(UpdateDelta)} on the
+ * same base. Changed objects replace the base objects in place and added objects are appended,
+ * so the order of the result follows the base.
+ */
+public final class UpdateDelta implements Parcelable {
+    private final long mBaseSequence;
+    private final long mSequence;
+    private final long mReceivedNanos;
+    private final long mDecodedNanos;
+
+    final ArrayList<Thermostat> mThermostats;
+    final ArrayList<String> mRemovedThermostats;
+    final ArrayList<SmokeCOAlarm> mSmokeCOAlarms;
+    final ArrayList<String> mRemovedSmokeCOAlarms;
+    final ArrayList<Camera> mCameras;
+    final ArrayList<String> mRemovedCameras;
+    final ArrayList<Structure> mStructures;
+    final ArrayList<String> mRemovedStructures;
+    final boolean mHasMetadata;
+    final Metadata mMetadata;
+
+    /**
+     * Creates the delta from a base {@link DeviceUpdate} to a newer one.
+     */
+    UpdateDelta(@NonNull DeviceUpdate base, @NonNull DeviceUpdate update) {
+        this(base, update, base.getSequence(), update.getSequence(), update.getReceivedNanos(),
+                update.getDecodedNanos(), null, null, false, null);
+    }
+
+    /**
+     * Creates the delta from a base {@link GlobalUpdate} to a newer one.
+     */
+    UpdateDelta(@NonNull GlobalUpdate base, @NonNull GlobalUpdate update) {
+        this(base.getDevices(), update.getDevices(), base.getSequence(), update.getSequence(),
+                update.getReceivedNanos(), update.getDecodedNanos(), base.getStructures(),
+                update.getStructures(), !isSame(base.getMetadata(), update.getMetadata()),
+                update.getMetadata());
+    }
+
+    private UpdateDelta(DeviceUpdate base, DeviceUpdate update, long baseSequence, long sequence,
+            long receivedNanos, long decodedNanos, List<Structure> baseStructures,
+            List<Structure> structures, boolean hasMetadata, Metadata metadata) {
+        mBaseSequence = baseSequence;
+        mSequence = sequence;
+        mReceivedNanos = receivedNanos;
+        mDecodedNanos = decodedNanos;
+
+        mThermostats = new ArrayList<>();
+        mRemovedThermostats = new ArrayList<>();
+        diff(base.getThermostats(), update.getThermostats(), mThermostats, mRemovedThermostats);
+
+        mSmokeCOAlarms = new ArrayList<>();
+        mRemovedSmokeCOAlarms = new ArrayList<>();
+        diff(base.getSmokeCOAlarms(), update.getSmokeCOAlarms(), mSmokeCOAlarms,
+                mRemovedSmokeCOAlarms);
+
+        mCameras = new ArrayList<>();
+        mRemovedCameras = new ArrayList<>();
+        diff(base.getCameras(), update.getCameras(), mCameras, mRemovedCameras);
+
+        mStructures = new ArrayList<>();
+        mRemovedStructures = new ArrayList<>();
+        if (structures != null) {
+            diff(baseStructures, structures, mStructures, mRemovedStructures);
+        }
+
+        mHasMetadata = hasMetadata;
+        mMetadata = hasMetadata ? metadata : null;
+    }
+
+    private UpdateDelta(Parcel in) {
+        mBaseSequence = in.readLong();
+        mSequence = in.readLong();
+        mReceivedNanos = in.readLong();
+        mDecodedNanos = in.readLong();
+        mThermostats = in.createTypedArrayList(Thermostat.CREATOR);
+        mRemovedThermostats = in.createStringArrayList();
+        mSmokeCOAlarms = in.createTypedArrayList(SmokeCOAlarm.CREATOR);
+        mRemovedSmokeCOAlarms = in.createStringArrayList();
+        mCameras = in.createTypedArrayList(Camera.CREATOR);
+        mRemovedCameras = in.createStringArrayList();
+        mStructures = in.createTypedArrayList(Structure.CREATOR);
+        mRemovedStructures = in.createStringArrayList();
+        mHasMetadata = Utils.readBoolean(in);
+        mMetadata = mHasMetadata ? (Metadata) in.readParcelable(Metadata.class.getClassLoader())
+                : null;
+    }
+
+    public static final Creator<UpdateDelta> CREATOR = new Creator<UpdateDelta>() {
+        @Override
+        public UpdateDelta createFromParcel(Parcel in) {
+            return new UpdateDelta(in);
+        }
+
+        @Override
+        public UpdateDelta[] newArray(int size) {
+            return new UpdateDelta[size];
+        }
+    };
+
+    /**
+     * Returns the sequence number of the update this delta must be applied to.
+     *
+     * @return the sequence number of the base update.
+     */
+    public long getBaseSequence() {
+        return mBaseSequence;
+    }
+
+    /**
+     * Returns the sequence number of the update this delta brings the base up to.
+     *
+     * @return the sequence number of the resulting update.
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns the number of devices and structures that were added or changed.
+     *
+     * @return the number of added or changed objects.
+     */
+    public int getChangedCount() {
+        return mThermostats.size() + mSmokeCOAlarms.size() + mCameras.size()
+                + mStructures.size();
+    }
+
+    /**
+     * Returns the number of devices and structures that were removed.
+     *
+     * @return the number of removed objects.
+     */
+    public int getRemovedCount() {
+        return mRemovedThermostats.size() + mRemovedSmokeCOAlarms.size() + mRemovedCameras.size()
+                + mRemovedStructures.size();
+    }
+
+    /**
+     * Returns whether the delta changes nothing.
+     *
+     * @return true if nothing was added, changed or removed.
+     */
+    public boolean isEmpty() {
+        return getChangedCount() == 0 && getRemovedCount() == 0 && !mHasMetadata;
+    }
+
+    /**
+     * Checks that this delta applies to the given base update.
+     *
+     * @param baseSequence the sequence number of the base update.
+     * @throws IllegalArgumentException if the delta was made against a different base.
+     */
+    void checkBase(long baseSequence) {
+        if (baseSequence != mBaseSequence) {
+            throw new IllegalArgumentException("Delta is based on update " + mBaseSequence
+                    + ", not " + baseSequence + ".");
+        }
+    }
+
+    /**
+     * Stamps the result of applying this delta with the sequence number and timing of the update
+     * it was made from.
+     */
+    void stamp(DeviceUpdate update) {
+        update.stamp(mSequence, mReceivedNanos, mDecodedNanos);
+    }
+
+    void stamp(GlobalUpdate update) {
+        update.stamp(mSequence, mReceivedNanos, mDecodedNanos);
+    }
+
+    /**
+     * Applies the changes of one collection to its base.
+     */
+    static <T> ArrayList<T> apply(List<T> base, List<T> changed, List<String> removed) {
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return new ArrayList<>(base);
+        }
+        LinkedHashMap<String, T> objects = new LinkedHashMap<>();
+        for (T object : base) {
+            objects.put(idOf(object), object);
+        }
+        for (String id : removed) {
+            objects.remove(id);
+        }
+        for (T object : changed) {
+            objects.put(idOf(object), object);
+        }
+        return new ArrayList<>(objects.values());
+    }
+
+    private static <T> void diff(List<T> base, List<T> update, List<T> changed,
+            List<String> removed) {
+        HashMap<String, T> previous = new HashMap<>();
+        for (T object : base) {
+            previous.put(idOf(object), object);
+        }
+        for (T object : update) {
+            T old = previous.remove(idOf(object));
+            if (old == null || !old.equals(object)) {
+                changed.add(object);
+            }
+        }
+        removed.addAll(previous.keySet());
+    }
+
+    private static String idOf(Object object) {
+        if (object instanceof Device) {
+            return ((Device) object).getDeviceId();
+        }
+        return ((Structure) object).getStructureId();
+    }
+
+    private static boolean isSame(Metadata a, Metadata b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(mBaseSequence);
+        dest.writeLong(mSequence);
+        dest.writeLong(mReceivedNanos);
+        dest.writeLong(mDecodedNanos);
+        dest.writeTypedList(mThermostats);
+        dest.writeStringList(mRemovedThermostats);
+        dest.writeTypedList(mSmokeCOAlarms);
+        dest.writeStringList(mRemovedSmokeCOAlarms);
+        dest.writeTypedList(mCameras);
+        dest.writeStringList(mRemovedCameras);
+        dest.writeTypedList(mStructures);
+        dest.writeStringList(mRemovedStructures);
+        Utils.writeBoolean(dest, mHasMetadata);
+        if (mHasMetadata) {
+            dest.writeParcelable(mMetadata, flags);
+        }
+    }
+}
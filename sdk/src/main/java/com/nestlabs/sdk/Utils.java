@@ -23,6 +23,15 @@ import android.text.TextUtils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Provides utilities methods for various common operations within this library.
@@ -30,6 +39,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 final class Utils {
 
     private static final ObjectMapper sMapper = new ObjectMapper();
+    private static final Class<?>[] MODEL_CLASSES = {Thermostat.class, SmokeCOAlarm.class,
+            Camera.class, Structure.class, Metadata.class};
 
     /**
      * Writes a boolean value to a Parcel.
@@ -51,6 +62,27 @@ final class Utils {
         return in.readInt() != 0;
     }
 
+    /**
+     * Writes a projection, as created by {@link #projection(String, String...)}, to a Parcel.
+     *
+     * @param out        the Parcel to write to.
+     * @param projection the projected keys, or null if every field was decoded.
+     */
+    static void writeProjection(Parcel out, Set<String> projection) {
+        out.writeStringList(projection == null ? null : new ArrayList<>(projection));
+    }
+
+    /**
+     * Reads a projection written by {@link #writeProjection(Parcel, Set)} from a Parcel.
+     *
+     * @param in the Parcel to read.
+     * @return the projected keys, or null if every field was decoded.
+     */
+    static Set<String> readProjection(Parcel in) {
+        ArrayList<String> keys = in.createStringArrayList();
+        return keys == null ? null : Collections.unmodifiableSet(new HashSet<>(keys));
+    }
+
     /**
      * Returns the object in a JSON string representation if possible. If this fails, it will return
      * the superclass' string representation of the object.
@@ -85,6 +117,137 @@ final class Utils {
         return false;
     }
 
+    /**
+     * Returns an immutable projection of the given keys, always including the id key.
+     *
+     * @param idKey the key identifying the object, such as {@link Device#KEY_DEVICE_ID}.
+     * @param keys  the projected keys.
+     * @return the projection, or null if no keys are given.
+     */
+    static Set<String> projection(@NonNull String idKey, String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        HashSet<String> projection = new HashSet<>();
+        Collections.addAll(projection, keys);
+        projection.add(idKey);
+        return Collections.unmodifiableSet(projection);
+    }
+
+    /**
+     * Decodes a snapshot into a model object. With a projection, only the projected children are
+     * read from the snapshot; the other fields are never materialized and keep their defaults.
+     * <p>
+     * The snapshot's values are converted straight to the model, rather than through {@link
+     * DataSnapshot#getValue(Class)}, which writes them out as JSON and parses them back under a
+     * lock shared by every thread.
+     *
+     * @param snapshot   the snapshot of a single object.
+     * @param type       the model class to decode into.
+     * @param projection the keys to decode, or null to decode every field.
+     * @return the decoded object.
+     */
+    static <T> T decode(@NonNull DataSnapshot snapshot, @NonNull Class<T> type,
+            Set<String> projection) {
+        return convert(values(snapshot, projection), type, projection);
+    }
+
+    /**
+     * Reads the raw values of a snapshot that {@link #decode(DataSnapshot, Class, Set)} would
+     * decode: all of them, or only the projected children.
+     *
+     * @param snapshot   the snapshot of a single object.
+     * @param projection the keys to read, or null to read every field.
+     * @return the values, as Firebase returns them from {@link DataSnapshot#getValue()}.
+     */
+    static Object values(@NonNull DataSnapshot snapshot, Set<String> projection) {
+        if (projection == null) {
+            return snapshot.getValue();
+        }
+        HashMap<String, Object> values = new HashMap<>(projection.size() * 2);
+        for (String key : projection) {
+            if (snapshot.hasChild(key)) {
+                values.put(key, snapshot.child(key).getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Converts values read by {@link #values(DataSnapshot, Set)} into a model object.
+     *
+     * @param values     the values to convert.
+     * @param type       the model class to decode into.
+     * @param projection the keys the values were read with, or null if every field was read.
+     * @return the decoded object.
+     */
+    static <T> T convert(Object values, @NonNull Class<T> type, Set<String> projection) {
+        T object = sMapper.convertValue(values, type);
+        if (projection == null) {
+            return object;
+        }
+        if (object instanceof Device) {
+            ((Device) object).mProjection = projection;
+        } else if (object instanceof Structure) {
+            ((Structure) object).mProjection = projection;
+        }
+        return object;
+    }
+
+    /**
+     * Decodes every child of a snapshot into a model object.
+     *
+     * @param snapshot the snapshot whose children to decode, or null if there are none.
+     * @param type     the model class to decode into.
+     * @return the decoded objects, in snapshot order.
+     */
+    static <T> ArrayList<T> decodeChildren(DataSnapshot snapshot, @NonNull Class<T> type) {
+        return decodeChildren(snapshot, type, null);
+    }
+
+    /**
+     * Decodes the given fields of every child of a snapshot into a model object.
+     *
+     * @param snapshot   the snapshot whose children to decode, or null if there are none.
+     * @param type       the model class to decode into.
+     * @param projection the keys to decode, or null to decode every field.
+     * @return the decoded objects, in snapshot order.
+     */
+    static <T> ArrayList<T> decodeChildren(DataSnapshot snapshot, @NonNull Class<T> type,
+            Set<String> projection) {
+        ArrayList<T> objects = new ArrayList<>();
+        if (snapshot != null) {
+            for (DataSnapshot child : snapshot.getChildren()) {
+                objects.add(decode(child, type, projection));
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Builds and caches the Jackson serializers and deserializers of every model class by round
+     * tripping a default instance of each class through a plain {@link Map}, the same conversion
+     * {@link #convert(Object, Class, Set)} runs on a snapshot's values.
+     *
+     * @throws IOException if a model class can't be round tripped.
+     */
+    static void warmUpMappers() throws IOException {
+        for (Class<?> type : MODEL_CLASSES) {
+            Object model;
+            try {
+                model = type.newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IOException("Can't create " + type.getSimpleName(), e);
+            }
+            try {
+                Map<?, ?> values = sMapper.convertValue(model, Map.class);
+                convert(values, type, null);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Can't round trip " + type.getSimpleName(), e);
+            }
+        }
+    }
+
     /**
      * Builds a path incrementally.
      */
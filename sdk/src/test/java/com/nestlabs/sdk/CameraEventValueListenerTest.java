@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.snapshot.NodeUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Firebase.class})
+public class CameraEventValueListenerTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+    NestListener.CameraEventListener mockListener;
+    CameraEventValueListener valueListener;
+
+    @Before
+    public void before() {
+        mockListener = mock(NestListener.CameraEventListener.class);
+        valueListener = new CameraEventValueListener(mockListener, new ListenerContext());
+    }
+
+    @Test
+    public void testOnDataChange_withFirstSnapshot_shouldNotReportExistingEvents()
+            throws Exception {
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", null, "u")
+                        + "," + camera("c2", "2016-01-01T09:00:00.000Z",
+                        "2016-01-01T09:00:30.000Z", "u")));
+
+        Mockito.verifyZeroInteractions(mockListener);
+    }
+
+    @Test
+    public void testOnDataChange_withNewEvent_shouldCallOnEventStarted() throws Exception {
+        valueListener.onDataChange(snapshot(camera("c1", null, null, null)));
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", null, "http://i/1")));
+
+        ArgumentCaptor<Camera.LastEvent> captor = ArgumentCaptor.forClass(Camera.LastEvent.class);
+        Mockito.verify(mockListener).onEventStarted(eq("c1"), captor.capture());
+        Mockito.verify(mockListener, Mockito.never())
+                .onEventEnded(anyString(), any(Camera.LastEvent.class));
+        assertEquals("http://i/1", captor.getValue().getImageUrl());
+    }
+
+    @Test
+    public void testOnDataChange_withNewCamera_shouldNotReportItsExistingEvent()
+            throws Exception {
+        valueListener.onDataChange(snapshot(camera("c1", null, null, null)));
+        valueListener.onDataChange(snapshot(camera("c1", null, null, null)
+                + "," + camera("c2", "2016-01-01T10:00:00.000Z", null, "u")));
+        valueListener.onDataChange(snapshot(camera("c1", null, null, null)
+                + "," + camera("c2", "2016-01-01T11:00:00.000Z", null, "u")));
+
+        Mockito.verify(mockListener, Mockito.times(1))
+                .onEventStarted(eq("c2"), any(Camera.LastEvent.class));
+    }
+
+    @Test
+    public void testOnDataChange_withSameEvent_shouldNotCallListener() throws Exception {
+        valueListener.onDataChange(snapshot(camera("c1", null, null, null)));
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", null, "http://i/1")));
+        // Only the image URL changed, so this is still the same event.
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", null, "http://i/2")));
+
+        Mockito.verify(mockListener, Mockito.times(1))
+                .onEventStarted(anyString(), any(Camera.LastEvent.class));
+    }
+
+    @Test
+    public void testOnDataChange_withEndTime_shouldCallOnEventEndedOnce() throws Exception {
+        valueListener.onDataChange(snapshot(camera("c1", null, null, null)));
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", "2016-01-01T09:00:00.000Z", "u")));
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", "2016-01-01T10:00:30.000Z", "u")));
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", "2016-01-01T10:00:30.000Z", "u")));
+
+        Mockito.verify(mockListener, Mockito.times(1))
+                .onEventStarted(eq("c1"), any(Camera.LastEvent.class));
+        Mockito.verify(mockListener, Mockito.times(1))
+                .onEventEnded(eq("c1"), any(Camera.LastEvent.class));
+    }
+
+    @Test
+    public void testOnDataChange_withNextEvent_shouldCallOnEventStartedAgain() throws Exception {
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T10:00:00.000Z", null, "u")
+                        + "," + camera("c2", null, null, null)));
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T11:00:00.000Z", null, "u")
+                        + "," + camera("c2", null, null, null)));
+        valueListener.onDataChange(snapshot(
+                camera("c1", "2016-01-01T12:00:00.000Z", null, "u")
+                        + "," + camera("c2", null, null, null)));
+
+        Mockito.verify(mockListener, Mockito.times(2))
+                .onEventStarted(eq("c1"), any(Camera.LastEvent.class));
+        Mockito.verify(mockListener, Mockito.never())
+                .onEventStarted(eq("c2"), any(Camera.LastEvent.class));
+    }
+
+    private static String camera(String id, String start, String end, String imageUrl) {
+        StringBuilder json = new StringBuilder("\"" + id + "\":{\"device_id\":\"" + id + "\"");
+        if (start != null) {
+            json.append(",\"last_event\":{\"start_time\":\"").append(start).append("\"");
+            if (end != null) {
+                json.append(",\"end_time\":\"").append(end).append("\"");
+            }
+            json.append(",\"image_url\":\"").append(imageUrl).append("\"}");
+        }
+        return json.append("}").toString();
+    }
+
+    private DataSnapshot snapshot(String cameras) throws Exception {
+        Map value = mapper.readValue("{" + cameras + "}", Map.class);
+        return new DataSnapshot(ref("cameras"), NodeUtilities.NodeFromJSON(value));
+    }
+
+    private static Firebase ref(final String name) {
+        Firebase ref = mock(Firebase.class);
+        when(ref.getName()).thenReturn(name);
+        doAnswer(new Answer<Firebase>() {
+            @Override
+            public Firebase answer(InvocationOnMock invocation) {
+                String path = (String) invocation.getArguments()[0];
+                return ref(path.substring(path.lastIndexOf('/') + 1));
+            }
+        }).when(ref).child(anyString());
+        return ref;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CameraImageCacheTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockWebServer server;
+
+    @Before
+    public void before() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void after() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testGet_shouldFetchOnceAndServeFromDisk() throws IOException {
+        server.enqueue(new MockResponse().setBody("image"));
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .build();
+        String url = server.url("/image.jpg").toString();
+        long expiresAt = System.currentTimeMillis() + HOUR_MS;
+
+        File file = cache.get(url, expiresAt);
+        assertEquals(5, file.length());
+        assertEquals(file, cache.get(url, expiresAt));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, cache.getFetchCount());
+    }
+
+    @Test
+    public void testGet_withConcurrentRequests_shouldCoalesceFetches() throws Exception {
+        server.enqueue(new MockResponse().setBody("image").setBodyDelay(200,
+                TimeUnit.MILLISECONDS));
+        final CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .build();
+        final String url = server.url("/image.jpg").toString();
+        final long expiresAt = System.currentTimeMillis() + HOUR_MS;
+        final CountDownLatch done = new CountDownLatch(4);
+
+        for (int i = 0; i < 4; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cache.get(url, expiresAt);
+                        done.countDown();
+                    } catch (IOException e) {
+                        // Leave the latch unreleased so the test fails.
+                    }
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testPrefetch_shouldFetchEventImages() throws Exception {
+        server.enqueue(new MockResponse().setBody("still"));
+        server.enqueue(new MockResponse().setBody("animated"));
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .concurrency(1)
+                .build();
+        String imageUrl = server.url("/image.jpg").toString();
+        String animatedUrl = server.url("/image.gif").toString();
+
+        cache.onEventStarted("c1", event(imageUrl, animatedUrl, "2099-01-01T00:00:00.000Z"));
+        server.takeRequest(5, TimeUnit.SECONDS);
+        server.takeRequest(5, TimeUnit.SECONDS);
+
+        assertNotNull(cache.get(imageUrl, 0));
+        assertNotNull(cache.get(animatedUrl, 0));
+        assertEquals(2, cache.getFetchCount());
+    }
+
+    @Test
+    public void testGetCachedFile_withExpiredUrl_shouldEvict() throws Exception {
+        server.enqueue(new MockResponse().setBody("image"));
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .build();
+        String url = server.url("/image.jpg").toString();
+
+        File file = cache.get(url, System.currentTimeMillis() + 100);
+        Thread.sleep(150);
+        assertNull(cache.getCachedFile(url));
+        assertTrue(!file.exists());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test(expected = IOException.class)
+    public void testGet_withExpiredUrl_shouldThrow() throws IOException {
+        server.enqueue(new MockResponse().setBody("image"));
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .build();
+
+        cache.get(server.url("/image.jpg").toString(), System.currentTimeMillis() - 1);
+    }
+
+    @Test
+    public void testGet_largerThanCache_shouldThrowAndNotKeepFile() throws IOException {
+        server.enqueue(new MockResponse().setBody("image"));
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .maxBytes(4)
+                .build();
+        String url = server.url("/image.jpg").toString();
+
+        try {
+            cache.get(url, System.currentTimeMillis() + HOUR_MS);
+            fail("Expected an IOException.");
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertNull(cache.getCachedFile(url));
+        assertEquals(0, folder.getRoot().listFiles().length);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testPrefetch_withoutExpireTime_shouldKeepForFallbackTtl() throws Exception {
+        server.enqueue(new MockResponse().setBody("still"));
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .build();
+        String imageUrl = server.url("/image.jpg").toString();
+        String json = "{\"image_url\":\"" + imageUrl + "\"}";
+
+        long before = System.currentTimeMillis();
+        cache.prefetch(new ObjectMapper().readValue(json, Camera.LastEvent.class));
+        File file = cache.get(imageUrl, 0);
+
+        assertTrue(file.exists());
+        assertEquals(file, cache.getCachedFile(imageUrl));
+        long expiresAt = Long.parseLong(file.getName().substring(file.getName().indexOf('-') + 1));
+        assertTrue(expiresAt >= before + CameraImageCache.FALLBACK_TTL_MS);
+        assertEquals(1, server.getRequestCount());
+        cache.close();
+    }
+
+    @Test
+    public void testClose_shouldIgnoreLaterPrefetches() throws Exception {
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .build();
+        cache.close();
+
+        String url = server.url("/image.jpg").toString();
+        cache.onEventStarted("c1", event(url, url, "2099-01-01T00:00:00.000Z"));
+
+        assertEquals(0, cache.getFetchCount());
+    }
+
+    @Test
+    public void testGet_overMaxBytes_shouldEvictLeastRecentlyUsed() throws IOException {
+        server.enqueue(new MockResponse().setBody("aaaa"));
+        server.enqueue(new MockResponse().setBody("bbbb"));
+        server.enqueue(new MockResponse().setBody("cccc"));
+        CameraImageCache cache = new CameraImageCache.Builder()
+                .directory(folder.getRoot())
+                .maxBytes(8)
+                .build();
+        String a = server.url("/a").toString();
+        String b = server.url("/b").toString();
+        String c = server.url("/c").toString();
+        long expiresAt = System.currentTimeMillis() + HOUR_MS;
+
+        cache.get(a, expiresAt);
+        cache.get(b, expiresAt);
+        cache.getCachedFile(a);
+        cache.get(c, expiresAt);
+
+        assertNotNull(cache.getCachedFile(a));
+        assertNull(cache.getCachedFile(b));
+        assertNotNull(cache.getCachedFile(c));
+        assertEquals(8, cache.getSize());
+    }
+
+    @Test
+    public void testBuild_shouldReloadUnexpiredEntries() throws IOException {
+        server.enqueue(new MockResponse().setBody("image"));
+        File dir = folder.getRoot();
+        String url = server.url("/image.jpg").toString();
+        new CameraImageCache.Builder().directory(dir).build()
+                .get(url, System.currentTimeMillis() + HOUR_MS);
+
+        CameraImageCache reopened = new CameraImageCache.Builder().directory(dir).build();
+        assertNotNull(reopened.getCachedFile(url));
+        assertEquals(5, reopened.getSize());
+    }
+
+    @Test
+    public void testParseExpireTime_shouldParseIso8601() {
+        assertEquals(1451606400000L,
+                CameraImageCache.parseExpireTime("2016-01-01T00:00:00.000Z"));
+        assertEquals(1451606400000L, CameraImageCache.parseExpireTime("2016-01-01T00:00:00Z"));
+        assertEquals(0, CameraImageCache.parseExpireTime(null));
+    }
+
+    private static Camera.LastEvent event(String imageUrl, String animatedUrl, String expires)
+            throws IOException {
+        String json = "{\"image_url\":\"" + imageUrl + "\",\"animated_image_url\":\""
+                + animatedUrl + "\",\"urls_expire_time\":\"" + expires + "\"}";
+        return new ObjectMapper().readValue(json, Camera.LastEvent.class);
+    }
+}
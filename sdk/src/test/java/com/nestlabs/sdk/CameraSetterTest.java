@@ -25,7 +25,10 @@ import org.mockito.Mockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
@@ -73,4 +76,19 @@ public class CameraSetterTest {
                 .child("/devices/cameras/" + testId + "/" + Camera.KEY_IS_STREAMING);
         Mockito.verify(mockFirebase).setValue(testValue, mockListener);
     }
+
+    @Test
+    public void testSetIsStreamingAsync_shouldSetCorrectValuesAndReturnFuture() {
+        String testId = "test-id";
+        boolean testValue = true;
+
+        CameraSetter setter = new CameraSetter(mockFirebase);
+        NestFuture future = setter.setIsStreamingAsync(testId, testValue);
+
+        assertNotNull(future);
+        Mockito.verify(mockFirebase).child("/devices/cameras/" + testId + "/"
+                + Camera.KEY_IS_STREAMING);
+        Mockito.verify(mockFirebase).setValue(eq(testValue),
+                any(Firebase.CompletionListener.class));
+    }
 }
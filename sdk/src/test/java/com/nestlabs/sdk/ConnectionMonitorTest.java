@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.firebase.client.Firebase;
+import com.firebase.client.FirebaseError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Firebase.class, FirebaseError.class})
+public class ConnectionMonitorTest {
+
+    ScheduledExecutorService mockTimer;
+    Random mockRandom;
+    Runnable mockReconnect;
+    NestListener.ConnectionListener mockListener;
+    ConnectionMonitor monitor;
+
+    @Before
+    public void before() {
+        Firebase mockFirebase = mock(Firebase.class);
+        when(mockFirebase.child(anyString())).thenReturn(mockFirebase);
+        mockTimer = mock(ScheduledExecutorService.class);
+        doReturn(mock(ScheduledFuture.class)).when(mockTimer)
+                .schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        mockRandom = mock(Random.class);
+        mockReconnect = mock(Runnable.class);
+        mockListener = mock(NestListener.ConnectionListener.class);
+
+        monitor = new ConnectionMonitor(mockFirebase, mockTimer, mockRandom, mockReconnect);
+        monitor.addListener(mockListener);
+        monitor.start();
+    }
+
+    @After
+    public void after() {
+        monitor.stop();
+    }
+
+    @Test
+    public void testOnConnectedChange_shouldReportStatesAndRecoveryTime() {
+        assertEquals(ConnectionMonitor.State.CONNECTING, monitor.getState());
+
+        monitor.onConnectedChange(true, 1000);
+        monitor.onConnectedChange(false, 2000);
+        monitor.onConnectedChange(true, 5000);
+
+        InOrder order = inOrder(mockListener);
+        order.verify(mockListener).onConnectionStateChanged(ConnectionMonitor.State.CONNECTED);
+        order.verify(mockListener).onConnectionStateChanged(ConnectionMonitor.State.DISCONNECTED);
+        order.verify(mockListener).onConnectionStateChanged(ConnectionMonitor.State.CONNECTED);
+        assertEquals(3000, monitor.getLastRecoveryTime(TimeUnit.NANOSECONDS));
+        assertEquals(3000, monitor.getMaxRecoveryTime(TimeUnit.NANOSECONDS));
+        assertEquals(3000, monitor.getDisconnectedTime(TimeUnit.NANOSECONDS));
+        // Firebase reconnects after a plain disconnect by itself.
+        verify(mockTimer, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testOnConnectedChange_withFalseBeforeFirstConnect_shouldKeepConnecting() {
+        monitor.onConnectedChange(false, 1000);
+
+        assertEquals(ConnectionMonitor.State.CONNECTING, monitor.getState());
+        verify(mockListener, never()).onConnectionStateChanged(any(ConnectionMonitor.State.class));
+        verify(mockTimer, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        monitor.onConnectedChange(true, 2000);
+        assertEquals(ConnectionMonitor.State.CONNECTED, monitor.getState());
+        assertEquals(-1, monitor.getLastRecoveryTime(TimeUnit.NANOSECONDS));
+        assertEquals(0, monitor.getDisconnectedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testCheckStale_withoutHeartbeat_shouldMarkStaleUntilNextHeartbeat() {
+        monitor.setStaleAfter(100, TimeUnit.NANOSECONDS);
+        monitor.onConnectedChange(true, 1000);
+
+        monitor.checkStale(1050);
+        assertEquals(ConnectionMonitor.State.CONNECTED, monitor.getState());
+
+        monitor.checkStale(1200);
+        assertEquals(ConnectionMonitor.State.STALE, monitor.getState());
+
+        monitor.onHeartbeat(1500);
+        assertEquals(ConnectionMonitor.State.CONNECTED, monitor.getState());
+        assertEquals(300, monitor.getLastRecoveryTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testCheckStale_whenDisabled_shouldNeverMarkStale() {
+        monitor.setStaleAfter(0, TimeUnit.NANOSECONDS);
+        monitor.onConnectedChange(true, 1000);
+        monitor.checkStale(Long.MAX_VALUE);
+
+        assertEquals(ConnectionMonitor.State.CONNECTED, monitor.getState());
+    }
+
+    @Test
+    public void testNextBackoff_shouldDoubleUpToMaxWithJitter() {
+        monitor.setBackoff(100, 800, TimeUnit.NANOSECONDS);
+        when(mockRandom.nextDouble()).thenReturn(1.0);
+
+        assertEquals(100, monitor.nextBackoffNanos());
+        assertEquals(200, monitor.nextBackoffNanos());
+        assertEquals(400, monitor.nextBackoffNanos());
+        assertEquals(800, monitor.nextBackoffNanos());
+        assertEquals(800, monitor.nextBackoffNanos());
+
+        when(mockRandom.nextDouble()).thenReturn(0.0);
+        assertEquals(400, monitor.nextBackoffNanos());
+
+        // Connecting alone doesn't reset the backoff; an event does.
+        monitor.onConnectedChange(true, 1000);
+        assertEquals(400, monitor.nextBackoffNanos());
+        monitor.onHeartbeat(2000);
+        assertEquals(50, monitor.nextBackoffNanos());
+    }
+
+    @Test
+    public void testAttemptReconnect_whileStale_shouldResetConnection() {
+        monitor.setStaleAfter(100, TimeUnit.NANOSECONDS);
+        monitor.onConnectedChange(true, 1000);
+        monitor.checkStale(1200);
+        verify(mockTimer).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        monitor.attemptReconnect(1300);
+
+        verify(mockReconnect).run();
+        verify(mockListener).onConnectionStateChanged(ConnectionMonitor.State.CONNECTING);
+        assertEquals(ConnectionMonitor.State.CONNECTING, monitor.getState());
+        assertEquals(1, monitor.getReconnectCount());
+
+        // The reset's own disconnect is left to Firebase, not reset again.
+        monitor.onConnectedChange(false, 1400);
+        monitor.onConnectedChange(true, 1600);
+        monitor.attemptReconnect(1700);
+        verify(mockReconnect).run();
+        verify(mockTimer).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        assertEquals(400, monitor.getLastRecoveryTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testAttemptReconnect_whileDisconnected_shouldNotResetConnection() {
+        monitor.onConnectedChange(true, 1000);
+        monitor.onConnectedChange(false, 2000);
+        monitor.attemptReconnect(3000);
+
+        verify(mockReconnect, never()).run();
+        assertEquals(ConnectionMonitor.State.DISCONNECTED, monitor.getState());
+    }
+
+    @Test
+    public void testReportError_shouldSurfaceCancelledListenerToConnectionListeners() {
+        FirebaseError mockError = mock(FirebaseError.class);
+        when(mockError.getMessage()).thenReturn("Permission denied");
+        NestListener.CameraListener mockCameraListener = mock(NestListener.CameraListener.class);
+        ListenerContext context = new ListenerContext();
+        context.setConnectionMonitor(monitor);
+
+        new SnapshotValueListener<>(mockCameraListener, SnapshotDecoder.CAMERAS, context)
+                .onCancelled(mockError);
+
+        ArgumentCaptor<NestException> captor = ArgumentCaptor.forClass(NestException.class);
+        verify(mockListener).onError(captor.capture());
+        assertEquals("Permission denied", captor.getValue().getMessage());
+
+        // Listeners of another instance report to their own monitor.
+        new SnapshotValueListener<>(mockCameraListener, SnapshotDecoder.CAMERAS,
+                new ListenerContext()).onCancelled(mockError);
+        context.setConnectionMonitor(null);
+        context.reportError(mockError);
+        verify(mockListener, times(1)).onError(any(NestException.class));
+    }
+
+    @Test
+    public void testStop_shouldNotReconnect() {
+        monitor.setStaleAfter(100, TimeUnit.NANOSECONDS);
+        monitor.onConnectedChange(true, 1000);
+        monitor.checkStale(2000);
+        monitor.stop();
+        monitor.attemptReconnect(3000);
+
+        verify(mockReconnect, never()).run();
+    }
+}
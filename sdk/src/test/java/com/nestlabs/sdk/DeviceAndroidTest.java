@@ -32,6 +32,8 @@ import junit.framework.Assert;
 import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricGradleTestRunner.class)
 @Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
@@ -59,4 +61,21 @@ public class DeviceAndroidTest {
             Assert.fail();
         }
     }
+
+    @Test
+    public void testNestDeviceToParcel_withProjection_shouldKeepProjection() throws IOException {
+        String json = IOUtils.toString(
+                this.getClass().getResourceAsStream(TEST_DEVICE_JSON), "utf-8");
+        Device device = mapper.readValue(json, Device.class);
+        device.mProjection = Utils.projection(Device.KEY_DEVICE_ID, Device.KEY_NAME);
+
+        Parcel parcel = Parcel.obtain();
+        device.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        Device deviceFromParcel = Device.CREATOR.createFromParcel(parcel);
+
+        assertEquals(device.mProjection, deviceFromParcel.mProjection);
+        assertTrue(deviceFromParcel.isAvailable(Device.KEY_NAME));
+        assertFalse(deviceFromParcel.isAvailable(Device.KEY_LOCALE));
+    }
 }
@@ -20,6 +20,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 
 public class DeviceUpdateTest {
@@ -37,4 +38,18 @@ public class DeviceUpdateTest {
         assertSame(testCams, update.getCameras());
     }
 
+    @Test
+    public void testDeviceUpdate_shouldReturnSameImmutableListInGetters() {
+        ArrayList<Thermostat> testThermos = new ArrayList<>();
+        testThermos.add(new Thermostat());
+
+        DeviceUpdate update = new DeviceUpdate(testThermos, new ArrayList<SmokeCOAlarm>(),
+                new ArrayList<Camera>());
+        NestList<Thermostat> thermostats = update.getThermostatList();
+
+        assertSame(thermostats, update.getThermostatList());
+        assertEquals(testThermos, thermostats);
+        assertEquals(0, update.getCameraList().size());
+        assertEquals(0, update.getSmokeCOAlarmList().size());
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.os.Build;
+import android.os.Parcel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class GlobalUpdateAndroidTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testGlobalUpdateToParcel() throws IOException {
+        GlobalUpdate update = new GlobalUpdate(
+                list(read("/test-thermostat.json", Thermostat.class)),
+                list(read("/test-smoke-alarm.json", SmokeCOAlarm.class)),
+                list(read("/test-camera.json", Camera.class)),
+                list(read("/test-structure.json", Structure.class)),
+                read("/test-metadata.json", Metadata.class));
+        update.stamp(7, 100, 200);
+
+        Parcel parcel = Parcel.obtain();
+        update.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        GlobalUpdate fromParcel = GlobalUpdate.CREATOR.createFromParcel(parcel);
+
+        assertEquals(update.getThermostats(), fromParcel.getThermostats());
+        assertEquals(update.getSmokeCOAlarms(), fromParcel.getSmokeCOAlarms());
+        assertEquals(update.getCameras(), fromParcel.getCameras());
+        assertEquals(update.getStructures(), fromParcel.getStructures());
+        assertEquals(update.getMetadata(), fromParcel.getMetadata());
+        assertEquals(7, fromParcel.getSequence());
+    }
+
+    @Test
+    public void testUpdateDeltaToParcel() throws IOException {
+        Thermostat thermostat = read("/test-thermostat.json", Thermostat.class);
+        DeviceUpdate base = new DeviceUpdate(new ArrayList<Thermostat>(),
+                new ArrayList<SmokeCOAlarm>(), new ArrayList<Camera>());
+        DeviceUpdate update = new DeviceUpdate(list(thermostat), new ArrayList<SmokeCOAlarm>(),
+                new ArrayList<Camera>());
+
+        Parcel parcel = Parcel.obtain();
+        update.deltaFrom(base).writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        UpdateDelta delta = UpdateDelta.CREATOR.createFromParcel(parcel);
+
+        assertEquals(update.getThermostats(), base.applyDelta(delta).getThermostats());
+    }
+
+    @Test
+    public void testGlobalUpdateToParcel_withProjection_shouldKeepProjection()
+            throws IOException {
+        Thermostat thermostat = read("/test-thermostat.json", Thermostat.class);
+        thermostat.mProjection = Utils.projection(Device.KEY_DEVICE_ID, Device.KEY_NAME);
+        Structure structure = read("/test-structure.json", Structure.class);
+        structure.mProjection = Utils.projection(Structure.KEY_STRUCTURE_ID, Structure.KEY_AWAY);
+        GlobalUpdate update = new GlobalUpdate(list(thermostat), new ArrayList<SmokeCOAlarm>(),
+                new ArrayList<Camera>(), list(structure),
+                read("/test-metadata.json", Metadata.class));
+
+        Parcel parcel = Parcel.obtain();
+        update.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        GlobalUpdate fromParcel = GlobalUpdate.CREATOR.createFromParcel(parcel);
+
+        assertFalse(fromParcel.getThermostats().get(0).isAvailable(Thermostat.KEY_AMBIENT_TEMP_C));
+        assertTrue(fromParcel.getThermostats().get(0).isAvailable(Device.KEY_NAME));
+        assertFalse(fromParcel.getStructures().get(0).isAvailable(Structure.KEY_NAME));
+    }
+
+    @Test
+    public void testDeviceUpdateToParcel_withProjection_shouldKeepProjection()
+            throws IOException {
+        Thermostat thermostat = read("/test-thermostat.json", Thermostat.class);
+        thermostat.mProjection = Utils.projection(Device.KEY_DEVICE_ID, Device.KEY_NAME);
+        DeviceUpdate update = new DeviceUpdate(list(thermostat), new ArrayList<SmokeCOAlarm>(),
+                new ArrayList<Camera>());
+
+        Parcel parcel = Parcel.obtain();
+        update.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        DeviceUpdate fromParcel = DeviceUpdate.CREATOR.createFromParcel(parcel);
+
+        assertFalse(fromParcel.getThermostats().get(0).isAvailable(Thermostat.KEY_AMBIENT_TEMP_C));
+        assertTrue(fromParcel.getThermostats().get(0).isAvailable(Device.KEY_NAME));
+    }
+
+    private <T> T read(String resource, Class<T> type) throws IOException {
+        String json = IOUtils.toString(this.getClass().getResourceAsStream(resource), "utf-8");
+        return mapper.readValue(json, type);
+    }
+
+    private static <T> ArrayList<T> list(T object) {
+        ArrayList<T> list = new ArrayList<>();
+        list.add(object);
+        return list;
+    }
+}
@@ -16,12 +16,27 @@
 
 package com.nestlabs.sdk;
 
+import com.firebase.client.DataSnapshot;
+
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
+import java.util.Collections;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
 
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DataSnapshot.class})
 public class GlobalUpdateTest {
 
     @Test
@@ -41,4 +56,44 @@ public class GlobalUpdateTest {
         assertSame(testStructures, update.getStructures());
         assertSame(testMetadata, update.getMetadata());
     }
+
+    @Test
+    public void testGlobalUpdate_withSnapshot_shouldDecodeOnlyRequestedCollections() {
+        DataSnapshot topLevelSnap = mock(DataSnapshot.class);
+        DataSnapshot mockDevicesSnap = mock(DataSnapshot.class);
+        DataSnapshot mockStructuresSnap = mock(DataSnapshot.class);
+        DataSnapshot mockThermostatsSnap = mock(DataSnapshot.class);
+        DataSnapshot mockThermostatSnap = mock(DataSnapshot.class);
+        DataSnapshot mockStructureSnap = mock(DataSnapshot.class);
+
+        when(mockDevicesSnap.getName()).thenReturn("devices");
+        when(mockStructuresSnap.getName()).thenReturn("structures");
+        when(mockThermostatsSnap.getName()).thenReturn("thermostats");
+
+        ArrayList<DataSnapshot> objectSnapshots = new ArrayList<>();
+        objectSnapshots.add(mockDevicesSnap);
+        objectSnapshots.add(mockStructuresSnap);
+        when(topLevelSnap.getChildren()).thenReturn(objectSnapshots);
+        when(mockDevicesSnap.getChildren())
+                .thenReturn(Collections.singletonList(mockThermostatsSnap));
+        when(mockThermostatsSnap.getChildren())
+                .thenReturn(Collections.singletonList(mockThermostatSnap));
+        when(mockStructuresSnap.getChildren())
+                .thenReturn(Collections.singletonList(mockStructureSnap));
+        when(mockThermostatSnap.getValue())
+                .thenReturn(Collections.singletonMap(Device.KEY_DEVICE_ID, "t1"));
+
+        GlobalUpdate update = new GlobalUpdate(topLevelSnap);
+        verify(topLevelSnap, never()).getChildren();
+
+        assertEquals(1, update.getThermostats().size());
+        assertEquals("t1", update.getThermostats().get(0).getDeviceId());
+        verify(mockThermostatSnap, times(1)).getValue();
+        verify(mockStructureSnap, never()).getValue();
+
+        assertEquals(0, update.getCameras().size());
+        assertEquals(0, update.getSmokeCOAlarms().size());
+        assertNull(update.getMetadata());
+        verify(topLevelSnap, times(1)).getChildren();
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ListenerWatchdogTest {
+
+    ListenerWatchdog watchdog;
+    NestListener.ThermostatListener listener;
+    NestListener.WatchdogListener mockWatchdogListener;
+
+    @Before
+    public void before() {
+        watchdog = new ListenerWatchdog();
+        listener = mock(NestListener.ThermostatListener.class);
+        watchdog.register(listener, "/devices/thermostats");
+        mockWatchdogListener = mock(NestListener.WatchdogListener.class);
+        watchdog.setWatchdogListener(mockWatchdogListener);
+    }
+
+    @After
+    public void after() {
+        watchdog.setFailFastOnMainThread(0, TimeUnit.MILLISECONDS, null);
+        watchdog.setStackSampling(false);
+    }
+
+    @Test
+    public void testStats_shouldReportPercentilesOverWindow() {
+        ListenerWatchdog.Stats stats = new ListenerWatchdog.Stats("Listener", "/");
+        assertEquals(-1, stats.getPercentile(50, TimeUnit.NANOSECONDS));
+
+        for (int i = 1; i <= 100; i++) {
+            stats.record(i, false);
+        }
+        assertEquals(50, stats.getPercentile(50, TimeUnit.NANOSECONDS));
+        assertEquals(99, stats.getPercentile(99, TimeUnit.NANOSECONDS));
+        assertEquals(1, stats.getPercentile(0, TimeUnit.NANOSECONDS));
+        assertEquals(100, stats.getMax(TimeUnit.NANOSECONDS));
+
+        // Only the most recent callbacks count towards percentiles.
+        for (int i = 0; i < ListenerWatchdog.WINDOW; i++) {
+            stats.record(1000, false);
+        }
+        assertEquals(1000, stats.getPercentile(1, TimeUnit.NANOSECONDS));
+        assertEquals(100 + ListenerWatchdog.WINDOW, stats.getCount());
+    }
+
+    @Test
+    public void testEnd_overBudget_shouldReportListenerClassAndPath() {
+        watchdog.setBudget(1, TimeUnit.MILLISECONDS);
+
+        watchdog.end(listener, System.nanoTime());
+        verify(mockWatchdogListener, never()).onSlowCallback(
+                any(ListenerWatchdog.Stats.class), anyLong(), any(StackTraceElement[].class));
+
+        watchdog.end(listener, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        ArgumentCaptor<ListenerWatchdog.Stats> captor =
+                ArgumentCaptor.forClass(ListenerWatchdog.Stats.class);
+        verify(mockWatchdogListener).onSlowCallback(captor.capture(), anyLong(),
+                any(StackTraceElement[].class));
+
+        ListenerWatchdog.Stats stats = captor.getValue();
+        assertSame(stats, watchdog.getStats(listener));
+        assertEquals(listener.getClass().getName(), stats.getListenerClass());
+        assertEquals("/devices/thermostats", stats.getPath());
+        assertEquals(2, stats.getCount());
+        assertEquals(1, stats.getOverBudgetCount());
+    }
+
+    @Test
+    public void testEnd_withStackSampling_shouldReportSampledStack() {
+        watchdog.setBudget(1, TimeUnit.NANOSECONDS);
+        watchdog.setStackSampling(true);
+
+        long start = watchdog.begin();
+        watchdog.sample(System.nanoTime() + 1000);
+        watchdog.end(listener, start);
+
+        ArgumentCaptor<StackTraceElement[]> captor =
+                ArgumentCaptor.forClass(StackTraceElement[].class);
+        verify(mockWatchdogListener).onSlowCallback(any(ListenerWatchdog.Stats.class), anyLong(),
+                captor.capture());
+        assertNotNull(captor.getValue());
+    }
+
+    @Test
+    public void testDecoded_onMainThreadOverThreshold_shouldFailFast() {
+        watchdog.setFailFastOnMainThread(1, TimeUnit.MILLISECONDS, Thread.currentThread());
+        long slowStart = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+
+        watchdog.decoded(listener, System.nanoTime());
+        try {
+            watchdog.decoded(listener, slowStart);
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException expected) {
+            assertNotNull(expected.getMessage());
+        }
+        try {
+            watchdog.end(listener, slowStart);
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException expected) {
+            assertNotNull(expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecoded_offMainThread_shouldNotFailFast() {
+        watchdog.setFailFastOnMainThread(1, TimeUnit.MILLISECONDS, new Thread());
+
+        watchdog.decoded(listener, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testListenerContext_shouldOnlyRecordOnItsOwnWatchdog() {
+        ListenerWatchdog other = new ListenerWatchdog();
+        other.register(listener, "/devices/thermostats");
+        ListenerContext context = new ListenerContext(null, watchdog, null);
+
+        context.end(listener, context.begin());
+
+        assertEquals(1, watchdog.getStats(listener).getCount());
+        assertEquals(0, other.getStats(listener).getCount());
+    }
+
+    @Test
+    public void testUnregister_shouldStopKeepingStats() {
+        watchdog.unregister(listener);
+        watchdog.end(listener, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+
+        assertNull(watchdog.getStats(listener));
+        assertEquals(0, watchdog.getStats().size());
+    }
+}
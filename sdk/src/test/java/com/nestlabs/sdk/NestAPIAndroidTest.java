@@ -79,6 +79,17 @@ public class NestAPIAndroidTest {
         assertEquals(token, tokenFromIntent);
     }
 
+    @Test
+    public void testGetAuthTimingsFromIntent_shouldReturnRecordedDurations() {
+        Intent intent = new Intent();
+        intent.putExtra("auth_flow_ms_key", 900L);
+        intent.putExtra("token_exchange_ms_key", 120L);
+
+        assertEquals(900, NestAPI.getAuthFlowMillisFromIntent(intent));
+        assertEquals(120, NestAPI.getTokenExchangeMillisFromIntent(intent));
+        assertEquals(-1, NestAPI.getPrewarmMillisFromIntent(intent));
+    }
+
     @Test
     public void testRevokeToken_shouldMakeCorrectlyFormattedRequest() throws Exception {
         final CountDownLatch latch = new CountDownLatch(1);
@@ -19,7 +19,9 @@ package com.nestlabs.sdk;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.support.annotation.NonNull;
 
+import com.firebase.client.ChildEventListener;
 import com.firebase.client.Firebase;
 import com.firebase.client.ValueEventListener;
 
@@ -36,14 +38,19 @@ import org.powermock.reflect.Whitebox;
 import okhttp3.OkHttpClient;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -61,6 +68,7 @@ public class NestAPITest {
     static OkHttpClient mockHttpClient;
     static NestAPI realNest;
     static Map<NestListener, ValueEventListener> listenerMap;
+    static ListenerContext listenerContext;
 
     @BeforeClass
     public static void beforeClass() throws Exception {
@@ -76,9 +84,17 @@ public class NestAPITest {
         NestAPI.setAndroidContext(mock(Context.class));
 
         realNest = NestAPI.getInstance();
+        // Set up the connection now, while the mocks above are in place.
+        realNest.prepareConnection(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        });
         when(NestAPI.getInstance()).thenReturn(realNest);
 
         listenerMap = Whitebox.getInternalState(realNest, "mListenerMap");
+        listenerContext = Whitebox.getInternalState(realNest, "mListenerContext");
     }
 
     @Before
@@ -150,7 +166,8 @@ public class NestAPITest {
                 .withArguments(
                         eq(mockFirebase),
                         eq(mockListener),
-                        any(Firebase.AuthStateListener.class)
+                        any(Firebase.AuthStateListener.class),
+                        any(StartupTrace.class)
                 )
                 .thenReturn(mockFirebaseListener);
 
@@ -160,13 +177,42 @@ public class NestAPITest {
         verify(mockFirebase).authWithCustomToken(testToken, mockFirebaseListener);
     }
 
+    @Test
+    public void testAddSafetyAlarmListener_shouldRegisterSafetyLaneOnlyWhileNeeded()
+            throws Exception {
+        NestListener.GlobalListener mockGlobalListener = mock(NestListener.GlobalListener.class);
+        SnapshotValueListener mockGlobalValueListener = mock(SnapshotValueListener.class);
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockGlobalListener, SnapshotDecoder.GLOBAL, null, listenerContext)
+                .thenReturn(mockGlobalValueListener);
+        SafetyAlarmValueListener safetyLane = Whitebox.getInternalState(realNest, "mSafetyLane");
+
+        NestAPI nest = NestAPI.getInstance();
+        nest.addGlobalListener(mockGlobalListener);
+        verify(mockFirebase, never()).addValueEventListener(safetyLane);
+
+        NestListener.SafetyAlarmListener firstListener =
+                mock(NestListener.SafetyAlarmListener.class);
+        NestListener.SafetyAlarmListener secondListener =
+                mock(NestListener.SafetyAlarmListener.class);
+        nest.addSafetyAlarmListener(firstListener);
+        nest.addSafetyAlarmListener(secondListener);
+        verify(mockFirebase, times(1)).addValueEventListener(safetyLane);
+
+        assertTrue(nest.removeListener(firstListener));
+        verify(mockFirebase, never()).removeEventListener(safetyLane);
+        assertTrue(nest.removeListener(secondListener));
+        verify(mockFirebase).removeEventListener(safetyLane);
+        assertFalse(nest.removeListener(secondListener));
+    }
+
     @Test
     public void testAddGlobalListener_shouldAddListenerToFirebase() throws Exception {
         NestListener.GlobalListener mockGlobalListener = mock(NestListener.GlobalListener.class);
-        GlobalValueListener mockGlobalValueListener = mock(GlobalValueListener.class);
+        SnapshotValueListener mockGlobalValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(GlobalValueListener.class)
-                .withArguments(mockGlobalListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockGlobalListener, SnapshotDecoder.GLOBAL, null, listenerContext)
                 .thenReturn(mockGlobalValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -179,10 +225,10 @@ public class NestAPITest {
     @Test
     public void testAddDeviceListener_shouldAddListenerToFirebase() throws Exception {
         NestListener.DeviceListener mockListener = mock(NestListener.DeviceListener.class);
-        DeviceValueListener mockValueListener = mock(DeviceValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(DeviceValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.DEVICES, null, listenerContext)
                 .thenReturn(mockValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -195,10 +241,10 @@ public class NestAPITest {
     @Test
     public void testAddStructureListener_shouldAddListenerToFirebase() throws Exception {
         NestListener.StructureListener mockListener = mock(NestListener.StructureListener.class);
-        StructureValueListener mockValueListener = mock(StructureValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(StructureValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.STRUCTURES, null, listenerContext)
                 .thenReturn(mockValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -211,10 +257,10 @@ public class NestAPITest {
     @Test
     public void testAddMetadataListener_shouldAddListenerToFirebase() throws Exception {
         NestListener.MetadataListener mockListener = mock(NestListener.MetadataListener.class);
-        MetadataValueListener mockValueListener = mock(MetadataValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(MetadataValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.METADATA, null, listenerContext)
                 .thenReturn(mockValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -227,10 +273,10 @@ public class NestAPITest {
     @Test
     public void testAddThermostatListener_shouldAddListenerToFirebase() throws Exception {
         NestListener.ThermostatListener mockListener = mock(NestListener.ThermostatListener.class);
-        ThermostatValueListener mockValueListener = mock(ThermostatValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(ThermostatValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.THERMOSTATS, null, listenerContext)
                 .thenReturn(mockValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -244,10 +290,10 @@ public class NestAPITest {
     public void testAddSmokeCOAlarmListener_shouldAddListenerToFirebase() throws Exception {
         NestListener.SmokeCOAlarmListener mockListener =
                 mock(NestListener.SmokeCOAlarmListener.class);
-        SmokeCOAlarmValueListener mockValueListener = mock(SmokeCOAlarmValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(SmokeCOAlarmValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.SMOKE_CO_ALARMS, null, listenerContext)
                 .thenReturn(mockValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -260,10 +306,10 @@ public class NestAPITest {
     @Test
     public void testAddCameraListener_shouldAddListenerToFirebase() throws Exception {
         NestListener.CameraListener mockListener = mock(NestListener.CameraListener.class);
-        CameraValueListener mockValueListener = mock(CameraValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(CameraValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.CAMERAS, null, listenerContext)
                 .thenReturn(mockValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -274,6 +320,33 @@ public class NestAPITest {
         assertEquals(listenerMap.size(), 1);
     }
 
+    @Test
+    public void testAddThermostatListener_incremental_shouldAddChildAndValueListeners()
+            throws Exception {
+        NestListener.ThermostatListener mockListener = mock(NestListener.ThermostatListener.class);
+        SnapshotChildListener mockChildListener = mock(SnapshotChildListener.class);
+
+        whenNew(SnapshotChildListener.class)
+                .withArguments(mockListener, SnapshotDecoder.THERMOSTATS, null, listenerContext)
+                .thenReturn(mockChildListener);
+
+        NestAPI nest = NestAPI.getInstance();
+        nest.setIncrementalUpdates(true);
+        try {
+            nest.addThermostatListener(mockListener);
+        } finally {
+            nest.setIncrementalUpdates(false);
+        }
+
+        verify(mockFirebase).addChildEventListener(mockChildListener);
+        verify(mockFirebase).addValueEventListener(mockChildListener);
+        assertEquals(listenerMap.size(), 1);
+
+        nest.removeListener(mockListener);
+        verify(mockFirebase).removeEventListener((ChildEventListener) mockChildListener);
+        verify(mockFirebase).removeEventListener((ValueEventListener) mockChildListener);
+    }
+
     @Test
     public void testAddListeners_shouldAddListenerToListenerMap() {
         NestListener.CameraListener mockListener = mock(NestListener.CameraListener.class);
@@ -335,10 +408,10 @@ public class NestAPITest {
     @Test
     public void testRemoveListener_shouldRemoveListenerFromFirebase() throws Exception {
         NestListener.CameraListener mockListener = mock(NestListener.CameraListener.class);
-        CameraValueListener mockValueListener = mock(CameraValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
 
-        whenNew(CameraValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.CAMERAS, null, listenerContext)
                 .thenReturn(mockValueListener);
 
         NestAPI nest = NestAPI.getInstance();
@@ -351,15 +424,15 @@ public class NestAPITest {
     public void testRemoveAllListeners_shouldRemoveAllListenersFromFirebase() throws Exception {
         NestListener.CameraListener mockListener = mock(NestListener.CameraListener.class);
         NestListener.CameraListener mockListener2 = mock(NestListener.CameraListener.class);
-        CameraValueListener mockValueListener = mock(CameraValueListener.class);
-        CameraValueListener mockValueListener2 = mock(CameraValueListener.class);
+        SnapshotValueListener mockValueListener = mock(SnapshotValueListener.class);
+        SnapshotValueListener mockValueListener2 = mock(SnapshotValueListener.class);
 
-        whenNew(CameraValueListener.class)
-                .withArguments(mockListener)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener, SnapshotDecoder.CAMERAS, null, listenerContext)
                 .thenReturn(mockValueListener);
 
-        whenNew(CameraValueListener.class)
-                .withArguments(mockListener2)
+        whenNew(SnapshotValueListener.class)
+                .withArguments(mockListener2, SnapshotDecoder.CAMERAS, null, listenerContext)
                 .thenReturn(mockValueListener2);
 
         NestAPI nest = NestAPI.getInstance();
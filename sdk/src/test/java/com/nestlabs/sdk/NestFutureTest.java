@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NestFutureTest {
+
+    @Test
+    public void testAsCallback_onSuccess_shouldCompleteSuccessfully() {
+        NestFuture future = new NestFuture();
+        assertFalse(future.isDone());
+
+        future.asCallback().onSuccess();
+
+        assertTrue(future.isDone());
+        assertTrue(future.isSuccessful());
+        assertNull(future.getException());
+    }
+
+    @Test
+    public void testAsCallback_onFailure_shouldCompleteWithException() {
+        NestException testException = new NestException("test");
+        NestFuture future = new NestFuture();
+
+        future.asCallback().onFailure(testException);
+
+        assertTrue(future.isDone());
+        assertFalse(future.isSuccessful());
+        assertSame(testException, future.getException());
+    }
+
+    @Test
+    public void testAddCallback_afterCompletion_shouldCallImmediately() {
+        final AtomicBoolean called = new AtomicBoolean();
+        NestFuture.succeeded().addCallback(new Callback() {
+            @Override
+            public void onSuccess() {
+                called.set(true);
+            }
+
+            @Override
+            public void onFailure(NestException exception) {}
+        });
+        assertTrue(called.get());
+    }
+
+    @Test
+    public void testThen_shouldRunContinuationAfterSuccess() {
+        NestFuture first = new NestFuture();
+        final NestFuture second = new NestFuture();
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        NestFuture chained = first.then(new NestFuture.Continuation() {
+            @Override
+            public NestFuture then() {
+                ran.set(true);
+                return second;
+            }
+        });
+
+        assertFalse(ran.get());
+        first.asCallback().onSuccess();
+        assertTrue(ran.get());
+        assertFalse(chained.isDone());
+
+        second.asCallback().onSuccess();
+        assertTrue(chained.isSuccessful());
+    }
+
+    @Test
+    public void testThen_shouldNotRunContinuationAfterFailure() {
+        NestFuture first = new NestFuture();
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        NestFuture chained = first.then(new NestFuture.Continuation() {
+            @Override
+            public NestFuture then() {
+                ran.set(true);
+                return NestFuture.succeeded();
+            }
+        });
+
+        NestException testException = new NestException("test");
+        first.asCallback().onFailure(testException);
+
+        assertFalse(ran.get());
+        assertSame(testException, chained.getException());
+    }
+
+    @Test
+    public void testCancel_shouldPreventQueuedContinuation() {
+        NestFuture first = new NestFuture();
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        NestFuture chained = first.then(new NestFuture.Continuation() {
+            @Override
+            public NestFuture then() {
+                ran.set(true);
+                return NestFuture.succeeded();
+            }
+        });
+
+        assertTrue(chained.cancel());
+        first.asCallback().onSuccess();
+
+        assertFalse(ran.get());
+        assertTrue(chained.isCancelled());
+        assertFalse(chained.cancel());
+    }
+
+    @Test
+    public void testThen_whenContinuationThrows_shouldFail() {
+        NestFuture first = new NestFuture();
+        final IllegalStateException testException = new IllegalStateException("test");
+
+        NestFuture chained = first.then(new NestFuture.Continuation() {
+            @Override
+            public NestFuture then() {
+                throw testException;
+            }
+        });
+
+        first.asCallback().onSuccess();
+
+        assertTrue(chained.isDone());
+        assertFalse(chained.isSuccessful());
+        assertSame(testException, chained.getException().getCause());
+    }
+
+    @Test
+    public void testCancel_afterContinuationRan_shouldCancelInnerFuture() {
+        NestFuture first = new NestFuture();
+        final NestFuture second = new NestFuture();
+
+        NestFuture chained = first.then(new NestFuture.Continuation() {
+            @Override
+            public NestFuture then() {
+                return second;
+            }
+        });
+
+        first.asCallback().onSuccess();
+        assertTrue(chained.cancel());
+
+        assertTrue(second.isCancelled());
+        assertTrue(chained.isCancelled());
+    }
+
+    @Test
+    public void testCancel_shouldRunCancelAction() {
+        final AtomicBoolean ran = new AtomicBoolean();
+        NestFuture future = new NestFuture();
+        future.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+
+        future.cancel();
+        assertTrue(ran.get());
+    }
+
+    @Test
+    public void testAllOf_shouldSucceedWhenAllSucceed() {
+        NestFuture a = new NestFuture();
+        NestFuture b = new NestFuture();
+        NestFuture all = NestFuture.allOf(a, b);
+
+        a.asCallback().onSuccess();
+        assertFalse(all.isDone());
+        b.asCallback().onSuccess();
+        assertTrue(all.isSuccessful());
+    }
+
+    @Test
+    public void testAllOf_shouldFailOnFirstFailure() {
+        NestFuture a = new NestFuture();
+        NestFuture b = new NestFuture();
+        NestFuture all = NestFuture.allOf(a, b);
+
+        a.asCallback().onFailure(new NestException("test"));
+        assertTrue(all.isDone());
+        assertFalse(all.isSuccessful());
+    }
+
+    @Test
+    public void testAnyOf_shouldSucceedOnFirstSuccess() {
+        NestFuture a = new NestFuture();
+        NestFuture b = new NestFuture();
+        NestFuture any = NestFuture.anyOf(a, b);
+
+        a.asCallback().onFailure(new NestException("test"));
+        assertFalse(any.isDone());
+        b.asCallback().onSuccess();
+        assertTrue(any.isSuccessful());
+    }
+
+    @Test
+    public void testWithDeadline_shouldFailWhenNotCompleted() throws Exception {
+        NestFuture future = new NestFuture().withDeadline(10, TimeUnit.MILLISECONDS);
+
+        try {
+            future.await();
+        } catch (NestException e) {
+            assertEquals("Deadline exceeded.", e.getMessage());
+        }
+        assertTrue(future.isDone());
+        assertFalse(future.isSuccessful());
+    }
+
+    @Test
+    public void testWithDeadline_shouldCancelInnerFuture() throws Exception {
+        NestFuture first = new NestFuture();
+        final NestFuture second = new NestFuture();
+        NestFuture chained = first.then(new NestFuture.Continuation() {
+            @Override
+            public NestFuture then() {
+                return second;
+            }
+        }).withDeadline(10, TimeUnit.MILLISECONDS);
+        first.asCallback().onSuccess();
+
+        try {
+            second.await(1, TimeUnit.SECONDS);
+        } catch (NestException e) {
+            assertEquals("Cancelled.", e.getMessage());
+        }
+        assertTrue(second.isCancelled());
+        assertFalse(chained.isSuccessful());
+        assertEquals("Deadline exceeded.", chained.getException().getMessage());
+    }
+
+    @Test
+    public void testAwait_withTimeout_shouldReturnFalseWhenPending() throws Exception {
+        assertFalse(new NestFuture().await(1, TimeUnit.MILLISECONDS));
+        assertTrue(NestFuture.succeeded().await(1, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NestHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testRecord_shouldOnlyAppendChangedFields() throws IOException {
+        NestHistory history = new NestHistory.Builder().directory(folder.getRoot()).build();
+        history.record(update(thermostat("t1", "heat", 40)), 1000);
+        history.record(update(thermostat("t1", "heat", 45)), 2000);
+        history.record(update(thermostat("t1", "cool", 45)), 3000);
+
+        Collector modes = query(history, "t1", Thermostat.KEY_HVAC_MODE, 0, Long.MAX_VALUE);
+        assertEquals(2, modes.mTimes.size());
+        assertEquals(1000L, (long) modes.mTimes.get(0));
+        assertEquals("\"heat\"", modes.mValues.get(0));
+        assertEquals(3000L, (long) modes.mTimes.get(1));
+        assertEquals("\"cool\"", modes.mValues.get(1));
+
+        Collector humidity = query(history, "t1", Thermostat.KEY_HUMIDITY, 0, Long.MAX_VALUE);
+        assertEquals(2, humidity.mTimes.size());
+        assertEquals("45", humidity.mValues.get(1));
+    }
+
+    @Test
+    public void testRecord_shouldRecordRemovedObjectsAsNull() throws IOException {
+        NestHistory history = new NestHistory.Builder().directory(folder.getRoot()).build();
+        history.record(update(thermostat("t1", "heat", 40)), 1000);
+        history.record(new GlobalUpdate(new ArrayList<Thermostat>(),
+                new ArrayList<SmokeCOAlarm>(), new ArrayList<Camera>(),
+                new ArrayList<Structure>(), new Metadata()), 2000);
+
+        assertEquals("\"heat\"", history.valueAt("t1", Thermostat.KEY_HVAC_MODE, 1500));
+        assertEquals("null", history.valueAt("t1", Thermostat.KEY_HVAC_MODE, 2500));
+        assertEquals("null", history.valueAt("t1", Thermostat.KEY_HUMIDITY, 2500));
+    }
+
+    @Test
+    public void testAppend_withLongStrings_shouldKeepWholeCharactersAndDistinctIds()
+            throws IOException {
+        NestHistory history = new NestHistory.Builder().directory(folder.getRoot()).build();
+        String prefix = repeat("\u00e9", 200);
+        history.append(prefix + "a", Thermostat.KEY_HUMIDITY, 1000, "1");
+        history.append(prefix + "b", Thermostat.KEY_HUMIDITY, 1000, "2");
+        history.append("t1", Thermostat.KEY_NAME, 1000, repeat("\u00e9", 40000));
+
+        assertEquals("1", history.valueAt(prefix + "a", Thermostat.KEY_HUMIDITY, 1000));
+        assertEquals("2", history.valueAt(prefix + "b", Thermostat.KEY_HUMIDITY, 1000));
+        String value = history.valueAt("t1", Thermostat.KEY_NAME, 1000);
+        assertEquals(repeat("\u00e9", 32767), value);
+    }
+
+    @Test
+    public void testQuery_shouldFilterByTimeRangeAndDevice() throws IOException {
+        NestHistory history = new NestHistory.Builder().directory(folder.getRoot()).build();
+        for (int i = 0; i < 100; i++) {
+            history.append("t1", Thermostat.KEY_HUMIDITY, i * 10, String.valueOf(i));
+            history.append("t2", Thermostat.KEY_HUMIDITY, i * 10, String.valueOf(-i));
+        }
+
+        Collector result = query(history, "t1", Thermostat.KEY_HUMIDITY, 200, 250);
+        assertEquals(6, result.mTimes.size());
+        assertEquals("20", result.mValues.get(0));
+        assertEquals("25", result.mValues.get(5));
+        assertEquals("-50", history.valueAt("t2", Thermostat.KEY_HUMIDITY, 505));
+        assertNull(history.valueAt("t3", Thermostat.KEY_HUMIDITY, 505));
+    }
+
+    @Test
+    public void testAppend_shouldRollSegmentsAndDropOldest() throws IOException {
+        NestHistory history = new NestHistory.Builder()
+                .directory(folder.getRoot())
+                .segmentSize(4096)
+                .maxSegments(2)
+                .build();
+        for (int i = 0; i < 200; i++) {
+            history.append("t1", Thermostat.KEY_HUMIDITY, i, String.valueOf(i));
+        }
+
+        File[] segments = folder.getRoot().listFiles();
+        assertEquals(2, segments.length);
+        Collector result = query(history, "t1", Thermostat.KEY_HUMIDITY, 0, Long.MAX_VALUE);
+        assertEquals(199L, (long) result.mTimes.get(result.mTimes.size() - 1));
+        assertEquals(true, result.mTimes.get(0) > 0);
+    }
+
+    @Test
+    public void testBuild_shouldReopenExistingSegments() throws IOException {
+        NestHistory history = new NestHistory.Builder().directory(folder.getRoot()).build();
+        history.append("s1", Structure.KEY_AWAY, 1000, "\"away\"");
+        history.append("s1", Structure.KEY_AWAY, 2000, "\"home\"");
+        history.close();
+
+        NestHistory reopened = new NestHistory.Builder().directory(folder.getRoot()).build();
+        assertEquals("\"away\"", reopened.valueAt("s1", Structure.KEY_AWAY, 1500));
+        assertEquals("\"home\"", reopened.valueAt("s1", Structure.KEY_AWAY, 2500));
+    }
+
+    @Test
+    public void testOnUpdate_shouldWriteInBackground() throws Exception {
+        NestHistory history = new NestHistory.Builder().directory(folder.getRoot()).build();
+        history.onUpdate(update(thermostat("t1", "heat", 40)));
+        history.flush();
+
+        assertEquals("\"heat\"",
+                history.valueAt("t1", Thermostat.KEY_HVAC_MODE, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testOnUpdate_afterClose_shouldBeIgnored() throws Exception {
+        NestHistory history = new NestHistory.Builder().directory(folder.getRoot()).build();
+        history.close();
+        history.close();
+
+        history.onUpdate(update(thermostat("t1", "heat", 40)));
+
+        assertEquals(null,
+                history.valueAt("t1", Thermostat.KEY_HVAC_MODE, System.currentTimeMillis()));
+    }
+
+    private Collector query(NestHistory history, String id, String key, long from, long to) {
+        Collector collector = new Collector();
+        history.query(id, key, from, to, collector);
+        return collector;
+    }
+
+    private Thermostat thermostat(String id, String hvacMode, long humidity) throws IOException {
+        String json = "{\"device_id\":\"" + id + "\",\"hvac_mode\":\"" + hvacMode
+                + "\",\"humidity\":" + humidity + "}";
+        return mapper.readValue(json, Thermostat.class);
+    }
+
+    private static GlobalUpdate update(Thermostat thermostat) {
+        ArrayList<Thermostat> thermostats = new ArrayList<>();
+        thermostats.add(thermostat);
+        return new GlobalUpdate(thermostats, new ArrayList<SmokeCOAlarm>(),
+                new ArrayList<Camera>(), new ArrayList<Structure>(), new Metadata());
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+    private static class Collector implements NestHistory.Visitor {
+        final ArrayList<Long> mTimes = new ArrayList<>();
+        final ArrayList<String> mValues = new ArrayList<>();
+
+        @Override
+        public boolean onRecord(long timeMs, ByteBuffer value) {
+            mTimes.add(timeMs);
+            mValues.add(NestHistory.decode(value));
+            return true;
+        }
+    }
+}
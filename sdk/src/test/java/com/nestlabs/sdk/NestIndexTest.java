@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(DataSnapshot.class)
+public class NestIndexTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testGet_shouldReturnDeviceById() throws IOException {
+        Thermostat t = thermostat("t1", "s1", "w1", true, "heat");
+        NestIndex index = new NestIndex();
+        index.onUpdate(deviceUpdate(t));
+
+        assertSame(t, index.thermostats().get("t1"));
+        assertNull(index.thermostats().get("missing"));
+        assertEquals(1, index.thermostats().size());
+    }
+
+    @Test
+    public void testQuery_shouldIntersectConditions() throws IOException {
+        Thermostat t1 = thermostat("t1", "s1", "w1", false, "heat");
+        Thermostat t2 = thermostat("t2", "s1", "w1", true, "heat");
+        Thermostat t3 = thermostat("t3", "s1", "w2", false, "cool");
+        Thermostat t4 = thermostat("t4", "s2", "w1", false, "heat");
+        NestIndex index = new NestIndex();
+        index.onUpdate(deviceUpdate(t1, t2, t3, t4));
+
+        List<Thermostat> result = index.thermostats()
+                .where(Device.KEY_STRUCTURE_ID, "s1")
+                .where(Device.KEY_WHERE_ID, "w1")
+                .where(Device.KEY_IS_ONLINE, false)
+                .list();
+
+        assertEquals(1, result.size());
+        assertSame(t1, result.get(0));
+        assertEquals(3, index.thermostats().find(Thermostat.KEY_HVAC_MODE, "heat").size());
+    }
+
+    @Test
+    public void testUpdate_shouldMoveChangedDevicesBetweenBuckets() throws IOException {
+        NestIndex index = new NestIndex();
+        index.onUpdate(deviceUpdate(thermostat("t1", "s1", "w1", true, "heat"),
+                thermostat("t2", "s1", "w1", true, "heat")));
+        assertEquals(2, index.thermostats().find(Thermostat.KEY_HVAC_MODE, "heat").size());
+
+        Thermostat changed = thermostat("t1", "s1", "w1", true, "off");
+        index.onUpdate(deviceUpdate(changed, thermostat("t2", "s1", "w1", true, "heat")));
+
+        assertEquals(1, index.thermostats().find(Thermostat.KEY_HVAC_MODE, "heat").size());
+        List<Thermostat> off = index.thermostats().find(Thermostat.KEY_HVAC_MODE, "off");
+        assertEquals(1, off.size());
+        assertSame(changed, off.get(0));
+    }
+
+    @Test
+    public void testUpdate_shouldRemoveMissingDevices() throws IOException {
+        NestIndex index = new NestIndex();
+        index.onUpdate(deviceUpdate(thermostat("t1", "s1", "w1", true, "heat"),
+                thermostat("t2", "s1", "w1", true, "heat")));
+        index.onUpdate(deviceUpdate(thermostat("t2", "s1", "w1", true, "heat")));
+
+        assertNull(index.thermostats().get("t1"));
+        assertEquals(1, index.thermostats().find(Device.KEY_STRUCTURE_ID, "s1").size());
+    }
+
+    @Test
+    public void testFind_withAlarmState_shouldReturnMatchingAlarms() throws IOException {
+        SmokeCOAlarm alarm = mapper.readValue("{\"device_id\":\"a1\",\"structure_id\":\"s1\","
+                + "\"co_alarm_state\":\"emergency\",\"smoke_alarm_state\":\"ok\"}",
+                SmokeCOAlarm.class);
+        NestIndex index = new NestIndex();
+        index.onUpdate(new DeviceUpdate(new ArrayList<Thermostat>(), list(alarm),
+                new ArrayList<Camera>()));
+
+        assertEquals(1, index.smokeCOAlarms()
+                .find(SmokeCOAlarm.KEY_CO_ALARM_STATE, "emergency").size());
+        assertTrue(index.smokeCOAlarms().find(SmokeCOAlarm.KEY_CO_ALARM_STATE, "ok").isEmpty());
+    }
+
+    @Test
+    public void testOnUpdate_fromDeviceListener_shouldKeepUnchangedInstances()
+            throws IOException {
+        NestIndex index = new NestIndex();
+        SnapshotValueListener<NestListener.DeviceListener, DeviceUpdate> valueListener =
+                new SnapshotValueListener<NestListener.DeviceListener, DeviceUpdate>(index,
+                        SnapshotDecoder.DEVICES, new ListenerContext());
+
+        valueListener.onDataChange(devices(thermostat("t1", "s1", "w1", true, "heat"),
+                thermostat("t2", "s1", "w1", true, "heat")));
+        Thermostat t1 = index.thermostats().get("t1");
+        Thermostat t2 = index.thermostats().get("t2");
+        valueListener.onDataChange(devices(thermostat("t1", "s1", "w1", true, "heat"),
+                thermostat("t2", "s1", "w1", true, "cool")));
+
+        assertSame(t1, index.thermostats().get("t1"));
+        assertTrue(t2 != index.thermostats().get("t2"));
+        assertEquals(1, index.thermostats().find(Thermostat.KEY_HVAC_MODE, "heat").size());
+        assertEquals("t2", index.thermostats().find(Thermostat.KEY_HVAC_MODE, "cool").get(0)
+                .getDeviceId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFind_withUnindexedKey_shouldThrow() {
+        new NestIndex().thermostats().find(Thermostat.KEY_HUMIDITY, 40);
+    }
+
+    private Thermostat thermostat(String id, String structureId, String whereId,
+            boolean isOnline, String hvacMode) throws IOException {
+        String json = "{\"device_id\":\"" + id + "\",\"structure_id\":\"" + structureId
+                + "\",\"where_id\":\"" + whereId + "\",\"is_online\":" + isOnline
+                + ",\"hvac_mode\":\"" + hvacMode + "\"}";
+        return mapper.readValue(json, Thermostat.class);
+    }
+
+    private DataSnapshot devices(Thermostat... thermostats) {
+        List<DataSnapshot> thermostatSnaps = new ArrayList<>();
+        for (Thermostat thermostat : thermostats) {
+            thermostatSnaps.add(snapshot(thermostat.getDeviceId(),
+                    mapper.convertValue(thermostat, Map.class)));
+        }
+        DataSnapshot thermostatsSnap = snapshot(NestAPI.KEY_THERMOSTATS, null);
+        when(thermostatsSnap.getChildren()).thenReturn(thermostatSnaps);
+        DataSnapshot devicesSnap = snapshot(NestAPI.KEY_DEVICES, null);
+        when(devicesSnap.getChildren()).thenReturn(Arrays.asList(thermostatsSnap));
+        return devicesSnap;
+    }
+
+    private static DataSnapshot snapshot(String name, Object value) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        when(snap.getName()).thenReturn(name);
+        when(snap.getValue()).thenReturn(value);
+        return snap;
+    }
+
+    private static DeviceUpdate deviceUpdate(Thermostat... thermostats) {
+        return new DeviceUpdate(list(thermostats), new ArrayList<SmokeCOAlarm>(),
+                new ArrayList<Camera>());
+    }
+
+    @SafeVarargs
+    private static <T> ArrayList<T> list(T... items) {
+        ArrayList<T> list = new ArrayList<>();
+        for (T item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+}
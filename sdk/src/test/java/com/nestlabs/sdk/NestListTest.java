@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NestListTest {
+
+    @Test
+    public void testCopyOf_shouldNotReflectLaterChangesToSource() {
+        ArrayList<String> source = new ArrayList<>(Arrays.asList("a", "b"));
+        NestList<String> list = NestList.copyOf(source);
+        source.add("c");
+
+        assertEquals(2, list.size());
+        assertEquals("b", list.get(1));
+        assertEquals(Arrays.asList("a", "b"), list);
+    }
+
+    @Test
+    public void testCopyOf_withNestList_shouldReturnSameList() {
+        NestList<String> list = NestList.copyOf(Arrays.asList("a"));
+        assertSame(list, NestList.copyOf(list));
+        assertSame(NestList.empty(), NestList.copyOf(new ArrayList<String>()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAdd_shouldThrowUnsupportedOperationException() {
+        NestList.copyOf(Arrays.asList("a")).add("b");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSet_shouldThrowUnsupportedOperationException() {
+        NestList.copyOf(Arrays.asList("a")).set(0, "b");
+    }
+
+    @Test
+    public void testEmpty_shouldHaveNoElements() {
+        assertTrue(NestList.empty().isEmpty());
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class NestPublisherTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private TestSource mSource;
+
+    @Before
+    public void before() {
+        mSource = new TestSource();
+    }
+
+    @Test
+    public void testSubscribe_shouldStartAndStopSource() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.BUFFER, 4);
+        TestSubscriber subscriber = new TestSubscriber();
+
+        publisher.subscribe(subscriber);
+        assertNotNull(subscriber.mSubscription);
+        assertEquals(1, mSource.mStarts);
+        assertEquals(1, publisher.getSubscriberCount());
+
+        subscriber.mSubscription.cancel();
+        assertEquals(1, mSource.mStops);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void testSubscribe_withCancelInOnSubscribe_shouldNotStartSource() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.BUFFER, 4);
+
+        publisher.subscribe(new TestSubscriber() {
+            @Override
+            public void onSubscribe(@NonNull Subscription subscription) {
+                subscription.cancel();
+            }
+        });
+
+        assertEquals(0, mSource.mStarts);
+        assertEquals(0, mSource.mStops);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void testSubscribe_afterLastCancel_shouldStartSourceOnce() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.BUFFER, 4);
+        TestSubscriber first = new TestSubscriber();
+        TestSubscriber second = new TestSubscriber();
+        TestSubscriber third = new TestSubscriber();
+
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        assertEquals(1, mSource.mStarts);
+
+        first.mSubscription.cancel();
+        second.mSubscription.cancel();
+        publisher.subscribe(third);
+
+        assertEquals(2, mSource.mStarts);
+        assertEquals(1, mSource.mStops);
+    }
+
+    @Test
+    public void testPublish_shouldOnlyDeliverRequestedUpdates() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.BUFFER, 4);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        publisher.publish("a");
+        publisher.publish("b");
+        assertEquals(0, subscriber.mReceived.size());
+
+        subscriber.mSubscription.request(1);
+        assertEquals(Arrays.asList("a"), subscriber.mReceived);
+
+        subscriber.mSubscription.request(5);
+        publisher.publish("c");
+        assertEquals(Arrays.asList("a", "b", "c"), subscriber.mReceived);
+    }
+
+    @Test
+    public void testOverflowLatest_shouldKeepOnlyNewestUpdate() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.LATEST, 4);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        publisher.publish("a");
+        publisher.publish("b");
+        publisher.publish("c");
+        subscriber.mSubscription.request(10);
+
+        assertEquals(Arrays.asList("c"), subscriber.mReceived);
+        assertEquals(2, subscriber.mSubscription.getDroppedCount());
+        assertEquals(2, publisher.getDroppedCount());
+    }
+
+    @Test
+    public void testOverflowBuffer_shouldDropOldestWhenFull() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.BUFFER, 2);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        publisher.publish("a");
+        publisher.publish("b");
+        publisher.publish("c");
+        subscriber.mSubscription.request(10);
+
+        assertEquals(Arrays.asList("b", "c"), subscriber.mReceived);
+        assertEquals(1, subscriber.mSubscription.getDroppedCount());
+    }
+
+    @Test
+    public void testOverflowDrop_shouldDropUnrequestedUpdates() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.DROP, 4);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        publisher.publish("a");
+        subscriber.mSubscription.request(1);
+        publisher.publish("b");
+        publisher.publish("c");
+
+        assertEquals(Arrays.asList("b"), subscriber.mReceived);
+        assertEquals(2, subscriber.mSubscription.getDroppedCount());
+    }
+
+    @Test
+    public void testRequestNonPositive_shouldSignalError() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.BUFFER, 4);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        assertNull(subscriber.mError);
+        subscriber.mSubscription.request(0);
+        assertNotNull(subscriber.mError);
+        assertEquals(1, mSource.mStops);
+    }
+
+    @Test
+    public void testError_shouldFailSubscribersAndStopSource() {
+        NestPublisher<String> publisher = newPublisher(NestPublisher.Overflow.BUFFER, 4);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.publish("a");
+
+        NestException testException = new NestException("test");
+        publisher.error(testException);
+        subscriber.mSubscription.request(1);
+
+        assertSame(testException, subscriber.mError);
+        assertEquals(0, subscriber.mReceived.size());
+        assertEquals(1, mSource.mStops);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNewPublisher_withZeroCapacity_shouldThrow() {
+        newPublisher(NestPublisher.Overflow.BUFFER, 0);
+    }
+
+    private NestPublisher<String> newPublisher(NestPublisher.Overflow overflow, int capacity) {
+        return new NestPublisher<>(mSource, overflow, capacity, DIRECT_EXECUTOR);
+    }
+
+    private static class TestSource implements NestPublisher.Source<String> {
+        int mStarts;
+        int mStops;
+
+        @Override
+        public void start(@NonNull NestPublisher<String> publisher) {
+            mStarts++;
+        }
+
+        @Override
+        public void stop() {
+            mStops++;
+        }
+    }
+
+    private static class TestSubscriber implements NestSubscriber<String> {
+        final ArrayList<String> mReceived = new ArrayList<>();
+        Subscription mSubscription;
+        NestException mError;
+
+        @Override
+        public void onSubscribe(@NonNull Subscription subscription) {
+            mSubscription = subscription;
+        }
+
+        @Override
+        public void onNext(@NonNull String update) {
+            mReceived.add(update);
+        }
+
+        @Override
+        public void onError(@NonNull NestException exception) {
+            mError = exception;
+        }
+    }
+}
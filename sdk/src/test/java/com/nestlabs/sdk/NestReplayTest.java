@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Firebase.class, DataSnapshot.class})
+public class NestReplayTest {
+
+    private static final String SNAPSHOT = "{\"devices\":{\"thermostats\":{\"t1\":"
+            + "{\"device_id\":\"t1\",\"hvac_mode\":\"%s\"}}},"
+            + "\"structures\":{\"s1\":{\"structure_id\":\"s1\",\"away\":\"home\"}}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    ObjectMapper mapper = new ObjectMapper();
+    Firebase mockFirebase;
+    File file;
+
+    @Before
+    public void before() throws Exception {
+        mockFirebase = ref("");
+        file = folder.newFile("recording.gz");
+
+        NestRecorder recorder = new NestRecorder(mockFirebase, file, new ListenerContext());
+        recorder.record(snapshot(mapper.readValue(String.format(SNAPSHOT, "heat"), Map.class)),
+                1000);
+        recorder.record(snapshot(mapper.readValue(String.format(SNAPSHOT, "cool"), Map.class)),
+                1100);
+        recorder.close();
+        recorder.awaitClosed();
+        assertEquals(2, recorder.getFrameCount());
+    }
+
+    @Test
+    public void testPlay_shouldDeliverSnapshotsThroughListeners() throws Exception {
+        final ArrayList<String> modes = new ArrayList<>();
+        final ArrayList<Integer> structureCounts = new ArrayList<>();
+
+        NestReplay replay = new NestReplay(mockFirebase, file);
+        replay.addThermostatListener(new NestListener.ThermostatListener() {
+            @Override
+            public void onUpdate(ArrayList<Thermostat> thermostats) {
+                modes.add(thermostats.get(0).getHvacMode());
+            }
+        });
+        replay.addGlobalListener(new NestListener.GlobalListener() {
+            @Override
+            public void onUpdate(GlobalUpdate update) {
+                structureCounts.add(update.getStructures().size());
+            }
+        });
+
+        assertEquals(2, replay.play(NestReplay.SPEED_MAX));
+        assertEquals(2, modes.size());
+        assertEquals("heat", modes.get(0));
+        assertEquals("cool", modes.get(1));
+        assertEquals(1, (int) structureCounts.get(1));
+        assertTrue(replay.getDispatchNanos() > 0);
+    }
+
+    @Test
+    public void testPlay_shouldHonorSpeed() throws Exception {
+        NestReplay replay = new NestReplay(mockFirebase, file);
+
+        long start = System.currentTimeMillis();
+        replay.play(2);
+        // 100ms between the recorded snapshots, played at 2x.
+        assertTrue(System.currentTimeMillis() - start >= 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlay_withInvalidSpeed_shouldThrow() throws Exception {
+        new NestReplay(mockFirebase, file).play(0);
+    }
+
+    private static DataSnapshot snapshot(Object value) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        if (!(value instanceof Map)) {
+            when(snap.getValue()).thenReturn(value);
+            return snap;
+        }
+        ArrayList<DataSnapshot> children = new ArrayList<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            DataSnapshot child = snapshot(entry.getValue());
+            when(child.getName()).thenReturn((String) entry.getKey());
+            children.add(child);
+        }
+        when(snap.hasChildren()).thenReturn(true);
+        when(snap.getChildren()).thenReturn(children);
+        return snap;
+    }
+
+    private static Firebase ref(final String name) {
+        Firebase ref = mock(Firebase.class);
+        when(ref.getName()).thenReturn(name);
+        doAnswer(new Answer<Firebase>() {
+            @Override
+            public Firebase answer(InvocationOnMock invocation) {
+                String path = (String) invocation.getArguments()[0];
+                return ref(path.substring(path.lastIndexOf('/') + 1));
+            }
+        }).when(ref).child(anyString());
+        return ref;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Firebase.class, DataSnapshot.class})
+public class NestRulesTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+    Firebase mockFirebase;
+    NestRules rules;
+
+    @Before
+    public void before() {
+        mockFirebase = mock(Firebase.class);
+        when(mockFirebase.child(anyString())).thenReturn(mockFirebase);
+        rules = new NestRules(new ThermostatSetter(mockFirebase),
+                new StructureSetter(mockFirebase), new CameraSetter(mockFirebase));
+    }
+
+    @Test
+    public void testOnUpdate_shouldOnlyEvaluateRulesWhoseInputsChanged() throws IOException {
+        CountingRule modeRule = new CountingRule(NestAPI.KEY_THERMOSTATS,
+                Thermostat.KEY_HVAC_MODE);
+        CountingRule awayRule = new CountingRule(NestAPI.KEY_STRUCTURES, Structure.KEY_AWAY);
+        rules.addRule(modeRule);
+        rules.addRule(awayRule);
+
+        rules.onUpdate(update(thermostat("t1", "s1", "heat", 40), alarm("a1", "s1", "ok")));
+        assertEquals(1, modeRule.mEvaluations);
+
+        rules.onUpdate(update(thermostat("t1", "s1", "heat", 45), alarm("a1", "s1", "ok")));
+        assertEquals(1, modeRule.mEvaluations);
+
+        rules.onUpdate(update(thermostat("t1", "s1", "cool", 45), alarm("a1", "s1", "ok")));
+        assertEquals(2, modeRule.mEvaluations);
+        assertEquals(1, modeRule.mLastChanges.size());
+        NestRules.Change change = modeRule.mLastChanges.get(0);
+        assertEquals("t1", change.getId());
+        assertEquals("heat", change.getOldValue());
+        assertEquals("cool", change.getNewValue());
+        assertEquals(0, awayRule.mEvaluations);
+    }
+
+    @Test
+    public void testOnUpdate_fromGlobalListener_shouldOnlyReportChangedObjects()
+            throws IOException {
+        CountingRule modeRule = new CountingRule(NestAPI.KEY_THERMOSTATS,
+                Thermostat.KEY_HVAC_MODE);
+        rules.addRule(modeRule);
+        SnapshotValueListener<NestListener.GlobalListener, GlobalUpdate> valueListener =
+                new SnapshotValueListener<NestListener.GlobalListener, GlobalUpdate>(rules,
+                        SnapshotDecoder.GLOBAL, new ListenerContext());
+
+        valueListener.onDataChange(root(thermostat("t1", "s1", "heat", 40),
+                thermostat("t2", "s1", "heat", 40)));
+        valueListener.onDataChange(root(thermostat("t1", "s1", "heat", 40),
+                thermostat("t2", "s1", "cool", 40)));
+
+        assertEquals(2, modeRule.mEvaluations);
+        assertEquals(1, modeRule.mLastChanges.size());
+        assertEquals("t2", modeRule.mLastChanges.get(0).getId());
+        assertEquals("cool", modeRule.mLastChanges.get(0).getNewValue());
+    }
+
+    @Test
+    public void testOnUpdate_withRemovedDevice_shouldReportNullValue() throws IOException {
+        CountingRule modeRule = new CountingRule(NestAPI.KEY_THERMOSTATS,
+                Thermostat.KEY_HVAC_MODE);
+        rules.addRule(modeRule);
+
+        rules.onUpdate(update(thermostat("t1", "s1", "heat", 40), alarm("a1", "s1", "ok")));
+        rules.onUpdate(update(null, alarm("a1", "s1", "ok")));
+
+        assertEquals(2, modeRule.mEvaluations);
+        assertEquals(null, modeRule.mLastChanges.get(0).getNewValue());
+    }
+
+    @Test
+    public void testRemoveRule_shouldStopWatchingKeysNoRuleDependsOn() throws IOException {
+        CountingRule humidityRule = new CountingRule(NestAPI.KEY_THERMOSTATS,
+                Thermostat.KEY_HUMIDITY);
+        CountingRule modeRule = new CountingRule(NestAPI.KEY_THERMOSTATS,
+                Thermostat.KEY_HVAC_MODE);
+        rules.addRule(humidityRule);
+        rules.addRule(modeRule);
+        rules.onUpdate(update(thermostat("t1", "s1", "heat", 40), alarm("a1", "s1", "ok")));
+
+        rules.removeRule(humidityRule);
+        rules.onUpdate(update(thermostat("t1", "s1", "cool", 45), alarm("a1", "s1", "ok")));
+        assertEquals(2, modeRule.mEvaluations);
+        assertEquals("heat", modeRule.mLastChanges.get(0).getOldValue());
+        assertEquals("cool", modeRule.mLastChanges.get(0).getNewValue());
+
+        // The humidity key was dropped, so a new rule sees it for the first time.
+        CountingRule newHumidityRule = new CountingRule(NestAPI.KEY_THERMOSTATS,
+                Thermostat.KEY_HUMIDITY);
+        rules.addRule(newHumidityRule);
+        rules.onUpdate(update(thermostat("t1", "s1", "cool", 45), alarm("a1", "s1", "ok")));
+        assertEquals(1, newHumidityRule.mEvaluations);
+        assertEquals(null, newHumidityRule.mLastChanges.get(0).getOldValue());
+        assertEquals(1, humidityRule.mEvaluations);
+    }
+
+    @Test
+    public void testEvaluate_shouldWriteThroughSetters() throws IOException {
+        rules.addRule(new NestRules.Rule() {
+            {
+                on(NestAPI.KEY_SMOKE_CO_ALARMS, SmokeCOAlarm.KEY_CO_ALARM_STATE);
+            }
+
+            @Override
+            public void evaluate(NestRules.Context context, List<NestRules.Change> changes) {
+                for (NestRules.Change change : changes) {
+                    if ("ok".equals(change.getNewValue())) {
+                        continue;
+                    }
+                    SmokeCOAlarm alarm = context.getIndex().smokeCOAlarms().get(change.getId());
+                    for (Thermostat t : context.getIndex().thermostats()
+                            .find(Device.KEY_STRUCTURE_ID, alarm.getStructureId())) {
+                        context.thermostats().setHVACMode(t.getDeviceId(), "off");
+                    }
+                }
+            }
+        });
+
+        rules.onUpdate(update(thermostat("t1", "s1", "heat", 40), alarm("a1", "s1", "ok")));
+        Mockito.verify(mockFirebase, Mockito.never()).setValue("off");
+
+        rules.onUpdate(update(thermostat("t1", "s1", "heat", 40),
+                alarm("a1", "s1", "emergency")));
+        Mockito.verify(mockFirebase).child("/devices/thermostats/t1/"
+                + Thermostat.KEY_HVAC_MODE);
+        Mockito.verify(mockFirebase).setValue("off");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddRule_withoutInputs_shouldThrow() {
+        rules.addRule(new NestRules.Rule() {
+            @Override
+            public void evaluate(NestRules.Context context, List<NestRules.Change> changes) {}
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOn_withUnsupportedType_shouldThrow() {
+        new CountingRule(NestAPI.KEY_METADATA, "access_token");
+    }
+
+    private Thermostat thermostat(String id, String structureId, String hvacMode,
+            long humidity) throws IOException {
+        String json = "{\"device_id\":\"" + id + "\",\"structure_id\":\"" + structureId
+                + "\",\"hvac_mode\":\"" + hvacMode + "\",\"humidity\":" + humidity + "}";
+        return mapper.readValue(json, Thermostat.class);
+    }
+
+    private SmokeCOAlarm alarm(String id, String structureId, String coState)
+            throws IOException {
+        String json = "{\"device_id\":\"" + id + "\",\"structure_id\":\"" + structureId
+                + "\",\"co_alarm_state\":\"" + coState + "\"}";
+        return mapper.readValue(json, SmokeCOAlarm.class);
+    }
+
+    private DataSnapshot root(Thermostat... thermostats) {
+        List<DataSnapshot> thermostatSnaps = new ArrayList<>();
+        for (Thermostat thermostat : thermostats) {
+            thermostatSnaps.add(snapshot(thermostat.getDeviceId(),
+                    mapper.convertValue(thermostat, Map.class)));
+        }
+        DataSnapshot thermostatsSnap = snapshot(NestAPI.KEY_THERMOSTATS, null);
+        when(thermostatsSnap.getChildren()).thenReturn(thermostatSnaps);
+        DataSnapshot devicesSnap = snapshot(NestAPI.KEY_DEVICES, null);
+        when(devicesSnap.getChildren()).thenReturn(Arrays.asList(thermostatsSnap));
+        DataSnapshot rootSnap = snapshot(null, null);
+        when(rootSnap.getChildren()).thenReturn(Arrays.asList(devicesSnap));
+        return rootSnap;
+    }
+
+    private static DataSnapshot snapshot(String name, Object value) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        when(snap.getName()).thenReturn(name);
+        when(snap.getValue()).thenReturn(value);
+        return snap;
+    }
+
+    private static GlobalUpdate update(Thermostat thermostat, SmokeCOAlarm alarm) {
+        ArrayList<Thermostat> thermostats = new ArrayList<>();
+        if (thermostat != null) {
+            thermostats.add(thermostat);
+        }
+        ArrayList<SmokeCOAlarm> alarms = new ArrayList<>();
+        alarms.add(alarm);
+        return new GlobalUpdate(thermostats, alarms, new ArrayList<Camera>(),
+                new ArrayList<Structure>(), new Metadata());
+    }
+
+    private static class CountingRule extends NestRules.Rule {
+        int mEvaluations;
+        List<NestRules.Change> mLastChanges;
+
+        CountingRule(String type, String key) {
+            on(type, key);
+        }
+
+        @Override
+        public void evaluate(NestRules.Context context, List<NestRules.Change> changes) {
+            mEvaluations++;
+            mLastChanges = changes;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.nestlabs.sdk;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
@@ -70,4 +72,29 @@ public class NestTokenTest {
         NestToken t = new NestToken();
         assertFalse(t.equals(o));
     }
+
+    @Test
+    public void testFromJson_shouldReadTokenAndExpiry() throws IOException {
+        String json = "{\"access_token\":\"" + TEST_TOKEN + "\",\"expires_in\":"
+                + TEST_EXPIRES_IN + "}";
+        NestToken token = NestToken.fromJson(new StringReader(json));
+
+        assertEquals(TEST_TOKEN, token.getToken());
+        assertEquals(TEST_EXPIRES_IN, token.getExpiresIn());
+    }
+
+    @Test
+    public void testFromJson_shouldSkipUnknownFields() throws IOException {
+        String json = "{\"scope\":{\"a\":[1,2]},\"access_token\":\"" + TEST_TOKEN
+                + "\",\"token_type\":\"bearer\"}";
+        NestToken token = NestToken.fromJson(new StringReader(json));
+
+        assertEquals(TEST_TOKEN, token.getToken());
+        assertEquals(0, token.getExpiresIn());
+    }
+
+    @Test(expected = IOException.class)
+    public void testFromJson_shouldThrowWithNonObject() throws IOException {
+        NestToken.fromJson(new StringReader("[]"));
+    }
 }
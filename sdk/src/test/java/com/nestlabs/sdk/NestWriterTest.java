@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Firebase.class, DataSnapshot.class, FirebaseError.class})
+public class NestWriterTest {
+    static final String PATH = "/structures/s1/away";
+
+    Firebase mockFirebase;
+    NestWriter writer;
+
+    @Before
+    public void before() {
+        mockFirebase = mock(Firebase.class);
+        when(mockFirebase.child(anyString())).thenReturn(mockFirebase);
+        writer = new NestWriter(mockFirebase);
+    }
+
+    @Test
+    public void testSetValue_whenDisabled_shouldAlwaysWrite() {
+        writer.setValue(PATH, "away");
+        writer.setValue(PATH, "away");
+
+        verify(mockFirebase, times(2)).setValue("away");
+        verify(mockFirebase, never()).addValueEventListener(any(ValueEventListener.class));
+        assertEquals(0, writer.getSuppressedCount());
+    }
+
+    @Test
+    public void testSetValue_withConfirmedValue_shouldSuppressNoOp() {
+        writer.setSuppressNoOps(true);
+        writer.setValue(PATH, "away");
+        confirmLastWrite(null);
+
+        Callback callback = mock(Callback.class);
+        writer.setValue(PATH, "away", new NestCompletionListener(callback));
+        NestFuture future = writer.setValueAsync(PATH, "away");
+
+        verify(callback).onSuccess();
+        assertTrue(future.isSuccessful());
+        assertTrue(future.isNoOp());
+        assertEquals(2, writer.getSuppressedCount());
+        verify(mockFirebase, times(1))
+                .setValue(any(), any(Firebase.CompletionListener.class));
+    }
+
+    @Test
+    public void testSetValue_withFailedWrite_shouldNotSuppress() {
+        writer.setSuppressNoOps(true);
+        writer.setValue(PATH, "away");
+        confirmLastWrite(mock(FirebaseError.class));
+
+        NestFuture future = writer.setValueAsync(PATH, "away");
+
+        assertFalse(future.isDone());
+        assertEquals(0, writer.getSuppressedCount());
+    }
+
+    @Test
+    public void testSetValue_withServerValue_shouldCompareNumerically() {
+        writer.setSuppressNoOps(true);
+        writer.setValue(PATH, 70L);
+        confirmLastWrite(null);
+
+        ArgumentCaptor<ValueEventListener> tracker =
+                ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockFirebase).addValueEventListener(tracker.capture());
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getValue()).thenReturn(72.0);
+        tracker.getValue().onDataChange(snapshot);
+
+        writer.setValue(PATH, 72L);
+        writer.setValue(PATH, 70L);
+        assertEquals(1, writer.getSuppressedCount());
+        verify(mockFirebase, times(2)).setValue(any(), any(Firebase.CompletionListener.class));
+    }
+
+    @Test
+    public void testSetValue_whilePending_shouldNotSuppress() {
+        writer.setSuppressNoOps(true);
+        writer.setValue(PATH, "away");
+        confirmLastWrite(null);
+
+        writer.setValue(PATH, "home");
+        writer.setValue(PATH, "away");
+
+        assertEquals(0, writer.getSuppressedCount());
+    }
+
+    @Test
+    public void testSetValue_withObservedValue_shouldSuppressFirstWrite() {
+        writer.setSuppressNoOps(true);
+        Object listener = new Object();
+        writer.observe(listener, "/structures", structures("away"));
+
+        writer.setValue(PATH, "away");
+        writer.setValue(PATH, "home");
+
+        assertEquals(1, writer.getSuppressedCount());
+        verify(mockFirebase, never()).setValue("away");
+        verify(mockFirebase).setValue(any(), any(Firebase.CompletionListener.class));
+        verify(mockFirebase, never()).addValueEventListener(any(ValueEventListener.class));
+    }
+
+    @Test
+    public void testSetValue_afterForget_shouldWatchPath() {
+        writer.setSuppressNoOps(true);
+        Object listener = new Object();
+        writer.observe(listener, "/structures", structures("away"));
+        writer.forget(listener);
+
+        writer.setValue(PATH, "away");
+
+        assertEquals(0, writer.getSuppressedCount());
+        verify(mockFirebase).addValueEventListener(any(ValueEventListener.class));
+    }
+
+    @Test
+    public void testReset_shouldRemovePathListeners() {
+        writer.setSuppressNoOps(true);
+        writer.setValue(PATH, "away");
+        ArgumentCaptor<ValueEventListener> tracker =
+                ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockFirebase).addValueEventListener(tracker.capture());
+
+        writer.reset();
+
+        verify(mockFirebase).removeEventListener(tracker.getValue());
+    }
+
+    private static DataSnapshot structures(Object away) {
+        DataSnapshot awaySnap = mock(DataSnapshot.class);
+        when(awaySnap.getValue()).thenReturn(away);
+        DataSnapshot structuresSnap = mock(DataSnapshot.class);
+        when(structuresSnap.child("s1/away")).thenReturn(awaySnap);
+        return structuresSnap;
+    }
+
+    private void confirmLastWrite(FirebaseError error) {
+        ArgumentCaptor<Firebase.CompletionListener> listener =
+                ArgumentCaptor.forClass(Firebase.CompletionListener.class);
+        verify(mockFirebase, times(1)).setValue(any(), listener.capture());
+        listener.getValue().onComplete(error, mockFirebase);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.snapshot.NodeUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Firebase.class})
+public class SafetyAlarmValueListenerTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+    List<String> changes;
+    List<String> threads;
+    SafetyLaneMetrics metrics;
+    ExecutorService lane;
+    SafetyAlarmValueListener valueListener;
+    NestListener.SafetyAlarmListener listener = new NestListener.SafetyAlarmListener() {
+        @Override
+        public void onSafetyAlarmChange(String deviceId, String key, String state) {
+            changes.add(deviceId + "/" + key + "=" + state);
+            threads.add(Thread.currentThread().getName());
+        }
+    };
+
+    @Before
+    public void before() {
+        changes = Collections.synchronizedList(new ArrayList<String>());
+        threads = Collections.synchronizedList(new ArrayList<String>());
+        metrics = new SafetyLaneMetrics();
+        lane = Executors.newSingleThreadExecutor();
+        valueListener = new SafetyAlarmValueListener(lane, new ListenerContext());
+        valueListener.add(listener, metrics);
+    }
+
+    @Test
+    public void testOnDataChange_shouldDeliverEveryChangeInOrderOnTheLane() throws Exception {
+        valueListener.onDataChange(snapshot(alarm("a1", "ok", "ok", "green", "ok")));
+        valueListener.onDataChange(snapshot(alarm("a1", "ok", "warning", "yellow", "ok")));
+        valueListener.onDataChange(snapshot(alarm("a1", "ok", "emergency", "red", "ok")));
+        drain();
+
+        assertEquals(7, changes.size());
+        assertEquals("a1/co_alarm_state=warning", changes.get(3));
+        assertEquals("a1/ui_color_state=yellow", changes.get(4));
+        assertEquals("a1/co_alarm_state=emergency", changes.get(5));
+        assertNotEquals(Thread.currentThread().getName(), threads.get(0));
+        assertEquals(7, metrics.getCount());
+    }
+
+    @Test
+    public void testOnDataChange_withOnlyBatteryChange_shouldNotDeliver() throws Exception {
+        valueListener.onDataChange(snapshot(alarm("a1", "ok", "ok", "green", "ok")));
+        valueListener.onDataChange(snapshot(alarm("a1", "ok", "ok", "green", "replace")));
+        drain();
+
+        assertEquals(3, changes.size());
+    }
+
+    @Test
+    public void testOnDataChange_withSloMiss_shouldCallSloListener() throws Exception {
+        final List<Long> misses = new ArrayList<>();
+        metrics.setSloAlarm(0, new SafetyLaneMetrics.SloListener() {
+            @Override
+            public void onSloMissed(long latencyMs, long sloMs) {
+                misses.add(sloMs);
+            }
+        });
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    // Ignore.
+                }
+            }
+        });
+        valueListener.onDataChange(snapshot(alarm("a1", "emergency", "ok", "red", "ok")));
+        drain();
+
+        assertEquals(3, misses.size());
+        assertEquals(3, metrics.getSloMissCount());
+    }
+
+    @Test
+    public void testAdd_afterSnapshot_shouldDeliverCurrentStateWithoutRecording()
+            throws Exception {
+        valueListener.remove(listener);
+        valueListener.onDataChange(snapshot(alarm("a1", "ok", "warning", "yellow", "ok")));
+        valueListener.add(listener, metrics);
+        drain();
+
+        assertEquals(3, changes.size());
+        assertTrue(changes.contains("a1/co_alarm_state=warning"));
+        assertEquals(0, metrics.getCount());
+    }
+
+    @Test
+    public void testRemove_shouldStopDelivery() throws Exception {
+        assertTrue(valueListener.remove(listener));
+        assertFalse(valueListener.remove(listener));
+        valueListener.onDataChange(snapshot(alarm("a1", "ok", "ok", "green", "ok")));
+        drain();
+
+        assertEquals(0, changes.size());
+    }
+
+    private void drain() throws InterruptedException {
+        lane.shutdown();
+        lane.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static String alarm(String id, String smoke, String co, String color,
+            String battery) {
+        return "\"" + id + "\":{\"device_id\":\"" + id + "\",\"smoke_alarm_state\":\"" + smoke
+                + "\",\"co_alarm_state\":\"" + co + "\",\"ui_color_state\":\"" + color
+                + "\",\"battery_health\":\"" + battery + "\"}";
+    }
+
+    private DataSnapshot snapshot(String alarms) throws Exception {
+        Map value = mapper.readValue("{" + alarms + "}", Map.class);
+        return new DataSnapshot(ref("smoke_co_alarms"), NodeUtilities.NodeFromJSON(value));
+    }
+
+    private static Firebase ref(final String name) {
+        Firebase ref = mock(Firebase.class);
+        when(ref.getName()).thenReturn(name);
+        doAnswer(new Answer<Firebase>() {
+            @Override
+            public Firebase answer(InvocationOnMock invocation) {
+                String path = (String) invocation.getArguments()[0];
+                return ref(path.substring(path.lastIndexOf('/') + 1));
+            }
+        }).when(ref).child(anyString());
+        return ref;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class SafetyLaneMetricsTest {
+
+    @Test
+    public void testRecord_shouldTrackLastAndMax() {
+        SafetyLaneMetrics metrics = new SafetyLaneMetrics();
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals(2, metrics.getCount());
+        assertEquals(2, metrics.getLastLatency(TimeUnit.MILLISECONDS));
+        assertEquals(5, metrics.getMaxLatency(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testGetLatencyPercentile_shouldUseRecentWindow() {
+        SafetyLaneMetrics metrics = new SafetyLaneMetrics();
+        assertEquals(0, metrics.getLatencyPercentile(99, TimeUnit.MILLISECONDS));
+
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(50, metrics.getLatencyPercentile(50, TimeUnit.MILLISECONDS));
+        assertEquals(99, metrics.getLatencyPercentile(99, TimeUnit.MILLISECONDS));
+        assertEquals(100, metrics.getLatencyPercentile(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRecord_overSlo_shouldCountMisses() {
+        SafetyLaneMetrics metrics = new SafetyLaneMetrics();
+        metrics.setSloAlarm(10, null);
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(15));
+
+        assertEquals(1, metrics.getSloMissCount());
+    }
+}
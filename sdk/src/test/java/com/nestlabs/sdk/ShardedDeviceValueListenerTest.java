@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firebase.client.DataSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DataSnapshot.class, ListenerContext.class})
+public class ShardedDeviceValueListenerTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testGroup_shouldGroupDeviceSnapshotsByStructureWithoutDecoding()
+            throws IOException {
+        DataSnapshot t1 = device(thermostat("t1", "s1", "Hallway"));
+        DataSnapshot t2 = device(thermostat("t2", "s2", "Kitchen"));
+        DataSnapshot t3 = device(thermostat("t3", "s1", "Office"));
+        DataSnapshot t4 = device(thermostat("t4", null, "Garage"));
+        DataSnapshot a1 = device(mapper.readValue(
+                "{\"device_id\":\"a1\",\"structure_id\":\"s3\"}", SmokeCOAlarm.class));
+
+        Map<String, ShardedDeviceValueListener.StructureDevices> structures =
+                ShardedDeviceValueListener.group(devices(Arrays.asList(t1, t2, t3, t4),
+                        Collections.singletonList(a1)));
+
+        assertEquals(Arrays.asList("s1", "s2", "s3"), new ArrayList<>(structures.keySet()));
+        assertEquals(Arrays.asList(t1, t3), structures.get("s1").mThermostats);
+        assertEquals(0, structures.get("s1").mSmokeCOAlarms.size());
+        assertEquals(Collections.singletonList(a1), structures.get("s3").mSmokeCOAlarms);
+        for (DataSnapshot snap : Arrays.asList(t1, t2, t3, t4, a1)) {
+            verify(snap, never()).getValue();
+        }
+    }
+
+    @Test
+    public void testOnDataChange_shouldDeliverEachStructureInOrderOnItsShard() throws Exception {
+        ExecutorService[] shards = {Executors.newSingleThreadExecutor(),
+                Executors.newSingleThreadExecutor()};
+        final ShardedExecutor executor = new ShardedExecutor(shards);
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        final List<Boolean> rightShard = Collections.synchronizedList(new ArrayList<Boolean>());
+        final Thread[] threads = new Thread[2];
+        ShardedDeviceValueListener valueListener = new ShardedDeviceValueListener(
+                new NestListener.StructureDeviceListener() {
+                    @Override
+                    public void onUpdate(@NonNull String structureId,
+                            @NonNull DeviceUpdate update) {
+                        int shard = executor.shardOf(structureId);
+                        synchronized (threads) {
+                            if (threads[shard] == null) {
+                                threads[shard] = Thread.currentThread();
+                            }
+                            rightShard.add(threads[shard] == Thread.currentThread());
+                        }
+                        calls.add(structureId + ":" + update.getSequence() + ":"
+                                + update.getThermostats().size());
+                    }
+                }, executor, new ListenerContext());
+
+        valueListener.onDataChange(thermostats(thermostat("t1", "s1", "Hallway"),
+                thermostat("t2", "s2", "Kitchen")));
+        valueListener.onDataChange(thermostats(thermostat("t1", "s1", "Bedroom")));
+
+        awaitShutdown(executor, shards);
+
+        assertEquals(4, calls.size());
+        assertTrue(calls.indexOf("s1:1:1") < calls.indexOf("s1:2:1"));
+        assertTrue(calls.indexOf("s2:1:1") < calls.indexOf("s2:2:0"));
+        assertFalse(rightShard.contains(false));
+    }
+
+    @Test
+    public void testOnDataChange_shouldSkipStructuresWhoseDevicesDidNotChange() throws Exception {
+        ExecutorService[] shards = {Executors.newSingleThreadExecutor()};
+        ShardedExecutor executor = new ShardedExecutor(shards);
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        ShardedDeviceValueListener valueListener = new ShardedDeviceValueListener(
+                new NestListener.StructureDeviceListener() {
+                    @Override
+                    public void onUpdate(@NonNull String structureId,
+                            @NonNull DeviceUpdate update) {
+                        calls.add(structureId + ":" + update.getSequence() + ":"
+                                + update.getThermostats().get(0).getName());
+                    }
+                }, executor, new ListenerContext());
+
+        valueListener.onDataChange(thermostats(thermostat("t1", "s1", "Hallway"),
+                thermostat("t2", "s2", "Kitchen")));
+        valueListener.onDataChange(thermostats(thermostat("t1", "s1", "Hallway"),
+                thermostat("t2", "s2", "Office")));
+        valueListener.onDataChange(thermostats(thermostat("t1", "s1", "Hallway"),
+                thermostat("t2", "s2", "Office")));
+
+        awaitShutdown(executor, shards);
+
+        assertEquals(Arrays.asList("s1:1:Hallway", "s2:1:Kitchen", "s2:2:Office"), calls);
+    }
+
+    @Test
+    public void testOnDataChange_whenListenerThrows_shouldStillEndTiming() throws Exception {
+        ExecutorService[] shards = {Executors.newSingleThreadExecutor()};
+        ShardedExecutor executor = new ShardedExecutor(shards);
+        ListenerContext mockContext = mock(ListenerContext.class);
+        NestListener.StructureDeviceListener listener =
+                new NestListener.StructureDeviceListener() {
+                    @Override
+                    public void onUpdate(@NonNull String structureId,
+                            @NonNull DeviceUpdate update) {
+                        throw new IllegalStateException();
+                    }
+                };
+        ShardedDeviceValueListener valueListener =
+                new ShardedDeviceValueListener(listener, executor, mockContext);
+
+        valueListener.onDataChange(thermostats(thermostat("t1", "s1", "Hallway")));
+
+        awaitShutdown(executor, shards);
+
+        verify(mockContext).end(eq(listener), anyLong());
+    }
+
+    @Test
+    public void testShardOf_shouldBeStableAndInRange() {
+        ShardedExecutor executor = new ShardedExecutor(
+                new ExecutorService[] {mock(ExecutorService.class),
+                        mock(ExecutorService.class), mock(ExecutorService.class)});
+
+        for (String key : Arrays.asList("s1", "s2", "", "a-very-long-structure-id")) {
+            int shard = executor.shardOf(key);
+            assertTrue(shard >= 0 && shard < 3);
+            assertEquals(shard, executor.shardOf(key));
+        }
+    }
+
+    private static void awaitShutdown(ShardedExecutor executor, ExecutorService[] shards)
+            throws InterruptedException {
+        executor.shutdown();
+        for (ExecutorService shard : shards) {
+            assertTrue(shard.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private Thermostat thermostat(String id, String structureId, String name)
+            throws IOException {
+        String json = "{\"device_id\":\"" + id + "\",\"name\":\"" + name + "\""
+                + (structureId != null ? ",\"structure_id\":\"" + structureId + "\"" : "")
+                + "}";
+        return mapper.readValue(json, Thermostat.class);
+    }
+
+    private DataSnapshot device(Device device) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        Map<?, ?> values = mapper.convertValue(device, Map.class);
+        when(snap.getValue()).thenReturn(values);
+        if (device.getStructureId() != null) {
+            DataSnapshot structureId = mock(DataSnapshot.class);
+            when(structureId.getValue()).thenReturn(device.getStructureId());
+            when(snap.hasChild(Device.KEY_STRUCTURE_ID)).thenReturn(true);
+            when(snap.child(Device.KEY_STRUCTURE_ID)).thenReturn(structureId);
+        }
+        return snap;
+    }
+
+    private DataSnapshot thermostats(Thermostat... thermostats) {
+        List<DataSnapshot> snaps = new ArrayList<>();
+        for (Thermostat thermostat : thermostats) {
+            snaps.add(device(thermostat));
+        }
+        return devices(snaps, Collections.<DataSnapshot>emptyList());
+    }
+
+    private static DataSnapshot devices(List<DataSnapshot> thermostats,
+            List<DataSnapshot> smokeCOAlarms) {
+        List<DataSnapshot> typeSnaps = Arrays.asList(type(NestAPI.KEY_THERMOSTATS, thermostats),
+                type(NestAPI.KEY_SMOKE_CO_ALARMS, smokeCOAlarms));
+        DataSnapshot devicesSnap = mock(DataSnapshot.class);
+        when(devicesSnap.getChildren()).thenReturn(typeSnaps);
+        return devicesSnap;
+    }
+
+    private static DataSnapshot type(String name, List<DataSnapshot> devices) {
+        DataSnapshot typeSnap = mock(DataSnapshot.class);
+        when(typeSnap.getName()).thenReturn(name);
+        when(typeSnap.getChildren()).thenReturn(devices);
+        return typeSnap;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.firebase.client.DataSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DataSnapshot.class})
+public class SnapshotCacheTest {
+
+    SnapshotCache cache;
+    DecodeMetrics metrics;
+
+    @Before
+    public void before() {
+        metrics = new DecodeMetrics();
+        cache = new SnapshotCache(new ListenerContext(null, null, metrics));
+    }
+
+    @Test
+    public void testDecodeChildren_unchanged_shouldReuseObjects() {
+        cache.begin();
+        ArrayList<Thermostat> first = cache.decodeChildren(
+                parent(thermostat("t1", "Hallway"), thermostat("t2", "Kitchen")),
+                Thermostat.class, null);
+        assertFalse(cache.isUnchanged());
+
+        cache.begin();
+        ArrayList<Thermostat> second = cache.decodeChildren(
+                parent(thermostat("t1", "Hallway"), thermostat("t2", "Kitchen")),
+                Thermostat.class, null);
+
+        assertTrue(cache.isUnchanged());
+        assertSame(first.get(0), second.get(0));
+        assertSame(first.get(1), second.get(1));
+        assertEquals(2, metrics.getDecodedCount());
+        assertEquals(2, metrics.getReusedCount());
+        assertEquals(0.5, metrics.getReuseRatio(), 0);
+    }
+
+    @Test
+    public void testDecodeChildren_oneChanged_shouldOnlyDecodeChangedChild() {
+        cache.begin();
+        ArrayList<Thermostat> first = cache.decodeChildren(
+                parent(thermostat("t1", "Hallway"), thermostat("t2", "Kitchen")),
+                Thermostat.class, null);
+
+        cache.begin();
+        ArrayList<Thermostat> second = cache.decodeChildren(
+                parent(thermostat("t1", "Bedroom"), thermostat("t2", "Kitchen")),
+                Thermostat.class, null);
+
+        assertFalse(cache.isUnchanged());
+        assertEquals("Bedroom", second.get(0).getName());
+        assertNotSame(first.get(0), second.get(0));
+        assertSame(first.get(1), second.get(1));
+        assertEquals(3, metrics.getDecodedCount());
+    }
+
+    @Test
+    public void testDecodeChildren_removedOrReordered_shouldBeChanged() {
+        cache.begin();
+        cache.decodeChildren(parent(thermostat("t1", "Hallway"), thermostat("t2", "Kitchen")),
+                Thermostat.class, null);
+
+        cache.begin();
+        cache.decodeChildren(parent(thermostat("t2", "Kitchen"), thermostat("t1", "Hallway")),
+                Thermostat.class, null);
+        assertFalse(cache.isUnchanged());
+
+        cache.begin();
+        cache.decodeChildren(parent(thermostat("t2", "Kitchen")), Thermostat.class, null);
+        assertFalse(cache.isUnchanged());
+    }
+
+    @Test
+    public void testDecode_equalHashes_shouldCompareValues() {
+        // "Aa" and "BB" have the same hash code.
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        Thermostat first = cache.decode(thermostat("t1", "Aa"), Thermostat.class, null);
+        cache.begin();
+        Thermostat second = cache.decode(thermostat("t1", "BB"), Thermostat.class, null);
+
+        assertFalse(cache.isUnchanged());
+        assertEquals("Aa", first.getName());
+        assertEquals("BB", second.getName());
+    }
+
+    @Test
+    public void testRemove_shouldBeChanged() {
+        cache.decode(thermostat("t1", "Hallway"), Thermostat.class, null);
+        cache.begin();
+        cache.remove("t2");
+        assertTrue(cache.isUnchanged());
+
+        cache.remove("t1");
+        assertFalse(cache.isUnchanged());
+    }
+
+    @Test
+    public void testIsUnchanged_whenUnused_shouldBeFalse() {
+        cache.begin();
+        assertFalse(cache.isUnchanged());
+    }
+
+    @Test
+    public void testUpdate_shouldReportSuppressedRatio() {
+        metrics.update(false);
+        metrics.update(true);
+        metrics.update(true);
+        metrics.update(true);
+
+        assertEquals(1, metrics.getDeliveredCount());
+        assertEquals(3, metrics.getSuppressedCount());
+        assertEquals(0.75, metrics.getSuppressedRatio(), 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.getSuppressedRatio(), 0);
+    }
+
+    private static DataSnapshot thermostat(String id, String name) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        when(snap.getName()).thenReturn(id);
+        Map<String, Object> values = new HashMap<>();
+        values.put(Device.KEY_DEVICE_ID, id);
+        values.put(Device.KEY_NAME, name);
+        when(snap.getValue()).thenReturn(values);
+        return snap;
+    }
+
+    private static DataSnapshot parent(DataSnapshot... children) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        when(snap.getChildren()).thenReturn(Arrays.asList(children));
+        return snap;
+    }
+}
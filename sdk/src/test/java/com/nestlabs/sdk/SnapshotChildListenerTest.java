@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.verifyZeroInteractions;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DataSnapshot.class})
+public class SnapshotChildListenerTest {
+
+    List<ArrayList<Thermostat>> updates;
+    SnapshotChildListener<NestListener.ThermostatListener, Thermostat> childListener;
+    DataSnapshot valueSnap;
+
+    @Before
+    public void before() {
+        updates = new ArrayList<>();
+        childListener = new SnapshotChildListener<>(new NestListener.ThermostatListener() {
+            @Override
+            public void onUpdate(@NonNull ArrayList<Thermostat> thermostats) {
+                updates.add(thermostats);
+            }
+        }, SnapshotDecoder.THERMOSTATS, null, new ListenerContext());
+        valueSnap = mock(DataSnapshot.class);
+    }
+
+    @Test
+    public void testOnChildAdded_shouldDeliverOncePerValueEventInOrder() {
+        childListener.onChildAdded(thermostat("t1", "Hallway"), null);
+        childListener.onChildAdded(thermostat("t2", "Kitchen"), "t1");
+        childListener.onChildAdded(thermostat("t3", "Office"), "t2");
+        assertEquals(0, updates.size());
+
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(1, updates.size());
+        assertEquals(Arrays.asList("t1", "t2", "t3"), ids(updates.get(0)));
+    }
+
+    @Test
+    public void testOnChildChanged_shouldOnlyDecodeChangedChild() {
+        DataSnapshot t1 = thermostat("t1", "Hallway");
+        DataSnapshot t2 = thermostat("t2", "Kitchen");
+        childListener.onChildAdded(t1, null);
+        childListener.onChildAdded(t2, "t1");
+        childListener.onDataChange(valueSnap);
+
+        childListener.onChildChanged(thermostat("t1", "Bedroom"), null);
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(2, updates.size());
+        assertEquals(Arrays.asList("t1", "t2"), ids(updates.get(1)));
+        assertEquals("Bedroom", updates.get(1).get(0).getName());
+        assertEquals("Hallway", updates.get(0).get(0).getName());
+        assertSame(updates.get(0).get(1), updates.get(1).get(1));
+        verify(t2, times(1)).getValue();
+    }
+
+    @Test
+    public void testOnChildRemoved_shouldRemoveChild() {
+        childListener.onChildAdded(thermostat("t1", "Hallway"), null);
+        childListener.onChildAdded(thermostat("t2", "Kitchen"), "t1");
+        childListener.onChildRemoved(thermostat("t2", "Kitchen"));
+        childListener.onChildAdded(thermostat("t3", "Office"), "t1");
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(Arrays.asList("t1", "t3"), ids(updates.get(0)));
+        assertEquals(2, childListener.size());
+    }
+
+    @Test
+    public void testOnChildRemoved_firstAndLastChild_shouldKeepOrder() {
+        childListener.onChildAdded(thermostat("t1", "Hallway"), null);
+        childListener.onChildAdded(thermostat("t2", "Kitchen"), "t1");
+        childListener.onChildAdded(thermostat("t3", "Office"), "t2");
+        childListener.onDataChange(valueSnap);
+        childListener.onChildRemoved(thermostat("t3", "Office"));
+        childListener.onChildRemoved(thermostat("t1", "Hallway"));
+        childListener.onChildAdded(thermostat("t4", "Den"), "t2");
+        childListener.onChildAdded(thermostat("t0", "Garage"), null);
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(Arrays.asList("t1", "t2", "t3"), ids(updates.get(0)));
+        assertEquals(Arrays.asList("t0", "t2", "t4"), ids(updates.get(1)));
+    }
+
+    @Test
+    public void testOnChildAdded_outOfOrder_shouldInsertAfterPreviousChild() {
+        childListener.onChildAdded(thermostat("t1", "Hallway"), null);
+        childListener.onChildAdded(thermostat("t3", "Office"), "t1");
+        childListener.onChildAdded(thermostat("t2", "Kitchen"), "t1");
+        childListener.onChildAdded(thermostat("t0", "Garage"), null);
+        childListener.onChildAdded(thermostat("t4", "Den"), "t3");
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(Arrays.asList("t0", "t1", "t2", "t3", "t4"), ids(updates.get(0)));
+    }
+
+    @Test
+    public void testOnChildChanged_outsideProjection_shouldNotDeliver() {
+        childListener = new SnapshotChildListener<>(new NestListener.ThermostatListener() {
+            @Override
+            public void onUpdate(@NonNull ArrayList<Thermostat> thermostats) {
+                updates.add(thermostats);
+            }
+        }, SnapshotDecoder.THERMOSTATS, Utils.projection(Device.KEY_DEVICE_ID, Device.KEY_NAME),
+                new ListenerContext());
+        childListener.onChildAdded(projected("t1", "Hallway", 20), null);
+        childListener.onDataChange(valueSnap);
+
+        childListener.onChildChanged(projected("t1", "Hallway", 21), null);
+        childListener.onDataChange(valueSnap);
+        childListener.onChildChanged(projected("t1", "Bedroom", 21), null);
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(2, updates.size());
+        assertEquals("Bedroom", updates.get(1).get(0).getName());
+    }
+
+    @Test
+    public void testOnDataChange_withoutChildEvents_shouldNotDeliverAgain() {
+        childListener.onChildAdded(thermostat("t1", "Hallway"), null);
+        childListener.onDataChange(valueSnap);
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(1, updates.size());
+    }
+
+    @Test
+    public void testOnDataChange_withNoChildren_shouldDeliverEmptyList() {
+        childListener.onDataChange(valueSnap);
+
+        assertEquals(Collections.singletonList(new ArrayList<Thermostat>()), updates);
+    }
+
+    @Test
+    public void testOnDataChange_listListener_shouldOnlyCountDeliveredUpdates() {
+        final List<NestList<Thermostat>> lists = new ArrayList<>();
+        SnapshotChildListener<NestListener.ListListener<Thermostat>, Thermostat> listListener =
+                new SnapshotChildListener<>(new NestListener.ListListener<Thermostat>() {
+                    @Override
+                    public void onUpdate(@NonNull NestList<Thermostat> thermostats) {
+                        lists.add(thermostats);
+                    }
+                }, SnapshotDecoder.stampedListRoute(Thermostat.class), null,
+                new ListenerContext());
+
+        listListener.onChildAdded(thermostat("t1", "Hallway"), null);
+        listListener.onDataChange(valueSnap);
+        listListener.onChildChanged(thermostat("t1", "Hallway"), null);
+        listListener.onDataChange(valueSnap);
+        listListener.onChildChanged(thermostat("t1", "Bedroom"), null);
+        listListener.onDataChange(valueSnap);
+
+        assertEquals(2, lists.size());
+        assertEquals(1, lists.get(0).getSequence());
+        assertEquals(2, lists.get(1).getSequence());
+        assertEquals("Bedroom", lists.get(1).get(0).getName());
+        assertTrue(lists.get(1).getDecodedNanos() >= lists.get(1).getReceivedNanos());
+    }
+
+    @Test
+    public void testOnCancelled_shouldNotCallListener() {
+        NestListener.ThermostatListener mockListener = mock(NestListener.ThermostatListener.class);
+        FirebaseError mockError = mock(FirebaseError.class);
+        new SnapshotChildListener<>(mockListener, SnapshotDecoder.THERMOSTATS, null,
+                new ListenerContext())
+                .onCancelled(mockError);
+
+        verifyZeroInteractions(mockListener);
+    }
+
+    private static DataSnapshot thermostat(String id, String name) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        when(snap.getName()).thenReturn(id);
+        Map<String, Object> values = new HashMap<>();
+        values.put(Device.KEY_DEVICE_ID, id);
+        values.put(Device.KEY_NAME, name);
+        when(snap.getValue()).thenReturn(values);
+        return snap;
+    }
+
+    private static DataSnapshot projected(String id, String name, long temperature) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        when(snap.getName()).thenReturn(id);
+        stubChild(snap, Device.KEY_DEVICE_ID, id);
+        stubChild(snap, Device.KEY_NAME, name);
+        stubChild(snap, Thermostat.KEY_AMBIENT_TEMP_C, temperature);
+        return snap;
+    }
+
+    private static void stubChild(DataSnapshot parent, String key, Object value) {
+        DataSnapshot child = mock(DataSnapshot.class);
+        when(child.getValue()).thenReturn(value);
+        when(parent.hasChild(key)).thenReturn(true);
+        when(parent.child(key)).thenReturn(child);
+    }
+
+    private static List<String> ids(List<Thermostat> thermostats) {
+        List<String> ids = new ArrayList<>();
+        for (Thermostat thermostat : thermostats) {
+            ids.add(thermostat.getDeviceId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.FirebaseError;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.verifyZeroInteractions;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DataSnapshot.class, ConnectionMonitor.class})
+public class SnapshotValueListenerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnDataChange_thermostats_shouldDecodeEveryChild() {
+        NestListener.ThermostatListener mockListener = mock(NestListener.ThermostatListener.class);
+        DataSnapshot thermostatSnap = value(Device.KEY_DEVICE_ID, "t1");
+        DataSnapshot mockSnap = parent(thermostatSnap, thermostatSnap, thermostatSnap);
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.THERMOSTATS,
+                new ListenerContext())
+                .onDataChange(mockSnap);
+
+        ArgumentCaptor<ArrayList> captor = ArgumentCaptor.forClass(ArrayList.class);
+        verify(mockListener).onUpdate(captor.capture());
+        ArrayList<Thermostat> thermostats = captor.getValue();
+        assertEquals(3, thermostats.size());
+        for (Thermostat thermostat : thermostats) {
+            assertEquals("t1", thermostat.getDeviceId());
+        }
+        verify(thermostatSnap, never()).getValue(Thermostat.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnDataChange_cameras_shouldDecodeEveryChild() {
+        NestListener.CameraListener mockListener = mock(NestListener.CameraListener.class);
+        DataSnapshot mockSnap = parent(value(Device.KEY_DEVICE_ID, "c1"),
+                value(Device.KEY_DEVICE_ID, "c2"));
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.CAMERAS, new ListenerContext())
+                .onDataChange(mockSnap);
+
+        ArgumentCaptor<ArrayList> captor = ArgumentCaptor.forClass(ArrayList.class);
+        verify(mockListener).onUpdate(captor.capture());
+        ArrayList<Camera> cameras = captor.getValue();
+        assertEquals(2, cameras.size());
+        assertEquals("c1", cameras.get(0).getDeviceId());
+        assertEquals("c2", cameras.get(1).getDeviceId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnDataChange_structures_shouldDecodeEveryChild() {
+        NestListener.StructureListener mockListener = mock(NestListener.StructureListener.class);
+        DataSnapshot mockSnap = parent(value(Structure.KEY_STRUCTURE_ID, "s1"));
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.STRUCTURES, new ListenerContext())
+                .onDataChange(mockSnap);
+
+        ArgumentCaptor<ArrayList> captor = ArgumentCaptor.forClass(ArrayList.class);
+        verify(mockListener).onUpdate(captor.capture());
+        ArrayList<Structure> structures = captor.getValue();
+        assertEquals(1, structures.size());
+        assertEquals("s1", structures.get(0).getStructureId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnDataChange_smokeCOAlarms_shouldDecodeEveryChild() {
+        NestListener.SmokeCOAlarmListener mockListener =
+                mock(NestListener.SmokeCOAlarmListener.class);
+        DataSnapshot alarmSnap = value(Device.KEY_DEVICE_ID, "a1");
+        DataSnapshot mockSnap = parent(alarmSnap, value(Device.KEY_DEVICE_ID, "a2"));
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.SMOKE_CO_ALARMS,
+                new ListenerContext())
+                .onDataChange(mockSnap);
+
+        ArgumentCaptor<ArrayList> captor = ArgumentCaptor.forClass(ArrayList.class);
+        verify(mockListener).onUpdate(captor.capture());
+        ArrayList<SmokeCOAlarm> alarms = captor.getValue();
+        assertEquals(2, alarms.size());
+        assertEquals("a1", alarms.get(0).getDeviceId());
+        assertEquals("a2", alarms.get(1).getDeviceId());
+        verify(alarmSnap, never()).getValue(SmokeCOAlarm.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnDataChange_withProjection_shouldOnlyDecodeProjectedFields() {
+        NestListener.SmokeCOAlarmListener mockListener =
+                mock(NestListener.SmokeCOAlarmListener.class);
+        DataSnapshot mockAlarmSnap = mock(DataSnapshot.class);
+        DataSnapshot mockSnap = parent(mockAlarmSnap);
+
+        stubChild(mockAlarmSnap, Device.KEY_DEVICE_ID, "a1");
+        stubChild(mockAlarmSnap, Device.KEY_NAME, "Hallway");
+        stubChild(mockAlarmSnap, SmokeCOAlarm.KEY_BATTERY_HEALTH, "replace");
+        stubChild(mockAlarmSnap, SmokeCOAlarm.KEY_CO_ALARM_STATE, "ok");
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.SMOKE_CO_ALARMS,
+                Utils.projection(Device.KEY_DEVICE_ID, SmokeCOAlarm.KEY_BATTERY_HEALTH,
+                        Device.KEY_NAME), new ListenerContext()).onDataChange(mockSnap);
+
+        ArgumentCaptor<ArrayList> captor = ArgumentCaptor.forClass(ArrayList.class);
+        verify(mockListener).onUpdate(captor.capture());
+        SmokeCOAlarm alarm = (SmokeCOAlarm) captor.getValue().get(0);
+        assertEquals("a1", alarm.getDeviceId());
+        assertEquals("Hallway", alarm.getName());
+        assertEquals("replace", alarm.getBatteryHealth());
+        assertNull(alarm.getCOAlarmState());
+        assertTrue(alarm.isAvailable(SmokeCOAlarm.KEY_BATTERY_HEALTH));
+        assertFalse(alarm.isAvailable(SmokeCOAlarm.KEY_CO_ALARM_STATE));
+        verify(mockAlarmSnap, never()).child(SmokeCOAlarm.KEY_CO_ALARM_STATE);
+        verify(mockAlarmSnap, never()).getValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnDataChange_unchanged_shouldNotDeliverAgain() {
+        NestListener.ThermostatListener mockListener = mock(NestListener.ThermostatListener.class);
+        SnapshotValueListener<NestListener.ThermostatListener, ArrayList<Thermostat>>
+                valueListener = new SnapshotValueListener<>(mockListener,
+                SnapshotDecoder.THERMOSTATS, new ListenerContext());
+
+        valueListener.onDataChange(parent(named("t1", value(Device.KEY_DEVICE_ID, "t1"))));
+        valueListener.onDataChange(parent(named("t1", value(Device.KEY_DEVICE_ID, "t1"))));
+        valueListener.onDataChange(parent(named("t1", value(Device.KEY_DEVICE_ID, "t1")),
+                named("t2", value(Device.KEY_DEVICE_ID, "t2"))));
+
+        ArgumentCaptor<ArrayList> captor = ArgumentCaptor.forClass(ArrayList.class);
+        verify(mockListener, times(2)).onUpdate(captor.capture());
+        assertSame(captor.getAllValues().get(0).get(0), captor.getAllValues().get(1).get(0));
+        assertEquals(2, captor.getAllValues().get(1).size());
+    }
+
+    @Test
+    public void testOnDataChange_metadata_shouldDecodeSnapshot() {
+        NestListener.MetadataListener mockListener = mock(NestListener.MetadataListener.class);
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.METADATA, new ListenerContext())
+                .onDataChange(value(Metadata.KEY_ACCESS_TOKEN, "token"));
+
+        ArgumentCaptor<Metadata> captor = ArgumentCaptor.forClass(Metadata.class);
+        verify(mockListener).onUpdate(captor.capture());
+        assertEquals("token", captor.getValue().getAccessToken());
+    }
+
+    @Test
+    public void testOnDataChange_global_shouldDecodeEveryCollection() {
+        NestListener.GlobalListener mockListener = mock(NestListener.GlobalListener.class);
+
+        DataSnapshot devicesSnap = parent(
+                named(NestAPI.KEY_THERMOSTATS, parent(value(Device.KEY_DEVICE_ID, "t1"))),
+                named(NestAPI.KEY_CAMERAS, parent(value(Device.KEY_DEVICE_ID, "c1"))),
+                named(NestAPI.KEY_SMOKE_CO_ALARMS, parent(value(Device.KEY_DEVICE_ID, "a1"))));
+        DataSnapshot topLevelSnap = parent(named(NestAPI.KEY_DEVICES, devicesSnap),
+                named(NestAPI.KEY_STRUCTURES, parent(value(Structure.KEY_STRUCTURE_ID, "s1"))),
+                named(NestAPI.KEY_METADATA, value(Metadata.KEY_ACCESS_TOKEN, "token")));
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.GLOBAL, new ListenerContext())
+                .onDataChange(topLevelSnap);
+
+        ArgumentCaptor<GlobalUpdate> captor = ArgumentCaptor.forClass(GlobalUpdate.class);
+        verify(mockListener).onUpdate(captor.capture());
+        GlobalUpdate update = captor.getValue();
+        assertEquals(1, update.getSequence());
+        assertEquals("t1", update.getThermostats().get(0).getDeviceId());
+        assertEquals("c1", update.getCameras().get(0).getDeviceId());
+        assertEquals("a1", update.getSmokeCOAlarms().get(0).getDeviceId());
+        assertEquals("s1", update.getStructures().get(0).getStructureId());
+        assertEquals("token", update.getMetadata().getAccessToken());
+    }
+
+    @Test
+    public void testOnDataChange_devices_shouldDecodeEveryType() {
+        NestListener.DeviceListener mockListener = mock(NestListener.DeviceListener.class);
+
+        DataSnapshot devicesSnap = parent(
+                named(NestAPI.KEY_THERMOSTATS, parent(value(Device.KEY_DEVICE_ID, "t1"))),
+                named(NestAPI.KEY_CAMERAS, parent(value(Device.KEY_DEVICE_ID, "c1"))),
+                named(NestAPI.KEY_SMOKE_CO_ALARMS, parent(value(Device.KEY_DEVICE_ID, "a1"))));
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.DEVICES, new ListenerContext())
+                .onDataChange(devicesSnap);
+
+        ArgumentCaptor<DeviceUpdate> captor = ArgumentCaptor.forClass(DeviceUpdate.class);
+        verify(mockListener).onUpdate(captor.capture());
+        DeviceUpdate update = captor.getValue();
+        assertEquals(1, update.getThermostats().size());
+        assertEquals("t1", update.getThermostats().get(0).getDeviceId());
+        assertEquals(1, update.getCameras().size());
+        assertEquals("c1", update.getCameras().get(0).getDeviceId());
+        assertEquals(1, update.getSmokeCOAlarms().size());
+        assertEquals("a1", update.getSmokeCOAlarms().get(0).getDeviceId());
+    }
+
+    @Test
+    public void testOnDataChange_devices_shouldStampUpdatesInOrder() {
+        final ArrayList<DeviceUpdate> updates = new ArrayList<>();
+        SnapshotValueListener<NestListener.DeviceListener, DeviceUpdate> valueListener =
+                new SnapshotValueListener<NestListener.DeviceListener, DeviceUpdate>(
+                        new NestListener.DeviceListener() {
+                            @Override
+                            public void onUpdate(@NonNull DeviceUpdate update) {
+                                updates.add(update);
+                            }
+                        }, SnapshotDecoder.DEVICES,
+                        new ListenerContext());
+
+        long before = System.nanoTime();
+        valueListener.onDataChange(parent());
+        valueListener.onDataChange(parent(named(NestAPI.KEY_THERMOSTATS,
+                parent(named("t1", value(Device.KEY_DEVICE_ID, "t1"))))));
+
+        assertEquals(2, updates.size());
+        assertEquals(1, updates.get(0).getSequence());
+        assertEquals(2, updates.get(1).getSequence());
+        assertTrue(updates.get(0).getReceivedNanos() >= before);
+        assertTrue(updates.get(0).getDecodedNanos() >= updates.get(0).getReceivedNanos());
+        assertEquals(2, updates.get(1).getThermostatList().getSequence());
+    }
+
+    @Test
+    public void testOnDataChange_listListener_shouldDeliverStampedLists() {
+        final ArrayList<NestList<Thermostat>> updates = new ArrayList<>();
+        SnapshotValueListener<NestListener.ListListener<Thermostat>, ArrayList<Thermostat>>
+                valueListener = new SnapshotValueListener<>(
+                        new NestListener.ListListener<Thermostat>() {
+                            @Override
+                            public void onUpdate(@NonNull NestList<Thermostat> thermostats) {
+                                updates.add(thermostats);
+                            }
+                        }, SnapshotDecoder.stampedListRoute(Thermostat.class),
+                        new ListenerContext());
+
+        long before = System.nanoTime();
+        valueListener.onDataChange(parent(named("t1", value(Device.KEY_NAME, "Hallway"))));
+        valueListener.onDataChange(parent(named("t1", value(Device.KEY_NAME, "Hallway"))));
+        valueListener.onDataChange(parent(named("t1", value(Device.KEY_NAME, "Bedroom"))));
+
+        assertEquals(2, updates.size());
+        assertEquals(1, updates.get(0).getSequence());
+        assertEquals(2, updates.get(1).getSequence());
+        assertEquals("Bedroom", updates.get(1).get(0).getName());
+        assertTrue(updates.get(0).getReceivedNanos() >= before);
+        assertTrue(updates.get(0).getDecodedNanos() >= updates.get(0).getReceivedNanos());
+    }
+
+    @Test
+    public void testStampedListRoute_shouldUseListPath() {
+        assertEquals(SnapshotDecoder.STRUCTURES.getPath(),
+                SnapshotDecoder.stampedListRoute(Structure.class).getPath());
+        assertEquals(SnapshotDecoder.SMOKE_CO_ALARMS.getPath(),
+                SnapshotDecoder.stampedListRoute(SmokeCOAlarm.class).getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStampedListRoute_withoutListOfType_shouldThrow() {
+        SnapshotDecoder.stampedListRoute(Metadata.class);
+    }
+
+    @Test
+    public void testOnDataChange_shouldCountEveryListener() {
+        DecodeMetrics metrics = new DecodeMetrics();
+        ListenerContext context = new ListenerContext(null, null, metrics);
+        SnapshotValueListener<NestListener.ThermostatListener, ArrayList<Thermostat>>
+                thermostatListener = new SnapshotValueListener<>(
+                        mock(NestListener.ThermostatListener.class), SnapshotDecoder.THERMOSTATS,
+                        context);
+        SnapshotValueListener<NestListener.GlobalListener, GlobalUpdate> globalListener =
+                new SnapshotValueListener<>(mock(NestListener.GlobalListener.class),
+                        SnapshotDecoder.GLOBAL, context);
+
+        thermostatListener.onDataChange(parent(named("t1", value(Device.KEY_NAME, "Hallway"))));
+        thermostatListener.onDataChange(parent(named("t1", value(Device.KEY_NAME, "Hallway"))));
+        globalListener.onDataChange(parent());
+        globalListener.onDataChange(parent());
+
+        assertEquals(2, metrics.getDeliveredCount());
+        assertEquals(2, metrics.getSuppressedCount());
+        assertEquals(1, metrics.getDecodedCount());
+        assertEquals(1, metrics.getReusedCount());
+    }
+
+    @Test
+    public void testOnDataChange_global_shouldReuseUnchangedObjectsAndSuppressRedelivery() {
+        NestListener.GlobalListener mockListener = mock(NestListener.GlobalListener.class);
+        SnapshotValueListener<NestListener.GlobalListener, GlobalUpdate> valueListener =
+                new SnapshotValueListener<>(mockListener, SnapshotDecoder.GLOBAL,
+                        new ListenerContext());
+
+        valueListener.onDataChange(root("Hallway"));
+        valueListener.onDataChange(root("Bedroom"));
+
+        ArgumentCaptor<GlobalUpdate> captor = ArgumentCaptor.forClass(GlobalUpdate.class);
+        verify(mockListener, times(2)).onUpdate(captor.capture());
+        GlobalUpdate first = captor.getAllValues().get(0);
+        GlobalUpdate second = captor.getAllValues().get(1);
+        assertEquals(2, second.getSequence());
+        assertEquals("Bedroom", second.getThermostats().get(0).getName());
+        assertEquals("Hallway", first.getThermostats().get(0).getName());
+        assertSame(first.getStructures().get(0), second.getStructures().get(0));
+        assertSame(first.getMetadata(), second.getMetadata());
+    }
+
+    @Test
+    public void testOnDataChange_devices_shouldDecodeOnlyRequestedTypes() {
+        NestListener.DeviceListener mockListener = mock(NestListener.DeviceListener.class);
+        DataSnapshot cameraSnap = named("c1", value(Device.KEY_DEVICE_ID, "c1"));
+        DataSnapshot devicesSnap = parent(
+                named(NestAPI.KEY_THERMOSTATS, parent(named("t1",
+                        value(Device.KEY_DEVICE_ID, "t1")))),
+                named(NestAPI.KEY_CAMERAS, parent(cameraSnap)));
+
+        new SnapshotValueListener<>(mockListener, SnapshotDecoder.DEVICES, new ListenerContext())
+                .onDataChange(devicesSnap);
+
+        ArgumentCaptor<DeviceUpdate> captor = ArgumentCaptor.forClass(DeviceUpdate.class);
+        verify(mockListener).onUpdate(captor.capture());
+        assertEquals("t1", captor.getValue().getThermostats().get(0).getDeviceId());
+        verify(cameraSnap, times(1)).getValue();
+        assertEquals("c1", captor.getValue().getCameras().get(0).getDeviceId());
+        verify(cameraSnap, times(1)).getValue();
+    }
+
+    @Test
+    public void testRoute_shouldMapPathToModel() {
+        assertEquals("/", SnapshotDecoder.GLOBAL.getPath());
+        assertEquals(0, SnapshotDecoder.GLOBAL.getSegments().length);
+        assertNull(SnapshotDecoder.GLOBAL.getModel());
+        assertEquals("/devices/thermostats", SnapshotDecoder.THERMOSTATS.getPath());
+        assertArrayEquals(new String[] {NestAPI.KEY_DEVICES, NestAPI.KEY_THERMOSTATS},
+                SnapshotDecoder.THERMOSTATS.getSegments());
+        assertSame(Thermostat.class, SnapshotDecoder.THERMOSTATS.getModel());
+        assertSame(Metadata.class, SnapshotDecoder.METADATA.getModel());
+    }
+
+    @Test
+    public void testOnCancelled_shouldNotCallListener() {
+        assertCancelDoesNotCallListener(mock(NestListener.GlobalListener.class),
+                SnapshotDecoder.GLOBAL);
+        assertCancelDoesNotCallListener(mock(NestListener.DeviceListener.class),
+                SnapshotDecoder.DEVICES);
+        assertCancelDoesNotCallListener(mock(NestListener.ThermostatListener.class),
+                SnapshotDecoder.THERMOSTATS);
+        assertCancelDoesNotCallListener(mock(NestListener.SmokeCOAlarmListener.class),
+                SnapshotDecoder.SMOKE_CO_ALARMS);
+        assertCancelDoesNotCallListener(mock(NestListener.CameraListener.class),
+                SnapshotDecoder.CAMERAS);
+        assertCancelDoesNotCallListener(mock(NestListener.StructureListener.class),
+                SnapshotDecoder.STRUCTURES);
+        assertCancelDoesNotCallListener(mock(NestListener.MetadataListener.class),
+                SnapshotDecoder.METADATA);
+    }
+
+    @Test
+    public void testOnCancelled_shouldReportErrorToConnectionMonitor() {
+        ConnectionMonitor mockMonitor = mock(ConnectionMonitor.class);
+        ListenerContext context = new ListenerContext();
+        context.setConnectionMonitor(mockMonitor);
+        FirebaseError mockError = mock(FirebaseError.class);
+
+        new SnapshotValueListener<>(mock(NestListener.SmokeCOAlarmListener.class),
+                SnapshotDecoder.SMOKE_CO_ALARMS, context).onCancelled(mockError);
+
+        verify(mockMonitor).onError(mockError);
+    }
+
+    @Test
+    public void testOnCancelled_withErrorListener_shouldReportError() {
+        final ArrayList<NestException> errors = new ArrayList<>();
+        class Listener implements NestListener.CameraListener, NestPublisher.ErrorListener {
+            @Override
+            public void onUpdate(@NonNull ArrayList<Camera> cameras) {}
+
+            @Override
+            public void onError(@NonNull NestException exception) {
+                errors.add(exception);
+            }
+        }
+        FirebaseError mockError = mock(FirebaseError.class);
+        when(mockError.getMessage()).thenReturn("Permission denied");
+        new SnapshotValueListener<>(new Listener(), SnapshotDecoder.CAMERAS, new ListenerContext())
+                .onCancelled(mockError);
+
+        assertEquals(1, errors.size());
+        assertEquals("Permission denied", errors.get(0).getMessage());
+    }
+
+    private static <L extends NestListener, T> void assertCancelDoesNotCallListener(L listener,
+            SnapshotDecoder.Route<L, T> route) {
+        new SnapshotValueListener<>(listener, route, new ListenerContext())
+                .onCancelled(mock(FirebaseError.class));
+
+        verifyZeroInteractions(listener);
+    }
+
+    private static DataSnapshot root(String thermostatName) {
+        DataSnapshot devicesSnap = parent(named(NestAPI.KEY_THERMOSTATS,
+                parent(named("t1", value(Device.KEY_NAME, thermostatName)))));
+        return parent(named(NestAPI.KEY_DEVICES, devicesSnap),
+                named(NestAPI.KEY_STRUCTURES,
+                        parent(named("s1", value(Structure.KEY_STRUCTURE_ID, "s1")))),
+                named(NestAPI.KEY_METADATA, value(Metadata.KEY_ACCESS_TOKEN, "token")));
+    }
+
+    private static DataSnapshot value(String key, Object value) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        Map<String, Object> values = new HashMap<>();
+        values.put(key, value);
+        when(snap.getValue()).thenReturn(values);
+        return snap;
+    }
+
+    private static DataSnapshot parent(DataSnapshot... children) {
+        DataSnapshot snap = mock(DataSnapshot.class);
+        when(snap.getChildren()).thenReturn(Arrays.asList(children));
+        return snap;
+    }
+
+    private static DataSnapshot named(String name, DataSnapshot snap) {
+        when(snap.getName()).thenReturn(name);
+        return snap;
+    }
+
+    private static void stubChild(DataSnapshot parent, String key, Object value) {
+        DataSnapshot child = mock(DataSnapshot.class);
+        when(child.getValue()).thenReturn(value);
+        when(parent.hasChild(key)).thenReturn(true);
+        when(parent.child(key)).thenReturn(child);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTraceTest {
+
+    @Test
+    public void testMarks_shouldRecordEveryPhaseOnce() {
+        StartupTrace trace = new StartupTrace();
+
+        trace.markInitStart();
+        trace.markInitEnd();
+        trace.markAuthStart();
+        trace.markAuthenticated();
+        trace.markFirstByte();
+        trace.markDecoded();
+        trace.markDispatched();
+
+        assertTrue(trace.isComplete());
+        for (StartupTrace.Phase phase : StartupTrace.Phase.values()) {
+            assertTrue(trace.getDuration(phase, TimeUnit.NANOSECONDS) >= 0);
+        }
+        long total = trace.getTotal(TimeUnit.NANOSECONDS);
+        assertTrue(total >= 0);
+
+        trace.markFirstByte();
+        trace.markDispatched();
+        assertEquals(total, trace.getTotal(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testListenerContext_shouldOnlyMarkItsOwnTrace() {
+        StartupTrace trace = authenticated(new StartupTrace());
+        StartupTrace other = authenticated(new StartupTrace());
+        ListenerContext context = new ListenerContext(trace, null, null);
+
+        context.markFirstByte();
+        context.markDecoded();
+        context.markDispatched();
+
+        assertTrue(trace.isComplete());
+        assertFalse(other.isComplete());
+        assertEquals(-1, other.getDuration(StartupTrace.Phase.FIRST_BYTE, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testMarks_beforeAuthentication_shouldNotRecordSnapshot() {
+        StartupTrace trace = new StartupTrace();
+
+        trace.markFirstByte();
+        trace.markDecoded();
+        trace.markDispatched();
+
+        assertFalse(trace.isComplete());
+        assertEquals(-1, trace.getDuration(StartupTrace.Phase.DECODE, TimeUnit.NANOSECONDS));
+        assertEquals(-1, trace.getDuration(StartupTrace.Phase.INIT, TimeUnit.NANOSECONDS));
+        assertEquals(-1, trace.getTotal(TimeUnit.NANOSECONDS));
+    }
+
+    private static StartupTrace authenticated(StartupTrace trace) {
+        trace.markAuthStart();
+        trace.markAuthenticated();
+        return trace;
+    }
+}
@@ -32,7 +32,9 @@ import junit.framework.Assert;
 import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricGradleTestRunner.class)
 @Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
@@ -94,4 +96,20 @@ public class StructureAndroidTest {
             Assert.fail();
         }
     }
+
+    @Test
+    public void testStructureToParcel_withProjection_shouldKeepProjection() throws IOException {
+        String json = IOUtils.toString(
+                this.getClass().getResourceAsStream(TEST_STRUCTURE_JSON), "utf-8");
+        Structure structure = mapper.readValue(json, Structure.class);
+        structure.mProjection = Utils.projection(Structure.KEY_STRUCTURE_ID, Structure.KEY_AWAY);
+
+        Parcel parcel = Parcel.obtain();
+        structure.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        Structure structureFromParcel = Structure.CREATOR.createFromParcel(parcel);
+
+        assertTrue(structureFromParcel.isAvailable(Structure.KEY_AWAY));
+        assertFalse(structureFromParcel.isAvailable(Structure.KEY_NAME));
+    }
 }
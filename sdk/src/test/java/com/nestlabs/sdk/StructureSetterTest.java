@@ -25,7 +25,10 @@ import org.mockito.Mockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
@@ -106,4 +109,18 @@ public class StructureSetterTest {
         Mockito.verify(mockFirebase).child("/structures/" + testId + "/" + Structure.KEY_ETA);
         Mockito.verify(mockFirebase).setValue(testValue.toString(), mockListener);
     }
+
+    @Test
+    public void testSetAwayAsync_shouldSetCorrectValuesAndReturnFuture() {
+        String testId = "test-id";
+        String testValue = "away";
+
+        StructureSetter setter = new StructureSetter(mockFirebase);
+        NestFuture future = setter.setAwayAsync(testId, testValue);
+
+        assertNotNull(future);
+        Mockito.verify(mockFirebase).child("/structures/" + testId + "/" + Structure.KEY_AWAY);
+        Mockito.verify(mockFirebase).setValue(eq(testValue),
+                any(Firebase.CompletionListener.class));
+    }
 }
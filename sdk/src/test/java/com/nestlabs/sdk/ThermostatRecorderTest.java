@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThermostatRecorderTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testRead_shouldReturnSamplesOldestFirst() throws IOException {
+        ThermostatRecorder recorder = new ThermostatRecorder.Builder().capacity(4).build();
+        for (int i = 0; i < 3; i++) {
+            recorder.record(list(thermostat("t1", 20 + i, "heating")), 1000 * i);
+        }
+
+        long[] times = new long[8];
+        float[] values = new float[8];
+        int count = recorder.read("t1", Thermostat.KEY_AMBIENT_TEMP_C, times, values);
+
+        assertEquals(3, count);
+        assertEquals(0, times[0]);
+        assertEquals(20f, values[0], 0);
+        assertEquals(2000, times[2]);
+        assertEquals(22f, values[2], 0);
+    }
+
+    @Test
+    public void testRecord_shouldOverwriteOldestWhenFull() throws IOException {
+        ThermostatRecorder recorder = new ThermostatRecorder.Builder().capacity(2).build();
+        for (int i = 0; i < 5; i++) {
+            recorder.record(list(thermostat("t1", i, "off")), i);
+        }
+
+        long[] times = new long[2];
+        float[] values = new float[2];
+        assertEquals(2, recorder.size("t1"));
+        assertEquals(2, recorder.read("t1", Thermostat.KEY_AMBIENT_TEMP_C, times, values));
+        assertEquals(3f, values[0], 0);
+        assertEquals(4f, values[1], 0);
+    }
+
+    @Test
+    public void testRecord_shouldEncodeHvacState() throws IOException {
+        ThermostatRecorder recorder = new ThermostatRecorder.Builder().build();
+        recorder.record(list(thermostat("t1", 20, "cooling")), 0);
+
+        long[] times = new long[1];
+        float[] values = new float[1];
+        recorder.read("t1", Thermostat.KEY_HVAC_STATE, times, values);
+        assertEquals(ThermostatRecorder.HVAC_STATE_COOLING, values[0], 0);
+    }
+
+    @Test
+    public void testReadTier_shouldDownsampleMinMaxAvg() throws IOException {
+        ThermostatRecorder recorder = new ThermostatRecorder.Builder()
+                .capacity(16)
+                .tier(10, 4)
+                .build();
+        recorder.record(list(thermostat("t1", 10, "off")), 0);
+        recorder.record(list(thermostat("t1", 20, "off")), 5);
+        recorder.record(list(thermostat("t1", 30, "off")), 12);
+
+        long[] times = new long[4];
+        float[] min = new float[4];
+        float[] max = new float[4];
+        float[] avg = new float[4];
+        int count = recorder.readTier("t1", Thermostat.KEY_AMBIENT_TEMP_C, 0, times, min, max,
+                avg);
+
+        assertEquals(2, count);
+        assertEquals(0, times[0]);
+        assertEquals(10f, min[0], 0);
+        assertEquals(20f, max[0], 0);
+        assertEquals(15f, avg[0], 0);
+        assertEquals(10, times[1]);
+        assertEquals(30f, avg[1], 0);
+    }
+
+    @Test
+    public void testRecord_shouldIgnoreDevicesBeyondLimit() throws IOException {
+        ThermostatRecorder recorder = new ThermostatRecorder.Builder().maxDevices(1).build();
+        recorder.record(list(thermostat("t1", 20, "off"), thermostat("t2", 20, "off")), 0);
+
+        assertEquals(1, recorder.size("t1"));
+        assertEquals(0, recorder.size("t2"));
+    }
+
+    @Test
+    public void testRecord_shouldDropDevicesThatLeftTheAccount() throws IOException {
+        ThermostatRecorder recorder = new ThermostatRecorder.Builder().maxDevices(1).build();
+        recorder.record(list(thermostat("t1", 20, "off")), 0);
+        recorder.record(list(thermostat("t2", 21, "off")), 1000);
+        recorder.record(list(thermostat("t2", 22, "off")), 2000);
+
+        assertEquals(0, recorder.size("t1"));
+        assertEquals(2, recorder.size("t2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderFields_withUnsupportedField_shouldThrow() {
+        new ThermostatRecorder.Builder().fields(Thermostat.KEY_HVAC_MODE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRead_withUnrecordedField_shouldThrow() {
+        new ThermostatRecorder.Builder().fields(Thermostat.KEY_HUMIDITY).build()
+                .read("t1", Thermostat.KEY_AMBIENT_TEMP_C, new long[1], new float[1]);
+    }
+
+    private Thermostat thermostat(String id, double ambientC, String hvacState)
+            throws IOException {
+        String json = "{\"device_id\":\"" + id + "\",\"ambient_temperature_c\":" + ambientC
+                + ",\"hvac_state\":\"" + hvacState + "\"}";
+        return mapper.readValue(json, Thermostat.class);
+    }
+
+    private static ArrayList<Thermostat> list(Thermostat... thermostats) {
+        ArrayList<Thermostat> list = new ArrayList<>();
+        for (Thermostat t : thermostats) {
+            list.add(t);
+        }
+        return list;
+    }
+}
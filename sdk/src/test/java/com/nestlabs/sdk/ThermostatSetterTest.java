@@ -25,7 +25,10 @@ import org.mockito.Mockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
@@ -256,4 +259,34 @@ public class ThermostatSetterTest {
                 + Thermostat.KEY_FAN_TIMER_ACTIVE);
         Mockito.verify(mockFirebase).setValue(testValue, mockListener);
     }
+
+    @Test
+    public void testSetHVACModeAsync_shouldSetCorrectValuesAndReturnFuture() {
+        String testId = "test-id";
+        String testValue = "heat";
+
+        ThermostatSetter setter = new ThermostatSetter(mockFirebase);
+        NestFuture future = setter.setHVACModeAsync(testId, testValue);
+
+        assertNotNull(future);
+        Mockito.verify(mockFirebase).child("/devices/thermostats/" + testId + "/"
+                + Thermostat.KEY_HVAC_MODE);
+        Mockito.verify(mockFirebase).setValue(eq(testValue),
+                any(Firebase.CompletionListener.class));
+    }
+
+    @Test
+    public void testSetTargetTemperatureFAsync_shouldSetCorrectValuesAndReturnFuture() {
+        String testId = "test-id";
+        long testValue = 67;
+
+        ThermostatSetter setter = new ThermostatSetter(mockFirebase);
+        NestFuture future = setter.setTargetTemperatureFAsync(testId, testValue);
+
+        assertNotNull(future);
+        Mockito.verify(mockFirebase).child("/devices/thermostats/" + testId + "/"
+                + Thermostat.KEY_TARGET_TEMP_F);
+        Mockito.verify(mockFirebase).setValue(eq(testValue),
+                any(Firebase.CompletionListener.class));
+    }
 }
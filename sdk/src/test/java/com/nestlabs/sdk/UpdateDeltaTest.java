@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nestlabs.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UpdateDeltaTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testDeltaFrom_shouldHoldOnlyChangedDevices() throws Exception {
+        DeviceUpdate base = devices(thermostat("t1", 70), thermostat("t2", 68),
+                thermostat("t3", 65));
+        DeviceUpdate update = devices(thermostat("t1", 70), thermostat("t2", 72),
+                thermostat("t4", 60));
+
+        UpdateDelta delta = update.deltaFrom(base);
+
+        assertEquals(2, delta.getChangedCount());
+        assertEquals(1, delta.getRemovedCount());
+        assertEquals(Arrays.asList("t3"), delta.mRemovedThermostats);
+    }
+
+    @Test
+    public void testApplyDelta_shouldRebuildUpdate() throws Exception {
+        DeviceUpdate base = devices(thermostat("t1", 70), thermostat("t2", 68),
+                thermostat("t3", 65));
+        DeviceUpdate update = devices(thermostat("t1", 70), thermostat("t2", 72),
+                thermostat("t4", 60));
+        update.stamp(2, 100, 200);
+
+        DeviceUpdate result = base.applyDelta(update.deltaFrom(base));
+
+        assertEquals(update.getThermostats(), result.getThermostats());
+        assertSame(base.getThermostats().get(0), result.getThermostats().get(0));
+        assertEquals(2, result.getSequence());
+        assertEquals(200, result.getDecodedNanos());
+    }
+
+    @Test
+    public void testApplyDelta_withDeviceDelta_shouldKeepStructuresAndMetadata() throws Exception {
+        Metadata metadata = new Metadata();
+        ArrayList<Structure> structures = new ArrayList<>();
+        structures.add(mapper.readValue("{\"structure_id\":\"s1\"}", Structure.class));
+        GlobalUpdate base = new GlobalUpdate(list(thermostat("t1", 70)),
+                new ArrayList<SmokeCOAlarm>(), new ArrayList<Camera>(), structures, metadata);
+
+        UpdateDelta delta = devices(thermostat("t1", 75)).deltaFrom(base.getDevices());
+        GlobalUpdate result = base.applyDelta(delta);
+
+        assertEquals(75, result.getThermostats().get(0).getTargetTemperatureF());
+        assertEquals(structures, result.getStructures());
+        assertSame(metadata, result.getMetadata());
+    }
+
+    @Test
+    public void testDeltaFrom_withSameUpdate_shouldBeEmpty() throws Exception {
+        DeviceUpdate base = devices(thermostat("t1", 70));
+        assertTrue(devices(thermostat("t1", 70)).deltaFrom(base).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplyDelta_withWrongBase_shouldThrow() throws Exception {
+        DeviceUpdate base = devices(thermostat("t1", 70));
+        DeviceUpdate other = devices(thermostat("t1", 70));
+        other.stamp(5, 0, 0);
+        base.applyDelta(devices(thermostat("t1", 71)).deltaFrom(other));
+    }
+
+    private Thermostat thermostat(String id, long targetF) throws Exception {
+        return mapper.readValue("{\"device_id\":\"" + id + "\",\"target_temperature_f\":"
+                + targetF + "}", Thermostat.class);
+    }
+
+    private static ArrayList<Thermostat> list(Thermostat... thermostats) {
+        return new ArrayList<>(Arrays.asList(thermostats));
+    }
+
+    private static DeviceUpdate devices(Thermostat... thermostats) {
+        return new DeviceUpdate(list(thermostats), new ArrayList<SmokeCOAlarm>(),
+                new ArrayList<Camera>());
+    }
+}
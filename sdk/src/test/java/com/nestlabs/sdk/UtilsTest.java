@@ -18,6 +18,7 @@ package com.nestlabs.sdk;
 
 import android.os.Parcel;
 
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -82,4 +83,9 @@ public class UtilsTest {
 
         Assert.assertEquals("/hello/world", result);
     }
+
+    @Test
+    public void testWarmUpMappers_shouldRoundTripEveryModel() throws Exception {
+        Utils.warmUpMappers();
+    }
 }